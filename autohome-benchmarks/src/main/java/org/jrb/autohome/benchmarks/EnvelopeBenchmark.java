@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.EnvelopeBatch;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Envelope packing and unpacking, for both the single-frame and the multipart
+ * envelopes, excluding payload serialization.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class EnvelopeBenchmark {
+
+	private static final String SEPARATOR = "|";
+	private static final int BATCH_SIZE = 64;
+
+	private ObjectMapper mapper;
+	private byte[] json;
+	private String singleFrame;
+	private byte[] singleFrameBytes;
+	private byte[] header;
+	private byte[] batch;
+
+	@Setup
+	public void setup() throws Exception {
+		mapper = new ObjectMapper();
+		json = mapper.writeValueAsBytes(Fixtures.telemetry());
+		singleFrame = MessageUtils.packMessage(mapper, Fixtures.TELEMETRY_TOPIC, SEPARATOR, Fixtures.telemetry());
+		singleFrameBytes = singleFrame.getBytes(MessageUtils.CHARSET);
+		header = new EnvelopeHeader("Message", MessageCodecRegistry.JSON_ID).encode();
+		final EnvelopeBatch.Writer writer = new EnvelopeBatch.Writer(BATCH_SIZE * json.length);
+		for (int i = 0; i < BATCH_SIZE; i++) {
+			writer.add(header, json);
+		}
+		batch = writer.toByteArray();
+	}
+
+	@Benchmark
+	public Object multipartHeaderDecode() {
+		return EnvelopeHeader.decode(header);
+	}
+
+	@Benchmark
+	public byte[] multipartHeaderEncode() {
+		return new EnvelopeHeader("Message", MessageCodecRegistry.JSON_ID).encode();
+	}
+
+	@Benchmark
+	public void batchUnpack(final Blackhole blackhole) {
+		final EnvelopeBatch.Reader reader = new EnvelopeBatch.Reader(batch);
+		while (reader.next()) {
+			blackhole.consume(reader.getHeader());
+			blackhole.consume(reader.getPayloadOffset());
+		}
+	}
+
+	@Benchmark
+	public int singleFrameSplitBytes() {
+		return MessageUtils.indexOf(singleFrameBytes, SEPARATOR.getBytes(MessageUtils.CHARSET));
+	}
+
+	@Benchmark
+	public void singleFrameSplitString(final Blackhole blackhole) {
+		final int pos = singleFrame.indexOf(SEPARATOR);
+		blackhole.consume(singleFrame.substring(0, pos));
+		blackhole.consume(singleFrame.substring(pos + SEPARATOR.length()));
+	}
+
+	@Benchmark
+	public String singleFramePack() {
+		return MessageUtils.packMessage(mapper, Fixtures.TELEMETRY_TOPIC, SEPARATOR, Fixtures.telemetry());
+	}
+
+}
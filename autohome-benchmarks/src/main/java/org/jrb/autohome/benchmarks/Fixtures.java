@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
+
+/**
+ * Realistic message fixtures shared by the benchmarks.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public final class Fixtures {
+
+	public static final String TELEMETRY_TOPIC = "home/livingroom/temperature";
+	public static final String COMMAND_TOPIC = "command/livingroom/light";
+
+	public static SimpleCommand<Map<String, Object>> lightCommand() {
+		final Map<String, Object> payload = new LinkedHashMap<>();
+		payload.put("deviceId", 1042);
+		payload.put("level", 75);
+		payload.put("transitionMs", 400);
+		payload.put("scene", "evening");
+		return new SimpleCommand<Map<String, Object>>("light.set", payload);
+	}
+
+	public static SimpleMessage<SensorReading> sensorReading() {
+		return new SimpleMessage<>(new SensorReading(1001, "livingroom", 21.5, 43.2, 87, 1386547200000L));
+	}
+
+	public static SimpleMessage<Map<String, Object>> telemetry() {
+		final Map<String, Object> payload = new LinkedHashMap<>();
+		payload.put("deviceId", 1001);
+		payload.put("room", "livingroom");
+		payload.put("temperature", 21.5);
+		payload.put("humidity", 43.2);
+		payload.put("battery", 87);
+		payload.put("timestamp", 1386547200000L);
+		return new SimpleMessage<>(payload);
+	}
+
+	private Fixtures() {
+	}
+
+	/**
+	 * Typed telemetry payload.
+	 */
+	public static class SensorReading {
+
+		private int deviceId;
+		private String room;
+		private double temperature;
+		private double humidity;
+		private int battery;
+		private long timestamp;
+
+		public SensorReading() {
+		}
+
+		public SensorReading(
+				final int deviceId,
+				final String room,
+				final double temperature,
+				final double humidity,
+				final int battery,
+				final long timestamp) {
+			this.deviceId = deviceId;
+			this.room = room;
+			this.temperature = temperature;
+			this.humidity = humidity;
+			this.battery = battery;
+			this.timestamp = timestamp;
+		}
+
+		public int getBattery() {
+			return battery;
+		}
+
+		public int getDeviceId() {
+			return deviceId;
+		}
+
+		public double getHumidity() {
+			return humidity;
+		}
+
+		public String getRoom() {
+			return room;
+		}
+
+		public double getTemperature() {
+			return temperature;
+		}
+
+		public long getTimestamp() {
+			return timestamp;
+		}
+
+		public void setBattery(final int battery) {
+			this.battery = battery;
+		}
+
+		public void setDeviceId(final int deviceId) {
+			this.deviceId = deviceId;
+		}
+
+		public void setHumidity(final double humidity) {
+			this.humidity = humidity;
+		}
+
+		public void setRoom(final String room) {
+			this.room = room;
+		}
+
+		public void setTemperature(final double temperature) {
+			this.temperature = temperature;
+		}
+
+		public void setTimestamp(final long timestamp) {
+			this.timestamp = timestamp;
+		}
+
+	}
+
+}
@@ -0,0 +1,179 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.benchmarks;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrb.autohome.commons.service.broker.BrokerProperties;
+import org.jrb.autohome.commons.service.broker.BrokerServiceImpl;
+import org.jrb.autohome.commons.service.broker.BrokerType;
+import org.jrb.autohome.commons.service.broker.EnvelopeMode;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.zeromq.ZMQ;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * End-to-end publish to delivery throughput between a MASTER and a
+ * COORDINATOR {@link BrokerServiceImpl} over each transport. Each invocation
+ * publishes a burst of telemetry messages from the master and waits until the
+ * coordinator's {@link EventBus} has seen all of them; an invocation that
+ * times out fails rather than reporting the timeout as throughput.
+ * <p>
+ * Single-frame envelopes are only decoded when their topic is a registered
+ * message type key, so in that mode messages are published on the
+ * <code>Message</code> topic instead of a telemetry topic.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PubSubBenchmark {
+
+	private static final int BURST = 100;
+	private static final long RECEIVE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+	@Param({ "inproc", "ipc", "tcp" })
+	public String transport;
+
+	@Param({ "SINGLE", "MULTIPART" })
+	public EnvelopeMode envelopeMode;
+
+	private final AtomicLong received = new AtomicLong();
+
+	private ZMQ.Context sharedContext;
+	private BrokerServiceImpl master;
+	private BrokerServiceImpl coordinator;
+	private SimpleMessage<?> message;
+	private String topic;
+	private long expected;
+
+	@Setup
+	public void setup() throws Exception {
+		sharedContext = ZMQ.context(1);
+		topic = (envelopeMode == EnvelopeMode.SINGLE) ? Message.class.getSimpleName() : Fixtures.TELEMETRY_TOPIC;
+		final String downstream = address("downstream", 57101);
+		final String upstream = address("upstream", 57102);
+
+		master = newBroker(BrokerType.MASTER, downstream, upstream, new EventBus());
+
+		final EventBus coordinatorBus = new EventBus();
+		coordinatorBus.register(new Object() {
+			@Subscribe
+			public void handle(final SimpleMessage<?> message) {
+				received.incrementAndGet();
+			}
+		});
+		coordinator = newBroker(BrokerType.COORDINATOR, upstream, downstream, coordinatorBus);
+
+		master.start();
+		coordinator.start();
+		message = Fixtures.telemetry();
+
+		// allow the subscription to propagate before measuring
+		Thread.sleep(1000);
+	}
+
+	@TearDown
+	public void tearDown() {
+		coordinator.stop();
+		master.stop();
+		sharedContext.term();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(BURST)
+	public void publishAndDeliver() throws Exception {
+		expected += BURST;
+		for (int i = 0; i < BURST; i++) {
+			master.publish(topic, message);
+		}
+		final long deadline = System.nanoTime() + RECEIVE_TIMEOUT_NANOS;
+		while (received.get() < expected) {
+			if (System.nanoTime() > deadline) {
+				throw new IllegalStateException("Only " + received.get() + " of " + expected
+						+ " messages delivered within " + TimeUnit.NANOSECONDS.toSeconds(RECEIVE_TIMEOUT_NANOS) + "s");
+			}
+			Thread.yield();
+		}
+	}
+
+	private String address(final String name, final int port) {
+		switch (transport) {
+		case "inproc":
+			return "inproc://benchmark-" + name;
+		case "ipc":
+			return "ipc://benchmark-" + name;
+		default:
+			return "tcp://127.0.0.1:" + port;
+		}
+	}
+
+	private BrokerServiceImpl newBroker(
+			final BrokerType brokerType,
+			final String publisherAddress,
+			final String subscriberAddress,
+			final EventBus eventBus) {
+		final BrokerProperties properties = new BrokerProperties();
+		properties.setBrokerType(brokerType);
+		properties.setEnvelopeMode(envelopeMode);
+		properties.setPublisherAddress(publisherAddress);
+		properties.setSubscriberAddress(subscriberAddress);
+		properties.setSubscriberTopicFilter(topic);
+		final ExecutorService executorService = Executors.newSingleThreadExecutor();
+		return new BrokerServiceImpl(properties, executorService, eventBus) {
+			@Override
+			protected ZMQ.Context createContext() {
+				return sharedContext;
+			}
+
+			@Override
+			protected void destroyContext(final ZMQ.Context context) {
+				// shared; terminated once both brokers have stopped
+			}
+		};
+	}
+
+}
@@ -0,0 +1,147 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.benchmarks.Fixtures.SensorReading;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodec;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.jrb.autohome.commons.service.broker.codec.MessageType;
+import org.jrb.autohome.commons.service.broker.codec.MessageTypeRegistry;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Payload serialization of {@link SimpleMessage} and {@link SimpleCommand}
+ * through each {@link MessageCodec}, using the registry's cached readers and
+ * writers, compared against plain {@link ObjectMapper} calls.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+	@Param({ MessageCodecRegistry.JSON_NAME, MessageCodecRegistry.SMILE_NAME })
+	public String codecName;
+
+	private ObjectMapper mapper;
+	private MessageCodec codec;
+	private MessageTypeRegistry registry;
+
+	private SimpleMessage<?> telemetry;
+	private SimpleMessage<SensorReading> reading;
+	private SimpleCommand<?> command;
+
+	private MessageType telemetryType;
+	private MessageType readingType;
+	private MessageType commandType;
+
+	private byte[] telemetryBytes;
+	private byte[] readingBytes;
+	private byte[] commandBytes;
+	private byte[] telemetryJson;
+
+	@Setup
+	public void setup() {
+		mapper = new ObjectMapper();
+		codec = new MessageCodecRegistry(mapper).get(codecName);
+		registry = MessageTypeRegistry.defaultRegistry()
+				.register("Command", SimpleCommand.class)
+				.register("SensorReading", new TypeReference<SimpleMessage<SensorReading>>() {
+				});
+
+		telemetry = Fixtures.telemetry();
+		reading = Fixtures.sensorReading();
+		command = Fixtures.lightCommand();
+
+		telemetryType = registry.typeOf(telemetry);
+		readingType = registry.typeOf(reading);
+		commandType = registry.typeOf(command);
+
+		telemetryBytes = codec.encode(telemetry, telemetryType);
+		readingBytes = codec.encode(reading, readingType);
+		commandBytes = codec.encode(command, commandType);
+		telemetryJson = new MessageCodecRegistry(mapper).get(MessageCodecRegistry.JSON_ID).encode(telemetry);
+	}
+
+	@Benchmark
+	public Object decodeCommand() {
+		return codec.decode(commandBytes, 0, commandBytes.length, commandType);
+	}
+
+	@Benchmark
+	public Object decodeTelemetry() {
+		return codec.decode(telemetryBytes, 0, telemetryBytes.length, telemetryType);
+	}
+
+	@Benchmark
+	public Object decodeTypedReading() {
+		return codec.decode(readingBytes, 0, readingBytes.length, readingType);
+	}
+
+	@Benchmark
+	public byte[] encodeCommand() {
+		return codec.encode(command, registry.typeOf(command));
+	}
+
+	@Benchmark
+	public byte[] encodeTelemetry() {
+		return codec.encode(telemetry, registry.typeOf(telemetry));
+	}
+
+	@Benchmark
+	public byte[] encodeTypedReading() {
+		return codec.encode(reading, registry.typeOf(reading));
+	}
+
+	@Benchmark
+	public Object objectMapperReadTelemetry() throws Exception {
+		return mapper.readValue(telemetryJson, SimpleMessage.class);
+	}
+
+	@Benchmark
+	public String objectMapperWriteTelemetry() throws Exception {
+		return mapper.writeValueAsString(telemetry);
+	}
+
+}
@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.ring;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Consumer loop for a {@link RingBuffer}. Waits for the producer, then hands
+ * every available event to its {@link EventHandler} as one batch before
+ * advancing its own sequence, so the cost of waiting and of publishing
+ * progress is paid once per batch rather than once per event.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class BatchEventProcessor<E> implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BatchEventProcessor.class);
+
+	private final RingBuffer<E> ringBuffer;
+	private final SequenceBarrier barrier;
+	private final EventHandler<? super E> handler;
+	private final Sequence sequence = new Sequence();
+
+	public BatchEventProcessor(final RingBuffer<E> ringBuffer, final EventHandler<? super E> handler) {
+		this.ringBuffer = ringBuffer;
+		this.barrier = ringBuffer.newBarrier();
+		this.handler = handler;
+		ringBuffer.addGatingSequence(sequence);
+	}
+
+	public Sequence getSequence() {
+		return sequence;
+	}
+
+	public void halt() {
+		barrier.alert();
+	}
+
+	@Override
+	public void run() {
+		barrier.clearAlert();
+		long nextSequence = sequence.get() + 1L;
+		try {
+			while (true) {
+				final long availableSequence = barrier.waitFor(nextSequence);
+				while (nextSequence <= availableSequence) {
+					final E event = ringBuffer.get(nextSequence);
+					try {
+						handler.onEvent(event, nextSequence, nextSequence == availableSequence);
+					} catch (final Exception e) {
+						LOG.error("Unhandled exception processing sequence " + nextSequence, e);
+					}
+					nextSequence++;
+				}
+				sequence.set(availableSequence);
+			}
+		} catch (final AlertException e) {
+			LOG.debug("Event processor halted at sequence {}", sequence.get());
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+}
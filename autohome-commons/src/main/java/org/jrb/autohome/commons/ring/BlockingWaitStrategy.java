@@ -0,0 +1,68 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.ring;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * {@link WaitStrategy} that parks consumers on a lock condition until the
+ * producer publishes. Slowest to wake, but uses no CPU while idle.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+	private final Lock lock = new ReentrantLock();
+	private final Condition published = lock.newCondition();
+
+	@Override
+	public void signalAllWhenBlocking() {
+		lock.lock();
+		try {
+			published.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	@Override
+	public long waitFor(final long sequence, final Sequence cursor, final SequenceBarrier barrier)
+			throws AlertException, InterruptedException {
+		long available = cursor.get();
+		if (available < sequence) {
+			lock.lock();
+			try {
+				while ((available = cursor.get()) < sequence) {
+					barrier.checkAlert();
+					published.await();
+				}
+			} finally {
+				lock.unlock();
+			}
+		}
+		return available;
+	}
+
+}
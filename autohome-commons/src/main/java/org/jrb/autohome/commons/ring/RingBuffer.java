@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.ring;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Pre-allocated, single-producer ring buffer in the style of the LMAX
+ * Disruptor. The producer claims a slot with {@link #next()} or
+ * {@link #tryNext()}, fills the pre-allocated event in place, and makes it
+ * visible with {@link #publish(long)}. Consumers track their progress with
+ * their own {@link Sequence}, which the producer uses to avoid wrapping over
+ * unconsumed slots.
+ * <p>
+ * Only a single thread may publish into a given ring buffer.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RingBuffer<E> {
+
+	private final Object[] entries;
+	private final int mask;
+	private final Sequence cursor = new Sequence();
+	private final WaitStrategy waitStrategy;
+
+	private Sequence[] gatingSequences = new Sequence[0];
+	private long nextValue = Sequence.INITIAL_VALUE;
+	private long cachedGatingValue = Sequence.INITIAL_VALUE;
+
+	public RingBuffer(final EventFactory<E> factory, final int capacity, final WaitStrategy waitStrategy) {
+		if (capacity < 1 || Integer.bitCount(capacity) != 1) {
+			throw new IllegalArgumentException("Ring buffer capacity must be a power of 2 - " + capacity);
+		}
+		this.entries = new Object[capacity];
+		this.mask = capacity - 1;
+		this.waitStrategy = waitStrategy;
+		for (int i = 0; i < capacity; i++) {
+			entries[i] = factory.newInstance();
+		}
+	}
+
+	public static int capacityFor(final int requested) {
+		return requested <= 1 ? 1 : Integer.highestOneBit(requested - 1) << 1;
+	}
+
+	public void addGatingSequence(final Sequence sequence) {
+		final Sequence[] sequences = new Sequence[gatingSequences.length + 1];
+		System.arraycopy(gatingSequences, 0, sequences, 0, gatingSequences.length);
+		sequences[gatingSequences.length] = sequence;
+		gatingSequences = sequences;
+	}
+
+	@SuppressWarnings("unchecked")
+	public E get(final long sequence) {
+		return (E) entries[(int) sequence & mask];
+	}
+
+	public int getCapacity() {
+		return entries.length;
+	}
+
+	public long getCursor() {
+		return cursor.get();
+	}
+
+	public SequenceBarrier newBarrier() {
+		return new SequenceBarrier(cursor, waitStrategy);
+	}
+
+	/**
+	 * Claims the next slot, parking until a consumer frees one if the buffer
+	 * is full.
+	 */
+	public long next() {
+		long sequence;
+		while ((sequence = tryNext()) < 0) {
+			LockSupport.parkNanos(1L);
+		}
+		return sequence;
+	}
+
+	public void publish(final long sequence) {
+		cursor.set(sequence);
+		waitStrategy.signalAllWhenBlocking();
+	}
+
+	/**
+	 * Number of published events not yet consumed by the slowest consumer.
+	 */
+	public long remaining() {
+		final long produced = cursor.get();
+		long consumed = produced;
+		for (final Sequence sequence : gatingSequences) {
+			consumed = Math.min(consumed, sequence.get());
+		}
+		return produced - consumed;
+	}
+
+	/**
+	 * Claims the next slot without waiting.
+	 * 
+	 * @return the claimed sequence, or <code>-1</code> if the buffer is full
+	 */
+	public long tryNext() {
+		final long next = nextValue + 1;
+		final long wrapPoint = next - entries.length;
+		if (wrapPoint > cachedGatingValue) {
+			cachedGatingValue = minimumGatingSequence();
+			if (wrapPoint > cachedGatingValue) {
+				return -1L;
+			}
+		}
+		nextValue = next;
+		return next;
+	}
+
+	private long minimumGatingSequence() {
+		long minimum = nextValue;
+		for (final Sequence sequence : gatingSequences) {
+			minimum = Math.min(minimum, sequence.get());
+		}
+		return minimum;
+	}
+
+}
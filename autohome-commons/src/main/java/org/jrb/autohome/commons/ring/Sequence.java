@@ -0,0 +1,82 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.ring;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Cache-line padded sequence counter used to track progress through a
+ * {@link RingBuffer}. The padding keeps producer and consumer sequences from
+ * sharing a cache line when they sit next to each other in memory.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class Sequence extends SequenceRhsPadding {
+
+	public static final long INITIAL_VALUE = -1L;
+
+	private static final AtomicLongFieldUpdater<SequenceValue> UPDATER =
+			AtomicLongFieldUpdater.newUpdater(SequenceValue.class, "value");
+
+	public Sequence() {
+		this(INITIAL_VALUE);
+	}
+
+	public Sequence(final long initialValue) {
+		UPDATER.lazySet(this, initialValue);
+	}
+
+	public long get() {
+		return value;
+	}
+
+	/**
+	 * Ordered write of the sequence; cheaper than a volatile write and
+	 * sufficient for a single writer.
+	 */
+	public void set(final long value) {
+		UPDATER.lazySet(this, value);
+	}
+
+	public void setVolatile(final long value) {
+		this.value = value;
+	}
+
+	@Override
+	public String toString() {
+		return Long.toString(value);
+	}
+
+}
+
+class SequenceLhsPadding {
+	protected long p1, p2, p3, p4, p5, p6, p7;
+}
+
+class SequenceValue extends SequenceLhsPadding {
+	protected volatile long value;
+}
+
+class SequenceRhsPadding extends SequenceValue {
+	protected long p9, p10, p11, p12, p13, p14, p15;
+}
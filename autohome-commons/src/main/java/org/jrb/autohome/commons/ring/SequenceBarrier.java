@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.ring;
+
+/**
+ * Coordinates a consumer with the producer's cursor of a {@link RingBuffer},
+ * and carries the alert used to stop a waiting consumer.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class SequenceBarrier {
+
+	private final Sequence cursor;
+	private final WaitStrategy waitStrategy;
+
+	private volatile boolean alerted = false;
+
+	SequenceBarrier(final Sequence cursor, final WaitStrategy waitStrategy) {
+		this.cursor = cursor;
+		this.waitStrategy = waitStrategy;
+	}
+
+	public void alert() {
+		alerted = true;
+		waitStrategy.signalAllWhenBlocking();
+	}
+
+	public void checkAlert() throws AlertException {
+		if (alerted) {
+			throw AlertException.INSTANCE;
+		}
+	}
+
+	public void clearAlert() {
+		alerted = false;
+	}
+
+	public boolean isAlerted() {
+		return alerted;
+	}
+
+	public long waitFor(final long sequence) throws AlertException, InterruptedException {
+		checkAlert();
+		return waitStrategy.waitFor(sequence, cursor, this);
+	}
+
+}
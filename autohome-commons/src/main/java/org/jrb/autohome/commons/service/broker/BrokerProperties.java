@@ -22,6 +22,11 @@
  */
 package org.jrb.autohome.commons.service.broker;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import org.jrb.autohome.commons.ring.WaitStrategyType;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 
 /**
@@ -32,22 +37,299 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 @ConfigurationProperties(name = "service.broker", ignoreUnknownFields = false)
 public class BrokerProperties {
 	
+	private final static int DEFAULT_BATCH_MAX_BYTES = 64 * 1024;
+	private final static int DEFAULT_BATCH_MAX_MESSAGES = 64;
+	private final static String DEFAULT_CODEC = "json";
+	private final static int DEFAULT_COMMAND_THREADS = 1;
+	private final static long DEFAULT_COMMAND_TIMEOUT = 10000;
+	private final static int DEFAULT_COMPRESSION_LEVEL = Deflater.BEST_SPEED;
+	private final static int DEFAULT_DELTA_KEYFRAME_INTERVAL = 30;
+	private final static int DEFAULT_DELTA_MAX_KEYS = 10000;
+	private final static int DEFAULT_DISPATCH_QUEUE_CAPACITY = 1024;
+	private final static long DEFAULT_HEARTBEAT_INTERVAL = 1000;
+	private final static long DEFAULT_HEARTBEAT_TICK = 250;
+	private final static long DEFAULT_HEARTBEAT_TIMEOUT = 5000;
+	private final static int DEFAULT_HIGH_WATER_MARK = 1000;
+	private final static int DEFAULT_JOURNAL_INDEX_INTERVAL = 4096;
+	private final static int DEFAULT_JOURNAL_MAX_SEGMENTS = 16;
+	private final static int DEFAULT_JOURNAL_REPLAY_BATCH = 256;
+	private final static int DEFAULT_JOURNAL_SEGMENT_SIZE = 64 * 1024 * 1024;
+	private final static int DEFAULT_LAST_VALUE_CACHE_MAX_ENTRIES = 10000;
 	private final static String DEFAULT_MESSAGE_SEPARATOR = "|";
+	private final static long DEFAULT_METRICS_EXPORT_INTERVAL = 5000;
+	private final static int DEFAULT_METRICS_MAX_TAGS = 256;
+	private final static int DEFAULT_PUBLISHER_BATCH_SIZE = 256;
+	private final static long DEFAULT_PUBLISHER_LINGER = 1000;
+	private final static int DEFAULT_PUBLISHER_QUEUE_CAPACITY = 10000;
+	private final static long DEFAULT_SHUTDOWN_TIMEOUT = 5000;
+	private final static long DEFAULT_SNAPSHOT_TIMEOUT = 5000;
+	private final static int DEFAULT_STREAM_BUFFER_SIZE = 1024;
 
+	private boolean batchEnabled = false;
+	private int batchMaxBytes = DEFAULT_BATCH_MAX_BYTES;
+	private int batchMaxMessages = DEFAULT_BATCH_MAX_MESSAGES;
 	private BrokerType brokerType;
+	private String codec = DEFAULT_CODEC;
+	private String commandAddress;
+	private int commandThreads = DEFAULT_COMMAND_THREADS;
+	private long commandTimeout = DEFAULT_COMMAND_TIMEOUT;
+	private int compressionLevel = DEFAULT_COMPRESSION_LEVEL;
+	private int compressionThreshold = 0;
+	private String coordinatorId;
+	private int deltaKeyframeInterval = DEFAULT_DELTA_KEYFRAME_INTERVAL;
+	private int deltaMaxKeys = DEFAULT_DELTA_MAX_KEYS;
+	private List<String> deltaTopics = new ArrayList<>();
+	private DispatchMode dispatchMode = DispatchMode.INLINE;
+	private int dispatchQueueCapacity = DEFAULT_DISPATCH_QUEUE_CAPACITY;
+	private int dispatchThreads = Runtime.getRuntime().availableProcessors();
+	private WaitStrategyType dispatchWaitStrategy = WaitStrategyType.BLOCKING;
+	private EnvelopeMode envelopeMode = EnvelopeMode.SINGLE;
+	private boolean forwardingCapture = true;
+	private boolean forwardingEnabled = false;
+	private long heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
+	private long heartbeatTick = DEFAULT_HEARTBEAT_TICK;
+	private long heartbeatTimeout = DEFAULT_HEARTBEAT_TIMEOUT;
+	private String journalDirectory;
+	private boolean journalEnabled = false;
+	private int journalIndexInterval = DEFAULT_JOURNAL_INDEX_INTERVAL;
+	private int journalMaxSegments = DEFAULT_JOURNAL_MAX_SEGMENTS;
+	private int journalReplayBatch = DEFAULT_JOURNAL_REPLAY_BATCH;
+	private int journalSegmentSize = DEFAULT_JOURNAL_SEGMENT_SIZE;
+	private boolean lastValueCacheEnabled = false;
+	private int lastValueCacheMaxEntries = DEFAULT_LAST_VALUE_CACHE_MAX_ENTRIES;
+	private List<String> lastValueCacheTopics = new ArrayList<>();
+	private long metricsExportInterval = DEFAULT_METRICS_EXPORT_INTERVAL;
+	private int metricsMaxTags = DEFAULT_METRICS_MAX_TAGS;
+	private List<String> overflowPolicies = new ArrayList<>();
+	private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
 	private String publisherAddress;
+	private int publisherBatchSize = DEFAULT_PUBLISHER_BATCH_SIZE;
+	private long publisherLinger = DEFAULT_PUBLISHER_LINGER;
+	private int publisherQueueCapacity = DEFAULT_PUBLISHER_QUEUE_CAPACITY;
+	private int receiveBufferSize = 0;
+	private int receiveHighWaterMark = DEFAULT_HIGH_WATER_MARK;
+	private OverflowPolicy receiveOverflowPolicy = OverflowPolicy.BLOCK;
+	private int sendBufferSize = 0;
+	private int sendHighWaterMark = DEFAULT_HIGH_WATER_MARK;
+	private long shutdownTimeout = DEFAULT_SHUTDOWN_TIMEOUT;
+	private String snapshotAddress;
+	private long snapshotTimeout = DEFAULT_SNAPSHOT_TIMEOUT;
+	private int streamBufferSize = DEFAULT_STREAM_BUFFER_SIZE;
+	private OverflowPolicy streamOverflowPolicy = OverflowPolicy.DROP_OLDEST;
 	private String subscriberAddress;
 	private String subscriberTopicFilter;
+	private List<String> subscriberTopics = new ArrayList<>();
 	private String subscriberMessageSeparator = DEFAULT_MESSAGE_SEPARATOR;
 
+	public int getBatchMaxBytes() {
+		return batchMaxBytes;
+	}
+
+	public int getBatchMaxMessages() {
+		return batchMaxMessages;
+	}
+
 	public BrokerType getBrokerType() {
 		return brokerType;
 	}
 
+	public String getCodec() {
+		return codec;
+	}
+
+	public String getCommandAddress() {
+		return commandAddress;
+	}
+
+	public int getCommandThreads() {
+		return commandThreads;
+	}
+
+	public long getCommandTimeout() {
+		return commandTimeout;
+	}
+
+	public int getCompressionLevel() {
+		return compressionLevel;
+	}
+
+	/**
+	 * Smallest multipart payload, in bytes, that is compressed before being
+	 * published; <code>0</code> disables compression.
+	 */
+	public int getCompressionThreshold() {
+		return compressionThreshold;
+	}
+
+	public String getCoordinatorId() {
+		return coordinatorId;
+	}
+
+	public int getDeltaKeyframeInterval() {
+		return deltaKeyframeInterval;
+	}
+
+	public int getDeltaMaxKeys() {
+		return deltaMaxKeys;
+	}
+
+	/**
+	 * Topic patterns whose messages are published as keyframes and deltas;
+	 * delta encoding is off when empty.
+	 */
+	public List<String> getDeltaTopics() {
+		return deltaTopics;
+	}
+
+	public DispatchMode getDispatchMode() {
+		return dispatchMode;
+	}
+
+	public int getDispatchQueueCapacity() {
+		return dispatchQueueCapacity;
+	}
+
+	public int getDispatchThreads() {
+		return dispatchThreads;
+	}
+
+	public WaitStrategyType getDispatchWaitStrategy() {
+		return dispatchWaitStrategy;
+	}
+
+	public EnvelopeMode getEnvelopeMode() {
+		return envelopeMode;
+	}
+
+	/**
+	 * Longest a coordinator stays silent on the command channel before it
+	 * sends an explicit heartbeat; <code>0</code> disables heartbeats.
+	 */
+	public long getHeartbeatInterval() {
+		return heartbeatInterval;
+	}
+
+	/**
+	 * Resolution of the master's coordinator expiry.
+	 */
+	public long getHeartbeatTick() {
+		return heartbeatTick;
+	}
+
+	/**
+	 * How long the master waits for a heartbeat before expiring a coordinator.
+	 */
+	public long getHeartbeatTimeout() {
+		return heartbeatTimeout;
+	}
+
+	public String getJournalDirectory() {
+		return journalDirectory;
+	}
+
+	public int getJournalIndexInterval() {
+		return journalIndexInterval;
+	}
+
+	public int getJournalMaxSegments() {
+		return journalMaxSegments;
+	}
+
+	public int getJournalReplayBatch() {
+		return journalReplayBatch;
+	}
+
+	public int getJournalSegmentSize() {
+		return journalSegmentSize;
+	}
+
+	public int getLastValueCacheMaxEntries() {
+		return lastValueCacheMaxEntries;
+	}
+
+	public List<String> getLastValueCacheTopics() {
+		return lastValueCacheTopics;
+	}
+
+	public long getMetricsExportInterval() {
+		return metricsExportInterval;
+	}
+
+	public int getMetricsMaxTags() {
+		return metricsMaxTags;
+	}
+
+	public List<String> getOverflowPolicies() {
+		return overflowPolicies;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
 	public String getPublisherAddress() {
 		return publisherAddress;
 	}
 
+	public int getPublisherBatchSize() {
+		return publisherBatchSize;
+	}
+
+	public long getPublisherLinger() {
+		return publisherLinger;
+	}
+
+	public int getPublisherQueueCapacity() {
+		return publisherQueueCapacity;
+	}
+
+	public int getReceiveBufferSize() {
+		return receiveBufferSize;
+	}
+
+	public int getReceiveHighWaterMark() {
+		return receiveHighWaterMark;
+	}
+
+	public OverflowPolicy getReceiveOverflowPolicy() {
+		return receiveOverflowPolicy;
+	}
+
+	public int getSendBufferSize() {
+		return sendBufferSize;
+	}
+
+	public int getSendHighWaterMark() {
+		return sendHighWaterMark;
+	}
+
+	public long getShutdownTimeout() {
+		return shutdownTimeout;
+	}
+
+	public String getSnapshotAddress() {
+		return snapshotAddress;
+	}
+
+	public long getSnapshotTimeout() {
+		return snapshotTimeout;
+	}
+
+	/**
+	 * Messages buffered per stream subscriber beyond its demand.
+	 */
+	public int getStreamBufferSize() {
+		return streamBufferSize;
+	}
+
+	/**
+	 * What a stream does once a subscriber's buffer is full. BLOCK holds up
+	 * the dispatch thread, and with it every topic that thread handles.
+	 */
+	public OverflowPolicy getStreamOverflowPolicy() {
+		return streamOverflowPolicy;
+	}
+
 	public String getSubscriberAddress() {
 		return subscriberAddress;
 	}
@@ -60,14 +342,234 @@ public class BrokerProperties {
 		return subscriberTopicFilter;
 	}
 
+	public List<String> getSubscriberTopics() {
+		return subscriberTopics;
+	}
+
+	public boolean isBatchEnabled() {
+		return batchEnabled;
+	}
+
+	public boolean isForwardingCapture() {
+		return forwardingCapture;
+	}
+
+	public boolean isForwardingEnabled() {
+		return forwardingEnabled;
+	}
+
+	public boolean isJournalEnabled() {
+		return journalEnabled;
+	}
+
+	public boolean isLastValueCacheEnabled() {
+		return lastValueCacheEnabled;
+	}
+
+	public void setBatchEnabled(final boolean batchEnabled) {
+		this.batchEnabled = batchEnabled;
+	}
+
+	public void setBatchMaxBytes(final int batchMaxBytes) {
+		this.batchMaxBytes = batchMaxBytes;
+	}
+
+	public void setBatchMaxMessages(final int batchMaxMessages) {
+		this.batchMaxMessages = batchMaxMessages;
+	}
+
 	public void setBrokerType(final BrokerType brokerType) {
 		this.brokerType = brokerType;
 	}
 
+	public void setCodec(final String codec) {
+		this.codec = codec;
+	}
+
+	public void setCommandAddress(final String commandAddress) {
+		this.commandAddress = commandAddress;
+	}
+
+	public void setCommandThreads(final int commandThreads) {
+		this.commandThreads = commandThreads;
+	}
+
+	public void setCommandTimeout(final long commandTimeout) {
+		this.commandTimeout = commandTimeout;
+	}
+
+	public void setCompressionLevel(final int compressionLevel) {
+		this.compressionLevel = compressionLevel;
+	}
+
+	public void setCompressionThreshold(final int compressionThreshold) {
+		this.compressionThreshold = compressionThreshold;
+	}
+
+	public void setCoordinatorId(final String coordinatorId) {
+		this.coordinatorId = coordinatorId;
+	}
+
+	public void setDeltaKeyframeInterval(final int deltaKeyframeInterval) {
+		this.deltaKeyframeInterval = deltaKeyframeInterval;
+	}
+
+	public void setDeltaMaxKeys(final int deltaMaxKeys) {
+		this.deltaMaxKeys = deltaMaxKeys;
+	}
+
+	public void setDeltaTopics(final List<String> deltaTopics) {
+		this.deltaTopics = deltaTopics;
+	}
+
+	public void setDispatchMode(final DispatchMode dispatchMode) {
+		this.dispatchMode = dispatchMode;
+	}
+
+	public void setDispatchQueueCapacity(final int dispatchQueueCapacity) {
+		this.dispatchQueueCapacity = dispatchQueueCapacity;
+	}
+
+	public void setDispatchThreads(final int dispatchThreads) {
+		this.dispatchThreads = dispatchThreads;
+	}
+
+	public void setDispatchWaitStrategy(final WaitStrategyType dispatchWaitStrategy) {
+		this.dispatchWaitStrategy = dispatchWaitStrategy;
+	}
+
+	public void setEnvelopeMode(final EnvelopeMode envelopeMode) {
+		this.envelopeMode = envelopeMode;
+	}
+
+	public void setForwardingCapture(final boolean forwardingCapture) {
+		this.forwardingCapture = forwardingCapture;
+	}
+
+	public void setForwardingEnabled(final boolean forwardingEnabled) {
+		this.forwardingEnabled = forwardingEnabled;
+	}
+
+	public void setHeartbeatInterval(final long heartbeatInterval) {
+		this.heartbeatInterval = heartbeatInterval;
+	}
+
+	public void setHeartbeatTick(final long heartbeatTick) {
+		this.heartbeatTick = heartbeatTick;
+	}
+
+	public void setHeartbeatTimeout(final long heartbeatTimeout) {
+		this.heartbeatTimeout = heartbeatTimeout;
+	}
+
+	public void setJournalDirectory(final String journalDirectory) {
+		this.journalDirectory = journalDirectory;
+	}
+
+	public void setJournalEnabled(final boolean journalEnabled) {
+		this.journalEnabled = journalEnabled;
+	}
+
+	public void setJournalIndexInterval(final int journalIndexInterval) {
+		this.journalIndexInterval = journalIndexInterval;
+	}
+
+	public void setJournalMaxSegments(final int journalMaxSegments) {
+		this.journalMaxSegments = journalMaxSegments;
+	}
+
+	public void setJournalReplayBatch(final int journalReplayBatch) {
+		this.journalReplayBatch = journalReplayBatch;
+	}
+
+	public void setJournalSegmentSize(final int journalSegmentSize) {
+		this.journalSegmentSize = journalSegmentSize;
+	}
+
+	public void setLastValueCacheEnabled(final boolean lastValueCacheEnabled) {
+		this.lastValueCacheEnabled = lastValueCacheEnabled;
+	}
+
+	public void setLastValueCacheMaxEntries(final int lastValueCacheMaxEntries) {
+		this.lastValueCacheMaxEntries = lastValueCacheMaxEntries;
+	}
+
+	public void setLastValueCacheTopics(final List<String> lastValueCacheTopics) {
+		this.lastValueCacheTopics = lastValueCacheTopics;
+	}
+
+	public void setMetricsExportInterval(final long metricsExportInterval) {
+		this.metricsExportInterval = metricsExportInterval;
+	}
+
+	public void setMetricsMaxTags(final int metricsMaxTags) {
+		this.metricsMaxTags = metricsMaxTags;
+	}
+
+	public void setOverflowPolicies(final List<String> overflowPolicies) {
+		this.overflowPolicies = overflowPolicies;
+	}
+
+	public void setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
 	public void setPublisherAddress(final String publisherAddress) {
 		this.publisherAddress = publisherAddress;
 	}
 
+	public void setPublisherBatchSize(final int publisherBatchSize) {
+		this.publisherBatchSize = publisherBatchSize;
+	}
+
+	public void setPublisherLinger(final long publisherLinger) {
+		this.publisherLinger = publisherLinger;
+	}
+
+	public void setPublisherQueueCapacity(final int publisherQueueCapacity) {
+		this.publisherQueueCapacity = publisherQueueCapacity;
+	}
+
+	public void setReceiveBufferSize(final int receiveBufferSize) {
+		this.receiveBufferSize = receiveBufferSize;
+	}
+
+	public void setReceiveHighWaterMark(final int receiveHighWaterMark) {
+		this.receiveHighWaterMark = receiveHighWaterMark;
+	}
+
+	public void setReceiveOverflowPolicy(final OverflowPolicy receiveOverflowPolicy) {
+		this.receiveOverflowPolicy = receiveOverflowPolicy;
+	}
+
+	public void setSendBufferSize(final int sendBufferSize) {
+		this.sendBufferSize = sendBufferSize;
+	}
+
+	public void setSendHighWaterMark(final int sendHighWaterMark) {
+		this.sendHighWaterMark = sendHighWaterMark;
+	}
+
+	public void setShutdownTimeout(final long shutdownTimeout) {
+		this.shutdownTimeout = shutdownTimeout;
+	}
+
+	public void setSnapshotAddress(final String snapshotAddress) {
+		this.snapshotAddress = snapshotAddress;
+	}
+
+	public void setSnapshotTimeout(final long snapshotTimeout) {
+		this.snapshotTimeout = snapshotTimeout;
+	}
+
+	public void setStreamBufferSize(final int streamBufferSize) {
+		this.streamBufferSize = streamBufferSize;
+	}
+
+	public void setStreamOverflowPolicy(final OverflowPolicy streamOverflowPolicy) {
+		this.streamOverflowPolicy = streamOverflowPolicy;
+	}
+
 	public void setSubscriberAddress(final String subscriberAddress) {
 		this.subscriberAddress = subscriberAddress;
 	}
@@ -80,4 +582,8 @@ public class BrokerProperties {
 		this.subscriberTopicFilter = subscriberTopicFilter;
 	}
 
+	public void setSubscriberTopics(final List<String> subscriberTopics) {
+		this.subscriberTopics = subscriberTopics;
+	}
+
 }
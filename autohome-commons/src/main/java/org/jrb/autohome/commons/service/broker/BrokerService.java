@@ -22,8 +22,16 @@
  */
 package org.jrb.autohome.commons.service.broker;
 
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.command.CommandHandler;
+import org.jrb.autohome.commons.service.broker.message.Command;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.stream.Publisher;
 import org.springframework.context.SmartLifecycle;
 
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
  * Defines the contract for a service brokers messages.
  *
@@ -32,5 +40,36 @@ import org.springframework.context.SmartLifecycle;
 public interface BrokerService extends SmartLifecycle, Runnable {
 	
 	<T> void publish(final String topic, final T message) throws BrokerServiceException;
-	
+
+	void registerCommandHandler(final String name, final CommandHandler<?, ?> handler);
+
+	<T, R> ListenableFuture<R> send(final String targetId, final Command<T> command) throws BrokerServiceException;
+
+	<T, R> ListenableFuture<R> send(
+			final String targetId,
+			final Command<T> command,
+			final long timeout,
+			final TimeUnit unit) throws BrokerServiceException;
+
+	/**
+	 * Replays the master's journal from the given offset to this coordinator,
+	 * returning the offset to resume from next time.
+	 */
+	long replayFrom(final long offset) throws BrokerServiceException;
+
+	/**
+	 * Replays the master's journal from the first message published at or
+	 * after the given time to this coordinator, returning the offset to resume
+	 * from next time.
+	 */
+	long replaySince(final long timestamp) throws BrokerServiceException;
+
+	/**
+	 * Streams the received messages on a topic pattern whose payload is of the
+	 * given type, delivering each subscriber only as many messages as it has
+	 * requested and buffering the rest within a bounded budget.
+	 */
+	<T> Publisher<Message<T>> subscribe(final String topicPattern, final Class<T> payloadType)
+			throws BrokerServiceException;
+
 }
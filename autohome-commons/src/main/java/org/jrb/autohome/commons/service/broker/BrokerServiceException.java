@@ -31,6 +31,10 @@ public class BrokerServiceException extends RuntimeException {
 
 	private static final long serialVersionUID = -1945507183361621359L;
 
+	public BrokerServiceException(String message) {
+		super(message);
+	}
+
 	public BrokerServiceException(String message, Throwable cause) {
 		super(message, cause);
 	}
@@ -22,19 +22,74 @@
  */
 package org.jrb.autohome.commons.service.broker;
 
-import java.util.HashMap;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
+import org.jrb.autohome.commons.service.broker.codec.JacksonMessageCodec;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodec;
+import org.jrb.autohome.commons.service.broker.command.CommandChannel;
+import org.jrb.autohome.commons.service.broker.command.CommandHandler;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.jrb.autohome.commons.service.broker.codec.MessageType;
+import org.jrb.autohome.commons.service.broker.codec.MessageTypeRegistry;
+import org.jrb.autohome.commons.service.broker.codec.PayloadCompressor;
+import org.jrb.autohome.commons.service.broker.delta.DeltaDecoder;
+import org.jrb.autohome.commons.service.broker.delta.DeltaEncoder;
+import org.jrb.autohome.commons.service.broker.delta.DeltaFrame;
+import org.jrb.autohome.commons.service.broker.dispatch.InboundEnvelope;
+import org.jrb.autohome.commons.service.broker.dispatch.InboundHandler;
+import org.jrb.autohome.commons.service.broker.dispatch.InlineDispatcher;
+import org.jrb.autohome.commons.service.broker.dispatch.LaneDispatcher;
+import org.jrb.autohome.commons.service.broker.dispatch.MessageDispatcher;
+import org.jrb.autohome.commons.service.broker.journal.JournalPage;
+import org.jrb.autohome.commons.service.broker.journal.JournalRecord;
+import org.jrb.autohome.commons.service.broker.journal.JournalReplayHandler;
+import org.jrb.autohome.commons.service.broker.journal.MessageJournal;
+import org.jrb.autohome.commons.service.broker.journal.ReplayRequest;
+import org.jrb.autohome.commons.service.broker.liveness.LivenessRegistry;
+import org.jrb.autohome.commons.service.broker.message.Command;
 import org.jrb.autohome.commons.service.broker.message.Message;
-import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerOperation;
+import org.jrb.autohome.commons.service.broker.metrics.Gauge;
+import org.jrb.autohome.commons.service.broker.outbound.OfferSequencer;
+import org.jrb.autohome.commons.service.broker.outbound.OutboundEnvelope;
+import org.jrb.autohome.commons.service.broker.outbound.OverflowPolicyResolver;
+import org.jrb.autohome.commons.service.broker.outbound.PublisherChannel;
+import org.jrb.autohome.commons.service.broker.proxy.ForwardingProxy;
+import org.jrb.autohome.commons.service.broker.reactor.Reactor;
+import org.jrb.autohome.commons.service.broker.reactor.SocketHandler;
+import org.jrb.autohome.commons.service.broker.snapshot.LastValueCache;
+import org.jrb.autohome.commons.service.broker.snapshot.SnapshotClient;
+import org.jrb.autohome.commons.service.broker.snapshot.SnapshotServer;
+import org.jrb.autohome.commons.service.broker.stream.MessageStream;
+import org.jrb.autohome.commons.service.broker.stream.Publisher;
+import org.jrb.autohome.commons.service.broker.topic.TopicFilter;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouterEventBus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.StringUtils;
 import org.zeromq.ZMQ;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 /**
  * Implementation of a service that brokers messages using ZeroMQ in a
@@ -43,6 +98,14 @@ import com.google.common.eventbus.EventBus;
  * be received by any number of subscribers. In contrast, inbound messages come
  * from any number of publishers to this service's single subscriber, which are
  * directly placed upon the initialized {@link EventBus}.
+ * <p>
+ * All sockets are serviced by a single {@link Reactor}. Published messages are
+ * encoded on the calling thread and queued on a {@link PublisherChannel};
+ * received envelopes are handed, undecoded, to the {@link MessageDispatcher}
+ * selected by the {@link DispatchMode}. Everything else, from envelope
+ * framing, compression and delta encoding to commands, the journal, the last
+ * value cache and forwarding, is set up from the {@link BrokerProperties} and
+ * described on the class that implements it.
  * 
  * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
  */
@@ -50,11 +113,38 @@ public class BrokerServiceImpl implements BrokerService {
 
 	private static final Logger LOG = LoggerFactory.getLogger(BrokerService.class);
 
+	private static final byte[] EMPTY_FRAME = new byte[0];
+	private static final int MAX_RECEIVE_BATCH = 256;
+	private static final String MASTER_ID = "master";
+
 	private final BrokerProperties brokerProperties;
 	private final ExecutorService executorService;
 	private final EventBus messageBus;
 	private final ObjectMapper messageMapper;
-	private final Map<String, Class<?>> messageClasses;
+	private final MessageTypeRegistry messageTypes;
+	private final MessageCodecRegistry codecRegistry;
+	private final ConcurrentMap<String, CommandHandler<?, ?>> commandHandlers = new ConcurrentHashMap<>();
+	private final Queue<MessageStream<?>> streams = new ConcurrentLinkedQueue<>();
+	private final OfferSequencer deltaSequencer = new OfferSequencer();
+
+	private BrokerMetrics metrics = new BrokerMetrics();
+	private MessageCodec codec;
+	private PayloadCompressor compressor;
+	private DeltaEncoder deltaEncoder;
+	private DeltaDecoder deltaDecoder;
+	private MessageDispatcher dispatcher;
+	private PublisherChannel publisherChannel;
+	private TopicRouter router;
+	private TopicFilter topicFilter;
+	private ForwardingProxy forwarder;
+	private byte[] separator;
+	private Reactor reactor;
+	private CommandChannel commandChannel;
+	private LivenessRegistry livenessRegistry;
+	private ExecutorService commandExecutor;
+	private MessageJournal journal;
+	private LastValueCache lastValueCache;
+	private SnapshotClient snapshotClient;
 
 	private ZMQ.Context context;
 	private ZMQ.Socket publisher;
@@ -70,7 +160,8 @@ public class BrokerServiceImpl implements BrokerService {
 		this.executorService = executorService;
 		this.messageBus = messageBus;
 		messageMapper = defaultObjectMapper();
-		messageClasses = defaultMessageClasses();
+		messageTypes = defaultMessageTypes();
+		codecRegistry = new MessageCodecRegistry(this.messageMapper);
 	}
 
 	public BrokerServiceImpl(
@@ -82,7 +173,8 @@ public class BrokerServiceImpl implements BrokerService {
 		this.executorService = executorService;
 		this.messageBus = messageBus;
 		this.messageMapper = messageMapper;
-		messageClasses = defaultMessageClasses();
+		messageTypes = defaultMessageTypes();
+		codecRegistry = new MessageCodecRegistry(this.messageMapper);
 	}
 
 	public BrokerServiceImpl(
@@ -95,13 +187,51 @@ public class BrokerServiceImpl implements BrokerService {
 		this.executorService = executorService;
 		this.messageBus = messageBus;
 		this.messageMapper = messageMapper;
-		this.messageClasses = messageClasses;
+		messageTypes = MessageTypeRegistry.fromClasses(messageClasses);
+		codecRegistry = new MessageCodecRegistry(this.messageMapper);
+	}
+
+	public BrokerServiceImpl(
+			final BrokerProperties brokerProperties,
+			final ExecutorService executorService,
+			final EventBus messageBus,
+			final MessageTypeRegistry messageTypes) {
+		this.brokerProperties = brokerProperties;
+		this.executorService = executorService;
+		this.messageBus = messageBus;
+		this.messageTypes = messageTypes;
+		messageMapper = defaultObjectMapper();
+		codecRegistry = new MessageCodecRegistry(this.messageMapper);
+	}
+
+	public BrokerServiceImpl(
+			final BrokerProperties brokerProperties,
+			final ExecutorService executorService,
+			final EventBus messageBus,
+			final ObjectMapper messageMapper,
+			final MessageTypeRegistry messageTypes) {
+		this.brokerProperties = brokerProperties;
+		this.executorService = executorService;
+		this.messageBus = messageBus;
+		this.messageMapper = messageMapper;
+		this.messageTypes = messageTypes;
+		codecRegistry = new MessageCodecRegistry(this.messageMapper);
+	}
+
+	protected ZMQ.Context createContext() {
+		return ZMQ.context(1);
 	}
 
-	protected Map<String, Class<?>> defaultMessageClasses() {
-		final Map<String, Class<?>> messageClasses = new HashMap<>();
-		messageClasses.put(Message.class.getSimpleName(), SimpleMessage.class);
-		return messageClasses;
+	/**
+	 * Terminates the context created by {@link #createContext()}, once all of
+	 * the service's sockets are closed.
+	 */
+	protected void destroyContext(final ZMQ.Context context) {
+		context.term();
+	}
+
+	protected MessageTypeRegistry defaultMessageTypes() {
+		return MessageTypeRegistry.defaultRegistry();
 	}
 
 	protected ObjectMapper defaultObjectMapper() {
@@ -109,6 +239,18 @@ public class BrokerServiceImpl implements BrokerService {
 		return mapper;
 	}
 
+	public MessageCodecRegistry getCodecRegistry() {
+		return codecRegistry;
+	}
+
+	public MessageTypeRegistry getMessageTypes() {
+		return messageTypes;
+	}
+
+	public BrokerMetrics getMetrics() {
+		return metrics;
+	}
+
 	@Override
 	public int getPhase() {
 		return 0;
@@ -126,30 +268,372 @@ public class BrokerServiceImpl implements BrokerService {
 
 	@Override
 	public <T> void publish(final String topic, final T raw) throws BrokerServiceException {
-		final String separator = brokerProperties.getSubscriberMessageSeparator();
-		MessageUtils.publish(topic, separator, raw, messageMapper, publisher);
+		if (publisherChannel == null || !publisherChannel.isRunning()) {
+			throw new BrokerServiceException("BrokerService is not running");
+		}
+		final long start = System.nanoTime();
+		final OutboundEnvelope envelope;
+		if (deltaEncoder != null && StringUtils.hasText(topic) && deltaEncoder.accepts(topic)) {
+			// deltas must be queued in the order they were encoded, but a
+			// publisher blocked on a full queue must not hold up encoding
+			final long ticket;
+			synchronized (deltaEncoder) {
+				envelope = encodeForPublish(topic, raw);
+				ticket = deltaSequencer.take(topic);
+			}
+			deltaSequencer.await(topic, ticket);
+			try {
+				publisherChannel.offer(envelope);
+			} finally {
+				deltaSequencer.release(topic, ticket);
+			}
+		} else {
+			envelope = encodeForPublish(topic, raw);
+			publisherChannel.offer(envelope);
+		}
+		metrics.record(BrokerOperation.PUBLISH, topic, envelope.getType(), System.nanoTime() - start);
+	}
+
+	private <T> OutboundEnvelope encodeForPublish(final String topic, final T raw) throws BrokerServiceException {
+		try {
+			return encode(topic, raw);
+		} catch (final RuntimeException e) {
+			metrics.failure(BrokerOperation.PUBLISH, topic, null);
+			throw e;
+		}
+	}
+
+	@Override
+	public void registerCommandHandler(final String name, final CommandHandler<?, ?> handler) {
+		commandHandlers.put(name, handler);
+	}
+
+	@Override
+	public long replayFrom(final long offset) throws BrokerServiceException {
+		return replay(new ReplayRequest(offset, 0, brokerProperties.getJournalReplayBatch()));
+	}
+
+	@Override
+	public long replaySince(final long timestamp) throws BrokerServiceException {
+		return replay(new ReplayRequest(-1, timestamp, brokerProperties.getJournalReplayBatch()));
 	}
 
 	@Override
 	public void run() {
+		reactor.run();
+	}
+
+	@Override
+	public <T, R> ListenableFuture<R> send(final String targetId, final Command<T> command)
+			throws BrokerServiceException {
+		return send(targetId, command, brokerProperties.getCommandTimeout(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public <T, R> ListenableFuture<R> send(
+			final String targetId,
+			final Command<T> command,
+			final long timeout,
+			final TimeUnit unit) throws BrokerServiceException {
+		if (commandChannel == null || !commandChannel.isRunning()) {
+			throw new BrokerServiceException("Command channel is not running");
+		}
+		if (livenessRegistry != null && livenessRegistry.isExpired(targetId)) {
+			return Futures.immediateFailedFuture(new BrokerServiceException("Coordinator " + targetId + " is not alive"));
+		}
+		return commandChannel.send(targetId, command, timeout, unit);
+	}
+
+	/**
+	 * Registry in which a MASTER tracks the coordinators heard from on its
+	 * command channel; one is created from the heartbeat properties if none is
+	 * given.
+	 */
+	public void setLivenessRegistry(final LivenessRegistry livenessRegistry) {
+		this.livenessRegistry = livenessRegistry;
+	}
+
+	public void setMetrics(final BrokerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	@Override
+	public <T> Publisher<Message<T>> subscribe(final String topicPattern, final Class<T> payloadType)
+			throws BrokerServiceException {
+		if (!(messageBus instanceof TopicRouterEventBus)) {
+			throw new BrokerServiceException("Message streams require a TopicRouterEventBus message bus");
+		}
+		final MessageStream<T> stream = new MessageStream<>(
+				((TopicRouterEventBus) messageBus).getRouter(),
+				topicPattern,
+				payloadType,
+				brokerProperties.getStreamBufferSize(),
+				brokerProperties.getStreamOverflowPolicy(),
+				metrics);
+		streams.add(stream);
+		return stream;
+	}
+
+	protected MessageDispatcher createDispatcher(final InboundHandler handler) {
+		switch (brokerProperties.getDispatchMode()) {
+		case INLINE:
+			return new InlineDispatcher(handler);
+		case PARALLEL:
+			final LaneDispatcher laneDispatcher = new LaneDispatcher(
+					handler,
+					brokerProperties.getDispatchThreads(),
+					brokerProperties.getDispatchQueueCapacity(),
+					brokerProperties.getDispatchWaitStrategy(),
+					brokerProperties.getReceiveOverflowPolicy());
+			laneDispatcher.setSeparator(separator);
+			// lane handlers that publish under BLOCK wait on the reactor, which
+			// must keep draining the publisher while it waits on a full lane
+			laneDispatcher.setFullTask(publisherChannel);
+			return laneDispatcher;
+		default:
+			throw new IllegalStateException("Unknown dispatch mode - " + brokerProperties.getDispatchMode());
+		}
+	}
+
+	/**
+	 * Frames a message in the configured {@link EnvelopeMode}. A multipart
+	 * payload is encoded with the configured {@link MessageCodec}, or by the
+	 * {@link DeltaEncoder} on delta topics, and then compressed by the
+	 * {@link PayloadCompressor} if it is large enough.
+	 */
+	protected <T> OutboundEnvelope encode(final String topic, final T raw) throws BrokerServiceException {
+		if (!StringUtils.hasText(topic)) {
+			return OutboundEnvelope.single(topic, null, raw.toString().getBytes(MessageUtils.CHARSET));
+		}
+		final Object message = MessageUtils.wrapMessage(raw);
+		final MessageType type = messageTypes.typeOf(message);
+		if (brokerProperties.getEnvelopeMode() == EnvelopeMode.MULTIPART) {
+			byte flags = (lastValueCache != null) ? EnvelopeHeader.FLAG_SEQUENCE : 0;
+			final byte[] topicFrame = topic.getBytes(MessageUtils.CHARSET);
+			byte[] payload;
+			byte[] snapshot = null;
+			if (deltaEncoder != null && deltaEncoder.accepts(topic)) {
+				final DeltaFrame frame = deltaEncoder.encode(
+						topic,
+						type.getKey(),
+						((JacksonMessageCodec) codec).getMapper(),
+						message,
+						lastValueCache != null && lastValueCache.caches(topicFrame));
+				payload = frame.getPayload();
+				snapshot = frame.getSnapshot();
+				flags |= frame.getFlag();
+			} else {
+				payload = codec.encode(message, type);
+			}
+			final byte[] compressed = compressor.compress(payload);
+			if (compressed != null) {
+				payload = compressed;
+				flags |= EnvelopeHeader.FLAG_COMPRESSED;
+			}
+			final EnvelopeHeader header = new EnvelopeHeader(type.getKey(), codec.getId(), flags);
+			return new OutboundEnvelope(
+					topic,
+					type.getKey(),
+					topicFrame,
+					header.encode(),
+					payload,
+					snapshot);
+		}
+		final byte[] prefix = (topic + brokerProperties.getSubscriberMessageSeparator()).getBytes(MessageUtils.CHARSET);
+		final byte[] json = codec.encode(message, type);
+		final byte[] frame = new byte[prefix.length + json.length];
+		System.arraycopy(prefix, 0, frame, 0, prefix.length);
+		System.arraycopy(json, 0, frame, prefix.length, json.length);
+		return OutboundEnvelope.single(topic, type.getKey(), frame);
+	}
+
+	/**
+	 * Hands a received envelope to the dispatcher if it matches the topic
+	 * filter, counting it as dropped if the dispatcher is full. Only called on
+	 * the reactor thread.
+	 */
+	private void accept(final byte[] topic, final byte[] header, final byte[] payload) {
+		if (topic != null) {
+			if (topicFilter.accepts(topic, topic.length) && !dispatcher.dispatch(topic, header, payload)) {
+				metrics.drop(BrokerOperation.RECEIVE, new String(topic, MessageUtils.CHARSET), null);
+			}
+		} else if (topicFilter.accepts(payload, MessageUtils.indexOf(payload, separator))
+				&& !dispatcher.dispatch(null, null, payload)) {
+			metrics.drop(BrokerOperation.RECEIVE, null, null);
+		}
+	}
+
+	private long replay(final ReplayRequest request) throws BrokerServiceException {
+		if (brokerProperties.getBrokerType() != BrokerType.COORDINATOR) {
+			throw new BrokerServiceException("Only a coordinator can replay the master journal");
+		}
+		ReplayRequest next = request;
+		long count = 0;
+		while (true) {
+			final JournalPage page;
+			try {
+				final Object reply = this.<ReplayRequest, Object> send(
+						MASTER_ID, new SimpleCommand<>(MessageJournal.REPLAY_COMMAND, next)).get();
+				page = messageMapper.convertValue(reply, JournalPage.class);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new BrokerServiceException("Replay interrupted", e);
+			} catch (final ExecutionException e) {
+				throw new BrokerServiceException("Replay failed: " + e.getCause().getMessage(), e.getCause());
+			}
+			for (final JournalRecord record : page.getRecords()) {
+				reactor.execute(new Runnable() {
+					@Override
+					public void run() {
+						accept(record.isMultipart() ? record.getTopic() : null, record.getHeader(), record.getPayload());
+					}
+				});
+			}
+			count += page.getRecords().size();
+			if (page.isLast() || page.getRecords().isEmpty()) {
+				LOG.info("Replayed {} messages, up to offset {}", count, page.getNextOffset());
+				return page.getNextOffset();
+			}
+			next = new ReplayRequest(page.getNextOffset(), 0, brokerProperties.getJournalReplayBatch());
+		}
+	}
+
+	private void receiveMultipart(final InboundEnvelope envelope) {
+		final String topic = new String(envelope.getTopic(), MessageUtils.CHARSET);
+		metrics.record(BrokerOperation.RECEIVE, topic, null, System.nanoTime() - envelope.getReceivedAt());
+		final EnvelopeHeader header = EnvelopeHeader.decode(envelope.getHeader());
+		final byte[] payload = envelope.getPayload();
+		if (header.hasFlag(EnvelopeHeader.FLAG_BATCH)) {
+			final EnvelopeBatch.Reader reader = new EnvelopeBatch.Reader(payload);
+			while (reader.next()) {
+				deliver(topic, reader.getHeader(), payload, reader.getPayloadOffset(), reader.getPayloadLength());
+			}
+		} else {
+			deliver(topic, header, payload, 0, payload.length);
+		}
+	}
+
+	private void deliver(
+			final String topic,
+			final EnvelopeHeader header,
+			final byte[] payload,
+			final int offset,
+			final int length) {
+		byte[] body = payload;
+		int bodyOffset = offset;
+		int bodyLength = length;
+		if (header.hasFlag(EnvelopeHeader.FLAG_COMPRESSED)) {
+			body = compressor.decompress(payload, offset, length);
+			bodyOffset = 0;
+			bodyLength = body.length;
+		}
+		if (header.hasFlag(EnvelopeHeader.FLAG_DELTA) || header.hasFlag(EnvelopeHeader.FLAG_KEYFRAME)) {
+			deliverDelta(topic, header, body, bodyOffset, bodyLength);
+		} else {
+			deliver(topic, header.getType(), header.getCodec(), body, bodyOffset, bodyLength);
+		}
+	}
+
+	/**
+	 * Rebuilds the full state from a keyframe or delta and delivers it. A delta
+	 * that cannot be applied, because an earlier one was missed, is counted as
+	 * a dropped message.
+	 */
+	private void deliverDelta(
+			final String topic,
+			final EnvelopeHeader header,
+			final byte[] payload,
+			final int offset,
+			final int length) {
+		final MessageCodec messageCodec = codecRegistry.get(header.getCodec());
+		if (!(messageCodec instanceof JacksonMessageCodec)) {
+			throw new BrokerServiceException("Delta payloads require a Jackson codec - " + messageCodec.getName());
+		}
+		MessageType type = messageTypes.get(header.getType());
+		if (type == null) {
+			type = messageTypes.get(topic);
+		}
+		final String typeKey = (type != null) ? type.getKey() : null;
+		final long start = System.nanoTime();
+		final ObjectMapper mapper = ((JacksonMessageCodec) messageCodec).getMapper();
+		final Object message;
 		try {
-			while (running) {
-				final String message = subscriber.recvStr();
-				final String separator = brokerProperties.getSubscriberMessageSeparator();
-				final String filter = brokerProperties.getSubscriberTopicFilter();
-				if (StringUtils.hasText(filter) && message.contains(separator)) {
-					final int pos = message.indexOf(separator);
-					final String type = message.substring(0, pos);
-					final String json = message.substring(pos + 1);
-					messageBus.post(messageMapper.readValue(json, messageClasses.get(type)));
-				} else {
-					messageBus.post(message);
-				}
+			final JsonNode state = deltaDecoder.decode(
+					topic, header.getType(), header.getFlags(), mapper, payload, offset, length);
+			if (state == null) {
+				metrics.drop(BrokerOperation.RECEIVE, topic, typeKey);
+				return;
 			}
-		} catch (final Exception e) {
-			LOG.error(e.getMessage(), e);
-		} finally {
-			running = false;
+			message = (type != null) ? mapper.readValue(mapper.treeAsTokens(state), type.getJavaType()) : state.toString();
+			metrics.record(BrokerOperation.DECODE, topic, typeKey, System.nanoTime() - start);
+		} catch (final IOException e) {
+			metrics.failure(BrokerOperation.DECODE, topic, typeKey);
+			throw new BrokerServiceException(e.getMessage(), e);
+		} catch (final RuntimeException e) {
+			metrics.failure(BrokerOperation.DECODE, topic, typeKey);
+			throw e;
+		}
+		post(topic, typeKey, message);
+	}
+
+	private void deliver(
+			final String topic,
+			final String typeKey,
+			final byte codecId,
+			final byte[] payload,
+			final int offset,
+			final int length) {
+		MessageType type = messageTypes.get(typeKey);
+		if (type == null) {
+			type = messageTypes.get(topic);
+		}
+		if (type != null) {
+			post(topic, type.getKey(), decode(codecRegistry.get(codecId), topic, type, payload, offset, length));
+		} else {
+			post(topic, null, new String(payload, offset, length, MessageUtils.CHARSET));
+		}
+	}
+
+	private Object decode(
+			final MessageCodec messageCodec,
+			final String topic,
+			final MessageType type,
+			final byte[] payload,
+			final int offset,
+			final int length) {
+		final long start = System.nanoTime();
+		try {
+			final Object message = messageCodec.decode(payload, offset, length, type);
+			metrics.record(BrokerOperation.DECODE, topic, type.getKey(), System.nanoTime() - start);
+			return message;
+		} catch (final RuntimeException e) {
+			metrics.failure(BrokerOperation.DECODE, topic, type.getKey());
+			throw e;
+		}
+	}
+
+	private void post(final String topic, final String type, final Object message) {
+		final long start = System.nanoTime();
+		if (router != null) {
+			router.route(topic, message);
+		} else {
+			messageBus.post(message);
+		}
+		metrics.record(BrokerOperation.DISPATCH, topic, type, System.nanoTime() - start);
+	}
+
+	private void receiveSingle(final InboundEnvelope envelope) {
+		final byte[] frame = envelope.getPayload();
+		final int pos = MessageUtils.indexOf(frame, separator);
+		final String topic = (pos > 0) ? new String(frame, 0, pos, MessageUtils.CHARSET) : null;
+		metrics.record(BrokerOperation.RECEIVE, topic, null, System.nanoTime() - envelope.getReceivedAt());
+		final MessageType type = (topic != null) ? messageTypes.get(topic) : null;
+		if (type != null) {
+			final int offset = pos + separator.length;
+			final MessageCodec jsonCodec = codecRegistry.get(MessageCodecRegistry.JSON_ID);
+			post(topic, type.getKey(), decode(jsonCodec, topic, type, frame, offset, frame.length - offset));
+		} else {
+			post(topic, null, new String(frame, MessageUtils.CHARSET));
 		}
 	}
 
@@ -158,15 +642,74 @@ public class BrokerServiceImpl implements BrokerService {
 		final BrokerType brokerType = brokerProperties.getBrokerType();
 		LOG.info("Starting BrokerService in {} mode...", brokerType);
 
-		context = ZMQ.context(1);
+		codec = codecRegistry.get(brokerProperties.getCodec());
+		if (codec.getId() != MessageCodecRegistry.JSON_ID && brokerProperties.getEnvelopeMode() != EnvelopeMode.MULTIPART) {
+			throw new IllegalStateException("Codec " + codec.getName() + " requires the MULTIPART envelope mode");
+		}
+		if (brokerProperties.isBatchEnabled() && brokerProperties.getEnvelopeMode() != EnvelopeMode.MULTIPART) {
+			throw new IllegalStateException("Batching requires the MULTIPART envelope mode");
+		}
+		if (brokerProperties.isLastValueCacheEnabled() && brokerProperties.getEnvelopeMode() != EnvelopeMode.MULTIPART) {
+			throw new IllegalStateException("The last-value cache requires the MULTIPART envelope mode");
+		}
+		if (brokerType == BrokerType.MASTER && brokerProperties.isForwardingEnabled()) {
+			// relayed envelopes never reach the publisher channel
+			if (brokerProperties.isJournalEnabled()) {
+				throw new IllegalStateException("The journal cannot be used with forwarding");
+			}
+			if (brokerProperties.isLastValueCacheEnabled()) {
+				throw new IllegalStateException("The last-value cache cannot be used with forwarding");
+			}
+		}
+		if (brokerProperties.getCompressionThreshold() > 0 && brokerProperties.getEnvelopeMode() != EnvelopeMode.MULTIPART) {
+			throw new IllegalStateException("Compression requires the MULTIPART envelope mode");
+		}
+		if (!brokerProperties.getDeltaTopics().isEmpty()) {
+			if (brokerProperties.getEnvelopeMode() != EnvelopeMode.MULTIPART) {
+				throw new IllegalStateException("Delta encoding requires the MULTIPART envelope mode");
+			}
+			if (!(codec instanceof JacksonMessageCodec)) {
+				throw new IllegalStateException("Delta encoding requires a Jackson codec - " + codec.getName());
+			}
+		}
+		try {
+			compressor = new PayloadCompressor(
+					brokerProperties.getCompressionThreshold(), brokerProperties.getCompressionLevel());
+			deltaEncoder = brokerProperties.getDeltaTopics().isEmpty() ? null : new DeltaEncoder(
+					brokerProperties.getDeltaTopics(),
+					brokerProperties.getDeltaKeyframeInterval(),
+					brokerProperties.getDeltaMaxKeys());
+		} catch (final IllegalArgumentException e) {
+			throw new IllegalStateException(e.getMessage(), e);
+		}
+		deltaDecoder = new DeltaDecoder(brokerProperties.getDeltaMaxKeys());
+		final OverflowPolicy receivePolicy = brokerProperties.getReceiveOverflowPolicy();
+		if (receivePolicy != OverflowPolicy.BLOCK && receivePolicy != OverflowPolicy.DROP_NEWEST) {
+			throw new IllegalStateException("Receive overflow policy must be BLOCK or DROP_NEWEST - " + receivePolicy);
+		}
+		LOG.info("Using {} envelope with {} codec", brokerProperties.getEnvelopeMode(), codec.getName());
+
+		final List<String> topics = new ArrayList<>(brokerProperties.getSubscriberTopics());
+		if (StringUtils.hasText(brokerProperties.getSubscriberTopicFilter())) {
+			topics.add(brokerProperties.getSubscriberTopicFilter());
+		}
+		separator = brokerProperties.getSubscriberMessageSeparator().getBytes(MessageUtils.CHARSET);
+		topicFilter = new TopicFilter(topics);
+
+		context = createContext();
 
 		publisher = context.socket(ZMQ.PUB);
 		subscriber = context.socket(ZMQ.SUB);
+		configureSockets();
 
 		switch (brokerType) {
 		case MASTER:
-			publisher.bind(brokerProperties.getPublisherAddress());
-			subscriber.bind(brokerProperties.getSubscriberAddress());
+			if (brokerProperties.isForwardingEnabled()) {
+				startForwarding();
+			} else {
+				publisher.bind(brokerProperties.getPublisherAddress());
+				subscriber.bind(brokerProperties.getSubscriberAddress());
+			}
 			break;
 		case COORDINATOR:
 			publisher.connect(brokerProperties.getPublisherAddress());
@@ -176,20 +719,256 @@ public class BrokerServiceImpl implements BrokerService {
 			throw new IllegalStateException("Unknown broker type - " + brokerType);
 		}
 
-		final String filter = brokerProperties.getSubscriberTopicFilter();
-		LOG.info("Setting subscription filter to [{}]", filter);
-		subscriber.subscribe(filter.getBytes());
+		for (final String prefix : topicFilter.getPrefixes()) {
+			LOG.info("Setting subscription filter to [{}]", prefix);
+			subscriber.subscribe(prefix.getBytes(MessageUtils.CHARSET));
+		}
+		if (topicFilter.isLocal()) {
+			LOG.info("Matching topic patterns {} locally", topics);
+		}
+
+		reactor = new Reactor(context);
+		reactor.register(subscriber, new Receiver());
+
+		publisherChannel = new PublisherChannel(
+				reactor,
+				publisher,
+				brokerProperties.getPublisherBatchSize(),
+				brokerProperties.getPublisherLinger());
+		publisherChannel.setMetrics(metrics);
+		publisherChannel.setDeltaEncoder(deltaEncoder);
+		publisherChannel.setOverflow(
+				brokerProperties.getPublisherQueueCapacity(),
+				new OverflowPolicyResolver(brokerProperties.getOverflowPolicy(), brokerProperties.getOverflowPolicies()));
+		LOG.info("Queueing up to {} outbound messages, {} on overflow, per topic overrides {}",
+				brokerProperties.getPublisherQueueCapacity(),
+				brokerProperties.getOverflowPolicy(),
+				brokerProperties.getOverflowPolicies());
+		if (brokerProperties.isBatchEnabled()) {
+			LOG.info("Batching up to {} messages / {} bytes per send",
+					brokerProperties.getBatchMaxMessages(), brokerProperties.getBatchMaxBytes());
+			publisherChannel.setBatching(brokerProperties.getBatchMaxMessages(), brokerProperties.getBatchMaxBytes());
+		}
+		if (brokerType == BrokerType.MASTER && brokerProperties.isJournalEnabled()) {
+			startJournal();
+		}
+		if (brokerType == BrokerType.MASTER && brokerProperties.isLastValueCacheEnabled()) {
+			startLastValueCache();
+		} else if (brokerType == BrokerType.COORDINATOR && StringUtils.hasText(brokerProperties.getSnapshotAddress())) {
+			startSnapshotClient(topics);
+		}
+		publisherChannel.start();
+
+		if (StringUtils.hasText(brokerProperties.getCommandAddress())) {
+			startCommandChannel(brokerType);
+		}
+		metrics.registerGauge("publish.queue", new Gauge() {
+			@Override
+			public double getValue() {
+				return publisherChannel.getQueueDepth();
+			}
+		});
+
+		LOG.info("Dispatching inbound messages in {} mode", brokerProperties.getDispatchMode());
+		if (messageBus instanceof TopicRouterEventBus) {
+			LOG.info("Routing inbound messages by topic");
+			router = ((TopicRouterEventBus) messageBus).getRouter();
+		}
+		dispatcher = createDispatcher(new Decoder());
+		dispatcher.start();
+		metrics.registerGauge("dispatch.queue", new Gauge() {
+			@Override
+			public double getValue() {
+				return dispatcher.getQueueDepth();
+			}
+		});
 
 		running = true;
 
 		executorService.execute(this);
 	}
 
+	private void configureSockets() {
+		LOG.info("Using high-water marks of {} (send) / {} (receive)",
+				brokerProperties.getSendHighWaterMark(), brokerProperties.getReceiveHighWaterMark());
+		publisher.setSndHWM(brokerProperties.getSendHighWaterMark());
+		subscriber.setRcvHWM(brokerProperties.getReceiveHighWaterMark());
+		subscriber.setLinger(0);
+		if (brokerProperties.getSendBufferSize() > 0) {
+			publisher.setSendBufferSize(brokerProperties.getSendBufferSize());
+		}
+		if (brokerProperties.getReceiveBufferSize() > 0) {
+			subscriber.setReceiveBufferSize(brokerProperties.getReceiveBufferSize());
+		}
+	}
+
+	private void startCommandChannel(final BrokerType brokerType) {
+		final ZMQ.Socket socket;
+		if (brokerType == BrokerType.MASTER) {
+			socket = context.socket(ZMQ.ROUTER);
+			socket.bind(brokerProperties.getCommandAddress());
+		} else {
+			if (!StringUtils.hasText(brokerProperties.getCoordinatorId())) {
+				throw new IllegalStateException("A coordinator id is required for the command channel");
+			}
+			socket = context.socket(ZMQ.DEALER);
+			socket.setIdentity(brokerProperties.getCoordinatorId().getBytes(MessageUtils.CHARSET));
+			socket.connect(brokerProperties.getCommandAddress());
+		}
+		LOG.info("Command channel on {}", brokerProperties.getCommandAddress());
+		commandExecutor = Executors.newFixedThreadPool(
+				brokerProperties.getCommandThreads(),
+				new ThreadFactoryBuilder().setNameFormat("broker-command-%d").setDaemon(true).build());
+		commandChannel = new CommandChannel(
+				reactor, socket, codecRegistry, codec, messageTypes, commandHandlers, commandExecutor);
+		commandChannel.start();
+		if (brokerType == BrokerType.MASTER) {
+			if (livenessRegistry == null) {
+				livenessRegistry = new LivenessRegistry(
+						brokerProperties.getHeartbeatTimeout(), brokerProperties.getHeartbeatTick());
+			}
+			commandChannel.setLiveness(livenessRegistry);
+		} else if (brokerProperties.getHeartbeatInterval() > 0) {
+			commandChannel.startHeartbeats(brokerProperties.getHeartbeatInterval(), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void startJournal() {
+		if (!StringUtils.hasText(brokerProperties.getJournalDirectory())) {
+			throw new IllegalStateException("A journal directory is required for the journal");
+		}
+		try {
+			journal = new MessageJournal(
+					new File(brokerProperties.getJournalDirectory()),
+					brokerProperties.getJournalSegmentSize(),
+					brokerProperties.getJournalIndexInterval(),
+					brokerProperties.getJournalMaxSegments());
+		} catch (final IOException e) {
+			throw new IllegalStateException("Unable to open journal - " + e.getMessage(), e);
+		}
+		publisherChannel.setJournal(journal);
+		registerCommandHandler(MessageJournal.REPLAY_COMMAND,
+				new JournalReplayHandler(journal, messageMapper, brokerProperties.getJournalReplayBatch()));
+		if (!StringUtils.hasText(brokerProperties.getCommandAddress())) {
+			LOG.warn("Journal replay requires a command address");
+		}
+	}
+
+	private void startLastValueCache() {
+		if (!StringUtils.hasText(brokerProperties.getSnapshotAddress())) {
+			throw new IllegalStateException("A snapshot address is required for the last-value cache");
+		}
+		lastValueCache = new LastValueCache(
+				brokerProperties.getLastValueCacheTopics(),
+				brokerProperties.getLastValueCacheMaxEntries());
+		publisherChannel.setLastValueCache(lastValueCache);
+		final ZMQ.Socket socket = context.socket(ZMQ.ROUTER);
+		socket.bind(brokerProperties.getSnapshotAddress());
+		new SnapshotServer(reactor, socket, lastValueCache);
+		LOG.info("Serving last-value snapshots on {}", brokerProperties.getSnapshotAddress());
+	}
+
+	private void startSnapshotClient(final List<String> topics) {
+		final ZMQ.Socket socket = context.socket(ZMQ.DEALER);
+		socket.connect(brokerProperties.getSnapshotAddress());
+		snapshotClient = new SnapshotClient(
+				reactor,
+				socket,
+				topics,
+				brokerProperties.getSnapshotTimeout(),
+				new SnapshotClient.Sink() {
+					@Override
+					public void accept(final byte[] topic, final byte[] header, final byte[] payload) {
+						BrokerServiceImpl.this.accept(topic, header, payload);
+					}
+				});
+		snapshotClient.start();
+		LOG.info("Requesting last-value snapshot from {}", brokerProperties.getSnapshotAddress());
+	}
+
+	private void startForwarding() {
+		LOG.info("Forwarding from {} to {}", brokerProperties.getSubscriberAddress(), brokerProperties.getPublisherAddress());
+		forwarder = new ForwardingProxy(
+				context,
+				brokerProperties.getSubscriberAddress(),
+				brokerProperties.getPublisherAddress(),
+				brokerProperties.isForwardingCapture());
+		publisher.connect(forwarder.getFrontendEndpoint());
+		if (brokerProperties.isForwardingCapture()) {
+			for (final String prefix : topicFilter.getPrefixes()) {
+				forwarder.subscribe(prefix);
+			}
+			subscriber.connect(forwarder.getCaptureEndpoint());
+		}
+		forwarder.start(new ThreadFactoryBuilder().setNameFormat("broker-forwarder-%d").setDaemon(true).build());
+	}
+
+	/**
+	 * Shuts the reactor down, which closes every socket, and then terminates
+	 * the ZeroMQ context, so shutdown neither waits for the next message nor
+	 * leaks sockets. A context whose sockets did not close in time is left
+	 * open rather than waited on.
+	 */
 	@Override
 	public void stop() {
 		LOG.info("Stopping BrokerService...");
 		running = false;
+		if (publisherChannel != null) {
+			publisherChannel.stop();
+		}
+		if (commandChannel != null) {
+			commandChannel.stop();
+		}
+		if (commandExecutor != null) {
+			commandExecutor.shutdown();
+		}
+		boolean closed = true;
+		if (reactor != null) {
+			try {
+				if (!reactor.stop(brokerProperties.getShutdownTimeout(), TimeUnit.MILLISECONDS)) {
+					LOG.error("Reactor did not stop within {}ms", brokerProperties.getShutdownTimeout());
+					closed = false;
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				closed = false;
+			}
+		}
 		executorService.shutdown();
+		if (journal != null) {
+			journal.close();
+		}
+		if (dispatcher != null) {
+			dispatcher.stop();
+		}
+		if (compressor != null) {
+			compressor.close();
+		}
+		for (final MessageStream<?> stream : streams) {
+			stream.complete();
+		}
+		if (forwarder != null) {
+			try {
+				if (!forwarder.stop(brokerProperties.getShutdownTimeout(), TimeUnit.MILLISECONDS)) {
+					LOG.error("Forwarder did not stop within {}ms", brokerProperties.getShutdownTimeout());
+					closed = false;
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				closed = false;
+			}
+			forwarder = null;
+		}
+		if (context != null) {
+			if (closed) {
+				destroyContext(context);
+			} else {
+				// terminating the context would block on the sockets still open
+				LOG.error("Leaving the ZeroMQ context open; its sockets were not closed");
+			}
+			context = null;
+		}
+		LOG.info("BrokerService stopped");
 	}
 
 	@Override
@@ -198,4 +977,52 @@ public class BrokerServiceImpl implements BrokerService {
 		callback.run();
 	}
 
+	/**
+	 * Reads whatever the subscriber socket has waiting, up to a bounded number
+	 * of messages per reactor cycle, and hands it to the dispatcher.
+	 */
+	private class Receiver implements SocketHandler {
+
+		@Override
+		public void onReadable(final ZMQ.Socket socket) {
+			byte[] frame;
+			for (int i = 0; i < MAX_RECEIVE_BATCH && (frame = socket.recv(ZMQ.DONTWAIT)) != null; i++) {
+				if (socket.hasReceiveMore()) {
+					final byte[] header = socket.recv(0);
+					final byte[] payload = socket.hasReceiveMore() ? socket.recv(0) : EMPTY_FRAME;
+					while (socket.hasReceiveMore()) {
+						socket.recv(0);
+					}
+					if (snapshotClient == null || !snapshotClient.hold(frame, header, payload)) {
+						accept(frame, header, payload);
+					}
+				} else if (snapshotClient == null || !snapshotClient.hold(null, null, frame)) {
+					accept(null, null, frame);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Decodes inbound envelopes and posts them to the message bus. A message
+	 * that fails to decode is logged and skipped.
+	 */
+	private class Decoder implements InboundHandler {
+
+		@Override
+		public void handle(final InboundEnvelope envelope) {
+			try {
+				if (envelope.isMultipart()) {
+					receiveMultipart(envelope);
+				} else {
+					receiveSingle(envelope);
+				}
+			} catch (final Exception e) {
+				LOG.error("Unable to decode inbound message: " + e.getMessage(), e);
+			}
+		}
+
+	}
+
 }
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Payload format of a batch envelope, i.e. a multipart envelope whose header
+ * carries {@link EnvelopeHeader#FLAG_BATCH}. A batch coalesces several
+ * messages published to the same topic into a single send, each record
+ * keeping its own envelope header:
+ * 
+ * <pre>
+ * ([headerLength:2][header:headerLength][payloadLength:4][payload:payloadLength])*
+ * </pre>
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public final class EnvelopeBatch {
+
+	public static final int RECORD_OVERHEAD = 6;
+
+	private EnvelopeBatch() {
+	}
+
+	/**
+	 * Sequential reader over the records of a batch payload. The payload of
+	 * the current record is exposed as an offset and length into the batch
+	 * rather than copied out.
+	 */
+	public static final class Reader {
+
+		private final ByteBuffer buffer;
+		private EnvelopeHeader header;
+		private int payloadOffset;
+		private int payloadLength;
+
+		public Reader(final byte[] batch) {
+			buffer = ByteBuffer.wrap(batch);
+		}
+
+		public EnvelopeHeader getHeader() {
+			return header;
+		}
+
+		public int getPayloadLength() {
+			return payloadLength;
+		}
+
+		public int getPayloadOffset() {
+			return payloadOffset;
+		}
+
+		public boolean next() throws BrokerServiceException {
+			if (!buffer.hasRemaining()) {
+				return false;
+			}
+			if (buffer.remaining() < RECORD_OVERHEAD) {
+				throw new BrokerServiceException("Truncated batch record");
+			}
+			final int headerLength = buffer.getShort() & 0xFFFF;
+			header = EnvelopeHeader.decode(buffer.array(), buffer.position(), headerLength);
+			buffer.position(buffer.position() + headerLength);
+			payloadLength = buffer.getInt();
+			payloadOffset = buffer.position();
+			if (payloadLength < 0 || payloadLength > buffer.remaining()) {
+				throw new BrokerServiceException("Truncated batch record payload");
+			}
+			buffer.position(payloadOffset + payloadLength);
+			return true;
+		}
+
+	}
+
+	/**
+	 * Reusable builder of batch payloads; its buffer grows as needed and is
+	 * kept across {@link #reset()}s.
+	 */
+	public static final class Writer {
+
+		private byte[] buffer;
+		private int size;
+		private int count;
+
+		public Writer(final int initialCapacity) {
+			buffer = new byte[Math.max(initialCapacity, RECORD_OVERHEAD)];
+		}
+
+		public void add(final byte[] header, final byte[] payload) {
+			ensureCapacity(size + RECORD_OVERHEAD + header.length + payload.length);
+			buffer[size++] = (byte) (header.length >>> 8);
+			buffer[size++] = (byte) header.length;
+			System.arraycopy(header, 0, buffer, size, header.length);
+			size += header.length;
+			buffer[size++] = (byte) (payload.length >>> 24);
+			buffer[size++] = (byte) (payload.length >>> 16);
+			buffer[size++] = (byte) (payload.length >>> 8);
+			buffer[size++] = (byte) payload.length;
+			System.arraycopy(payload, 0, buffer, size, payload.length);
+			size += payload.length;
+			count++;
+		}
+
+		public int count() {
+			return count;
+		}
+
+		public void reset() {
+			size = 0;
+			count = 0;
+		}
+
+		public int size() {
+			return size;
+		}
+
+		public byte[] toByteArray() {
+			return Arrays.copyOf(buffer, size);
+		}
+
+		private void ensureCapacity(final int required) {
+			if (required > buffer.length) {
+				buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length << 1));
+			}
+		}
+
+	}
+
+}
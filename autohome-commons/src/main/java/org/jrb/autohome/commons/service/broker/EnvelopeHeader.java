@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodec;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.jrb.autohome.commons.service.broker.codec.PayloadCompressor;
+
+/**
+ * Header frame of a {@link EnvelopeMode#MULTIPART} envelope. The header is
+ * encoded as a compact binary frame so that it can be read without touching
+ * the payload:
+ * 
+ * <pre>
+ * [version:1][flags:1][codec:1][typeLength:1][type:typeLength][sequence:8]
+ * </pre>
+ * 
+ * The <code>codec</code> byte is the id of the {@link MessageCodec} the
+ * payload was encoded with. Version 1 headers, which predate codec selection,
+ * carry no codec byte and are always JSON. The <code>flags</code> byte is a
+ * bit set of the <code>FLAG_*</code> constants. The trailing
+ * <code>sequence</code> is only present when {@link #FLAG_SEQUENCE} is set; it
+ * is left zero by {@link #encode()} and filled in with
+ * {@link #setSequence(byte[], long)} by the thread that sends the envelope.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public final class EnvelopeHeader {
+
+	public static final byte VERSION = 2;
+
+	/** The payload is an {@link EnvelopeBatch} of complete envelopes. */
+	public static final byte FLAG_BATCH = 0x01;
+
+	/** The header ends with the publisher's sequence number. */
+	public static final byte FLAG_SEQUENCE = 0x02;
+
+	/** The payload is deflated; see {@link PayloadCompressor}. */
+	public static final byte FLAG_COMPRESSED = 0x04;
+
+	/** The payload is a delta against the topic's previous state. */
+	public static final byte FLAG_DELTA = 0x08;
+
+	/** The payload is the full state starting a topic's run of deltas. */
+	public static final byte FLAG_KEYFRAME = 0x10;
+
+	public static final long NO_SEQUENCE = -1;
+
+	private static final byte VERSION_1 = 1;
+	private static final int VERSION_1_FIXED_LENGTH = 3;
+	private static final int FIXED_LENGTH = 4;
+	private static final int MAX_TYPE_LENGTH = 255;
+	private static final int SEQUENCE_LENGTH = 8;
+
+	private final byte codec;
+	private final byte flags;
+	private final String type;
+	private final long sequence;
+
+	public EnvelopeHeader(final String type) {
+		this(type, MessageCodecRegistry.JSON_ID, (byte) 0);
+	}
+
+	public EnvelopeHeader(final String type, final byte codec) {
+		this(type, codec, (byte) 0);
+	}
+
+	public EnvelopeHeader(final String type, final byte codec, final byte flags) {
+		this(type, codec, flags, NO_SEQUENCE);
+	}
+
+	private EnvelopeHeader(final String type, final byte codec, final byte flags, final long sequence) {
+		this.type = type;
+		this.codec = codec;
+		this.flags = flags;
+		this.sequence = sequence;
+	}
+
+	public static EnvelopeHeader decode(final byte[] frame) throws BrokerServiceException {
+		if (frame == null) {
+			throw new BrokerServiceException("Truncated envelope header");
+		}
+		return decode(frame, 0, frame.length);
+	}
+
+	public static EnvelopeHeader decode(final byte[] frame, final int offset, final int length)
+			throws BrokerServiceException {
+		if (length == 0) {
+			throw new BrokerServiceException("Truncated envelope header");
+		}
+		switch (frame[offset]) {
+		case VERSION:
+			return decode(frame, offset, length, FIXED_LENGTH);
+		case VERSION_1:
+			return decode(frame, offset, length, VERSION_1_FIXED_LENGTH);
+		default:
+			throw new BrokerServiceException("Unsupported envelope header version - " + frame[offset]);
+		}
+	}
+
+	private static EnvelopeHeader decode(final byte[] frame, final int offset, final int length, final int fixedLength) {
+		if (length < fixedLength) {
+			throw new BrokerServiceException("Truncated envelope header");
+		}
+		final int typeLength = frame[offset + fixedLength - 1] & 0xFF;
+		if (length < fixedLength + typeLength) {
+			throw new BrokerServiceException("Truncated envelope header type");
+		}
+		final byte codec = (fixedLength == FIXED_LENGTH) ? frame[offset + 2] : MessageCodecRegistry.JSON_ID;
+		final String type = new String(frame, offset + fixedLength, typeLength, MessageUtils.CHARSET);
+		final byte flags = frame[offset + 1];
+		long sequence = NO_SEQUENCE;
+		if ((flags & FLAG_SEQUENCE) != 0) {
+			final int start = offset + fixedLength + typeLength;
+			if (length < fixedLength + typeLength + SEQUENCE_LENGTH) {
+				throw new BrokerServiceException("Truncated envelope header sequence");
+			}
+			sequence = 0;
+			for (int i = 0; i < SEQUENCE_LENGTH; i++) {
+				sequence = (sequence << 8) | (frame[start + i] & 0xFF);
+			}
+		}
+		return new EnvelopeHeader(type, codec, flags, sequence);
+	}
+
+	/**
+	 * Writes the sequence number into an encoded header that was created with
+	 * {@link #FLAG_SEQUENCE}.
+	 */
+	public static void setSequence(final byte[] frame, final long sequence) {
+		long value = sequence;
+		for (int i = frame.length - 1; i >= frame.length - SEQUENCE_LENGTH; i--) {
+			frame[i] = (byte) value;
+			value >>>= 8;
+		}
+	}
+
+	public byte[] encode() throws BrokerServiceException {
+		final byte[] typeBytes = (type != null) ? type.getBytes(MessageUtils.CHARSET) : new byte[0];
+		if (typeBytes.length > MAX_TYPE_LENGTH) {
+			throw new BrokerServiceException("Message type too long for envelope header - " + type);
+		}
+		final int sequenceLength = hasFlag(FLAG_SEQUENCE) ? SEQUENCE_LENGTH : 0;
+		final byte[] frame = new byte[FIXED_LENGTH + typeBytes.length + sequenceLength];
+		frame[0] = VERSION;
+		frame[1] = flags;
+		frame[2] = codec;
+		frame[3] = (byte) typeBytes.length;
+		System.arraycopy(typeBytes, 0, frame, FIXED_LENGTH, typeBytes.length);
+		return frame;
+	}
+
+	public byte getCodec() {
+		return codec;
+	}
+
+	public byte getFlags() {
+		return flags;
+	}
+
+	/**
+	 * The publisher's sequence number, or {@link #NO_SEQUENCE} if the header
+	 * carries none.
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public boolean hasFlag(final byte flag) {
+		return (flags & flag) != 0;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("codec", codec)
+				.append("flags", flags)
+				.append("type", type)
+				.append("sequence", sequence)
+				.build();
+	}
+
+}
@@ -22,6 +22,8 @@
  */
 package org.jrb.autohome.commons.service.broker;
 
+import java.nio.charset.Charset;
+
 import org.jrb.autohome.commons.service.broker.message.Message;
 import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
 import org.springframework.util.StringUtils;
@@ -37,6 +39,8 @@ import com.fasterxml.jackson.databind.ObjectMapper;
  */
 public final class MessageUtils {
 
+	public static final Charset CHARSET = Charset.forName("UTF-8");
+
 	public static <T> String generateJSON(final ObjectMapper messageMapper, final T raw) throws BrokerServiceException {
 		try {
 			return messageMapper.writeValueAsString(raw);
@@ -45,8 +49,32 @@ public final class MessageUtils {
 		}
 	}
 
+	/**
+	 * @return the index of the first occurrence of <code>target</code> within
+	 *         <code>source</code>, or <code>-1</code> if there is none
+	 */
+	public static int indexOf(final byte[] source, final byte[] target) {
+		if (target.length == 0) {
+			return 0;
+		}
+		final int last = source.length - target.length;
+		outer: for (int i = 0; i <= last; i++) {
+			for (int j = 0; j < target.length; j++) {
+				if (source[i + j] != target[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
 	public static <T> String packMessage(final ObjectMapper messageMapper, final String topic, final String separator, final T raw) {
-		return topic + separator + generateJSON(messageMapper, raw instanceof Message ? raw : new SimpleMessage<T>(raw));
+		return topic + separator + generateJSON(messageMapper, wrapMessage(raw));
+	}
+
+	public static <T> Object wrapMessage(final T raw) {
+		return raw instanceof Message ? raw : new SimpleMessage<T>(raw);
 	}
 
 	public static <T> void publish(
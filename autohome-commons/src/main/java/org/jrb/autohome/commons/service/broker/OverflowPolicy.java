@@ -0,0 +1,44 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker;
+
+/**
+ * Defines what the {@link BrokerService} does with a message that arrives
+ * while the queue it is bound for is full.
+ * <ul>
+ * <li><code>BLOCK</code> - the caller waits until there is room</li>
+ * <li><code>DROP_OLDEST</code> - the longest-queued message is discarded to
+ * make room</li>
+ * <li><code>DROP_NEWEST</code> - the arriving message is discarded</li>
+ * <li><code>CONFLATE</code> - only the latest message per topic is kept;
+ * a message still waiting to be sent is replaced by its successor</li>
+ * </ul>
+ * Every discarded message is counted in the broker metrics.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public enum OverflowPolicy {
+
+	BLOCK, DROP_OLDEST, DROP_NEWEST, CONFLATE;
+
+}
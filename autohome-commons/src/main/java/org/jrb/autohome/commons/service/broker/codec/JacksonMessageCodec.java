@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+/**
+ * {@link MessageCodec} backed by a Jackson {@link ObjectMapper}. The wire
+ * format is determined by the mapper's underlying factory (JSON, Smile, ...).
+ * An {@link ObjectReader} and {@link ObjectWriter} are built once per
+ * {@link MessageType} and reused for every message of that type.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class JacksonMessageCodec implements MessageCodec {
+
+	private final byte id;
+	private final String name;
+	private final ObjectMapper mapper;
+	private final ConcurrentMap<MessageType, ObjectReader> readers = new ConcurrentHashMap<>();
+	private final ConcurrentMap<MessageType, ObjectWriter> writers = new ConcurrentHashMap<>();
+
+	public JacksonMessageCodec(final byte id, final String name, final ObjectMapper mapper) {
+		this.id = id;
+		this.name = name;
+		this.mapper = mapper;
+	}
+
+	@Override
+	public <T> T decode(final byte[] payload, final Class<T> type) throws BrokerServiceException {
+		try {
+			return mapper.readValue(payload, type);
+		} catch (final IOException e) {
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public <T> T decode(final byte[] payload, final int offset, final int length, final Class<T> type)
+			throws BrokerServiceException {
+		try {
+			return mapper.readValue(payload, offset, length, type);
+		} catch (final IOException e) {
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public Object decode(final byte[] payload, final int offset, final int length, final MessageType type)
+			throws BrokerServiceException {
+		try {
+			return readerFor(type).readValue(payload, offset, length);
+		} catch (final IOException e) {
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public byte[] encode(final Object message, final MessageType type) throws BrokerServiceException {
+		try {
+			return writerFor(type).writeValueAsBytes(message);
+		} catch (final IOException e) {
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public byte[] encode(final Object message) throws BrokerServiceException {
+		try {
+			return mapper.writeValueAsBytes(message);
+		} catch (final IOException e) {
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public byte getId() {
+		return id;
+	}
+
+	public ObjectMapper getMapper() {
+		return mapper;
+	}
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+	private ObjectReader readerFor(final MessageType type) {
+		ObjectReader reader = readers.get(type);
+		if (reader == null) {
+			reader = mapper.reader(type.getJavaType());
+			final ObjectReader existing = readers.putIfAbsent(type, reader);
+			if (existing != null) {
+				reader = existing;
+			}
+		}
+		return reader;
+	}
+
+	private ObjectWriter writerFor(final MessageType type) {
+		ObjectWriter writer = writers.get(type);
+		if (writer == null) {
+			writer = mapper.writerWithType(type.getJavaType());
+			final ObjectWriter existing = writers.putIfAbsent(type, writer);
+			if (existing != null) {
+				writer = existing;
+			}
+		}
+		return writer;
+	}
+
+}
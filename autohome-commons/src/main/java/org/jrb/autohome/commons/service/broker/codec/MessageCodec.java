@@ -0,0 +1,56 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+
+/**
+ * Defines the contract for a payload codec used by the {@link BrokerService}.
+ * Every codec is identified on the wire by a single byte id carried in the
+ * envelope header, so that receivers can decode payloads regardless of the
+ * codec they publish with. Codecs are expected to cache whatever they need
+ * per {@link MessageType}, so that encoding and decoding a registered type
+ * does no per-call type resolution.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public interface MessageCodec {
+
+	byte getId();
+
+	String getName();
+
+	byte[] encode(final Object message) throws BrokerServiceException;
+
+	byte[] encode(final Object message, final MessageType type) throws BrokerServiceException;
+
+	<T> T decode(final byte[] payload, final Class<T> type) throws BrokerServiceException;
+
+	<T> T decode(final byte[] payload, final int offset, final int length, final Class<T> type)
+			throws BrokerServiceException;
+
+	Object decode(final byte[] payload, final int offset, final int length, final MessageType type)
+			throws BrokerServiceException;
+
+}
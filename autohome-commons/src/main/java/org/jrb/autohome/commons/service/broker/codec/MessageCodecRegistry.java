@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Registry of the {@link MessageCodec}s known to a broker, looked up either by
+ * their configured name or by their wire id. The JSON and Smile codecs are
+ * always registered; additional codecs may be added with
+ * {@link #register(MessageCodec)}.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class MessageCodecRegistry {
+
+	public static final byte JSON_ID = 1;
+	public static final String JSON_NAME = "json";
+
+	public static final byte SMILE_ID = 2;
+	public static final String SMILE_NAME = "smile";
+
+	private final MessageCodec[] codecsById = new MessageCodec[256];
+	private final Map<String, MessageCodec> codecsByName = new ConcurrentHashMap<>();
+
+	public MessageCodecRegistry(final ObjectMapper jsonMapper) {
+		register(new JacksonMessageCodec(JSON_ID, JSON_NAME, jsonMapper));
+		register(new JacksonMessageCodec(SMILE_ID, SMILE_NAME, new ObjectMapper(new SmileFactory())));
+	}
+
+	public MessageCodec get(final byte id) throws BrokerServiceException {
+		final MessageCodec codec = codecsById[id & 0xFF];
+		if (codec == null) {
+			throw new BrokerServiceException("Unknown message codec id - " + id);
+		}
+		return codec;
+	}
+
+	public MessageCodec get(final String name) throws BrokerServiceException {
+		final MessageCodec codec = codecsByName.get(name.toLowerCase());
+		if (codec == null) {
+			throw new BrokerServiceException("Unknown message codec - " + name);
+		}
+		return codec;
+	}
+
+	public void register(final MessageCodec codec) {
+		codecsById[codec.getId() & 0xFF] = codec;
+		codecsByName.put(codec.getName().toLowerCase(), codec);
+	}
+
+}
@@ -0,0 +1,67 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import com.fasterxml.jackson.databind.JavaType;
+
+/**
+ * A message type registered with a {@link MessageTypeRegistry}: the key that
+ * identifies it in envelope headers together with its full, possibly generic,
+ * Java type. Instances are used as cache keys by {@link MessageCodec}s and
+ * compare by identity.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public final class MessageType {
+
+	private final String key;
+	private final JavaType javaType;
+
+	MessageType(final String key, final JavaType javaType) {
+		this.key = key;
+		this.javaType = javaType;
+	}
+
+	public JavaType getJavaType() {
+		return javaType;
+	}
+
+	public String getKey() {
+		return key;
+	}
+
+	public Class<?> getRawClass() {
+		return javaType.getRawClass();
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("key", key)
+				.append("javaType", javaType)
+				.build();
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jrb.autohome.commons.service.broker.message.Command;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.type.TypeFactory;
+
+/**
+ * Registry of the message types a broker can encode and decode, keyed by the
+ * type key carried in envelope headers. Types are registered with their full
+ * generic type, e.g.
+ * 
+ * <pre>
+ * registry.register(&quot;Temperature&quot;, new TypeReference&lt;SimpleMessage&lt;Temperature&gt;&gt;() {
+ * });
+ * </pre>
+ * 
+ * so that subscribers receive properly typed payloads rather than untyped
+ * maps. When a {@link Message} type with a concrete payload type is
+ * registered, publishing a bare payload of that type selects it
+ * automatically.
+ * <p>
+ * Type lookups by class are resolved once and cached, so steady-state lookups
+ * on the publish and receive paths are single hash lookups.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class MessageTypeRegistry {
+
+	private final TypeFactory typeFactory = TypeFactory.defaultInstance();
+	private final Map<String, MessageType> typesByKey = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, MessageType> typesByClass = new ConcurrentHashMap<>();
+	private final ConcurrentMap<Class<?>, MessageType> typesByPayloadClass = new ConcurrentHashMap<>();
+
+	public static MessageTypeRegistry defaultRegistry() {
+		final MessageTypeRegistry registry = new MessageTypeRegistry();
+		registry.register(Message.class.getSimpleName(), SimpleMessage.class);
+		registry.register(Command.class.getSimpleName(), SimpleCommand.class);
+		return registry;
+	}
+
+	public static MessageTypeRegistry fromClasses(final Map<String, Class<?>> messageClasses) {
+		final MessageTypeRegistry registry = new MessageTypeRegistry();
+		for (final Map.Entry<String, Class<?>> entry : messageClasses.entrySet()) {
+			registry.register(entry.getKey(), entry.getValue());
+		}
+		return registry;
+	}
+
+	/**
+	 * @return the type registered under the given key, or <code>null</code>
+	 */
+	public MessageType get(final String key) {
+		return key != null ? typesByKey.get(key) : null;
+	}
+
+	/**
+	 * @return the type to publish the given message as; a registered type if
+	 *         one matches, otherwise an unregistered type keyed by the simple
+	 *         name of the message class
+	 */
+	public MessageType typeOf(final Object message) {
+		final Class<?> messageClass = message.getClass();
+		MessageType type = typesByClass.get(messageClass);
+		if (type == null) {
+			type = resolve(messageClass);
+			final MessageType existing = typesByClass.putIfAbsent(messageClass, type);
+			if (existing != null) {
+				type = existing;
+			}
+		}
+		if (message instanceof Message) {
+			final Object payload = ((Message<?>) message).getPayload();
+			if (payload != null) {
+				final MessageType payloadType = typesByPayloadClass.get(payload.getClass());
+				if (payloadType != null && payloadType.getRawClass().isInstance(message)) {
+					return payloadType;
+				}
+			}
+		}
+		return type;
+	}
+
+	public MessageTypeRegistry register(final String key, final Class<?> type) {
+		return register(key, typeFactory.constructType(type));
+	}
+
+	public MessageTypeRegistry register(final String key, final TypeReference<?> type) {
+		return register(key, typeFactory.constructType(type));
+	}
+
+	public MessageTypeRegistry register(final String key, final JavaType javaType) {
+		final MessageType type = new MessageType(key, javaType);
+		typesByKey.put(key, type);
+		typesByClass.clear();
+		final Class<?> payloadClass = payloadClassOf(javaType);
+		if (payloadClass != null) {
+			typesByPayloadClass.put(payloadClass, type);
+		}
+		return this;
+	}
+
+	/**
+	 * @return the concrete payload class of a parameterized {@link Message}
+	 *         type, or <code>null</code> if it has none
+	 */
+	private Class<?> payloadClassOf(final JavaType javaType) {
+		if (Message.class.isAssignableFrom(javaType.getRawClass()) && javaType.containedTypeCount() == 1) {
+			final Class<?> payloadClass = javaType.containedType(0).getRawClass();
+			return payloadClass != Object.class ? payloadClass : null;
+		}
+		return null;
+	}
+
+	private MessageType resolve(final Class<?> messageClass) {
+		MessageType best = null;
+		for (final MessageType type : typesByKey.values()) {
+			if (type.getRawClass() == messageClass && payloadClassOf(type.getJavaType()) == null) {
+				return type;
+			}
+			if (best == null && type.getRawClass().isAssignableFrom(messageClass)) {
+				best = type;
+			}
+		}
+		return best != null ? best : new MessageType(messageClass.getSimpleName(), typeFactory.constructType(messageClass));
+	}
+
+}
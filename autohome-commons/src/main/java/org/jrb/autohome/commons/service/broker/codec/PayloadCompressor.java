@@ -0,0 +1,225 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+
+/**
+ * Deflate compression of envelope payloads at or above a size threshold. A
+ * compressed payload is framed as:
+ * 
+ * <pre>
+ * [length:4][deflated:*]
+ * </pre>
+ * 
+ * where <code>length</code> is the size of the original payload, so that it
+ * can be inflated into an exactly sized array. {@link Deflater}s and
+ * {@link Inflater}s hold native memory until they are ended, so they are
+ * pooled, taken for a single message and returned, rather than allocated per
+ * message or pinned to threads that may outlive the broker; each thread keeps
+ * only its own scratch buffer. {@link #close()} ends the pooled instances.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class PayloadCompressor {
+
+	/** Largest inflated payload accepted, guarding against bad prefixes. */
+	public static final int MAX_LENGTH = 64 * 1024 * 1024;
+
+	private static final int LENGTH_PREFIX = 4;
+
+	private final int threshold;
+	private final int level;
+
+	private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+	private final Queue<Inflater> inflaters = new ConcurrentLinkedQueue<>();
+
+	private final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>() {
+		@Override
+		protected byte[] initialValue() {
+			return new byte[0];
+		}
+	};
+
+	private volatile boolean closed = false;
+
+	/**
+	 * @param threshold
+	 *            smallest payload, in bytes, worth compressing, or
+	 *            <code>0</code> to never compress but still decompress
+	 * @param level
+	 *            deflate level, from {@link Deflater#BEST_SPEED} to
+	 *            {@link Deflater#BEST_COMPRESSION}
+	 */
+	public PayloadCompressor(final int threshold, final int level) {
+		if (threshold < 0) {
+			throw new IllegalArgumentException("Compression threshold must not be negative");
+		}
+		if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+			throw new IllegalArgumentException("Invalid compression level - " + level);
+		}
+		this.threshold = threshold;
+		this.level = level;
+	}
+
+	/**
+	 * Compresses a payload, returning <code>null</code> if compression is off,
+	 * the payload is below the threshold or it would not shrink.
+	 */
+	public byte[] compress(final byte[] payload) {
+		if (threshold == 0 || payload.length < threshold) {
+			return null;
+		}
+		final int limit = payload.length - LENGTH_PREFIX;
+		byte[] buffer = buffers.get();
+		if (buffer.length < limit) {
+			buffer = new byte[limit];
+			buffers.set(buffer);
+		}
+		Deflater deflater = deflaters.poll();
+		if (deflater == null) {
+			deflater = new Deflater(level, true);
+		}
+		int length = 0;
+		try {
+			deflater.setInput(payload);
+			deflater.finish();
+			while (!deflater.finished() && length < limit) {
+				length += deflater.deflate(buffer, length, limit - length);
+			}
+			if (!deflater.finished()) {
+				return null;
+			}
+		} finally {
+			deflater.reset();
+			release(deflater);
+		}
+		final byte[] compressed = new byte[LENGTH_PREFIX + length];
+		compressed[0] = (byte) (payload.length >>> 24);
+		compressed[1] = (byte) (payload.length >>> 16);
+		compressed[2] = (byte) (payload.length >>> 8);
+		compressed[3] = (byte) payload.length;
+		System.arraycopy(buffer, 0, compressed, LENGTH_PREFIX, length);
+		return compressed;
+	}
+
+	public byte[] decompress(final byte[] payload, final int offset, final int length)
+			throws BrokerServiceException {
+		if (length < LENGTH_PREFIX) {
+			throw new BrokerServiceException("Truncated compressed payload");
+		}
+		final int inflatedLength = ((payload[offset] & 0xFF) << 24)
+				| ((payload[offset + 1] & 0xFF) << 16)
+				| ((payload[offset + 2] & 0xFF) << 8)
+				| (payload[offset + 3] & 0xFF);
+		if (inflatedLength < 0 || inflatedLength > MAX_LENGTH) {
+			throw new BrokerServiceException("Invalid compressed payload length - " + inflatedLength);
+		}
+		final byte[] inflated = new byte[inflatedLength];
+		Inflater inflater = inflaters.poll();
+		if (inflater == null) {
+			inflater = new Inflater(true);
+		}
+		inflater.setInput(payload, offset + LENGTH_PREFIX, length - LENGTH_PREFIX);
+		try {
+			int count = 0;
+			while (count < inflatedLength) {
+				final int n = inflater.inflate(inflated, count, inflatedLength - count);
+				if (n == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+					throw new BrokerServiceException("Truncated compressed payload");
+				}
+				count += n;
+			}
+		} catch (final DataFormatException e) {
+			throw new BrokerServiceException("Malformed compressed payload: " + e.getMessage(), e);
+		} finally {
+			inflater.reset();
+			release(inflater);
+		}
+		return inflated;
+	}
+
+	/**
+	 * Ends the pooled deflaters and inflaters, releasing their native memory.
+	 * The compressor still works afterwards, but no longer pools instances.
+	 */
+	public void close() {
+		closed = true;
+		Deflater deflater;
+		while ((deflater = deflaters.poll()) != null) {
+			deflater.end();
+		}
+		Inflater inflater;
+		while ((inflater = inflaters.poll()) != null) {
+			inflater.end();
+		}
+	}
+
+	public boolean isEnabled() {
+		return threshold > 0;
+	}
+
+	public int getLevel() {
+		return level;
+	}
+
+	/**
+	 * Number of idle deflaters and inflaters held for reuse.
+	 */
+	int getPooled() {
+		return deflaters.size() + inflaters.size();
+	}
+
+	public int getThreshold() {
+		return threshold;
+	}
+
+	/**
+	 * Returns a deflater to the pool, or ends it once the compressor is
+	 * closed.
+	 */
+	private void release(final Deflater deflater) {
+		deflaters.offer(deflater);
+		if (closed && deflaters.remove(deflater)) {
+			deflater.end();
+		}
+	}
+
+	/**
+	 * Returns an inflater to the pool, or ends it once the compressor is
+	 * closed.
+	 */
+	private void release(final Inflater inflater) {
+		inflaters.offer(inflater);
+		if (closed && inflaters.remove(inflater)) {
+			inflater.end();
+		}
+	}
+
+}
@@ -0,0 +1,500 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.command;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodec;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.jrb.autohome.commons.service.broker.codec.MessageType;
+import org.jrb.autohome.commons.service.broker.codec.MessageTypeRegistry;
+import org.jrb.autohome.commons.service.broker.liveness.LivenessRegistry;
+import org.jrb.autohome.commons.service.broker.message.Command;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.reactor.Reactor;
+import org.jrb.autohome.commons.service.broker.reactor.ReactorTask;
+import org.jrb.autohome.commons.service.broker.reactor.SocketHandler;
+import org.jrb.autohome.commons.service.broker.reactor.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+import org.zeromq.ZMQException;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Request/reply channel for commands, multiplexing any number of in-flight
+ * requests over a single socket: a ROUTER on the MASTER, addressing each
+ * coordinator by its identity, and a DEALER on every COORDINATOR, identified
+ * by its coordinator id. Each message is framed as
+ * 
+ * <pre>
+ * [identity] [correlation id] [kind] [header] [payload]
+ * </pre>
+ * 
+ * where the identity frame only appears on the ROUTER side, the correlation id
+ * is an 8-byte request number echoed by the reply, and the header is an
+ * {@link EnvelopeHeader} naming the payload's type and codec. Error replies
+ * carry the failure message as their payload.
+ * <p>
+ * All socket I/O happens on the broker's {@link Reactor} thread. Requests are
+ * encoded on the calling thread and queued; the reactor sends them, tracks
+ * them by correlation id and fails them with a {@link TimeoutException} if no
+ * reply arrives in time, so no thread is held per outstanding request. The
+ * ROUTER uses mandatory routing, so a request to a coordinator that is not
+ * connected fails at once instead of timing out. Incoming commands are handed
+ * to the {@link CommandHandler} registered under their name on the given
+ * executor, and its result, wrapped in a {@link Message} unless it already is
+ * one, is returned as the reply.
+ * <p>
+ * A DEALER started with {@link #startHeartbeats(long, TimeUnit)} sends an
+ * empty heartbeat message as soon as it starts and then whenever it has sent
+ * nothing else for the heartbeat interval, so requests and replies double as
+ * heartbeats. A ROUTER given a {@link LivenessRegistry} records every message
+ * it receives as a heartbeat of its sender.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class CommandChannel implements SocketHandler, ReactorTask {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CommandChannel.class);
+
+	private static final byte REQUEST = 0;
+	private static final byte REPLY = 1;
+	private static final byte ERROR = 2;
+	private static final byte HEARTBEAT = 3;
+
+	private static final byte[] HEARTBEAT_HEADER = new EnvelopeHeader("", MessageCodecRegistry.JSON_ID).encode();
+
+	private static final String COMMAND_TYPE = Command.class.getSimpleName();
+	private static final String MESSAGE_TYPE = Message.class.getSimpleName();
+
+	private final Reactor reactor;
+	private final ZMQ.Socket socket;
+	private final boolean routed;
+	private final MessageCodecRegistry codecRegistry;
+	private final MessageCodec codec;
+	private final MessageTypeRegistry messageTypes;
+	private final ConcurrentMap<String, CommandHandler<?, ?>> handlers;
+	private final Executor executor;
+
+	private final AtomicLong correlation = new AtomicLong();
+	private final Queue<Outgoing> outgoing = new ConcurrentLinkedQueue<>();
+	private final Map<Long, Pending> pending = new HashMap<>();
+
+	private LivenessRegistry liveness;
+	private long lastSentAt = 0;
+
+	private volatile boolean running = false;
+
+	public CommandChannel(
+			final Reactor reactor,
+			final ZMQ.Socket socket,
+			final MessageCodecRegistry codecRegistry,
+			final MessageCodec codec,
+			final MessageTypeRegistry messageTypes,
+			final ConcurrentMap<String, CommandHandler<?, ?>> handlers,
+			final Executor executor) {
+		this.reactor = reactor;
+		this.socket = socket;
+		this.routed = socket.getType() == ZMQ.ROUTER;
+		this.codecRegistry = codecRegistry;
+		this.codec = codec;
+		this.messageTypes = messageTypes;
+		this.handlers = handlers;
+		this.executor = executor;
+		socket.setLinger(0);
+		if (routed) {
+			socket.setRouterMandatory(true);
+		}
+		reactor.register(socket, this);
+		reactor.addTask(this);
+	}
+
+	private static long decodeId(final byte[] frame) {
+		return ByteBuffer.wrap(frame).getLong();
+	}
+
+	private static byte[] encodeId(final long id) {
+		return ByteBuffer.allocate(8).putLong(id).array();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void onReadable(final ZMQ.Socket socket) {
+		byte[] first;
+		while ((first = socket.recv(ZMQ.DONTWAIT)) != null) {
+			final byte[] identity = routed ? first : null;
+			final byte[][] frames = new byte[4][];
+			int count = 0;
+			if (!routed) {
+				frames[count++] = first;
+			}
+			while (socket.hasReceiveMore()) {
+				final byte[] frame = socket.recv(0);
+				if (count < frames.length) {
+					frames[count++] = frame;
+				}
+			}
+			if (count < frames.length || frames[1].length != 1) {
+				LOG.warn("Discarding malformed command frame");
+				continue;
+			}
+			if (liveness != null) {
+				liveness.heartbeat(new String(identity, MessageUtils.CHARSET), System.currentTimeMillis());
+			}
+			final long id = decodeId(frames[0]);
+			switch (frames[1][0]) {
+			case REQUEST:
+				receiveRequest(identity, id, frames[2], frames[3]);
+				break;
+			case REPLY:
+			case ERROR:
+				receiveReply(id, frames[1][0], frames[2], frames[3]);
+				break;
+			case HEARTBEAT:
+				break;
+			default:
+				LOG.warn("Discarding command frame of unknown kind {}", frames[1][0]);
+			}
+		}
+	}
+
+	@Override
+	public boolean perform() {
+		boolean worked = false;
+		Outgoing message;
+		while ((message = outgoing.poll()) != null) {
+			worked = true;
+			if (!running && message.request != null) {
+				// raced stop(); its reply could no longer be awaited
+				message.request.future.setException(new BrokerServiceException("Command channel stopped"));
+				continue;
+			}
+			if (routed && !route(message)) {
+				continue;
+			}
+			if (message.request != null) {
+				track(message.id, message.request);
+			}
+			socket.sendMore(encodeId(message.id));
+			socket.sendMore(new byte[] { message.kind });
+			socket.sendMore(message.header);
+			socket.send(message.payload, 0);
+		}
+		if (worked) {
+			lastSentAt = System.nanoTime();
+		}
+		return worked;
+	}
+
+	/**
+	 * Sends a command and returns a future completed with the payload of the
+	 * reply, or failed if the handler fails or no reply arrives in time. On a
+	 * DEALER the target is ignored, as its only peer is the MASTER.
+	 */
+	public <T, R> ListenableFuture<R> send(
+			final String target,
+			final Command<T> command,
+			final long timeout,
+			final TimeUnit unit) throws BrokerServiceException {
+		if (!running) {
+			throw new BrokerServiceException("Command channel is not running");
+		}
+		final MessageType type = messageTypes.typeOf(command);
+		final SettableFuture<R> future = SettableFuture.create();
+		@SuppressWarnings("unchecked")
+		final Pending request = new Pending((SettableFuture<Object>) future, target, command.getName(), unit.toNanos(timeout));
+		outgoing.offer(new Outgoing(
+				routed ? target.getBytes(MessageUtils.CHARSET) : null,
+				correlation.incrementAndGet(),
+				REQUEST,
+				new EnvelopeHeader(type.getKey(), codec.getId()).encode(),
+				codec.encode(command, type),
+				request));
+		reactor.wake();
+		return future;
+	}
+
+	/**
+	 * Records every message received on a ROUTER as a heartbeat of the
+	 * coordinator that sent it, and ticks the registry on the reactor.
+	 */
+	public void setLiveness(final LivenessRegistry liveness) {
+		reactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				CommandChannel.this.liveness = liveness;
+				scheduleTick();
+			}
+		});
+	}
+
+	public void start() {
+		running = true;
+	}
+
+	/**
+	 * Sends a heartbeat on a DEALER now, and then whenever nothing else has
+	 * been sent for the given interval.
+	 */
+	public void startHeartbeats(final long interval, final TimeUnit unit) {
+		final long intervalNanos = unit.toNanos(interval);
+		reactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				sendHeartbeat();
+				scheduleHeartbeat(intervalNanos);
+			}
+		});
+	}
+
+	/**
+	 * Stops accepting commands and fails every outstanding request, whether
+	 * already sent or still queued.
+	 */
+	public void stop() {
+		running = false;
+		reactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				final BrokerServiceException stopped = new BrokerServiceException("Command channel stopped");
+				final Iterator<Outgoing> queued = outgoing.iterator();
+				while (queued.hasNext()) {
+					final Outgoing message = queued.next();
+					if (message.request != null) {
+						queued.remove();
+						message.request.future.setException(stopped);
+					}
+				}
+				for (final Pending request : pending.values()) {
+					request.timer.cancel();
+					request.future.setException(stopped);
+				}
+				pending.clear();
+			}
+		});
+	}
+
+	private Object decode(final byte[] header, final byte[] payload, final String fallback) {
+		final EnvelopeHeader envelopeHeader = EnvelopeHeader.decode(header);
+		MessageType type = messageTypes.get(envelopeHeader.getType());
+		if (type == null) {
+			type = messageTypes.get(fallback);
+		}
+		if (type == null) {
+			throw new BrokerServiceException("Unknown message type " + envelopeHeader.getType());
+		}
+		return codecRegistry.get(envelopeHeader.getCodec()).decode(payload, 0, payload.length, type);
+	}
+
+	private void receiveReply(final long id, final byte kind, final byte[] header, final byte[] payload) {
+		final Pending request = pending.remove(id);
+		if (request == null) {
+			LOG.debug("Discarding late reply to request {}", id);
+			return;
+		}
+		request.timer.cancel();
+		if (kind == ERROR) {
+			request.future.setException(new BrokerServiceException("Command " + request.name + " failed on "
+					+ request.target + ": " + new String(payload, MessageUtils.CHARSET)));
+			return;
+		}
+		try {
+			final Object reply = decode(header, payload, MESSAGE_TYPE);
+			request.future.set((reply instanceof Message) ? ((Message<?>) reply).getPayload() : reply);
+		} catch (final RuntimeException e) {
+			request.future.setException(e);
+		}
+	}
+
+	private void receiveRequest(final byte[] identity, final long id, final byte[] header, final byte[] payload) {
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+				reply(identity, id, header, payload);
+			}
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private void reply(final byte[] identity, final long id, final byte[] header, final byte[] payload) {
+		Outgoing reply;
+		try {
+			final Command<Object> command = (Command<Object>) decode(header, payload, COMMAND_TYPE);
+			final CommandHandler<Object, ?> handler = (CommandHandler<Object, ?>) handlers.get(command.getName());
+			if (handler == null) {
+				throw new BrokerServiceException("No handler for command " + command.getName());
+			}
+			final Object result = MessageUtils.wrapMessage(handler.handle(command));
+			final MessageType type = messageTypes.typeOf(result);
+			reply = new Outgoing(identity, id, REPLY, new EnvelopeHeader(type.getKey(), codec.getId()).encode(),
+					codec.encode(result, type), null);
+		} catch (final Exception e) {
+			LOG.warn("Command {} failed: {}", id, e.getMessage());
+			final String reason = (e.getMessage() != null) ? e.getMessage() : e.getClass().getName();
+			reply = new Outgoing(identity, id, ERROR, new EnvelopeHeader("", codec.getId()).encode(),
+					reason.getBytes(MessageUtils.CHARSET), null);
+		}
+		outgoing.offer(reply);
+		reactor.wake();
+	}
+
+	/**
+	 * Sends the identity frame of a message on the ROUTER, failing its request
+	 * if the coordinator is not connected.
+	 * 
+	 * @return whether the rest of the message should be sent
+	 */
+	private boolean route(final Outgoing message) {
+		String reason = null;
+		try {
+			if (!socket.sendMore(message.identity)) {
+				reason = "cannot be reached";
+			}
+		} catch (final ZMQException e) {
+			reason = "cannot be reached (error " + e.getErrorCode() + ")";
+		}
+		if (reason == null) {
+			return true;
+		}
+		final String target = new String(message.identity, MessageUtils.CHARSET);
+		if (message.request != null) {
+			message.request.future.setException(new BrokerServiceException("Command " + message.request.name
+					+ " not sent; coordinator " + target + " " + reason));
+		} else {
+			LOG.debug("Discarding reply {} to coordinator {}, which {}", message.id, target, reason);
+		}
+		return false;
+	}
+
+	private void scheduleHeartbeat(final long intervalNanos) {
+		reactor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (running) {
+					if (System.nanoTime() - lastSentAt >= intervalNanos) {
+						sendHeartbeat();
+					}
+					scheduleHeartbeat(intervalNanos);
+				}
+			}
+		}, intervalNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void scheduleTick() {
+		reactor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (running) {
+					liveness.tick(System.currentTimeMillis());
+					scheduleTick();
+				}
+			}
+		}, liveness.getTickMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	private void sendHeartbeat() {
+		outgoing.offer(new Outgoing(null, 0, HEARTBEAT, HEARTBEAT_HEADER, new byte[0], null));
+	}
+
+	private void track(final long id, final Pending request) {
+		pending.put(id, request);
+		request.timer = reactor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				if (pending.remove(id) != null) {
+					request.future.setException(new TimeoutException("Command " + request.name
+							+ " to " + request.target + " timed out"));
+				}
+			}
+		}, request.timeout, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * A message waiting to be written by the reactor.
+	 */
+	private static class Outgoing {
+
+		private final byte[] identity;
+		private final long id;
+		private final byte kind;
+		private final byte[] header;
+		private final byte[] payload;
+		private final Pending request;
+
+		Outgoing(
+				final byte[] identity,
+				final long id,
+				final byte kind,
+				final byte[] header,
+				final byte[] payload,
+				final Pending request) {
+			this.identity = identity;
+			this.id = id;
+			this.kind = kind;
+			this.header = header;
+			this.payload = payload;
+			this.request = request;
+		}
+
+	}
+
+	/**
+	 * An outstanding request. Only touched on the reactor thread once sent.
+	 */
+	private static class Pending {
+
+		private final SettableFuture<Object> future;
+		private final String target;
+		private final String name;
+		private final long timeout;
+		private Timer timer;
+
+		Pending(final SettableFuture<Object> future, final String target, final String name, final long timeout) {
+			this.future = future;
+			this.target = target;
+			this.name = name;
+			this.timeout = timeout;
+		}
+
+	}
+
+}
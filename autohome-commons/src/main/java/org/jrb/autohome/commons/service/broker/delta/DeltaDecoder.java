@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Receiver side of delta encoding: rebuilds the full state of each (topic,
+ * message type) key from the keyframes and deltas written by a
+ * {@link DeltaEncoder}. A delta is only applied on top of the state it was
+ * computed against; after a lost envelope, or when joining mid-stream, the
+ * key's deltas are discarded until its next keyframe. A snapshot from the
+ * last value cache stands in for a keyframe, and resumes at its delta.
+ * <p>
+ * The broker's dispatchers deliver each topic on a single thread, so a key's
+ * state is only ever rebuilt by one thread at a time; the map of keys is
+ * shared and bounded to <code>maxKeys</code>, least recently received first.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeltaDecoder {
+
+	private final Map<String, ReceivedState> states;
+
+	public DeltaDecoder(final int maxKeys) {
+		this.states = new LinkedHashMap<String, ReceivedState>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, ReceivedState> eldest) {
+				return size() > maxKeys;
+			}
+		};
+	}
+
+	/**
+	 * Decodes a keyframe or delta payload into the key's full state, or
+	 * returns <code>null</code> if a delta cannot be applied.
+	 */
+	public JsonNode decode(
+			final String topic,
+			final String type,
+			final byte flags,
+			final ObjectMapper mapper,
+			final byte[] payload,
+			final int offset,
+			final int length) throws BrokerServiceException {
+		final String key = topic + '\n' + type;
+		final JsonNode frame;
+		try {
+			frame = mapper.readValue(payload, offset, length, JsonNode.class);
+		} catch (final IOException e) {
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+		if ((flags & EnvelopeHeader.FLAG_KEYFRAME) != 0 && (flags & EnvelopeHeader.FLAG_DELTA) != 0) {
+			final JsonNode seq = frame.get(DeltaEncoder.SEQ_FIELD);
+			final JsonNode state = frame.get(DeltaEncoder.STATE_FIELD);
+			if (seq == null || state == null || !state.isObject()) {
+				throw new BrokerServiceException("Malformed delta snapshot payload");
+			}
+			synchronized (states) {
+				states.put(key, new ReceivedState((ObjectNode) state, seq.asInt()));
+			}
+			return state;
+		}
+		if ((flags & EnvelopeHeader.FLAG_KEYFRAME) != 0) {
+			synchronized (states) {
+				if (frame.isObject()) {
+					states.put(key, new ReceivedState((ObjectNode) frame, 0));
+				} else {
+					states.remove(key);
+				}
+			}
+			return frame;
+		}
+		final JsonNode seq = frame.get(DeltaEncoder.SEQ_FIELD);
+		final JsonNode patch = frame.get(DeltaEncoder.PATCH_FIELD);
+		if (seq == null || patch == null || !patch.isObject()) {
+			throw new BrokerServiceException("Malformed delta payload");
+		}
+		final ReceivedState state;
+		synchronized (states) {
+			state = states.get(key);
+			if (state == null || state.seq + 1 != seq.asInt()) {
+				states.remove(key);
+				return null;
+			}
+		}
+		final ObjectNode tree = state.tree.deepCopy();
+		MergePatch.apply(tree, (ObjectNode) patch);
+		synchronized (states) {
+			states.put(key, new ReceivedState(tree, seq.asInt()));
+		}
+		return tree;
+	}
+
+	/**
+	 * Last state rebuilt for a key, and the delta it was rebuilt from.
+	 */
+	private static class ReceivedState {
+
+		private final ObjectNode tree;
+		private final int seq;
+
+		ReceivedState(final ObjectNode tree, final int seq) {
+			this.tree = tree;
+			this.seq = seq;
+		}
+
+	}
+
+}
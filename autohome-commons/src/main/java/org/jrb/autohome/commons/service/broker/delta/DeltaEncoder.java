@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.outbound.OfferSequencer;
+import org.jrb.autohome.commons.service.broker.snapshot.LastValueCache;
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Publisher side of delta encoding. For every (topic, message type) key on
+ * the configured topic patterns, the encoder keeps the last state it sent and
+ * encodes each new message either as a keyframe, carrying the full state, or
+ * as a delta, carrying a {@link MergePatch} against the previous state:
+ * 
+ * <pre>
+ * keyframe: the message, as usual
+ * delta:    {"seq": n, "patch": {...}}
+ * snapshot: {"seq": n, "state": {...}}
+ * </pre>
+ * 
+ * where <code>n</code> counts the deltas since the last keyframe, so that a
+ * {@link DeltaDecoder} can detect a missing envelope and wait for the next
+ * keyframe rather than reconstruct the wrong state. A keyframe is sent for
+ * the first message of a key, every <code>keyframeInterval</code> messages
+ * thereafter, and whenever the message is not a JSON object. A field that
+ * changes to <code>null</code> is sent as a removal, so the decoded message
+ * leaves it at its default value.
+ * <p>
+ * A snapshot, flagged as both a keyframe and a delta, is never sent live. It
+ * is what a delta is cached as by the {@link LastValueCache}: the full state
+ * the delta leads to, with the delta's <code>seq</code>, so that a decoder
+ * starting from it can apply the deltas that follow.
+ * <p>
+ * Deltas must reach the wire in the order they were encoded, so callers take
+ * an {@link OfferSequencer} ticket under the encoder's monitor and queue
+ * envelopes in ticket order. Once
+ * <code>maxKeys</code> keys are tracked the least recently published is
+ * forgotten, and its next message is a keyframe. A key is also forgotten when
+ * one of its envelopes is discarded before reaching the wire, so that a lossy
+ * overflow policy costs receivers a keyframe rather than the state.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeltaEncoder {
+
+	static final String SEQ_FIELD = "seq";
+	static final String PATCH_FIELD = "patch";
+	static final String STATE_FIELD = "state";
+
+	private final TopicTrie<Boolean> topics = new TopicTrie<>();
+	private final int keyframeInterval;
+	private final Map<String, SentState> states;
+
+	public DeltaEncoder(final Collection<String> topicPatterns, final int keyframeInterval, final int maxKeys) {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException("Delta keyframe interval must be positive");
+		}
+		for (final String pattern : topicPatterns) {
+			topics.add(pattern, Boolean.TRUE);
+		}
+		this.keyframeInterval = keyframeInterval;
+		this.states = new LinkedHashMap<String, SentState>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, SentState> eldest) {
+				return size() > maxKeys;
+			}
+		};
+	}
+
+	public synchronized boolean accepts(final String topic) {
+		return topics.matches(topic);
+	}
+
+	/**
+	 * Forgets the state sent for a key, so that its next message is a keyframe.
+	 */
+	public synchronized void forget(final String topic, final String type) {
+		states.remove(topic + '\n' + type);
+	}
+
+	/**
+	 * Encodes a message with the given mapper, which must be the one the
+	 * payload codec writes with.
+	 */
+	public DeltaFrame encode(
+			final String topic,
+			final String type,
+			final ObjectMapper mapper,
+			final Object message) throws BrokerServiceException {
+		return encode(topic, type, mapper, message, false);
+	}
+
+	/**
+	 * Encodes a message with the given mapper, also encoding the snapshot of
+	 * the state a delta leads to if <code>snapshot</code> is set.
+	 */
+	public synchronized DeltaFrame encode(
+			final String topic,
+			final String type,
+			final ObjectMapper mapper,
+			final Object message,
+			final boolean snapshot) throws BrokerServiceException {
+		final String key = topic + '\n' + type;
+		final JsonNode tree = mapper.valueToTree(message);
+		try {
+			if (!tree.isObject()) {
+				states.remove(key);
+				return new DeltaFrame(mapper.writeValueAsBytes(tree), EnvelopeHeader.FLAG_KEYFRAME);
+			}
+			final SentState state = states.get(key);
+			if (state == null || state.deltas + 1 >= keyframeInterval) {
+				states.put(key, new SentState((ObjectNode) tree));
+				return new DeltaFrame(mapper.writeValueAsBytes(tree), EnvelopeHeader.FLAG_KEYFRAME);
+			}
+			final ObjectNode delta = mapper.createObjectNode();
+			delta.put(SEQ_FIELD, ++state.deltas);
+			delta.set(PATCH_FIELD, MergePatch.diff(state.tree, (ObjectNode) tree));
+			state.tree = (ObjectNode) tree;
+			if (!snapshot) {
+				return new DeltaFrame(mapper.writeValueAsBytes(delta), EnvelopeHeader.FLAG_DELTA);
+			}
+			final ObjectNode full = mapper.createObjectNode();
+			full.put(SEQ_FIELD, state.deltas);
+			full.set(STATE_FIELD, tree);
+			return new DeltaFrame(
+					mapper.writeValueAsBytes(delta), EnvelopeHeader.FLAG_DELTA, mapper.writeValueAsBytes(full));
+		} catch (final IOException e) {
+			states.remove(key);
+			throw new BrokerServiceException(e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Last state sent for a key, and the deltas sent since its keyframe.
+	 */
+	private static class SentState {
+
+		private ObjectNode tree;
+		private int deltas = 0;
+
+		SentState(final ObjectNode tree) {
+			this.tree = tree;
+		}
+
+	}
+
+}
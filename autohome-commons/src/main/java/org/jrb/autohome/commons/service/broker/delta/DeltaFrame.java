@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+/**
+ * Payload encoded by a {@link DeltaEncoder}, with the envelope header flag
+ * marking it as a keyframe or a delta, and for a delta the snapshot of the
+ * state it leads to, if one was asked for.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public final class DeltaFrame {
+
+	private final byte[] payload;
+	private final byte flag;
+	private final byte[] snapshot;
+
+	DeltaFrame(final byte[] payload, final byte flag) {
+		this(payload, flag, null);
+	}
+
+	DeltaFrame(final byte[] payload, final byte flag, final byte[] snapshot) {
+		this.payload = payload;
+		this.flag = flag;
+		this.snapshot = snapshot;
+	}
+
+	public byte getFlag() {
+		return flag;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	public byte[] getSnapshot() {
+		return snapshot;
+	}
+
+}
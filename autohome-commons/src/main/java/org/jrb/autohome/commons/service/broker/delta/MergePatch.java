@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+import java.util.Iterator;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Merge patches between JSON object trees, after RFC 7386: a patch holds the
+ * fields that changed, recursing into nested objects, and a <code>null</code>
+ * for every field that was removed. Arrays and scalars are replaced whole.
+ * <p>
+ * As the patch has no other way to say so, a field whose value changes to
+ * JSON <code>null</code> is removed rather than set to <code>null</code>:
+ * applying the patch drops it from the tree.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+final class MergePatch {
+
+	/**
+	 * Applies a patch to a tree in place.
+	 */
+	static void apply(final ObjectNode target, final ObjectNode patch) {
+		final Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+		while (fields.hasNext()) {
+			final Map.Entry<String, JsonNode> field = fields.next();
+			final JsonNode value = field.getValue();
+			if (value.isNull()) {
+				target.remove(field.getKey());
+			} else if (value.isObject()) {
+				final JsonNode existing = target.get(field.getKey());
+				if (existing != null && existing.isObject()) {
+					apply((ObjectNode) existing, (ObjectNode) value);
+				} else {
+					final ObjectNode created = target.putObject(field.getKey());
+					apply(created, (ObjectNode) value);
+				}
+			} else {
+				target.set(field.getKey(), value);
+			}
+		}
+	}
+
+	/**
+	 * Builds the patch that turns <code>base</code> into <code>target</code>,
+	 * empty if they are equal.
+	 */
+	static ObjectNode diff(final ObjectNode base, final ObjectNode target) {
+		final ObjectNode patch = target.objectNode();
+		final Iterator<Map.Entry<String, JsonNode>> fields = target.fields();
+		while (fields.hasNext()) {
+			final Map.Entry<String, JsonNode> field = fields.next();
+			final JsonNode value = field.getValue();
+			final JsonNode previous = base.get(field.getKey());
+			if (previous == null || !previous.equals(value)) {
+				if (previous != null && previous.isObject() && value.isObject()) {
+					patch.set(field.getKey(), diff((ObjectNode) previous, (ObjectNode) value));
+				} else {
+					patch.set(field.getKey(), value);
+				}
+			}
+		}
+		final Iterator<String> names = base.fieldNames();
+		while (names.hasNext()) {
+			final String name = names.next();
+			if (!target.has(name)) {
+				patch.putNull(name);
+			}
+		}
+		return patch;
+	}
+
+	private MergePatch() {
+	}
+
+}
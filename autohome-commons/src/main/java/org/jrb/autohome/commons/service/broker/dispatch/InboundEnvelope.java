@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.dispatch;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Raw, undecoded frames of an inbound envelope as taken off the subscriber
+ * socket. For multipart envelopes the topic, header and payload frames are
+ * kept separately; for single-frame envelopes only the payload is set and
+ * holds the complete frame.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class InboundEnvelope {
+
+	private byte[] topic;
+	private byte[] header;
+	private byte[] payload;
+	private long receivedAt;
+
+	public InboundEnvelope() {
+	}
+
+	public InboundEnvelope(final byte[] topic, final byte[] header, final byte[] payload) {
+		this.topic = topic;
+		this.header = header;
+		this.payload = payload;
+		receivedAt = System.nanoTime();
+	}
+
+	public void clear() {
+		topic = null;
+		header = null;
+		payload = null;
+	}
+
+	public byte[] getHeader() {
+		return header;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * {@link System#nanoTime()} at which the frames were taken off the socket.
+	 */
+	public long getReceivedAt() {
+		return receivedAt;
+	}
+
+	public byte[] getTopic() {
+		return topic;
+	}
+
+	public boolean isMultipart() {
+		return header != null;
+	}
+
+	public void set(final byte[] topic, final byte[] header, final byte[] payload) {
+		this.topic = topic;
+		this.header = header;
+		this.payload = payload;
+		receivedAt = System.nanoTime();
+	}
+
+	public void setHeader(final byte[] header) {
+		this.header = header;
+	}
+
+	public void setPayload(final byte[] payload) {
+		this.payload = payload;
+	}
+
+	public void setTopic(final byte[] topic) {
+		this.topic = topic;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("topic", topic != null ? topic.length : 0)
+				.append("header", header != null ? header.length : 0)
+				.append("payload", payload != null ? payload.length : 0)
+				.build();
+	}
+
+}
@@ -0,0 +1,227 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.dispatch;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jrb.autohome.commons.ring.BatchEventProcessor;
+import org.jrb.autohome.commons.ring.EventFactory;
+import org.jrb.autohome.commons.ring.EventHandler;
+import org.jrb.autohome.commons.ring.RingBuffer;
+import org.jrb.autohome.commons.ring.WaitStrategyType;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.reactor.ReactorTask;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * {@link MessageDispatcher} that decodes and delivers envelopes on a fixed set
+ * of worker lanes. Each lane is a single thread draining its own
+ * pre-allocated {@link RingBuffer} in batches, and envelopes are assigned to
+ * lanes by hashing their topic frame, so messages on the same topic are always
+ * handled in the order they were received while different topics proceed in
+ * parallel. Single-frame envelopes carry no separate topic frame; when a
+ * separator is set they are hashed on the topic that precedes it in the
+ * frame, and otherwise they are all handled on the first lane.
+ * <p>
+ * When a lane's ring buffer is full, the receiving thread either waits for a
+ * free slot under {@link OverflowPolicy#BLOCK}, which pushes back onto the
+ * socket's own receive high-water mark, or drops the envelope under
+ * {@link OverflowPolicy#DROP_NEWEST}. Slots are claimed in order, so the
+ * other policies cannot be honoured here. While it waits, the receiving
+ * thread keeps performing the {@link #setFullTask(ReactorTask) full task},
+ * so that a handler blocked on work owned by that thread, such as a publish
+ * waiting for the reactor to drain the outbound queue, can still finish.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LaneDispatcher implements MessageDispatcher {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LaneDispatcher.class);
+
+	private static final EventFactory<InboundEnvelope> ENVELOPE_FACTORY = new EventFactory<InboundEnvelope>() {
+		@Override
+		public InboundEnvelope newInstance() {
+			return new InboundEnvelope();
+		}
+	};
+
+	private static final long FULL_PARK_NANOS = 1000L;
+
+	private final InboundHandler handler;
+	private final OverflowPolicy overflowPolicy;
+	private final Lane[] lanes;
+	private final ThreadFactory threadFactory;
+
+	private byte[] separator;
+	private ReactorTask fullTask;
+
+	private volatile boolean running = false;
+
+	public LaneDispatcher(
+			final InboundHandler handler,
+			final int laneCount,
+			final int queueCapacity,
+			final WaitStrategyType waitStrategyType) {
+		this(handler, laneCount, queueCapacity, waitStrategyType, OverflowPolicy.BLOCK);
+	}
+
+	public LaneDispatcher(
+			final InboundHandler handler,
+			final int laneCount,
+			final int queueCapacity,
+			final WaitStrategyType waitStrategyType,
+			final OverflowPolicy overflowPolicy) {
+		if (laneCount < 1) {
+			throw new IllegalArgumentException("At least one dispatch lane is required");
+		}
+		if (overflowPolicy != OverflowPolicy.BLOCK && overflowPolicy != OverflowPolicy.DROP_NEWEST) {
+			throw new IllegalArgumentException("Unsupported dispatch overflow policy - " + overflowPolicy);
+		}
+		this.handler = handler;
+		this.overflowPolicy = overflowPolicy;
+		this.threadFactory = new ThreadFactoryBuilder()
+				.setNameFormat("broker-dispatch-%d")
+				.setDaemon(true)
+				.build();
+		final int capacity = RingBuffer.capacityFor(queueCapacity);
+		lanes = new Lane[laneCount];
+		for (int i = 0; i < laneCount; i++) {
+			lanes[i] = new Lane(capacity, waitStrategyType);
+		}
+	}
+
+	@Override
+	public boolean dispatch(final byte[] topic, final byte[] header, final byte[] payload) {
+		final RingBuffer<InboundEnvelope> ringBuffer = lanes[laneOf(topic, payload)].ringBuffer;
+		long sequence;
+		while ((sequence = ringBuffer.tryNext()) < 0) {
+			if (!running || overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+				return false;
+			}
+			if (fullTask == null || !fullTask.perform()) {
+				LockSupport.parkNanos(FULL_PARK_NANOS);
+			}
+		}
+		ringBuffer.get(sequence).set(topic, header, payload);
+		ringBuffer.publish(sequence);
+		return true;
+	}
+
+	public int getLaneCount() {
+		return lanes.length;
+	}
+
+	/**
+	 * Number of envelopes waiting across all lanes.
+	 */
+	@Override
+	public long getQueueDepth() {
+		long depth = 0;
+		for (final Lane lane : lanes) {
+			depth += lane.ringBuffer.remaining();
+		}
+		return depth;
+	}
+
+	protected int laneOf(final byte[] topic, final byte[] payload) {
+		if (lanes.length == 1) {
+			return 0;
+		}
+		if (topic != null) {
+			return (Arrays.hashCode(topic) & Integer.MAX_VALUE) % lanes.length;
+		}
+		final int pos = (separator != null && payload != null) ? MessageUtils.indexOf(payload, separator) : -1;
+		if (pos <= 0) {
+			return 0;
+		}
+		int hash = 1;
+		for (int i = 0; i < pos; i++) {
+			hash = 31 * hash + payload[i];
+		}
+		return (hash & Integer.MAX_VALUE) % lanes.length;
+	}
+
+	/**
+	 * Sets work for the receiving thread to perform while it waits for room in
+	 * a full lane; must be called before {@link #start}.
+	 */
+	public void setFullTask(final ReactorTask fullTask) {
+		this.fullTask = fullTask;
+	}
+
+	/**
+	 * Sets the separator between the topic and the body of single-frame
+	 * envelopes, so that they are spread across lanes by topic.
+	 */
+	public void setSeparator(final byte[] separator) {
+		this.separator = separator;
+	}
+
+	@Override
+	public void start() {
+		running = true;
+		for (final Lane lane : lanes) {
+			threadFactory.newThread(lane.processor).start();
+		}
+		LOG.info("Started {} dispatch lanes", lanes.length);
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		for (final Lane lane : lanes) {
+			lane.processor.halt();
+		}
+	}
+
+	/**
+	 * Single-threaded worker lane.
+	 */
+	private class Lane implements EventHandler<InboundEnvelope> {
+
+		private final RingBuffer<InboundEnvelope> ringBuffer;
+		private final BatchEventProcessor<InboundEnvelope> processor;
+
+		private Lane(final int capacity, final WaitStrategyType waitStrategyType) {
+			ringBuffer = new RingBuffer<>(ENVELOPE_FACTORY, capacity, waitStrategyType.newInstance());
+			processor = new BatchEventProcessor<>(ringBuffer, this);
+		}
+
+		@Override
+		public void onEvent(final InboundEnvelope envelope, final long sequence, final boolean endOfBatch) {
+			try {
+				handler.handle(envelope);
+			} finally {
+				envelope.clear();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,50 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.dispatch;
+
+/**
+ * Defines the contract for the stage that sits between the broker's receive
+ * loop and its {@link InboundHandler}. The receive loop only ever calls
+ * {@link #dispatch(byte[], byte[], byte[])} from a single thread; a dispatcher
+ * decides on which thread the frames are decoded and delivered.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public interface MessageDispatcher {
+
+	/**
+	 * Hands over a received envelope, returning <code>false</code> if it was
+	 * dropped because the dispatcher was full.
+	 */
+	boolean dispatch(final byte[] topic, final byte[] header, final byte[] payload);
+
+	/**
+	 * Number of envelopes waiting to be handled.
+	 */
+	long getQueueDepth();
+
+	void start();
+
+	void stop();
+
+}
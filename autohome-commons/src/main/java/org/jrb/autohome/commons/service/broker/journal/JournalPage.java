@@ -0,0 +1,86 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A run of consecutive {@link JournalRecord}s returned by a replay, along
+ * with the offset to resume from and the journal's end at the time it was
+ * read.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class JournalPage {
+
+	private long endOffset;
+	private long nextOffset;
+	private List<JournalRecord> records = new ArrayList<>();
+
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	public long getNextOffset() {
+		return nextOffset;
+	}
+
+	public List<JournalRecord> getRecords() {
+		return records;
+	}
+
+	/**
+	 * Whether the page reaches the end of the journal.
+	 */
+	@JsonIgnore
+	public boolean isLast() {
+		return nextOffset >= endOffset;
+	}
+
+	public void setEndOffset(final long endOffset) {
+		this.endOffset = endOffset;
+	}
+
+	public void setNextOffset(final long nextOffset) {
+		this.nextOffset = nextOffset;
+	}
+
+	public void setRecords(final List<JournalRecord> records) {
+		this.records = records;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("records", records.size())
+				.append("nextOffset", nextOffset)
+				.append("endOffset", endOffset)
+				.build();
+	}
+
+}
@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+/**
+ * A single envelope read back from a {@link MessageJournal}, as the frames it
+ * was published with. A single-frame envelope has an empty topic and header.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class JournalRecord {
+
+	private long offset;
+	private long timestamp;
+	private byte[] topic;
+	private byte[] header;
+	private byte[] payload;
+
+	public byte[] getHeader() {
+		return header;
+	}
+
+	public long getOffset() {
+		return offset;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	public long getTimestamp() {
+		return timestamp;
+	}
+
+	public byte[] getTopic() {
+		return topic;
+	}
+
+	@JsonIgnore
+	public boolean isMultipart() {
+		return topic != null && topic.length > 0;
+	}
+
+	public void setHeader(final byte[] header) {
+		this.header = header;
+	}
+
+	public void setOffset(final long offset) {
+		this.offset = offset;
+	}
+
+	public void setPayload(final byte[] payload) {
+		this.payload = payload;
+	}
+
+	public void setTimestamp(final long timestamp) {
+		this.timestamp = timestamp;
+	}
+
+	public void setTopic(final byte[] topic) {
+		this.topic = topic;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("offset", offset)
+				.append("timestamp", timestamp)
+				.append("payload", (payload != null) ? payload.length : 0)
+				.build();
+	}
+
+}
@@ -0,0 +1,58 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import org.jrb.autohome.commons.service.broker.command.CommandHandler;
+import org.jrb.autohome.commons.service.broker.message.Command;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Serves {@link MessageJournal#REPLAY_COMMAND}s from a journal, one
+ * {@link JournalPage} per command, capped at <code>maxRecords</code> records.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class JournalReplayHandler implements CommandHandler<Object, JournalPage> {
+
+	private final MessageJournal journal;
+	private final ObjectMapper mapper;
+	private final int maxRecords;
+
+	public JournalReplayHandler(final MessageJournal journal, final ObjectMapper mapper, final int maxRecords) {
+		this.journal = journal;
+		this.mapper = mapper;
+		this.maxRecords = maxRecords;
+	}
+
+	@Override
+	public JournalPage handle(final Command<Object> command) throws Exception {
+		final ReplayRequest request = mapper.convertValue(command.getPayload(), ReplayRequest.class);
+		final long fromOffset = (request.getFromOffset() >= 0)
+				? request.getFromOffset()
+				: journal.offsetAt(request.getFromTimestamp());
+		final int limit = (request.getMaxRecords() > 0) ? Math.min(request.getMaxRecords(), maxRecords) : maxRecords;
+		return journal.read(fromOffset, limit);
+	}
+
+}
@@ -0,0 +1,324 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * One memory-mapped file of a {@link MessageJournal}, holding the records
+ * from <code>baseOffset</code> onwards, along with its sparse index. Each
+ * record is laid out as
+ * 
+ * <pre>
+ * [length:4] [crc:4] [offset:8] [timestamp:8] [topic length:2] [header length:2] [topic] [header] [payload]
+ * </pre>
+ * 
+ * where the length counts everything after itself and the CRC everything
+ * after the CRC. Every <code>indexInterval</code> bytes an index entry of
+ * <code>[offset - baseOffset:4] [position:4] [timestamp:8]</code> is written
+ * for the record at that point.
+ * <p>
+ * A segment is appended to by a single thread. Readers on other threads see
+ * records up to the last committed position, published through a volatile
+ * write once each record is complete.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+class JournalSegment {
+
+	static final int RECORD_HEADER = 28;
+	static final int INDEX_ENTRY = 16;
+
+	private static final String LOG_SUFFIX = ".log";
+	private static final String INDEX_SUFFIX = ".idx";
+
+	private final long baseOffset;
+	private final File logFile;
+	private final File indexFile;
+	private final int indexInterval;
+	private final MappedByteBuffer log;
+	private final MappedByteBuffer index;
+	private final CRC32 crc = new CRC32();
+	private final byte[] fields = new byte[RECORD_HEADER - 8];
+	private final ByteBuffer fieldBuffer = ByteBuffer.wrap(fields);
+
+	private volatile int committed;
+	private volatile int indexCount;
+	private long nextOffset;
+	private int lastIndexed = -1;
+
+	private JournalSegment(
+			final File directory,
+			final long baseOffset,
+			final int size,
+			final int indexInterval) throws IOException {
+		this.baseOffset = baseOffset;
+		this.logFile = new File(directory, fileName(baseOffset, LOG_SUFFIX));
+		this.indexFile = new File(directory, fileName(baseOffset, INDEX_SUFFIX));
+		this.indexInterval = indexInterval;
+		this.log = map(logFile, size);
+		this.index = map(indexFile, (size / indexInterval + 1) * INDEX_ENTRY);
+		this.nextOffset = baseOffset;
+	}
+
+	static JournalSegment create(
+			final File directory,
+			final long baseOffset,
+			final int size,
+			final int indexInterval) throws IOException {
+		return new JournalSegment(directory, baseOffset, size, indexInterval);
+	}
+
+	/**
+	 * Opens an existing segment, recovering its end from the index and the
+	 * records after the last index entry; a torn or corrupt record ends the
+	 * segment.
+	 */
+	static JournalSegment open(final File logFile, final int indexInterval) throws IOException {
+		final String name = logFile.getName();
+		final long baseOffset = Long.parseLong(name.substring(0, name.length() - LOG_SUFFIX.length()));
+		final JournalSegment segment = new JournalSegment(
+				logFile.getParentFile(), baseOffset, (int) logFile.length(), indexInterval);
+		segment.recover();
+		return segment;
+	}
+
+	static boolean isLogFile(final File file) {
+		return file.getName().endsWith(LOG_SUFFIX);
+	}
+
+	private static String fileName(final long baseOffset, final String suffix) {
+		return String.format("%020d%s", baseOffset, suffix);
+	}
+
+	private static MappedByteBuffer map(final File file, final int size) throws IOException {
+		try (final RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+			if (raf.length() < size) {
+				raf.setLength(size);
+			}
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+		}
+	}
+
+	/**
+	 * Appends a record, returning <code>false</code> if it does not fit.
+	 */
+	boolean append(
+			final long timestamp,
+			final byte[] topic,
+			final byte[] header,
+			final byte[] payload) {
+		final int position = committed;
+		final int length = RECORD_HEADER + topic.length + header.length + payload.length;
+		if (position + length > log.capacity()) {
+			return false;
+		}
+		if (lastIndexed < 0 || position - lastIndexed >= indexInterval) {
+			final int entry = indexCount * INDEX_ENTRY;
+			if (entry + INDEX_ENTRY <= index.capacity()) {
+				index.putInt(entry, (int) (nextOffset - baseOffset));
+				index.putInt(entry + 4, position);
+				index.putLong(entry + 8, timestamp);
+				indexCount++;
+				lastIndexed = position;
+			}
+		}
+		fieldBuffer.clear();
+		fieldBuffer.putLong(nextOffset).putLong(timestamp).putShort((short) topic.length).putShort((short) header.length);
+		crc.reset();
+		crc.update(fields);
+		crc.update(topic);
+		crc.update(header);
+		crc.update(payload);
+		log.position(position + 4);
+		log.putInt((int) crc.getValue());
+		log.put(fields);
+		log.put(topic);
+		log.put(header);
+		log.put(payload);
+		log.putInt(position, length - 4);
+		nextOffset++;
+		committed = position + length;
+		return true;
+	}
+
+	long getBaseOffset() {
+		return baseOffset;
+	}
+
+	long getNextOffset() {
+		return nextOffset;
+	}
+
+	/**
+	 * Timestamp of the first record, or <code>-1</code> if there is none.
+	 */
+	long getFirstTimestamp() {
+		return (indexCount > 0) ? index.getLong(8) : -1;
+	}
+
+	/**
+	 * Reads the records from <code>fromOffset</code> on into the page, until
+	 * it is full.
+	 */
+	void read(final long fromOffset, final JournalPage page, final int maxRecords) {
+		final ByteBuffer buffer = log.duplicate();
+		final int limit = committed;
+		int position = positionOf(fromOffset);
+		while (position + RECORD_HEADER <= limit && page.getRecords().size() < maxRecords) {
+			final int length = buffer.getInt(position);
+			final long offset = buffer.getLong(position + 8);
+			if (offset >= fromOffset) {
+				page.getRecords().add(readRecord(buffer, position));
+			}
+			position += length + 4;
+		}
+	}
+
+	/**
+	 * Offset of the first record stamped at or after <code>timestamp</code>,
+	 * or <code>-1</code> if there is none in this segment.
+	 */
+	long offsetAt(final long timestamp) {
+		final ByteBuffer buffer = log.duplicate();
+		final int limit = committed;
+		int position = 0;
+		for (int i = indexCount - 1; i >= 0; i--) {
+			if (index.getLong(i * INDEX_ENTRY + 8) < timestamp) {
+				position = index.getInt(i * INDEX_ENTRY + 4);
+				break;
+			}
+		}
+		while (position + RECORD_HEADER <= limit) {
+			if (buffer.getLong(position + 16) >= timestamp) {
+				return buffer.getLong(position + 8);
+			}
+			position += buffer.getInt(position) + 4;
+		}
+		return -1;
+	}
+
+	void close(final boolean delete) {
+		log.force();
+		index.force();
+		if (delete) {
+			logFile.delete();
+			indexFile.delete();
+		}
+	}
+
+	void flush() {
+		log.force();
+	}
+
+	/**
+	 * CRC of everything after the CRC field of a record, for recovery.
+	 */
+	private int checksum(final int position, final int length) {
+		final byte[] body = new byte[length - 4];
+		final ByteBuffer buffer = log.duplicate();
+		buffer.position(position + 8);
+		buffer.get(body);
+		crc.reset();
+		crc.update(body);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Position of the last indexed record at or before the offset.
+	 */
+	private int positionOf(final long offset) {
+		int low = 0;
+		int high = indexCount - 1;
+		int position = 0;
+		while (low <= high) {
+			final int mid = (low + high) >>> 1;
+			if (baseOffset + index.getInt(mid * INDEX_ENTRY) <= offset) {
+				position = index.getInt(mid * INDEX_ENTRY + 4);
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return position;
+	}
+
+	private JournalRecord readRecord(final ByteBuffer buffer, final int position) {
+		final ByteBuffer record = buffer.duplicate();
+		record.position(position + 8);
+		final JournalRecord result = new JournalRecord();
+		result.setOffset(record.getLong());
+		result.setTimestamp(record.getLong());
+		final byte[] topic = new byte[record.getShort() & 0xffff];
+		final byte[] header = new byte[record.getShort() & 0xffff];
+		final byte[] payload = new byte[buffer.getInt(position) + 4 - RECORD_HEADER - topic.length - header.length];
+		record.get(topic);
+		record.get(header);
+		record.get(payload);
+		result.setTopic(topic);
+		result.setHeader(header);
+		result.setPayload(payload);
+		return result;
+	}
+
+	private void recover() {
+		int count = 0;
+		while (count * INDEX_ENTRY + INDEX_ENTRY <= index.capacity() && index.getLong(count * INDEX_ENTRY + 8) != 0) {
+			count++;
+		}
+		int position = (count > 0) ? index.getInt((count - 1) * INDEX_ENTRY + 4) : 0;
+		lastIndexed = (count > 0) ? position : -1;
+		long offset = (count > 0) ? baseOffset + index.getInt((count - 1) * INDEX_ENTRY) : baseOffset;
+		while (position + RECORD_HEADER <= log.capacity()) {
+			final int length = log.getInt(position);
+			if (length < RECORD_HEADER - 4 || position + length + 4 > log.capacity()
+					|| log.getLong(position + 8) != offset
+					|| log.getInt(position + 4) != checksum(position, length)) {
+				break;
+			}
+			position += length + 4;
+			offset++;
+		}
+		indexCount = count;
+		nextOffset = offset;
+		committed = position;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("baseOffset", baseOffset)
+				.append("nextOffset", nextOffset)
+				.append("committed", committed)
+				.build();
+	}
+
+}
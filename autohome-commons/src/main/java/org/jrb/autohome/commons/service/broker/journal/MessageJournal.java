@@ -0,0 +1,208 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of the envelopes a broker publishes, so that a
+ * coordinator that was away can catch up on what it missed. Envelopes are
+ * numbered with consecutive offsets and written to memory-mapped segment
+ * files of <code>segmentSize</code> bytes, rolling to a new segment when one
+ * fills up and deleting the oldest beyond <code>maxSegments</code>. Each
+ * segment keeps a sparse index of offset and timestamp every
+ * <code>indexInterval</code> bytes, so a replay can start from either with a
+ * binary search and a short scan.
+ * <p>
+ * Appending is a copy into mapped memory with no system call or lock, left
+ * to the operating system to write back; segments are only forced to disk
+ * when they are rolled or the journal is closed. The journal must be
+ * appended to from a single thread, while any number of threads may read
+ * it.
+ * <p>
+ * On startup, existing segments in the directory are reopened and the end of
+ * the last one is recovered by checking the CRC of each record after its last
+ * index entry.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class MessageJournal {
+
+	private static final Logger LOG = LoggerFactory.getLogger(MessageJournal.class);
+
+	public static final String REPLAY_COMMAND = "journal.replay";
+
+	private static final byte[] EMPTY_FRAME = new byte[0];
+
+	private final File directory;
+	private final int segmentSize;
+	private final int indexInterval;
+	private final int maxSegments;
+	private final ConcurrentNavigableMap<Long, JournalSegment> segments = new ConcurrentSkipListMap<>();
+
+	private JournalSegment active;
+
+	private volatile long endOffset;
+
+	public MessageJournal(
+			final File directory,
+			final int segmentSize,
+			final int indexInterval,
+			final int maxSegments) throws IOException {
+		this.directory = directory;
+		this.segmentSize = segmentSize;
+		this.indexInterval = Math.max(1, indexInterval);
+		this.maxSegments = Math.max(1, maxSegments);
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Unable to create journal directory " + directory);
+		}
+		final File[] files = directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File file) {
+				return JournalSegment.isLogFile(file);
+			}
+		});
+		Arrays.sort(files);
+		for (final File file : files) {
+			final JournalSegment segment = JournalSegment.open(file, this.indexInterval);
+			segments.put(segment.getBaseOffset(), segment);
+		}
+		if (segments.isEmpty()) {
+			active = JournalSegment.create(directory, 0, segmentSize, this.indexInterval);
+			segments.put(0L, active);
+		} else {
+			active = segments.lastEntry().getValue();
+		}
+		endOffset = active.getNextOffset();
+		LOG.info("Opened journal in {} with {} segments, offsets {} to {}",
+				directory, segments.size(), getStartOffset(), endOffset);
+	}
+
+	/**
+	 * Appends an envelope, returning its offset, or <code>-1</code> if it is
+	 * too large for a segment.
+	 */
+	public long append(final byte[] topic, final byte[] header, final byte[] payload) throws IOException {
+		final byte[] topicFrame = (topic != null) ? topic : EMPTY_FRAME;
+		final byte[] headerFrame = (header != null) ? header : EMPTY_FRAME;
+		final long timestamp = System.currentTimeMillis();
+		if (!active.append(timestamp, topicFrame, headerFrame, payload)) {
+			if (JournalSegment.RECORD_HEADER + topicFrame.length + headerFrame.length + payload.length > segmentSize) {
+				return -1;
+			}
+			roll();
+			active.append(timestamp, topicFrame, headerFrame, payload);
+		}
+		return endOffset++;
+	}
+
+	public void close() {
+		for (final JournalSegment segment : segments.values()) {
+			segment.close(false);
+		}
+		LOG.info("Closed journal at offset {}", endOffset);
+	}
+
+	public File getDirectory() {
+		return directory;
+	}
+
+	/**
+	 * Offset the next envelope will be appended at.
+	 */
+	public long getEndOffset() {
+		return endOffset;
+	}
+
+	/**
+	 * Offset of the oldest envelope still retained.
+	 */
+	public long getStartOffset() {
+		return segments.firstKey();
+	}
+
+	/**
+	 * Offset of the first envelope appended at or after the timestamp, or the
+	 * end offset if there is none.
+	 */
+	public long offsetAt(final long timestamp) {
+		long start = segments.firstKey();
+		for (final JournalSegment segment : segments.values()) {
+			final long first = segment.getFirstTimestamp();
+			if (first < 0 || first > timestamp) {
+				break;
+			}
+			start = segment.getBaseOffset();
+		}
+		for (final JournalSegment segment : segments.tailMap(start).values()) {
+			final long offset = segment.offsetAt(timestamp);
+			if (offset >= 0) {
+				return offset;
+			}
+		}
+		return endOffset;
+	}
+
+	/**
+	 * Reads up to <code>maxRecords</code> envelopes from the offset on. An
+	 * offset older than the journal retains starts from the oldest envelope.
+	 */
+	public JournalPage read(final long fromOffset, final int maxRecords) {
+		final JournalPage page = new JournalPage();
+		long offset = Math.max(fromOffset, getStartOffset());
+		final Long start = segments.floorKey(offset);
+		if (start != null) {
+			for (final JournalSegment segment : segments.tailMap(start).values()) {
+				segment.read(offset, page, maxRecords);
+				if (page.getRecords().size() >= maxRecords) {
+					break;
+				}
+			}
+		}
+		if (!page.getRecords().isEmpty()) {
+			offset = page.getRecords().get(page.getRecords().size() - 1).getOffset() + 1;
+		}
+		page.setNextOffset(offset);
+		page.setEndOffset(Math.max(offset, endOffset));
+		return page;
+	}
+
+	private void roll() throws IOException {
+		active.close(false);
+		active = JournalSegment.create(directory, endOffset, segmentSize, indexInterval);
+		segments.put(endOffset, active);
+		while (segments.size() > maxSegments) {
+			segments.pollFirstEntry().getValue().close(true);
+		}
+		LOG.debug("Rolled journal to segment {}", endOffset);
+	}
+
+}
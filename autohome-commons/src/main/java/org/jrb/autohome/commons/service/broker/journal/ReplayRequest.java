@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Payload of a {@link MessageJournal#REPLAY_COMMAND}: replay up to
+ * <code>maxRecords</code> records from <code>fromOffset</code>, or, when that
+ * is negative, from the first record stamped at or after
+ * <code>fromTimestamp</code>.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class ReplayRequest {
+
+	private long fromOffset = -1;
+	private long fromTimestamp;
+	private int maxRecords;
+
+	public ReplayRequest() {
+	}
+
+	public ReplayRequest(final long fromOffset, final long fromTimestamp, final int maxRecords) {
+		this.fromOffset = fromOffset;
+		this.fromTimestamp = fromTimestamp;
+		this.maxRecords = maxRecords;
+	}
+
+	public long getFromOffset() {
+		return fromOffset;
+	}
+
+	public long getFromTimestamp() {
+		return fromTimestamp;
+	}
+
+	public int getMaxRecords() {
+		return maxRecords;
+	}
+
+	public void setFromOffset(final long fromOffset) {
+		this.fromOffset = fromOffset;
+	}
+
+	public void setFromTimestamp(final long fromTimestamp) {
+		this.fromTimestamp = fromTimestamp;
+	}
+
+	public void setMaxRecords(final int maxRecords) {
+		this.maxRecords = maxRecords;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("fromOffset", fromOffset)
+				.append("fromTimestamp", fromTimestamp)
+				.append("maxRecords", maxRecords)
+				.build();
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.liveness;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Liveness of one coordinator, as last seen by a {@link LivenessRegistry}.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class CoordinatorStatus {
+
+	private final String id;
+	private final boolean alive;
+	private final long lastSeen;
+	private final long heartbeats;
+
+	public CoordinatorStatus(final String id, final boolean alive, final long lastSeen, final long heartbeats) {
+		this.id = id;
+		this.alive = alive;
+		this.lastSeen = lastSeen;
+		this.heartbeats = heartbeats;
+	}
+
+	/**
+	 * Number of heartbeats received, explicit or piggybacked on other traffic.
+	 */
+	public long getHeartbeats() {
+		return heartbeats;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Time of the last heartbeat, in milliseconds since the epoch.
+	 */
+	public long getLastSeen() {
+		return lastSeen;
+	}
+
+	public boolean isAlive() {
+		return alive;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("id", id)
+				.append("alive", alive)
+				.append("lastSeen", lastSeen)
+				.append("heartbeats", heartbeats)
+				.build();
+	}
+
+}
@@ -0,0 +1,222 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.liveness;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Registry of the coordinators heard from by a MASTER, expiring those that
+ * stop sending heartbeats. Deadlines are kept in a hashed timing wheel: a ring
+ * of <code>timeout / tick + 1</code> slots, each holding a doubly linked list
+ * of the coordinators due to expire at that tick. A heartbeat unlinks its
+ * coordinator, advances the wheel to the heartbeat's time and relinks the
+ * coordinator <code>timeout</code> ahead of it, so that a coordinator heard
+ * from while the wheel lagged behind is not expired as it catches up. Each
+ * tick only visits the slot under the wheel, whose coordinators are exactly
+ * those that have expired, so neither depends on the number of coordinators.
+ * <p>
+ * Expired coordinators stay in the registry, reported as not alive, until
+ * they are heard from again. The registry is driven by explicit times so that
+ * it can be ticked from the broker's reactor; its methods are synchronized so
+ * that it can be read from any thread.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LivenessRegistry {
+
+	private static final Logger LOG = LoggerFactory.getLogger(LivenessRegistry.class);
+
+	private final long tickMillis;
+	private final long timeoutTicks;
+	private final Entry[] wheel;
+	private final Map<String, Entry> entries = new HashMap<>();
+
+	private long origin = -1;
+	private long currentTick = 0;
+
+	public LivenessRegistry(final long timeoutMillis, final long tickMillis) {
+		if (tickMillis < 1 || timeoutMillis < tickMillis) {
+			throw new IllegalArgumentException("Heartbeat timeout must be at least one tick");
+		}
+		this.tickMillis = tickMillis;
+		this.timeoutTicks = (timeoutMillis + tickMillis - 1) / tickMillis;
+		this.wheel = new Entry[(int) timeoutTicks + 1];
+	}
+
+	/**
+	 * Status of a coordinator, or <code>null</code> if it was never heard
+	 * from.
+	 */
+	public synchronized CoordinatorStatus getCoordinator(final String id) {
+		final Entry entry = entries.get(id);
+		return (entry != null) ? entry.toStatus() : null;
+	}
+
+	public synchronized List<CoordinatorStatus> getCoordinators() {
+		final List<CoordinatorStatus> coordinators = new ArrayList<>(entries.size());
+		for (final Entry entry : entries.values()) {
+			coordinators.add(entry.toStatus());
+		}
+		return coordinators;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	/**
+	 * Records a heartbeat from a coordinator at the given time.
+	 */
+	public synchronized void heartbeat(final String id, final long now) {
+		if (origin < 0) {
+			origin = now;
+		}
+		Entry entry = entries.get(id);
+		if (entry == null) {
+			entry = new Entry(id);
+			entries.put(id, entry);
+		} else {
+			unlink(entry);
+		}
+		tick(now);
+		if (!entry.alive) {
+			entry.alive = true;
+			LOG.info("Coordinator {} is alive", id);
+		}
+		entry.lastSeen = now;
+		entry.heartbeats++;
+		entry.deadline = currentTick + timeoutTicks;
+		link(entry);
+	}
+
+	/**
+	 * Whether a coordinator was heard from and has since expired.
+	 */
+	public synchronized boolean isExpired(final String id) {
+		final Entry entry = entries.get(id);
+		return entry != null && !entry.alive;
+	}
+
+	/**
+	 * Advances the wheel to the given time, expiring coordinators whose
+	 * heartbeats are overdue.
+	 * 
+	 * @return the number of coordinators expired
+	 */
+	public synchronized int tick(final long now) {
+		if (origin < 0) {
+			return 0;
+		}
+		final long target = (now - origin) / tickMillis;
+		int expired = 0;
+		if (target - currentTick >= wheel.length) {
+			for (int slot = 0; slot < wheel.length; slot++) {
+				while (wheel[slot] != null) {
+					expire(wheel[slot]);
+					expired++;
+				}
+			}
+			currentTick = target;
+			return expired;
+		}
+		while (currentTick < target) {
+			currentTick++;
+			Entry entry = wheel[(int) (currentTick % wheel.length)];
+			while (entry != null) {
+				final Entry next = entry.next;
+				if (entry.deadline <= currentTick) {
+					expire(entry);
+					expired++;
+				}
+				entry = next;
+			}
+		}
+		return expired;
+	}
+
+	private void expire(final Entry entry) {
+		unlink(entry);
+		entry.alive = false;
+		LOG.warn("Coordinator {} expired; last heard from {} ms ago", entry.id,
+				(origin + currentTick * tickMillis) - entry.lastSeen);
+	}
+
+	private void link(final Entry entry) {
+		final int slot = (int) (entry.deadline % wheel.length);
+		entry.slot = slot;
+		entry.prev = null;
+		entry.next = wheel[slot];
+		if (entry.next != null) {
+			entry.next.prev = entry;
+		}
+		wheel[slot] = entry;
+	}
+
+	private void unlink(final Entry entry) {
+		if (entry.slot < 0) {
+			return;
+		}
+		if (entry.prev != null) {
+			entry.prev.next = entry.next;
+		} else {
+			wheel[entry.slot] = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.prev = entry.prev;
+		}
+		entry.prev = null;
+		entry.next = null;
+		entry.slot = -1;
+	}
+
+	/**
+	 * A coordinator, linked into the wheel slot of its deadline while alive.
+	 */
+	private static class Entry {
+
+		private final String id;
+		private boolean alive = false;
+		private long lastSeen;
+		private long heartbeats = 0;
+		private long deadline;
+		private int slot = -1;
+		private Entry prev;
+		private Entry next;
+
+		Entry(final String id) {
+			this.id = id;
+		}
+
+		CoordinatorStatus toStatus() {
+			return new CoordinatorStatus(id, alive, lastSeen, heartbeats);
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.metrics;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Counters and latency histograms for the broker's hot path. Every
+ * {@link BrokerOperation} is tracked in total as well as per topic and per
+ * message type.
+ * <p>
+ * Recording never allocates once a topic or type has been seen: stats are
+ * looked up by the topic and type strings the broker already holds, and are
+ * backed by atomic counters. To keep a runaway topic space from exhausting
+ * memory, at most <code>maxTags</code> distinct topics (and types) are tracked
+ * per operation; the remainder are folded into {@link #OTHER_TAG}.
+ * <p>
+ * Messages discarded under an overflow policy are counted as drops of the
+ * operation that discarded them: PUBLISH for the outbound queue and RECEIVE
+ * for the dispatch lanes.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class BrokerMetrics {
+
+	public static final int DEFAULT_MAX_TAGS = 256;
+	public static final String OTHER_TAG = "other";
+
+	private final Map<BrokerOperation, OperationStats> totals = new EnumMap<>(BrokerOperation.class);
+	private final Map<BrokerOperation, TaggedStats> byTopic = new EnumMap<>(BrokerOperation.class);
+	private final Map<BrokerOperation, TaggedStats> byType = new EnumMap<>(BrokerOperation.class);
+	private final ConcurrentMap<String, Gauge> gauges = new ConcurrentHashMap<>();
+
+	public BrokerMetrics() {
+		this(DEFAULT_MAX_TAGS);
+	}
+
+	public BrokerMetrics(final int maxTags) {
+		for (final BrokerOperation operation : BrokerOperation.values()) {
+			totals.put(operation, new OperationStats());
+			byTopic.put(operation, new TaggedStats(maxTags));
+			byType.put(operation, new TaggedStats(maxTags));
+		}
+	}
+
+	public void drop(final BrokerOperation operation, final String topic, final String type) {
+		totals.get(operation).drop();
+		if (topic != null) {
+			byTopic.get(operation).get(topic).drop();
+		}
+		if (type != null) {
+			byType.get(operation).get(type).drop();
+		}
+	}
+
+	public void failure(final BrokerOperation operation, final String topic, final String type) {
+		totals.get(operation).failure();
+		if (topic != null) {
+			byTopic.get(operation).get(topic).failure();
+		}
+		if (type != null) {
+			byType.get(operation).get(type).failure();
+		}
+	}
+
+	public Map<String, OperationStats> getByTopic(final BrokerOperation operation) {
+		return byTopic.get(operation).view();
+	}
+
+	public Map<String, OperationStats> getByType(final BrokerOperation operation) {
+		return byType.get(operation).view();
+	}
+
+	public Map<String, Gauge> getGauges() {
+		return Collections.unmodifiableMap(gauges);
+	}
+
+	public OperationStats getTotal(final BrokerOperation operation) {
+		return totals.get(operation);
+	}
+
+	public void record(final BrokerOperation operation, final String topic, final String type, final long nanos) {
+		totals.get(operation).record(nanos);
+		if (topic != null) {
+			byTopic.get(operation).get(topic).record(nanos);
+		}
+		if (type != null) {
+			byType.get(operation).get(type).record(nanos);
+		}
+	}
+
+	public void registerGauge(final String name, final Gauge gauge) {
+		gauges.put(name, gauge);
+	}
+
+	/**
+	 * Stats of one operation keyed by a bounded set of tags.
+	 */
+	private static class TaggedStats {
+
+		private final int maxTags;
+		private final ConcurrentMap<String, OperationStats> stats = new ConcurrentHashMap<>();
+		private final OperationStats other = new OperationStats();
+
+		TaggedStats(final int maxTags) {
+			this.maxTags = maxTags;
+		}
+
+		OperationStats get(final String tag) {
+			final OperationStats existing = stats.get(tag);
+			if (existing != null) {
+				return existing;
+			}
+			if (stats.size() >= maxTags) {
+				return other;
+			}
+			final OperationStats created = new OperationStats();
+			final OperationStats raced = stats.putIfAbsent(tag, created);
+			return raced != null ? raced : created;
+		}
+
+		Map<String, OperationStats> view() {
+			if (other.getCount() == 0 && other.getFailures() == 0 && other.getDrops() == 0) {
+				return Collections.unmodifiableMap(stats);
+			}
+			final Map<String, OperationStats> view = new HashMap<>(stats);
+			view.put(OTHER_TAG, other);
+			return Collections.unmodifiableMap(view);
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.metrics;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.metrics.GaugeService;
+import org.springframework.context.SmartLifecycle;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Periodically copies {@link BrokerMetrics} into the actuator's
+ * {@link GaugeService}, so they are served by the <code>/metrics</code>
+ * endpoint. For every operation, topic and message type it submits:
+ * <ul>
+ * <li><code>broker.&lt;op&gt;[.topic|.type.&lt;tag&gt;].count</code> - total
+ * count</li>
+ * <li><code>...failures</code> - total failures</li>
+ * <li><code>...drops</code> - total messages discarded on overflow</li>
+ * <li><code>...rate</code> - operations per second over the last interval</li>
+ * <li><code>...latency.mean|p50|p99|max</code> - latency in milliseconds over
+ * the last interval</li>
+ * </ul>
+ * along with every registered gauge as <code>broker.&lt;name&gt;</code>.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class BrokerMetricsExporter implements SmartLifecycle, Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(BrokerMetricsExporter.class);
+
+	private static final String PREFIX = "broker.";
+	private static final double NANOS_PER_MILLI = 1000000.0;
+
+	private final BrokerMetrics metrics;
+	private final GaugeService gaugeService;
+	private final long interval;
+	private final Map<String, LatencyHistogram.Snapshot> previous = new HashMap<>();
+
+	private ScheduledExecutorService scheduler;
+	private long lastRun;
+
+	private volatile boolean running = false;
+
+	public BrokerMetricsExporter(final BrokerMetrics metrics, final GaugeService gaugeService, final long interval) {
+		this.metrics = metrics;
+		this.gaugeService = gaugeService;
+		this.interval = interval;
+	}
+
+	@Override
+	public int getPhase() {
+		return 0;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	@Override
+	public void run() {
+		try {
+			final long now = System.nanoTime();
+			final double elapsed = (now - lastRun) / (NANOS_PER_MILLI * 1000);
+			lastRun = now;
+			for (final BrokerOperation operation : BrokerOperation.values()) {
+				final String name = PREFIX + operation.getKey();
+				export(name, metrics.getTotal(operation), elapsed);
+				for (final Map.Entry<String, OperationStats> entry : metrics.getByTopic(operation).entrySet()) {
+					export(name + ".topic." + entry.getKey(), entry.getValue(), elapsed);
+				}
+				for (final Map.Entry<String, OperationStats> entry : metrics.getByType(operation).entrySet()) {
+					export(name + ".type." + entry.getKey(), entry.getValue(), elapsed);
+				}
+			}
+			for (final Map.Entry<String, Gauge> entry : metrics.getGauges().entrySet()) {
+				gaugeService.submit(PREFIX + entry.getKey(), entry.getValue().getValue());
+			}
+		} catch (final Exception e) {
+			LOG.error("Unable to export broker metrics: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void start() {
+		LOG.info("Exporting broker metrics every {}ms", interval);
+		lastRun = System.nanoTime();
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("broker-metrics-%d").setDaemon(true).build());
+		scheduler.scheduleAtFixedRate(this, interval, interval, TimeUnit.MILLISECONDS);
+		running = true;
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		if (scheduler != null) {
+			scheduler.shutdown();
+		}
+	}
+
+	@Override
+	public void stop(final Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	private void export(final String name, final OperationStats stats, final double elapsed) {
+		final LatencyHistogram.Snapshot snapshot = stats.getLatency().snapshot();
+		final LatencyHistogram.Snapshot last = previous.put(name, snapshot);
+		final LatencyHistogram.Snapshot window = (last != null) ? snapshot.minus(last) : snapshot;
+
+		gaugeService.submit(name + ".count", snapshot.getCount());
+		gaugeService.submit(name + ".failures", stats.getFailures());
+		gaugeService.submit(name + ".drops", stats.getDrops());
+		gaugeService.submit(name + ".rate", elapsed > 0 ? window.getCount() / elapsed : 0.0);
+		if (window.getCount() > 0) {
+			gaugeService.submit(name + ".latency.mean", window.getMean() / NANOS_PER_MILLI);
+			gaugeService.submit(name + ".latency.p50", window.getPercentile(0.5) / NANOS_PER_MILLI);
+			gaugeService.submit(name + ".latency.p99", window.getPercentile(0.99) / NANOS_PER_MILLI);
+			gaugeService.submit(name + ".latency.max", window.getMax() / NANOS_PER_MILLI);
+		}
+	}
+
+}
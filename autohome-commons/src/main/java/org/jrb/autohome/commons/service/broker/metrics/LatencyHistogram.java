@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Lock-free, allocation-free histogram of latencies in nanoseconds. Values
+ * are counted in power-of-two buckets, so bucket <code>i</code> holds values
+ * in <code>[2^(i-1), 2^i)</code>; percentiles are therefore reported as the
+ * upper bound of the bucket they fall in, which is accurate to within a
+ * factor of two.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LatencyHistogram {
+
+	public static final int BUCKETS = 64;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong total = new AtomicLong();
+	private final AtomicLong max = new AtomicLong();
+
+	static int bucketOf(final long nanos) {
+		if (nanos <= 0) {
+			return 0;
+		}
+		return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(nanos));
+	}
+
+	static long upperBoundOf(final int bucket) {
+		return bucket >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << bucket) - 1;
+	}
+
+	public long getCount() {
+		return count.get();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public void record(final long nanos) {
+		buckets.incrementAndGet(bucketOf(nanos));
+		count.incrementAndGet();
+		total.addAndGet(nanos);
+		long current;
+		while (nanos > (current = max.get())) {
+			if (max.compareAndSet(current, nanos)) {
+				break;
+			}
+		}
+	}
+
+	public Snapshot snapshot() {
+		final long[] counts = new long[BUCKETS];
+		for (int i = 0; i < BUCKETS; i++) {
+			counts[i] = buckets.get(i);
+		}
+		return new Snapshot(counts, count.get(), total.get(), max.get());
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("count", count.get())
+				.append("max", max.get())
+				.build();
+	}
+
+	/**
+	 * Point-in-time copy of a histogram. Subtracting an earlier snapshot gives
+	 * the distribution of the values recorded in between.
+	 */
+	public static class Snapshot {
+
+		private final long[] buckets;
+		private final long count;
+		private final long total;
+		private final long max;
+
+		Snapshot(final long[] buckets, final long count, final long total, final long max) {
+			this.buckets = buckets;
+			this.count = count;
+			this.total = total;
+			this.max = max;
+		}
+
+		public long getCount() {
+			return count;
+		}
+
+		/**
+		 * Largest recorded value, or for a difference of snapshots the upper
+		 * bound of the highest occupied bucket.
+		 */
+		public long getMax() {
+			return max;
+		}
+
+		public double getMean() {
+			return count == 0 ? 0.0 : (double) total / count;
+		}
+
+		public long getPercentile(final double quantile) {
+			if (count == 0) {
+				return 0;
+			}
+			final long rank = (long) Math.ceil(quantile * count);
+			long seen = 0;
+			for (int i = 0; i < buckets.length; i++) {
+				seen += buckets[i];
+				if (seen >= rank) {
+					return Math.min(upperBoundOf(i), max);
+				}
+			}
+			return max;
+		}
+
+		public Snapshot minus(final Snapshot previous) {
+			final long[] counts = new long[BUCKETS];
+			int highest = 0;
+			for (int i = 0; i < BUCKETS; i++) {
+				counts[i] = buckets[i] - previous.buckets[i];
+				if (counts[i] > 0) {
+					highest = i;
+				}
+			}
+			return new Snapshot(counts, count - previous.count, total - previous.total, Math.min(upperBoundOf(highest), max));
+		}
+
+	}
+
+}
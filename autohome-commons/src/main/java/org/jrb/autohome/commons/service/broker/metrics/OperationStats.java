@@ -0,0 +1,81 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Counters and latency histogram for a single {@link BrokerOperation}, either
+ * in total or for one topic or message type.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class OperationStats {
+
+	private final AtomicLong drops = new AtomicLong();
+	private final AtomicLong failures = new AtomicLong();
+	private final LatencyHistogram latency = new LatencyHistogram();
+
+	/**
+	 * Counts a message discarded by an overflow policy.
+	 */
+	public void drop() {
+		drops.incrementAndGet();
+	}
+
+	public void failure() {
+		failures.incrementAndGet();
+	}
+
+	public long getCount() {
+		return latency.getCount();
+	}
+
+	public long getDrops() {
+		return drops.get();
+	}
+
+	public long getFailures() {
+		return failures.get();
+	}
+
+	public LatencyHistogram getLatency() {
+		return latency;
+	}
+
+	public void record(final long nanos) {
+		latency.record(nanos);
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("count", latency.getCount())
+				.append("failures", failures.get())
+				.append("drops", drops.get())
+				.build();
+	}
+
+}
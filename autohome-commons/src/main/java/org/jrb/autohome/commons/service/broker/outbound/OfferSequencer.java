@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.outbound;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps envelopes encoded in order under a lock in that order when they are
+ * offered to a {@link PublisherChannel} after the lock is released. A
+ * publisher takes a ticket for its topic while still holding the lock, then
+ * waits for its turn before offering and hands the turn on afterwards, so
+ * that a publisher blocked on a full queue no longer keeps others from
+ * encoding.
+ * <p>
+ * Tickets are counted per stripe of topics, so envelopes on one topic are
+ * offered in order while those on topics of other stripes do not wait for
+ * them.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class OfferSequencer {
+
+	public static final int DEFAULT_STRIPES = 64;
+
+	private static final long TURN_PARK_NANOS = 1000L;
+
+	private final int mask;
+	private final AtomicLongArray issued;
+	private final AtomicLongArray serving;
+
+	public OfferSequencer() {
+		this(DEFAULT_STRIPES);
+	}
+
+	/**
+	 * @param stripes
+	 *            number of stripes, rounded up to a power of two
+	 */
+	public OfferSequencer(final int stripes) {
+		int size = 1;
+		while (size < stripes) {
+			size <<= 1;
+		}
+		mask = size - 1;
+		issued = new AtomicLongArray(size);
+		serving = new AtomicLongArray(size);
+	}
+
+	/**
+	 * Waits until every envelope ticketed before the given one on its stripe
+	 * has been offered.
+	 */
+	public void await(final String topic, final long ticket) {
+		final int stripe = stripe(topic);
+		while (serving.get(stripe) != ticket) {
+			LockSupport.parkNanos(TURN_PARK_NANOS);
+		}
+	}
+
+	/**
+	 * Hands the turn to the next ticket; must follow {@link #await} whether or
+	 * not the offer succeeded.
+	 */
+	public void release(final String topic, final long ticket) {
+		serving.set(stripe(topic), ticket + 1);
+	}
+
+	/**
+	 * Takes the next ticket for a topic; must be called under the lock that
+	 * orders the envelopes.
+	 */
+	public long take(final String topic) {
+		return issued.getAndIncrement(stripe(topic));
+	}
+
+	private int stripe(final String topic) {
+		final int hash = topic.hashCode();
+		return (hash ^ (hash >>> 16)) & mask;
+	}
+
+}
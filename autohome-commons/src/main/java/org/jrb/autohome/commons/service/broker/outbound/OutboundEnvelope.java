@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.outbound;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.snapshot.LastValueCache;
+
+/**
+ * Fully encoded frames of an outbound envelope, ready to be written to the
+ * publisher socket. For multipart envelopes the topic, header and payload
+ * frames are kept separately; for single-frame envelopes only the payload is
+ * set and holds the complete frame. The topic and message type key are kept
+ * as plain strings for batching and metrics.
+ * <p>
+ * A delta-encoded envelope may also carry a snapshot payload, holding the
+ * full state the delta leads to, which the {@link LastValueCache} caches in
+ * its place.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class OutboundEnvelope {
+
+	private final String topic;
+	private final String type;
+	private final byte[] topicFrame;
+	private final byte[] header;
+	private final byte[] payload;
+	private final byte[] snapshot;
+
+	public OutboundEnvelope(
+			final String topic,
+			final String type,
+			final byte[] topicFrame,
+			final byte[] header,
+			final byte[] payload) {
+		this(topic, type, topicFrame, header, payload, null);
+	}
+
+	public OutboundEnvelope(
+			final String topic,
+			final String type,
+			final byte[] topicFrame,
+			final byte[] header,
+			final byte[] payload,
+			final byte[] snapshot) {
+		this.topic = topic;
+		this.type = type;
+		this.topicFrame = topicFrame;
+		this.header = header;
+		this.payload = payload;
+		this.snapshot = snapshot;
+	}
+
+	public static OutboundEnvelope single(final String topic, final String type, final byte[] frame) {
+		return new OutboundEnvelope(topic, type, null, null, frame);
+	}
+
+	public byte[] getHeader() {
+		return header;
+	}
+
+	public byte[] getPayload() {
+		return payload;
+	}
+
+	/**
+	 * Uncompressed snapshot payload standing in for a delta payload, or
+	 * <code>null</code>.
+	 */
+	public byte[] getSnapshot() {
+		return snapshot;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public byte[] getTopicFrame() {
+		return topicFrame;
+	}
+
+	public String getType() {
+		return type;
+	}
+
+	public boolean isMultipart() {
+		return header != null;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("topic", topic)
+				.append("type", type)
+				.append("header", header != null ? header.length : 0)
+				.append("payload", payload != null ? payload.length : 0)
+				.build();
+	}
+
+}
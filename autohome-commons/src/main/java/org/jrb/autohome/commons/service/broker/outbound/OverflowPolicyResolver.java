@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.outbound;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+
+/**
+ * Resolves the {@link OverflowPolicy} of a topic from a list of
+ * <code>pattern:POLICY</code> rules, such as
+ * <code>sensor/motion/#:CONFLATE</code>. Patterns follow {@link TopicTrie}
+ * syntax. When several rules match a topic the one declared first wins, and a
+ * topic that matches none gets the default policy.
+ * <p>
+ * Rules are fixed at construction, so resolution is thread-safe; resolved
+ * topics are cached, up to a bound.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class OverflowPolicyResolver {
+
+	private static final int MAX_CACHED_TOPICS = 4096;
+
+	private final OverflowPolicy defaultPolicy;
+	private final TopicTrie<Rule> rules = new TopicTrie<>();
+	private final ConcurrentMap<String, OverflowPolicy> cache = new ConcurrentHashMap<>();
+
+	public OverflowPolicyResolver(final OverflowPolicy defaultPolicy) {
+		this(defaultPolicy, Collections.<String> emptyList());
+	}
+
+	public OverflowPolicyResolver(final OverflowPolicy defaultPolicy, final List<String> rules) {
+		this.defaultPolicy = defaultPolicy;
+		int order = 0;
+		for (final String rule : rules) {
+			final int pos = rule.lastIndexOf(':');
+			if (pos <= 0) {
+				throw new IllegalArgumentException("Overflow rule must be pattern:POLICY - " + rule);
+			}
+			final String pattern = rule.substring(0, pos).trim();
+			final String policy = rule.substring(pos + 1).trim().toUpperCase(Locale.ENGLISH);
+			this.rules.add(pattern, new Rule(order++, pattern, OverflowPolicy.valueOf(policy)));
+		}
+	}
+
+	public OverflowPolicy getDefaultPolicy() {
+		return defaultPolicy;
+	}
+
+	public OverflowPolicy resolve(final String topic) {
+		if (topic == null) {
+			return match(null);
+		}
+		final OverflowPolicy cached = cache.get(topic);
+		if (cached != null) {
+			return cached;
+		}
+		final OverflowPolicy policy = match(topic);
+		if (cache.size() < MAX_CACHED_TOPICS) {
+			cache.putIfAbsent(topic, policy);
+		}
+		return policy;
+	}
+
+	private OverflowPolicy match(final String topic) {
+		if (rules.isEmpty()) {
+			return defaultPolicy;
+		}
+		final List<Rule> matches = new ArrayList<>();
+		rules.match(topic, matches);
+		Rule first = null;
+		for (final Rule rule : matches) {
+			if (first == null || rule.order < first.order) {
+				first = rule;
+			}
+		}
+		return (first != null) ? first.policy : defaultPolicy;
+	}
+
+	/**
+	 * A single <code>pattern:POLICY</code> rule.
+	 */
+	private static class Rule {
+
+		private final int order;
+		private final String pattern;
+		private final OverflowPolicy policy;
+
+		private Rule(final int order, final String pattern, final OverflowPolicy policy) {
+			this.order = order;
+			this.pattern = pattern;
+			this.policy = policy;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this)
+					.append("pattern", pattern)
+					.append("policy", policy)
+					.build();
+		}
+
+	}
+
+}
@@ -0,0 +1,413 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.outbound;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import org.jrb.autohome.commons.service.broker.EnvelopeBatch;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.jrb.autohome.commons.service.broker.delta.DeltaEncoder;
+import org.jrb.autohome.commons.service.broker.journal.MessageJournal;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerOperation;
+import org.jrb.autohome.commons.service.broker.reactor.Reactor;
+import org.jrb.autohome.commons.service.broker.reactor.ReactorTask;
+import org.jrb.autohome.commons.service.broker.snapshot.LastValueCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+/**
+ * Single owner of a broker's publisher socket. ZeroMQ sockets are not
+ * thread-safe, so rather than have every publishing thread write to the
+ * socket, publishers {@link #offer(OutboundEnvelope)} already-encoded
+ * envelopes onto a lock-free multi-producer queue, and the broker's
+ * {@link Reactor} thread drains that queue in batches of up to
+ * <code>batchSize</code> envelopes per cycle and writes them to the socket.
+ * <p>
+ * When batching is enabled, multipart envelopes drained in the same cycle are
+ * grouped by topic and each group is sent as a single {@link EnvelopeBatch}
+ * of up to <code>batchMaxMessages</code> envelopes or
+ * <code>batchMaxBytes</code> bytes. Nothing is ever held back waiting for a
+ * batch to fill, so batch sizes follow the queue depth: an idle channel sends
+ * each envelope on its own as soon as it arrives, while a backed-up channel
+ * coalesces whatever has accumulated.
+ * <p>
+ * The queue holds at most <code>capacity</code> envelopes (approximately, as
+ * producers race). What happens to an envelope offered to a full queue is
+ * decided per topic by an {@link OverflowPolicyResolver}: the publisher blocks
+ * until the reactor has drained some room, the oldest queued envelope is
+ * discarded, or the offered envelope itself is. Topics under
+ * {@link OverflowPolicy#CONFLATE} never queue more than one envelope; a newer
+ * envelope replaces the one still waiting, and conflated topics are written
+ * after the ordinary queue in each cycle. Envelopes without a topic cannot be
+ * conflated and fall back to dropping the oldest. Each discarded envelope is
+ * counted as a PUBLISH drop in the {@link BrokerMetrics}, and a discarded
+ * delta or keyframe makes the {@link DeltaEncoder} forget its key, so that
+ * receivers left with a gap get a keyframe next.
+ * <p>
+ * Once written, envelopes are subject to the socket's send high-water mark,
+ * beyond which ZeroMQ silently discards them per subscriber; keeping the queue
+ * bounded here is what makes that loss visible and controllable.
+ * <p>
+ * When given a {@link LastValueCache}, every envelope is numbered and cached
+ * as it is written, and when given a {@link MessageJournal}, appended to it;
+ * both happen on the reactor thread, which is their single writer.
+ * <p>
+ * After {@link #stop()} no more envelopes are accepted; those still queued are
+ * written when the reactor shuts down, before it closes the socket, which then
+ * lingers for up to <code>linger</code> milliseconds to flush them to the
+ * network.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class PublisherChannel implements ReactorTask {
+
+	private static final Logger LOG = LoggerFactory.getLogger(PublisherChannel.class);
+
+	private static final long FULL_PARK_NANOS = 10000L;
+
+	private static final byte[] BATCH_HEADER = new EnvelopeHeader(
+			"", MessageCodecRegistry.JSON_ID, EnvelopeHeader.FLAG_BATCH).encode();
+
+	private final Reactor reactor;
+	private final ZMQ.Socket socket;
+	private final int batchSize;
+	private final Queue<OutboundEnvelope> queue = new ConcurrentLinkedQueue<>();
+	private final Queue<String> conflatedTopics = new ConcurrentLinkedQueue<>();
+	private final ConcurrentMap<String, OutboundEnvelope> conflated = new ConcurrentHashMap<>();
+	private final AtomicInteger depth = new AtomicInteger();
+
+	private Batcher batcher;
+	private int capacity = Integer.MAX_VALUE;
+	private OverflowPolicyResolver policies = new OverflowPolicyResolver(OverflowPolicy.BLOCK);
+	private BrokerMetrics metrics = new BrokerMetrics();
+	private DeltaEncoder deltaEncoder;
+	private MessageJournal journal;
+	private LastValueCache lastValueCache;
+
+	private volatile boolean running = false;
+
+	public PublisherChannel(final Reactor reactor, final ZMQ.Socket socket, final int batchSize, final long linger) {
+		this.reactor = reactor;
+		this.socket = socket;
+		this.batchSize = Math.max(1, batchSize);
+		socket.setLinger(linger);
+		reactor.manage(socket);
+		reactor.addTask(this);
+	}
+
+	/**
+	 * Number of envelopes queued but not yet written to the socket.
+	 */
+	public int getQueueDepth() {
+		return depth.get();
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	public void offer(final OutboundEnvelope envelope) {
+		final OverflowPolicy policy = policies.resolve(envelope.getTopic());
+		if (policy == OverflowPolicy.CONFLATE && envelope.getTopic() != null) {
+			conflate(envelope);
+			return;
+		}
+		if (depth.get() >= capacity && !makeRoom(policy)) {
+			dropped(envelope);
+			return;
+		}
+		queue.offer(envelope);
+		depth.incrementAndGet();
+		reactor.wake();
+	}
+
+	@Override
+	public boolean perform() {
+		return drain() > 0;
+	}
+
+	/**
+	 * Enables batch envelopes; must be called before {@link #start}.
+	 */
+	public void setBatching(final int batchMaxMessages, final int batchMaxBytes) {
+		batcher = new Batcher(batchMaxMessages, batchMaxBytes);
+	}
+
+	/**
+	 * Encoder whose keys are forgotten when their envelopes are discarded;
+	 * must be called before {@link #start}.
+	 */
+	public void setDeltaEncoder(final DeltaEncoder deltaEncoder) {
+		this.deltaEncoder = deltaEncoder;
+	}
+
+	/**
+	 * Journals every envelope written; must be called before {@link #start}.
+	 */
+	public void setJournal(final MessageJournal journal) {
+		this.journal = journal;
+	}
+
+	/**
+	 * Numbers and caches every envelope written; must be called before
+	 * {@link #start}.
+	 */
+	public void setLastValueCache(final LastValueCache lastValueCache) {
+		this.lastValueCache = lastValueCache;
+	}
+
+	public void setMetrics(final BrokerMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Bounds the queue and sets the overflow policies; must be called before
+	 * {@link #start}.
+	 */
+	public void setOverflow(final int capacity, final OverflowPolicyResolver policies) {
+		this.capacity = Math.max(1, capacity);
+		this.policies = policies;
+	}
+
+	public void start() {
+		running = true;
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	/**
+	 * Waits for the reactor to drain the queue below capacity. On the reactor
+	 * thread itself, which would otherwise wait on itself, the queue is
+	 * drained directly.
+	 */
+	private boolean awaitRoom() {
+		if (reactor.isReactorThread()) {
+			while (depth.get() >= capacity && drain() > 0) {
+				continue;
+			}
+			return true;
+		}
+		while (depth.get() >= capacity) {
+			if (!running) {
+				return false;
+			}
+			reactor.wake();
+			LockSupport.parkNanos(FULL_PARK_NANOS);
+		}
+		return true;
+	}
+
+	private void conflate(final OutboundEnvelope envelope) {
+		final OutboundEnvelope replaced = conflated.put(envelope.getTopic(), envelope);
+		if (replaced != null) {
+			dropped(replaced);
+		} else {
+			conflatedTopics.offer(envelope.getTopic());
+			depth.incrementAndGet();
+			reactor.wake();
+		}
+	}
+
+	private int drain() {
+		int count = 0;
+		OutboundEnvelope envelope;
+		while (count < batchSize && (envelope = queue.poll()) != null) {
+			depth.decrementAndGet();
+			write(envelope);
+			count++;
+		}
+		String topic;
+		while (count < batchSize && (topic = conflatedTopics.poll()) != null) {
+			depth.decrementAndGet();
+			envelope = conflated.remove(topic);
+			if (envelope != null) {
+				write(envelope);
+			}
+			count++;
+		}
+		if (batcher != null) {
+			batcher.flush();
+		}
+		return count;
+	}
+
+	private void dropped(final OutboundEnvelope envelope) {
+		metrics.drop(BrokerOperation.PUBLISH, envelope.getTopic(), envelope.getType());
+		if (deltaEncoder != null && envelope.isMultipart()
+				&& (envelope.getHeader()[1] & (EnvelopeHeader.FLAG_DELTA | EnvelopeHeader.FLAG_KEYFRAME)) != 0) {
+			deltaEncoder.forget(envelope.getTopic(), envelope.getType());
+		}
+	}
+
+	private void journal(final OutboundEnvelope envelope) {
+		try {
+			final long offset = envelope.isMultipart()
+					? journal.append(envelope.getTopicFrame(), envelope.getHeader(), envelope.getPayload())
+					: journal.append(null, null, envelope.getPayload());
+			if (offset < 0) {
+				LOG.warn("Envelope on {} is too large to journal", envelope.getTopic());
+			}
+		} catch (final IOException e) {
+			LOG.error("Unable to journal envelope: " + e.getMessage(), e);
+		}
+	}
+
+	private boolean makeRoom(final OverflowPolicy policy) {
+		switch (policy) {
+		case BLOCK:
+			return awaitRoom();
+		case DROP_NEWEST:
+			return false;
+		default:
+			final OutboundEnvelope oldest = queue.poll();
+			if (oldest != null) {
+				depth.decrementAndGet();
+				dropped(oldest);
+			}
+			return true;
+		}
+	}
+
+	private void send(final OutboundEnvelope envelope) {
+		if (envelope.isMultipart()) {
+			send(envelope.getTopicFrame(), envelope.getHeader(), envelope.getPayload());
+		} else {
+			socket.send(envelope.getPayload(), 0);
+		}
+	}
+
+	private void send(final byte[] topicFrame, final byte[] header, final byte[] payload) {
+		socket.sendMore(topicFrame);
+		socket.sendMore(header);
+		socket.send(payload, 0);
+	}
+
+	private void write(final OutboundEnvelope envelope) {
+		if (lastValueCache != null) {
+			lastValueCache.update(envelope);
+		}
+		if (journal != null) {
+			journal(envelope);
+		}
+		if (batcher != null && envelope.isMultipart()) {
+			batcher.add(envelope);
+		} else {
+			send(envelope);
+		}
+	}
+
+	/**
+	 * Groups the envelopes of one drain cycle by topic into batch envelopes.
+	 * Only ever used from the reactor thread.
+	 */
+	private class Batcher {
+
+		private final int maxMessages;
+		private final int maxBytes;
+		private final Map<String, Group> groups = new LinkedHashMap<>();
+
+		private Batcher(final int maxMessages, final int maxBytes) {
+			this.maxMessages = Math.max(1, maxMessages);
+			this.maxBytes = Math.max(EnvelopeBatch.RECORD_OVERHEAD, maxBytes);
+		}
+
+		private void add(final OutboundEnvelope envelope) {
+			Group group = groups.get(envelope.getTopic());
+			if (group == null) {
+				group = new Group(maxBytes);
+				groups.put(envelope.getTopic(), group);
+			}
+			group.add(envelope);
+			if (group.writer.count() >= maxMessages || group.writer.size() >= maxBytes) {
+				group.flush();
+			}
+		}
+
+		private void flush() {
+			final Iterator<Group> iterator = groups.values().iterator();
+			while (iterator.hasNext()) {
+				final Group group = iterator.next();
+				group.flush();
+				if (group.idle) {
+					iterator.remove();
+				} else {
+					group.idle = true;
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Pending envelopes for a single topic. Groups survive one idle cycle so
+	 * that steady traffic on a topic reuses the same buffer.
+	 */
+	private class Group {
+
+		private final EnvelopeBatch.Writer writer;
+		private OutboundEnvelope first;
+		private boolean idle = false;
+
+		private Group(final int maxBytes) {
+			writer = new EnvelopeBatch.Writer(Math.min(maxBytes, 4096));
+		}
+
+		private void add(final OutboundEnvelope envelope) {
+			if (first == null) {
+				first = envelope;
+			}
+			writer.add(envelope.getHeader(), envelope.getPayload());
+			idle = false;
+		}
+
+		private void flush() {
+			if (first == null) {
+				return;
+			}
+			if (writer.count() == 1) {
+				send(first);
+			} else {
+				send(first.getTopicFrame(), BATCH_HEADER, writer.toByteArray());
+			}
+			first = null;
+			writer.reset();
+		}
+
+	}
+
+}
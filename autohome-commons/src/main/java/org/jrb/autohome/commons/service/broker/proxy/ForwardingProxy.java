@@ -0,0 +1,217 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.proxy;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+/**
+ * XSUB to XPUB forwarder used by a MASTER broker in forwarding mode.
+ * Coordinators publish to the frontend (XSUB) and subscribe at the backend
+ * (XPUB); messages are relayed frame by frame without being decoded, while
+ * subscriptions flow the other way so that coordinators only publish what
+ * someone has asked for.
+ * <p>
+ * The frontend is also bound to an inproc endpoint, to which the master's own
+ * publisher connects. When capture is enabled, the messages relayed from the
+ * frontend, including the master's own publications, are copied to an inproc
+ * capture socket for the master's subscriber to observe. Subscription frames
+ * arrive on the backend and are never captured, so the capture carries
+ * published messages only.
+ * <p>
+ * Relayed messages bypass the master's publisher channel, so a forwarding
+ * master can keep neither a journal nor a last-value cache.
+ * <p>
+ * All sockets are created and bound on the calling thread; after
+ * {@link #start(ThreadFactory)} they belong to the proxy thread, which runs
+ * until {@link #stop(long, TimeUnit)} is called or the context is terminated, and then
+ * closes them without lingering.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class ForwardingProxy implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(ForwardingProxy.class);
+
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	private static final byte SUBSCRIBE = 1;
+
+	private static final long POLL_TIMEOUT = 100;
+	private static final int MAX_RELAY_BATCH = 256;
+
+	private final ZMQ.Context context;
+	private final String frontendEndpoint;
+	private final String captureEndpoint;
+	private final ZMQ.Socket frontend;
+	private final ZMQ.Socket backend;
+	private final ZMQ.Socket capture;
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	private volatile boolean running = false;
+
+	public ForwardingProxy(
+			final ZMQ.Context context,
+			final String frontendAddress,
+			final String backendAddress,
+			final boolean captureEnabled) {
+		this.context = context;
+		final int instance = INSTANCES.incrementAndGet();
+		frontendEndpoint = "inproc://broker-forwarder-" + instance;
+		captureEndpoint = captureEnabled ? "inproc://broker-capture-" + instance : null;
+
+		frontend = context.socket(ZMQ.XSUB);
+		frontend.setLinger(0);
+		frontend.bind(frontendAddress);
+		frontend.bind(frontendEndpoint);
+
+		backend = context.socket(ZMQ.XPUB);
+		backend.setLinger(0);
+		backend.bind(backendAddress);
+
+		if (captureEnabled) {
+			capture = context.socket(ZMQ.PUB);
+			capture.setLinger(0);
+			capture.bind(captureEndpoint);
+		} else {
+			capture = null;
+		}
+	}
+
+	/**
+	 * Inproc endpoint of the capture socket, or <code>null</code> if capture
+	 * is disabled.
+	 */
+	public String getCaptureEndpoint() {
+		return captureEndpoint;
+	}
+
+	/**
+	 * Inproc endpoint at which local publishers join the frontend.
+	 */
+	public String getFrontendEndpoint() {
+		return frontendEndpoint;
+	}
+
+	@Override
+	public void run() {
+		LOG.info("Forwarding started");
+		try {
+			final ZMQ.Poller poller = context.poller(2);
+			final int frontendIndex = poller.register(frontend, ZMQ.Poller.POLLIN);
+			final int backendIndex = poller.register(backend, ZMQ.Poller.POLLIN);
+			while (running) {
+				if (poller.poll(POLL_TIMEOUT) < 0) {
+					break;
+				}
+				if (poller.pollin(frontendIndex)) {
+					relay(frontend, backend, capture);
+				}
+				if (poller.pollin(backendIndex)) {
+					relay(backend, frontend, null);
+				}
+			}
+		} catch (final Exception e) {
+			LOG.debug("Forwarding interrupted: {}", e.getMessage());
+		} finally {
+			running = false;
+			frontend.close();
+			backend.close();
+			if (capture != null) {
+				capture.close();
+			}
+			terminated.countDown();
+			LOG.info("Forwarding stopped");
+		}
+	}
+
+	public void start(final ThreadFactory threadFactory) {
+		running = true;
+		threadFactory.newThread(this).start();
+	}
+
+	/**
+	 * Stops forwarding and waits for the proxy thread to close its sockets, so
+	 * that the context can then be terminated without hanging.
+	 * 
+	 * @return whether the proxy stopped within the timeout
+	 */
+	public boolean stop(final long timeout, final TimeUnit unit) throws InterruptedException {
+		if (!running) {
+			return true;
+		}
+		running = false;
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * Registers local interest in a topic prefix with the upstream publishers,
+	 * which otherwise only send what the backend's subscribers ask for. Must
+	 * be called before {@link #start(ThreadFactory)}.
+	 */
+	public void subscribe(final String prefix) {
+		final byte[] topic = prefix.getBytes(MessageUtils.CHARSET);
+		final byte[] message = new byte[topic.length + 1];
+		message[0] = SUBSCRIBE;
+		System.arraycopy(topic, 0, message, 1, topic.length);
+		frontend.send(message, 0);
+	}
+
+	/**
+	 * Relays the messages waiting on one socket to another, frame by frame,
+	 * optionally copying them to a third.
+	 */
+	private void relay(final ZMQ.Socket from, final ZMQ.Socket to, final ZMQ.Socket copy) {
+		byte[] frame;
+		for (int i = 0; i < MAX_RELAY_BATCH && (frame = from.recv(ZMQ.DONTWAIT)) != null; i++) {
+			while (true) {
+				final int flags = from.hasReceiveMore() ? ZMQ.SNDMORE : 0;
+				to.send(frame, flags);
+				if (copy != null) {
+					copy.send(frame, flags);
+				}
+				if (flags == 0) {
+					break;
+				}
+				frame = from.recv(0);
+			}
+		}
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("frontend", frontendEndpoint)
+				.append("capture", captureEndpoint)
+				.build();
+	}
+
+}
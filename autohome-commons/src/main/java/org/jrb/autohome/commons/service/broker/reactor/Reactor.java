@@ -0,0 +1,312 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.reactor;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+/**
+ * Single-threaded I/O loop built on a {@link ZMQ.Poller}. One thread services
+ * any number of registered sockets, runs {@link ReactorTask}s on every cycle,
+ * fires scheduled {@link Timer}s and executes commands submitted from other
+ * threads; it is the only thread to ever touch the sockets it owns.
+ * <p>
+ * The sockets are polled on every pass of the loop; the poll only blocks
+ * when a pass found nothing else to do, until the next timer is due.
+ * <p>
+ * Other threads wake the loop through an inproc PAIR control socket. To keep
+ * that cheap, a wakeup is only signalled when the loop is actually about to
+ * block in, or blocked in, the poller.
+ * <p>
+ * {@link #stop(long, TimeUnit)} wakes the loop and waits for it to finish its
+ * pending tasks and close every socket it owns, so that the context can then
+ * be terminated without hanging.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class Reactor implements Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(Reactor.class);
+
+	private static final AtomicInteger INSTANCES = new AtomicInteger();
+
+	private static final byte[] WAKE = new byte[] { 0 };
+
+	private final ZMQ.Context context;
+	private final ZMQ.Socket waker;
+	private final ZMQ.Socket control;
+	private final List<ZMQ.Socket> sockets = new ArrayList<>();
+	private final List<Integer> indexes = new ArrayList<>();
+	private final List<SocketHandler> handlers = new ArrayList<>();
+	private final List<ZMQ.Socket> managed = new ArrayList<>();
+	private final List<ReactorTask> tasks = new ArrayList<>();
+	private final Queue<Runnable> commands = new ConcurrentLinkedQueue<>();
+	private final PriorityQueue<Timer> timers = new PriorityQueue<>();
+	private final AtomicLong timerSequence = new AtomicLong();
+	private final AtomicBoolean sleeping = new AtomicBoolean();
+	private final AtomicBoolean started = new AtomicBoolean();
+	private final CountDownLatch terminated = new CountDownLatch(1);
+
+	private ZMQ.Poller poller;
+	private boolean closed = false;
+
+	private volatile boolean running = false;
+	private volatile Thread thread;
+
+	public Reactor(final ZMQ.Context context) {
+		this.context = context;
+		final String endpoint = "inproc://broker-reactor-" + INSTANCES.incrementAndGet();
+		control = context.socket(ZMQ.PAIR);
+		control.setLinger(0);
+		control.bind(endpoint);
+		waker = context.socket(ZMQ.PAIR);
+		waker.setLinger(0);
+		waker.connect(endpoint);
+	}
+
+	/**
+	 * Runs a command on the reactor thread; may be called from any thread.
+	 */
+	public void execute(final Runnable command) {
+		commands.offer(command);
+		wake();
+	}
+
+	public boolean isReactorThread() {
+		return Thread.currentThread() == thread;
+	}
+
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Closes the given socket when the reactor shuts down, without polling it.
+	 * Must be called before the reactor is started.
+	 */
+	public void manage(final ZMQ.Socket socket) {
+		managed.add(socket);
+	}
+
+	/**
+	 * Polls the given socket and passes it to the handler whenever it is
+	 * readable; the socket is closed when the reactor shuts down. Must be
+	 * called before the reactor is started.
+	 */
+	public void register(final ZMQ.Socket socket, final SocketHandler handler) {
+		sockets.add(socket);
+		handlers.add(handler);
+	}
+
+	/**
+	 * Registers work to perform on every cycle. Must be called before the
+	 * reactor is started.
+	 */
+	public void addTask(final ReactorTask task) {
+		tasks.add(task);
+	}
+
+	@Override
+	public void run() {
+		if (!started.compareAndSet(false, true)) {
+			return;
+		}
+		thread = Thread.currentThread();
+		running = true;
+		try {
+			poller = context.poller(sockets.size() + 1);
+			final int controlIndex = poller.register(control, ZMQ.Poller.POLLIN);
+			for (final ZMQ.Socket socket : sockets) {
+				indexes.add(poller.register(socket, ZMQ.Poller.POLLIN));
+			}
+			while (running) {
+				// the sockets are polled on every pass, without blocking while
+				// there is work, so that steady work cannot starve them
+				long timeout = 0;
+				if (!cycle()) {
+					sleeping.set(true);
+					if (!cycle()) {
+						timeout = pollTimeout();
+					}
+				}
+				poller.poll(timeout);
+				sleeping.set(false);
+				if (poller.pollin(controlIndex)) {
+					while (control.recv(ZMQ.DONTWAIT) != null) {
+						// drain wakeups
+					}
+				}
+				for (int i = 0; i < sockets.size(); i++) {
+					if (poller.pollin(indexes.get(i))) {
+						handle(handlers.get(i), sockets.get(i));
+					}
+				}
+			}
+			while (cycle()) {
+				// finish whatever was submitted before stopping
+			}
+		} catch (final Exception e) {
+			if (running) {
+				LOG.error(e.getMessage(), e);
+			}
+		} finally {
+			running = false;
+			close();
+			terminated.countDown();
+		}
+	}
+
+	/**
+	 * Runs a task on the reactor thread after the given delay; may be called
+	 * from any thread.
+	 */
+	public Timer schedule(final Runnable task, final long delay, final TimeUnit unit) {
+		final Timer timer = new Timer(System.nanoTime() + unit.toNanos(delay), timerSequence.incrementAndGet(), task);
+		if (isReactorThread()) {
+			timers.add(timer);
+		} else {
+			execute(new Runnable() {
+				@Override
+				public void run() {
+					timers.add(timer);
+				}
+			});
+		}
+		return timer;
+	}
+
+	/**
+	 * Stops the loop and waits for it to close its sockets. If the reactor was
+	 * never started, its sockets are closed immediately.
+	 * 
+	 * @return whether the reactor finished within the timeout
+	 */
+	public boolean stop(final long timeout, final TimeUnit unit) throws InterruptedException {
+		running = false;
+		if (started.compareAndSet(false, true)) {
+			close();
+			terminated.countDown();
+			return true;
+		}
+		signal();
+		return terminated.await(timeout, unit);
+	}
+
+	/**
+	 * Wakes the loop if it is blocked in the poller; may be called from any
+	 * thread.
+	 */
+	public void wake() {
+		if (sleeping.compareAndSet(true, false)) {
+			signal();
+		}
+	}
+
+	private void close() {
+		synchronized (waker) {
+			if (closed) {
+				return;
+			}
+			closed = true;
+			waker.close();
+		}
+		control.close();
+		for (final ZMQ.Socket socket : sockets) {
+			socket.close();
+		}
+		for (final ZMQ.Socket socket : managed) {
+			socket.close();
+		}
+	}
+
+	private boolean cycle() {
+		boolean worked = false;
+		Runnable command;
+		while ((command = commands.poll()) != null) {
+			run(command);
+			worked = true;
+		}
+		final long now = System.nanoTime();
+		Timer timer;
+		while ((timer = timers.peek()) != null && timer.getDeadline() - now <= 0) {
+			timers.poll();
+			if (!timer.isCancelled()) {
+				run(timer.getTask());
+			}
+			worked = true;
+		}
+		for (final ReactorTask task : tasks) {
+			try {
+				worked |= task.perform();
+			} catch (final Exception e) {
+				LOG.error("Reactor task failed: " + e.getMessage(), e);
+			}
+		}
+		return worked;
+	}
+
+	private void handle(final SocketHandler handler, final ZMQ.Socket socket) {
+		try {
+			handler.onReadable(socket);
+		} catch (final Exception e) {
+			LOG.error("Socket handler failed: " + e.getMessage(), e);
+		}
+	}
+
+	private long pollTimeout() {
+		final Timer next = timers.peek();
+		if (next == null) {
+			return -1;
+		}
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(next.getDeadline() - System.nanoTime()) + 1);
+	}
+
+	private void run(final Runnable command) {
+		try {
+			command.run();
+		} catch (final Exception e) {
+			LOG.error("Reactor command failed: " + e.getMessage(), e);
+		}
+	}
+
+	private void signal() {
+		synchronized (waker) {
+			if (!closed) {
+				waker.send(WAKE, ZMQ.DONTWAIT);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.reactor;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Handle of a task scheduled on a {@link Reactor}.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class Timer implements Comparable<Timer> {
+
+	private final long deadline;
+	private final long sequence;
+	private final Runnable task;
+
+	private volatile boolean cancelled = false;
+
+	Timer(final long deadline, final long sequence, final Runnable task) {
+		this.deadline = deadline;
+		this.sequence = sequence;
+		this.task = task;
+	}
+
+	public void cancel() {
+		cancelled = true;
+	}
+
+	@Override
+	public int compareTo(final Timer other) {
+		if (deadline != other.deadline) {
+			return (deadline - other.deadline < 0) ? -1 : 1;
+		}
+		return Long.compare(sequence, other.sequence);
+	}
+
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	long getDeadline() {
+		return deadline;
+	}
+
+	Runnable getTask() {
+		return task;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("deadline", deadline)
+				.append("cancelled", cancelled)
+				.build();
+	}
+
+}
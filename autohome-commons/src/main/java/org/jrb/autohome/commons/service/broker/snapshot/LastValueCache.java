@@ -0,0 +1,178 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.snapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.outbound.OutboundEnvelope;
+import org.jrb.autohome.commons.service.broker.topic.TopicFilter;
+
+/**
+ * Latest envelope published on each topic, so that a newly connected
+ * coordinator can be brought up to date in one round trip rather than waiting
+ * for every device to report again. Device topics such as
+ * <code>sensor/&lt;device&gt;/temperature</code> make the topic the device
+ * key.
+ * <p>
+ * The cache also numbers the broker's outbound stream: every multipart
+ * envelope whose header reserves a sequence is stamped with the next sequence
+ * number as it is sent, and a snapshot records the sequence it was taken at,
+ * so a subscriber can discard live envelopes already reflected in the
+ * snapshot. Only topics matching the configured patterns (all of them, if
+ * none are given) are cached, and once <code>maxEntries</code> topics are
+ * cached the least recently updated is evicted.
+ * <p>
+ * Like the publisher socket it shadows, the cache is only ever touched on the
+ * broker's reactor thread, so snapshots are consistent with the stream.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LastValueCache {
+
+	private final TopicFilter topics;
+	private final Map<String, CachedEnvelope> entries;
+
+	private long sequence = 0;
+
+	public LastValueCache(final Collection<String> topicPatterns, final int maxEntries) {
+		this.topics = topicPatterns.isEmpty() ? null : new TopicFilter(topicPatterns);
+		this.entries = new LinkedHashMap<String, CachedEnvelope>(16, 0.75f, false) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(final Map.Entry<String, CachedEnvelope> eldest) {
+				return size() > maxEntries;
+			}
+		};
+	}
+
+	public long getSequence() {
+		return sequence;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Whether envelopes on the topic are cached.
+	 */
+	public boolean caches(final byte[] topic) {
+		return topics == null || topics.accepts(topic, topic.length);
+	}
+
+	/**
+	 * Cached envelopes whose topics are accepted by the filter, oldest update
+	 * first.
+	 */
+	public List<CachedEnvelope> snapshot(final TopicFilter filter) {
+		final List<CachedEnvelope> matches = new ArrayList<>();
+		for (final CachedEnvelope entry : entries.values()) {
+			if (filter.accepts(entry.topic, entry.topic.length)) {
+				matches.add(entry);
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * Stamps an envelope about to be sent with the next sequence number, if
+	 * its header has room for one, and caches it if its topic is cached.
+	 * Deltas cannot be applied on their own, so a delta is cached as the
+	 * snapshot of the state it leads to, stamped with the same sequence; a
+	 * delta without one leaves the topic's entry as it was.
+	 */
+	public void update(final OutboundEnvelope envelope) {
+		if (!envelope.isMultipart() || !isSequenced(envelope.getHeader())) {
+			return;
+		}
+		EnvelopeHeader.setSequence(envelope.getHeader(), ++sequence);
+		final byte[] topic = envelope.getTopicFrame();
+		if (!caches(topic)) {
+			return;
+		}
+		final CachedEnvelope entry;
+		if (!isDelta(envelope.getHeader())) {
+			entry = new CachedEnvelope(topic, envelope.getHeader(), envelope.getPayload());
+		} else if (envelope.getSnapshot() != null) {
+			entry = new CachedEnvelope(topic, snapshotHeader(envelope.getHeader()), envelope.getSnapshot());
+		} else {
+			return;
+		}
+		entries.remove(envelope.getTopic());
+		entries.put(envelope.getTopic(), entry);
+	}
+
+	private static boolean isDelta(final byte[] header) {
+		return (header[1] & EnvelopeHeader.FLAG_DELTA) != 0;
+	}
+
+	/**
+	 * Header of a delta's snapshot: a keyframe as well as a delta, and never
+	 * compressed.
+	 */
+	private static byte[] snapshotHeader(final byte[] header) {
+		final byte[] snapshot = header.clone();
+		snapshot[1] = (byte) ((snapshot[1] | EnvelopeHeader.FLAG_KEYFRAME) & ~EnvelopeHeader.FLAG_COMPRESSED);
+		return snapshot;
+	}
+
+	private static boolean isSequenced(final byte[] header) {
+		return header.length > 1 && (header[1] & EnvelopeHeader.FLAG_SEQUENCE) != 0;
+	}
+
+	/**
+	 * Frames of a cached envelope.
+	 */
+	public static class CachedEnvelope {
+
+		private final byte[] topic;
+		private final byte[] header;
+		private final byte[] payload;
+
+		CachedEnvelope(final byte[] topic, final byte[] header, final byte[] payload) {
+			this.topic = topic;
+			this.header = header;
+			this.payload = payload;
+		}
+
+		public byte[] getHeader() {
+			return header;
+		}
+
+		public byte[] getPayload() {
+			return payload;
+		}
+
+		public byte[] getTopic() {
+			return topic;
+		}
+
+	}
+
+}
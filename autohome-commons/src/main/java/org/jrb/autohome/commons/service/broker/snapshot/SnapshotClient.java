@@ -0,0 +1,220 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.snapshot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.EnvelopeBatch;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.jrb.autohome.commons.service.broker.reactor.Reactor;
+import org.jrb.autohome.commons.service.broker.reactor.SocketHandler;
+import org.jrb.autohome.commons.service.broker.reactor.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+import com.google.common.base.Joiner;
+
+/**
+ * Fetches a {@link LastValueCache} snapshot from a {@link SnapshotServer} when
+ * a subscriber starts, and stitches it to the live stream. The subscriber
+ * socket is connected first; while the snapshot is outstanding, live
+ * envelopes are {@link #hold held} rather than delivered. Snapshot envelopes
+ * are delivered as they arrive, and once the snapshot ends the held
+ * envelopes are released, less those whose sequence number shows they are
+ * already reflected in it. A batch envelope is cut down to those of its
+ * envelopes the snapshot does not reflect.
+ * <p>
+ * If no snapshot arrives within the timeout the held envelopes are released
+ * as they are, and the subscriber warms up from the live stream alone. All
+ * methods run on the broker's reactor thread.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class SnapshotClient implements SocketHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SnapshotClient.class);
+
+	/**
+	 * Receives the envelopes of the snapshot and the released live stream.
+	 */
+	public interface Sink {
+
+		void accept(final byte[] topic, final byte[] header, final byte[] payload);
+
+	}
+
+	private final Reactor reactor;
+	private final ZMQ.Socket socket;
+	private final String patterns;
+	private final long timeout;
+	private final Sink sink;
+	private final List<byte[][]> held = new ArrayList<>();
+
+	private Timer timer;
+	private int received = 0;
+	private boolean complete = false;
+
+	public SnapshotClient(
+			final Reactor reactor,
+			final ZMQ.Socket socket,
+			final Collection<String> patterns,
+			final long timeout,
+			final Sink sink) {
+		this.reactor = reactor;
+		this.socket = socket;
+		this.patterns = Joiner.on('\n').join(patterns);
+		this.timeout = timeout;
+		this.sink = sink;
+		socket.setLinger(0);
+		reactor.register(socket, this);
+	}
+
+	/**
+	 * Holds a live envelope until the snapshot is complete, returning
+	 * <code>false</code> if it already is and the envelope should be
+	 * delivered directly.
+	 */
+	public boolean hold(final byte[] topic, final byte[] header, final byte[] payload) {
+		if (complete) {
+			return false;
+		}
+		held.add(new byte[][] { topic, header, payload });
+		return true;
+	}
+
+	public boolean isComplete() {
+		return complete;
+	}
+
+	@Override
+	public void onReadable(final ZMQ.Socket socket) {
+		byte[] topic;
+		while ((topic = socket.recv(ZMQ.DONTWAIT)) != null) {
+			final byte[] second = socket.hasReceiveMore() ? socket.recv(0) : SnapshotServer.END;
+			final byte[] third = socket.hasReceiveMore() ? socket.recv(0) : null;
+			while (socket.hasReceiveMore()) {
+				socket.recv(0);
+			}
+			if (complete) {
+				continue;
+			}
+			if (topic.length == 0) {
+				complete(SnapshotServer.decodeSequence(second));
+			} else if (third != null) {
+				received++;
+				sink.accept(topic, second, third);
+			}
+		}
+	}
+
+	/**
+	 * Requests the snapshot; may be called before the reactor is running.
+	 */
+	public void start() {
+		reactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				socket.sendMore(SnapshotServer.REQUEST.getBytes(MessageUtils.CHARSET));
+				socket.send(patterns.getBytes(MessageUtils.CHARSET), 0);
+				timer = reactor.schedule(new Runnable() {
+					@Override
+					public void run() {
+						if (!complete) {
+							LOG.warn("No snapshot received within {}ms; continuing with live updates only", timeout);
+							complete(EnvelopeHeader.NO_SEQUENCE);
+						}
+					}
+				}, timeout, TimeUnit.MILLISECONDS);
+			}
+		});
+	}
+
+	private void complete(final long sequence) {
+		complete = true;
+		if (timer != null) {
+			timer.cancel();
+		}
+		int skipped = 0;
+		for (final byte[][] envelope : held) {
+			final byte[] payload = (sequence >= 0) ? uncovered(envelope[1], envelope[2], sequence) : envelope[2];
+			if (payload == null) {
+				skipped++;
+			} else {
+				sink.accept(envelope[0], envelope[1], payload);
+			}
+		}
+		LOG.info("Applied snapshot of {} topics at sequence {}; released {} held updates, skipped {}",
+				received, sequence, held.size() - skipped, skipped);
+		held.clear();
+	}
+
+	private static boolean isCovered(final EnvelopeHeader header, final long sequence) {
+		final long envelopeSequence = header.getSequence();
+		return envelopeSequence != EnvelopeHeader.NO_SEQUENCE && envelopeSequence <= sequence;
+	}
+
+	/**
+	 * Payload of a held envelope less what the snapshot already reflects, or
+	 * <code>null</code> if it reflects all of it. The envelopes of a batch
+	 * are numbered individually, so a batch straddling the snapshot is cut
+	 * down to the envelopes after it.
+	 */
+	private static byte[] uncovered(final byte[] header, final byte[] payload, final long sequence) {
+		if (header == null) {
+			return payload;
+		}
+		try {
+			final EnvelopeHeader envelopeHeader = EnvelopeHeader.decode(header);
+			if (!envelopeHeader.hasFlag(EnvelopeHeader.FLAG_BATCH)) {
+				return isCovered(envelopeHeader, sequence) ? null : payload;
+			}
+			final EnvelopeBatch.Reader reader = new EnvelopeBatch.Reader(payload);
+			final EnvelopeBatch.Writer writer = new EnvelopeBatch.Writer(payload.length);
+			int count = 0;
+			while (reader.next()) {
+				count++;
+				if (!isCovered(reader.getHeader(), sequence)) {
+					final byte[] recordHeader = reader.getHeader().encode();
+					if (reader.getHeader().hasFlag(EnvelopeHeader.FLAG_SEQUENCE)) {
+						EnvelopeHeader.setSequence(recordHeader, reader.getHeader().getSequence());
+					}
+					writer.add(recordHeader, Arrays.copyOfRange(
+							payload, reader.getPayloadOffset(), reader.getPayloadOffset() + reader.getPayloadLength()));
+				}
+			}
+			if (writer.count() == count) {
+				return payload;
+			}
+			return (writer.count() > 0) ? writer.toByteArray() : null;
+		} catch (final RuntimeException e) {
+			return payload;
+		}
+	}
+
+}
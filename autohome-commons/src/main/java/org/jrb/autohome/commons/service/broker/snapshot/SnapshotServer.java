@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.snapshot;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.jrb.autohome.commons.service.broker.reactor.Reactor;
+import org.jrb.autohome.commons.service.broker.reactor.SocketHandler;
+import org.jrb.autohome.commons.service.broker.topic.TopicFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeromq.ZMQ;
+
+/**
+ * Serves {@link LastValueCache} snapshots on a ROUTER socket. A request is
+ * 
+ * <pre>
+ * [identity] [SNAPSHOT] [topic patterns, one per line]
+ * </pre>
+ * 
+ * and is answered with one <code>[identity] [topic] [header] [payload]</code>
+ * message per cached envelope matching the patterns (all of them, if none are
+ * given), followed by <code>[identity] [] [sequence:8]</code>, the sequence
+ * number the snapshot was taken at.
+ * <p>
+ * Requests are answered on the reactor thread, between sends, so no envelope
+ * numbered at or below that sequence can still be on its way.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class SnapshotServer implements SocketHandler {
+
+	private static final Logger LOG = LoggerFactory.getLogger(SnapshotServer.class);
+
+	public static final String REQUEST = "SNAPSHOT";
+
+	static final byte[] END = new byte[0];
+
+	private final LastValueCache cache;
+
+	public SnapshotServer(final Reactor reactor, final ZMQ.Socket socket, final LastValueCache cache) {
+		this.cache = cache;
+		socket.setLinger(0);
+		socket.setSndHWM(0);
+		reactor.register(socket, this);
+	}
+
+	static byte[] encodeSequence(final long sequence) {
+		return ByteBuffer.allocate(8).putLong(sequence).array();
+	}
+
+	static long decodeSequence(final byte[] frame) {
+		return ByteBuffer.wrap(frame).getLong();
+	}
+
+	@Override
+	public void onReadable(final ZMQ.Socket socket) {
+		byte[] identity;
+		while ((identity = socket.recv(ZMQ.DONTWAIT)) != null) {
+			final List<byte[]> frames = new ArrayList<>();
+			while (socket.hasReceiveMore()) {
+				frames.add(socket.recv(0));
+			}
+			if (frames.isEmpty() || !REQUEST.equals(new String(frames.get(0), MessageUtils.CHARSET))) {
+				LOG.warn("Discarding malformed snapshot request");
+				continue;
+			}
+			final String patterns = (frames.size() > 1) ? new String(frames.get(1), MessageUtils.CHARSET) : "";
+			reply(socket, identity, patterns.trim().isEmpty()
+					? Arrays.asList("")
+					: Arrays.asList(patterns.trim().split("\\s*\n\\s*")));
+		}
+	}
+
+	private void reply(final ZMQ.Socket socket, final byte[] identity, final List<String> patterns) {
+		final List<LastValueCache.CachedEnvelope> entries = cache.snapshot(new TopicFilter(patterns));
+		for (final LastValueCache.CachedEnvelope entry : entries) {
+			socket.sendMore(identity);
+			socket.sendMore(entry.getTopic());
+			socket.sendMore(entry.getHeader());
+			socket.send(entry.getPayload(), 0);
+		}
+		socket.sendMore(identity);
+		socket.sendMore(END);
+		socket.send(encodeSequence(cache.getSequence()), 0);
+		LOG.info("Sent snapshot of {} topics at sequence {} for {}", entries.size(), cache.getSequence(), patterns);
+	}
+
+}
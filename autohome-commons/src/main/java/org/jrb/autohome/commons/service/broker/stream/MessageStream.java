@@ -0,0 +1,111 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.stream;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+
+/**
+ * {@link Publisher} of the messages routed on a topic pattern whose payload is
+ * of a given type. Every subscriber gets its own {@link StreamSubscription},
+ * subscribed to the {@link TopicRouter} for as long as it is active, which
+ * buffers up to <code>capacity</code> messages beyond the subscriber's demand
+ * and applies the given {@link OverflowPolicy} once the buffer is full.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class MessageStream<T> implements Publisher<Message<T>> {
+
+	private final TopicRouter router;
+	private final String pattern;
+	private final Class<T> payloadType;
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final BrokerMetrics metrics;
+	private final Set<StreamSubscription<T>> subscriptions = Collections
+			.newSetFromMap(new ConcurrentHashMap<StreamSubscription<T>, Boolean>());
+
+	private volatile boolean completed = false;
+
+	public MessageStream(
+			final TopicRouter router,
+			final String pattern,
+			final Class<T> payloadType,
+			final int capacity,
+			final OverflowPolicy policy,
+			final BrokerMetrics metrics) {
+		TopicTrie.validate(pattern);
+		if (capacity < 1) {
+			throw new IllegalArgumentException("Stream buffer capacity must be positive");
+		}
+		this.router = router;
+		this.pattern = pattern;
+		this.payloadType = payloadType;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Completes every active subscription, once its buffered messages have
+	 * been delivered, and completes future subscribers at once.
+	 */
+	public void complete() {
+		completed = true;
+		for (final StreamSubscription<T> subscription : subscriptions) {
+			subscription.complete();
+		}
+	}
+
+	public String getPattern() {
+		return pattern;
+	}
+
+	@Override
+	public void subscribe(final Subscriber<? super Message<T>> subscriber) {
+		if (subscriber == null) {
+			throw new NullPointerException("Subscriber must not be null");
+		}
+		final StreamSubscription<T> subscription = new StreamSubscription<T>(
+				this, subscriber, payloadType, capacity, policy, metrics);
+		subscriptions.add(subscription);
+		subscriber.onSubscribe(subscription);
+		router.subscribe(pattern, Message.class, subscription);
+		if (completed) {
+			subscription.complete();
+		}
+	}
+
+	void remove(final StreamSubscription<T> subscription) {
+		router.unsubscribe(subscription);
+		subscriptions.remove(subscription);
+	}
+
+}
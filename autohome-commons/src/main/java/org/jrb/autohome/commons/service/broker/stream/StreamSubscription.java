@@ -0,0 +1,246 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.stream;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerOperation;
+import org.jrb.autohome.commons.service.broker.topic.MessageHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A subscriber's subscription to a {@link MessageStream}. Routed messages are
+ * buffered and handed to the subscriber only as it requests them. Under
+ * {@link OverflowPolicy#CONFLATE} the buffer holds the latest message per
+ * topic, in the order topics first arrived; otherwise it is a FIFO queue, and
+ * once <code>capacity</code> messages are waiting the routing thread blocks,
+ * or the oldest or newest message is dropped and counted as a dispatch drop.
+ * <p>
+ * Whichever thread makes progress possible - the routing thread adding a
+ * message, or the subscriber requesting more - drains the buffer, and only one
+ * thread drains at a time, so the subscriber is never signalled concurrently
+ * and may request more from within <code>onNext</code>.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+class StreamSubscription<T> implements Subscription, MessageHandler<Object> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(StreamSubscription.class);
+
+	private final MessageStream<T> stream;
+	private final Subscriber<? super Message<T>> subscriber;
+	private final Class<T> payloadType;
+	private final int capacity;
+	private final OverflowPolicy policy;
+	private final BrokerMetrics metrics;
+
+	private final ArrayDeque<Message<T>> queue;
+	private final Map<String, Message<T>> conflated;
+
+	private long requested = 0;
+	private boolean draining = false;
+	private boolean completed = false;
+	private boolean cancelled = false;
+
+	StreamSubscription(
+			final MessageStream<T> stream,
+			final Subscriber<? super Message<T>> subscriber,
+			final Class<T> payloadType,
+			final int capacity,
+			final OverflowPolicy policy,
+			final BrokerMetrics metrics) {
+		this.stream = stream;
+		this.subscriber = subscriber;
+		this.payloadType = payloadType;
+		this.capacity = capacity;
+		this.policy = policy;
+		this.metrics = metrics;
+		this.queue = (policy != OverflowPolicy.CONFLATE) ? new ArrayDeque<Message<T>>() : null;
+		this.conflated = (policy == OverflowPolicy.CONFLATE) ? new LinkedHashMap<String, Message<T>>() : null;
+	}
+
+	@Override
+	public void cancel() {
+		synchronized (this) {
+			if (cancelled) {
+				return;
+			}
+			cancelled = true;
+			clear();
+			notifyAll();
+		}
+		stream.remove(this);
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public void handle(final String topic, final Object message) throws InterruptedException {
+		if (!(message instanceof Message) || !payloadType.isInstance(((Message<?>) message).getPayload())) {
+			return;
+		}
+		if (offer(topic, (Message<T>) message)) {
+			drain();
+		}
+	}
+
+	@Override
+	public void request(final long n) {
+		if (n <= 0) {
+			cancel();
+			subscriber.onError(new IllegalArgumentException("Requested a non-positive number of messages - " + n));
+			return;
+		}
+		synchronized (this) {
+			requested += n;
+			if (requested < 0) {
+				requested = Long.MAX_VALUE;
+			}
+		}
+		drain();
+	}
+
+	void complete() {
+		synchronized (this) {
+			completed = true;
+		}
+		drain();
+	}
+
+	private void clear() {
+		if (queue != null) {
+			queue.clear();
+		} else {
+			conflated.clear();
+		}
+	}
+
+	private void drain() {
+		synchronized (this) {
+			if (draining) {
+				return;
+			}
+			draining = true;
+		}
+		while (true) {
+			final Message<T> next;
+			synchronized (this) {
+				if (cancelled) {
+					draining = false;
+					return;
+				}
+				if (size() == 0 && completed) {
+					cancelled = true;
+					draining = false;
+				} else if (requested == 0 || size() == 0) {
+					draining = false;
+					return;
+				}
+				next = cancelled ? null : poll();
+				if (next != null && requested != Long.MAX_VALUE) {
+					requested--;
+				}
+				notifyAll();
+			}
+			if (next == null) {
+				stream.remove(this);
+				subscriber.onComplete();
+				return;
+			}
+			try {
+				subscriber.onNext(next);
+			} catch (final RuntimeException e) {
+				LOG.error("Stream subscriber failed; cancelling its subscription: " + e.getMessage(), e);
+				synchronized (this) {
+					draining = false;
+				}
+				cancel();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Buffers a message under the overflow policy, returning whether it was
+	 * kept.
+	 */
+	private synchronized boolean offer(final String topic, final Message<T> message) throws InterruptedException {
+		if (cancelled || completed) {
+			return false;
+		}
+		if (conflated != null) {
+			if (conflated.size() >= capacity && !conflated.containsKey(topic)) {
+				drop(topic);
+				return false;
+			}
+			conflated.put(topic, message);
+			return true;
+		}
+		while (queue.size() >= capacity) {
+			switch (policy) {
+			case BLOCK:
+				wait();
+				if (cancelled) {
+					return false;
+				}
+				break;
+			case DROP_OLDEST:
+				queue.poll();
+				drop(topic);
+				break;
+			default:
+				drop(topic);
+				return false;
+			}
+		}
+		queue.offer(message);
+		return true;
+	}
+
+	private void drop(final String topic) {
+		if (metrics != null) {
+			metrics.drop(BrokerOperation.DISPATCH, topic, null);
+		}
+	}
+
+	private Message<T> poll() {
+		if (queue != null) {
+			return queue.poll();
+		}
+		final Iterator<Message<T>> iterator = conflated.values().iterator();
+		final Message<T> next = iterator.next();
+		iterator.remove();
+		return next;
+	}
+
+	private int size() {
+		return (queue != null) ? queue.size() : conflated.size();
+	}
+
+}
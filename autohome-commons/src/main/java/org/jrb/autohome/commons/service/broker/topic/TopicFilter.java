@@ -0,0 +1,165 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+
+/**
+ * Compiled set of subscription patterns for the broker's subscriber socket.
+ * A pattern without wildcards is a plain prefix, exactly as understood by
+ * ZeroMQ. A pattern with <code>+</code> or <code>#</code> levels (see
+ * {@link TopicTrie}) is reduced to its literal leading levels, which are
+ * subscribed at the socket, and the full pattern is then matched locally so
+ * that unwanted messages are discarded before they are decoded.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicFilter {
+
+	private final Set<String> prefixes = new LinkedHashSet<>();
+	private final byte[][] prefixBytes;
+	private final List<byte[]> literals = new ArrayList<>();
+	private final TopicTrie<String> wildcards = new TopicTrie<>();
+
+	public TopicFilter(final Collection<String> patterns) {
+		for (final String pattern : patterns) {
+			if (TopicTrie.isWildcard(pattern)) {
+				wildcards.add(pattern, pattern);
+				prefixes.add(prefixOf(pattern));
+			} else {
+				literals.add(pattern.getBytes(MessageUtils.CHARSET));
+				prefixes.add(pattern);
+			}
+		}
+		if (prefixes.isEmpty()) {
+			prefixes.add("");
+		}
+		prefixBytes = new byte[prefixes.size()][];
+		int i = 0;
+		for (final String prefix : prefixes) {
+			prefixBytes[i++] = prefix.getBytes(MessageUtils.CHARSET);
+		}
+	}
+
+	/**
+	 * Literal leading levels of a wildcard pattern; a trailing <code>#</code>
+	 * also matches its parent level, so it leaves off the final separator.
+	 */
+	static String prefixOf(final String pattern) {
+		final StringBuilder prefix = new StringBuilder();
+		for (final String level : pattern.split(TopicTrie.SEPARATOR, -1)) {
+			if (TopicTrie.SINGLE_LEVEL.equals(level)) {
+				break;
+			}
+			if (TopicTrie.MULTI_LEVEL.equals(level)) {
+				if (prefix.length() > 0) {
+					prefix.setLength(prefix.length() - TopicTrie.SEPARATOR.length());
+				}
+				break;
+			}
+			prefix.append(level).append(TopicTrie.SEPARATOR);
+		}
+		return prefix.toString();
+	}
+
+	/**
+	 * Prefixes to subscribe to at the socket.
+	 */
+	public Set<String> getPrefixes() {
+		return Collections.unmodifiableSet(prefixes);
+	}
+
+	/**
+	 * Whether messages passed by the socket need to be matched locally.
+	 */
+	public boolean isLocal() {
+		return !wildcards.isEmpty();
+	}
+
+	/**
+	 * Whether a message that did not come through the socket, and so has not
+	 * been matched against the subscribed prefixes yet, should be kept.
+	 */
+	public boolean accepts(final byte[] frame, final int topicLength) {
+		if (isLocal()) {
+			return matches(frame, topicLength);
+		}
+		for (final byte[] prefix : prefixBytes) {
+			if (startsWith(frame, prefix)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Whether a message passed by the socket should be kept.
+	 * 
+	 * @param frame
+	 *            the topic frame, or the complete frame of a single-frame
+	 *            message
+	 * @param topicLength
+	 *            length of the topic at the start of the frame, or
+	 *            <code>-1</code> if the frame carries no topic
+	 */
+	public boolean matches(final byte[] frame, final int topicLength) {
+		for (final byte[] literal : literals) {
+			if (startsWith(frame, literal)) {
+				return true;
+			}
+		}
+		if (topicLength < 0) {
+			return wildcards.matches(null);
+		}
+		return wildcards.matches(new String(frame, 0, topicLength, MessageUtils.CHARSET));
+	}
+
+	private static boolean startsWith(final byte[] frame, final byte[] prefix) {
+		if (prefix.length > frame.length) {
+			return false;
+		}
+		for (int i = 0; i < prefix.length; i++) {
+			if (frame[i] != prefix[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("prefixes", prefixes)
+				.append("local", isLocal())
+				.build();
+	}
+
+}
@@ -0,0 +1,438 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang3.ClassUtils;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Routes messages to the handlers subscribed to a matching topic pattern and
+ * a compatible message type. Patterns are kept in a {@link TopicTrie}, and the
+ * handlers matching a given topic and message class are resolved once and
+ * cached, so the cost of routing a message depends on the handlers it reaches
+ * rather than on the total number of handlers.
+ * <p>
+ * Every change of subscriptions builds a new trie, which is never modified
+ * once routing sees it, so resolving an uncached topic takes no lock. Up to
+ * <code>maxCachedTopics</code> topics are cached, after which each newly
+ * resolved topic replaces one not routed to since the last time a clock hand
+ * swept past it, so a long tail of topics cannot evict the busy ones.
+ * <p>
+ * Handlers are either {@link MessageHandler}s or the <code>@Subscribe</code>
+ * methods of a registered bean, optionally restricted with {@link Topic}. A
+ * <code>@Subscribe</code> method takes the message, or the topic followed by
+ * the message, and is invoked through a pre-bound {@link MethodHandle}. As with
+ * the Guava <code>EventBus</code>, methods not marked
+ * <code>@AllowConcurrentEvents</code> are never invoked concurrently.
+ * <p>
+ * Handler failures are logged and do not prevent delivery to the remaining
+ * handlers.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicRouter {
+
+	private static final Logger LOG = LoggerFactory.getLogger(TopicRouter.class);
+
+	public static final int DEFAULT_MAX_CACHED_TOPICS = 4096;
+
+	private static final MethodType INVOKER_TYPE = MethodType.methodType(void.class, String.class, Object.class);
+
+	private final int maxCachedTopics;
+	private final Map<Object, List<Subscription>> owners = new IdentityHashMap<>();
+	private final List<Subscription> subscriptions = new ArrayList<>();
+
+	private volatile RouteCache cache;
+
+	public TopicRouter() {
+		this(DEFAULT_MAX_CACHED_TOPICS);
+	}
+
+	public TopicRouter(final int maxCachedTopics) {
+		this.maxCachedTopics = Math.max(0, maxCachedTopics);
+		this.cache = new RouteCache(new TopicTrie<Subscription>(), this.maxCachedTopics);
+	}
+
+	/**
+	 * Number of topics whose routes are currently cached.
+	 */
+	public int getCachedTopics() {
+		return cache.size();
+	}
+
+	public int getMaxCachedTopics() {
+		return maxCachedTopics;
+	}
+
+	/**
+	 * Whether the routes of a topic are currently cached.
+	 */
+	boolean isCached(final String topic) {
+		return cache.contains(topic);
+	}
+
+	/**
+	 * Subscribes every <code>@Subscribe</code> method of the given bean.
+	 */
+	public void register(final Object bean) {
+		final List<Subscription> subscriptions = new ArrayList<>();
+		for (final Method method : bean.getClass().getMethods()) {
+			if (method.isAnnotationPresent(Subscribe.class)) {
+				final Invoker invoker = methodInvoker(bean, method);
+				final Class<?>[] parameterTypes = method.getParameterTypes();
+				final Class<?> type = ClassUtils.primitiveToWrapper(parameterTypes[parameterTypes.length - 1]);
+				final Topic topic = method.getAnnotation(Topic.class);
+				for (final String pattern : (topic != null) ? topic.value() : new String[] { TopicTrie.MULTI_LEVEL }) {
+					subscriptions.add(new Subscription(pattern, type, invoker));
+				}
+			}
+		}
+		subscribe(bean, subscriptions);
+	}
+
+	/**
+	 * Routes a message to every matching handler.
+	 * 
+	 * @return whether any handler received the message
+	 */
+	public boolean route(final String topic, final Object message) {
+		final Class<?> type = message.getClass();
+		final RouteCache current = cache;
+		Route route = current.get(topic, type);
+		if (route == null) {
+			route = current.resolve(topic, type);
+		}
+		return route.deliver(topic, message);
+	}
+
+	public <T> void subscribe(final String pattern, final Class<T> type, final MessageHandler<? super T> handler) {
+		subscribe(handler, Collections.singletonList(new Subscription(pattern, type, new HandlerInvoker(handler))));
+	}
+
+	public void unregister(final Object bean) {
+		synchronized (owners) {
+			final List<Subscription> removed = owners.remove(bean);
+			if (removed == null) {
+				throw new IllegalArgumentException("Not registered - " + bean);
+			}
+			subscriptions.removeAll(removed);
+			rebuild();
+		}
+	}
+
+	public void unsubscribe(final MessageHandler<?> handler) {
+		unregister(handler);
+	}
+
+	private Invoker methodInvoker(final Object bean, final Method method) {
+		final Class<?>[] parameterTypes = method.getParameterTypes();
+		if (parameterTypes.length != 1 && (parameterTypes.length != 2 || parameterTypes[0] != String.class)) {
+			throw new IllegalArgumentException("Method " + method
+					+ " must take either the message or the topic and the message");
+		}
+		try {
+			method.setAccessible(true);
+			MethodHandle handle = MethodHandles.lookup().unreflect(method).bindTo(bean);
+			if (parameterTypes.length == 1) {
+				handle = MethodHandles.dropArguments(handle, 0, String.class);
+			}
+			handle = handle.asType(INVOKER_TYPE);
+			return method.isAnnotationPresent(AllowConcurrentEvents.class)
+					? new MethodInvoker(handle, method)
+					: new SynchronizedMethodInvoker(handle, method);
+		} catch (final IllegalAccessException e) {
+			throw new IllegalArgumentException("Unable to access " + method, e);
+		}
+	}
+
+	/**
+	 * Replaces the trie and the cache resolved from it; callers hold the
+	 * <code>owners</code> monitor.
+	 */
+	private void rebuild() {
+		final TopicTrie<Subscription> trie = new TopicTrie<>();
+		for (final Subscription subscription : subscriptions) {
+			trie.add(subscription.pattern, subscription);
+		}
+		cache = new RouteCache(trie, maxCachedTopics);
+	}
+
+	private void subscribe(final Object owner, final List<Subscription> added) {
+		for (final Subscription subscription : added) {
+			TopicTrie.validate(subscription.pattern);
+		}
+		synchronized (owners) {
+			if (owners.containsKey(owner)) {
+				throw new IllegalArgumentException("Already registered - " + owner);
+			}
+			owners.put(owner, added);
+			subscriptions.addAll(added);
+			rebuild();
+		}
+	}
+
+	/**
+	 * Invokes a single handler.
+	 */
+	private static abstract class Invoker {
+
+		abstract void invoke(final String topic, final Object message) throws Throwable;
+
+	}
+
+	private static class HandlerInvoker extends Invoker {
+
+		private final MessageHandler<Object> handler;
+
+		@SuppressWarnings("unchecked")
+		HandlerInvoker(final MessageHandler<?> handler) {
+			this.handler = (MessageHandler<Object>) handler;
+		}
+
+		@Override
+		void invoke(final String topic, final Object message) throws Throwable {
+			handler.handle(topic, message);
+		}
+
+		@Override
+		public String toString() {
+			return handler.toString();
+		}
+
+	}
+
+	private static class MethodInvoker extends Invoker {
+
+		private final MethodHandle handle;
+		private final Method method;
+
+		MethodInvoker(final MethodHandle handle, final Method method) {
+			this.handle = handle;
+			this.method = method;
+		}
+
+		@Override
+		void invoke(final String topic, final Object message) throws Throwable {
+			handle.invokeExact(topic, message);
+		}
+
+		@Override
+		public String toString() {
+			return method.toString();
+		}
+
+	}
+
+	private static class SynchronizedMethodInvoker extends MethodInvoker {
+
+		SynchronizedMethodInvoker(final MethodHandle handle, final Method method) {
+			super(handle, method);
+		}
+
+		@Override
+		synchronized void invoke(final String topic, final Object message) throws Throwable {
+			super.invoke(topic, message);
+		}
+
+	}
+
+	/**
+	 * The resolved handlers for one topic and message class.
+	 */
+	private static class Route {
+
+		private final Invoker[] invokers;
+
+		Route(final Invoker[] invokers) {
+			this.invokers = invokers;
+		}
+
+		boolean deliver(final String topic, final Object message) {
+			for (final Invoker invoker : invokers) {
+				try {
+					invoker.invoke(topic, message);
+				} catch (final Throwable t) {
+					LOG.error("Handler " + invoker + " failed on topic [" + topic + "]: " + t.getMessage(), t);
+				}
+			}
+			return invokers.length > 0;
+		}
+
+	}
+
+	/**
+	 * Resolved routes by topic and message class, and the trie they are
+	 * resolved from. A new cache replaces the current one whenever
+	 * subscriptions change.
+	 */
+	private static class RouteCache {
+
+		private final TopicTrie<Subscription> trie;
+		private final ConcurrentMap<String, CachedTopic> byTopic = new ConcurrentHashMap<>();
+		private final ConcurrentMap<Class<?>, Route> withoutTopic = new ConcurrentHashMap<>();
+		private final String[] clock;
+		private int hand = 0;
+		private int used = 0;
+
+		RouteCache(final TopicTrie<Subscription> trie, final int maxTopics) {
+			this.trie = trie;
+			this.clock = new String[maxTopics];
+		}
+
+		Route get(final String topic, final Class<?> type) {
+			if (topic == null) {
+				return withoutTopic.get(type);
+			}
+			final CachedTopic cached = byTopic.get(topic);
+			if (cached == null) {
+				return null;
+			}
+			if (!cached.referenced) {
+				cached.referenced = true;
+			}
+			return cached.routes.get(type);
+		}
+
+		boolean contains(final String topic) {
+			return byTopic.containsKey(topic);
+		}
+
+		Route resolve(final String topic, final Class<?> type) {
+			final List<Subscription> matches = new ArrayList<>();
+			trie.match(topic, matches);
+			final Set<Invoker> invokers = new LinkedHashSet<>();
+			for (final Subscription subscription : matches) {
+				if (subscription.type.isAssignableFrom(type)) {
+					invokers.add(subscription.invoker);
+				}
+			}
+			final Route route = new Route(invokers.toArray(new Invoker[invokers.size()]));
+			put(topic, type, route);
+			return route;
+		}
+
+		int size() {
+			return byTopic.size();
+		}
+
+		private void put(final String topic, final Class<?> type, final Route route) {
+			if (topic == null) {
+				withoutTopic.put(type, route);
+				return;
+			}
+			if (clock.length == 0) {
+				return;
+			}
+			CachedTopic cached = byTopic.get(topic);
+			if (cached == null) {
+				synchronized (clock) {
+					cached = byTopic.get(topic);
+					if (cached == null) {
+						cached = new CachedTopic();
+						admit(topic);
+						byTopic.put(topic, cached);
+					}
+				}
+			}
+			cached.routes.put(type, route);
+		}
+
+		/**
+		 * Gives a topic a slot on the clock, evicting the first topic the hand
+		 * finds unreferenced once every slot is used; callers hold the
+		 * <code>clock</code> monitor.
+		 */
+		private void admit(final String topic) {
+			if (used < clock.length) {
+				clock[used++] = topic;
+				return;
+			}
+			CachedTopic candidate;
+			while ((candidate = byTopic.get(clock[hand])).referenced) {
+				candidate.referenced = false;
+				hand = (hand + 1) % clock.length;
+			}
+			byTopic.remove(clock[hand]);
+			clock[hand] = topic;
+			hand = (hand + 1) % clock.length;
+		}
+
+	}
+
+	/**
+	 * The routes cached for one topic, and whether it has been routed to since
+	 * the clock hand last passed it.
+	 */
+	private static class CachedTopic {
+
+		private final ConcurrentMap<Class<?>, Route> routes = new ConcurrentHashMap<>();
+		private volatile boolean referenced = false;
+
+	}
+
+	/**
+	 * A handler subscribed to one topic pattern.
+	 */
+	private static class Subscription {
+
+		private final String pattern;
+		private final Class<?> type;
+		private final Invoker invoker;
+
+		Subscription(final String pattern, final Class<?> type, final Invoker invoker) {
+			this.pattern = pattern;
+			this.type = type;
+			this.invoker = invoker;
+		}
+
+		@Override
+		public String toString() {
+			return new ToStringBuilder(this)
+					.append("pattern", pattern)
+					.append("type", type.getName())
+					.append("invoker", invoker)
+					.build();
+		}
+
+	}
+
+}
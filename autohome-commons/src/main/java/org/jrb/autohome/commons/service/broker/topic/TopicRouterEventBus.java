@@ -0,0 +1,66 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import com.google.common.eventbus.DeadEvent;
+import com.google.common.eventbus.EventBus;
+
+/**
+ * {@link EventBus} backed by a {@link TopicRouter}, so that beans written
+ * against the <code>EventBus</code> keep working unchanged while messages are
+ * dispatched through the router. When used as the broker's message bus, the
+ * broker routes inbound messages by their topic; messages posted directly to
+ * this bus carry no topic and reach only handlers subscribed to every topic.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicRouterEventBus extends EventBus {
+
+	private final TopicRouter router;
+
+	public TopicRouterEventBus(final TopicRouter router) {
+		this.router = router;
+	}
+
+	public TopicRouter getRouter() {
+		return router;
+	}
+
+	@Override
+	public void post(final Object event) {
+		if (!router.route(null, event) && !(event instanceof DeadEvent)) {
+			router.route(null, new DeadEvent(this, event));
+		}
+	}
+
+	@Override
+	public void register(final Object object) {
+		router.register(object);
+	}
+
+	@Override
+	public void unregister(final Object object) {
+		router.unregister(object);
+	}
+
+}
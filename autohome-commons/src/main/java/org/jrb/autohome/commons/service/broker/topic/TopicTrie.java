@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Trie of topic patterns, with levels separated by <code>/</code>. A pattern
+ * level of <code>+</code> matches exactly one topic level, and a final level
+ * of <code>#</code> matches any number of remaining levels, including none:
+ * <code>home/#</code> matches <code>home</code>, <code>home/kitchen</code> and
+ * <code>home/kitchen/light</code>.
+ * <p>
+ * A <code>null</code> topic, as carried by messages without a topic, is
+ * matched only by the pattern <code>#</code>.
+ * <p>
+ * This class is not thread-safe; callers must synchronize access.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicTrie<V> {
+
+	public static final String SEPARATOR = "/";
+	public static final String SINGLE_LEVEL = "+";
+	public static final String MULTI_LEVEL = "#";
+
+	private final Node<V> root = new Node<>();
+
+	public static boolean isWildcard(final String pattern) {
+		for (final String level : pattern.split(SEPARATOR, -1)) {
+			if (SINGLE_LEVEL.equals(level) || MULTI_LEVEL.equals(level)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public static void validate(final String pattern) {
+		final String[] levels = pattern.split(SEPARATOR, -1);
+		for (int i = 0; i < levels.length; i++) {
+			final String level = levels[i];
+			if (MULTI_LEVEL.equals(level) && i != levels.length - 1) {
+				throw new IllegalArgumentException("'" + MULTI_LEVEL + "' must be the last level of " + pattern);
+			}
+			if (!SINGLE_LEVEL.equals(level) && !MULTI_LEVEL.equals(level)
+					&& (level.contains(SINGLE_LEVEL) || level.contains(MULTI_LEVEL))) {
+				throw new IllegalArgumentException("Wildcards must occupy an entire level of " + pattern);
+			}
+		}
+	}
+
+	public void add(final String pattern, final V value) {
+		validate(pattern);
+		Node<V> node = root;
+		for (final String level : pattern.split(SEPARATOR, -1)) {
+			node = node.child(level);
+		}
+		node.values.add(value);
+	}
+
+	public boolean isEmpty() {
+		return root.isEmpty();
+	}
+
+	public void match(final String topic, final Collection<? super V> matches) {
+		if (topic == null) {
+			if (root.multi != null) {
+				matches.addAll(root.multi.values);
+			}
+			return;
+		}
+		match(root, topic.split(SEPARATOR, -1), 0, matches);
+	}
+
+	public boolean matches(final String topic) {
+		if (topic == null) {
+			return root.multi != null && !root.multi.values.isEmpty();
+		}
+		return matches(root, topic.split(SEPARATOR, -1), 0);
+	}
+
+	public boolean remove(final String pattern, final V value) {
+		final List<Node<V>> path = new ArrayList<>();
+		Node<V> node = root;
+		final String[] levels = pattern.split(SEPARATOR, -1);
+		for (final String level : levels) {
+			path.add(node);
+			node = node.find(level);
+			if (node == null) {
+				return false;
+			}
+		}
+		if (!node.values.remove(value)) {
+			return false;
+		}
+		for (int i = levels.length - 1; i >= 0 && node.isEmpty(); i--) {
+			path.get(i).prune(levels[i]);
+			node = path.get(i);
+		}
+		return true;
+	}
+
+	private void match(final Node<V> node, final String[] levels, final int depth, final Collection<? super V> matches) {
+		if (node.multi != null) {
+			matches.addAll(node.multi.values);
+		}
+		if (depth == levels.length) {
+			matches.addAll(node.values);
+			return;
+		}
+		final Node<V> literal = node.children.get(levels[depth]);
+		if (literal != null) {
+			match(literal, levels, depth + 1, matches);
+		}
+		if (node.single != null) {
+			match(node.single, levels, depth + 1, matches);
+		}
+	}
+
+	private boolean matches(final Node<V> node, final String[] levels, final int depth) {
+		if (node.multi != null && !node.multi.values.isEmpty()) {
+			return true;
+		}
+		if (depth == levels.length) {
+			return !node.values.isEmpty();
+		}
+		final Node<V> literal = node.children.get(levels[depth]);
+		if (literal != null && matches(literal, levels, depth + 1)) {
+			return true;
+		}
+		return node.single != null && matches(node.single, levels, depth + 1);
+	}
+
+	/**
+	 * A single level of the trie.
+	 */
+	private static class Node<V> {
+
+		private final Map<String, Node<V>> children = new HashMap<>();
+		private final List<V> values = new ArrayList<>();
+		private Node<V> single;
+		private Node<V> multi;
+
+		Node<V> child(final String level) {
+			if (SINGLE_LEVEL.equals(level)) {
+				if (single == null) {
+					single = new Node<>();
+				}
+				return single;
+			}
+			if (MULTI_LEVEL.equals(level)) {
+				if (multi == null) {
+					multi = new Node<>();
+				}
+				return multi;
+			}
+			Node<V> child = children.get(level);
+			if (child == null) {
+				child = new Node<>();
+				children.put(level, child);
+			}
+			return child;
+		}
+
+		Node<V> find(final String level) {
+			if (SINGLE_LEVEL.equals(level)) {
+				return single;
+			}
+			if (MULTI_LEVEL.equals(level)) {
+				return multi;
+			}
+			return children.get(level);
+		}
+
+		boolean isEmpty() {
+			return values.isEmpty() && children.isEmpty() && single == null && multi == null;
+		}
+
+		void prune(final String level) {
+			if (SINGLE_LEVEL.equals(level)) {
+				single = null;
+			} else if (MULTI_LEVEL.equals(level)) {
+				multi = null;
+			} else {
+				children.remove(level);
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Count, minimum, maximum and sum of the samples in a time range.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class Aggregate {
+
+	private long count = 0;
+	private double min = Double.NaN;
+	private double max = Double.NaN;
+	private double sum = 0;
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getMax() {
+		return max;
+	}
+
+	/**
+	 * Mean of the samples, or <code>NaN</code> if there are none.
+	 */
+	public double getMean() {
+		return (count > 0) ? sum / count : Double.NaN;
+	}
+
+	public double getMin() {
+		return min;
+	}
+
+	public double getSum() {
+		return sum;
+	}
+
+	public boolean isEmpty() {
+		return count == 0;
+	}
+
+	void add(final double value) {
+		merge(1, value, value, value);
+	}
+
+	void merge(final Aggregate other) {
+		merge(other.count, other.min, other.max, other.sum);
+	}
+
+	void merge(final long otherCount, final double otherMin, final double otherMax, final double otherSum) {
+		if (otherCount == 0) {
+			return;
+		}
+		min = (count == 0) ? otherMin : Math.min(min, otherMin);
+		max = (count == 0) ? otherMax : Math.max(max, otherMax);
+		count += otherCount;
+		sum += otherSum;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("count", count)
+				.append("min", min)
+				.append("max", max)
+				.append("mean", getMean())
+				.build();
+	}
+
+}
@@ -0,0 +1,53 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+/**
+ * Resolutions at which a {@link RollupEngine} keeps each series.
+ * <ul>
+ * <li><code>RAW</code> - the most recent individual samples</li>
+ * <li><code>MINUTE</code> - one aggregate per minute</li>
+ * <li><code>FIFTEEN_MINUTES</code> - one aggregate per quarter hour</li>
+ * <li><code>HOUR</code> - one aggregate per hour</li>
+ * </ul>
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public enum Resolution {
+
+	RAW(0), MINUTE(60 * 1000L), FIFTEEN_MINUTES(15 * 60 * 1000L), HOUR(60 * 60 * 1000L);
+
+	private final long millis;
+
+	private Resolution(final long millis) {
+		this.millis = millis;
+	}
+
+	/**
+	 * Width of one bucket in milliseconds, or <code>0</code> for raw samples.
+	 */
+	public long getMillis() {
+		return millis;
+	}
+
+}
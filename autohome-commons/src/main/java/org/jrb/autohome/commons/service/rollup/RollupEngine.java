@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+
+/**
+ * Keeps named numeric series at every {@link Resolution} in fixed,
+ * preallocated rings: the most recent raw samples, and per-minute,
+ * per-quarter-hour and per-hour buckets of count, min, max and sum. Recording
+ * a sample and querying a window cost a bounded amount of work, whatever the
+ * history behind them, and memory is bounded by the number of series.
+ * <p>
+ * Series are created on their first sample, up to <code>maxSeries</code>;
+ * samples for further series are refused. Samples older than the bucket
+ * currently occupying their slot are ignored.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RollupEngine {
+
+	public static final int DEFAULT_MAX_SERIES = 1024;
+	public static final int DEFAULT_RAW_SAMPLES = 256;
+	public static final int DEFAULT_MINUTE_SLOTS = 60;
+	public static final int DEFAULT_FIFTEEN_MINUTE_SLOTS = 96;
+	public static final int DEFAULT_HOUR_SLOTS = 168;
+
+	private final ConcurrentMap<String, RollupSeries> series = new ConcurrentHashMap<>();
+	private final int maxSeries;
+	private final int rawSamples;
+	private final int[] slots;
+
+	public RollupEngine() {
+		this(DEFAULT_MAX_SERIES, DEFAULT_RAW_SAMPLES, DEFAULT_MINUTE_SLOTS, DEFAULT_FIFTEEN_MINUTE_SLOTS,
+				DEFAULT_HOUR_SLOTS);
+	}
+
+	public RollupEngine(
+			final int maxSeries,
+			final int rawSamples,
+			final int minuteSlots,
+			final int fifteenMinuteSlots,
+			final int hourSlots) {
+		if (maxSeries < 1 || rawSamples < 0 || minuteSlots < 0 || fifteenMinuteSlots < 0 || hourSlots < 0) {
+			throw new IllegalArgumentException("Invalid rollup sizes");
+		}
+		this.maxSeries = maxSeries;
+		this.rawSamples = rawSamples;
+		slots = new int[Resolution.values().length];
+		slots[Resolution.MINUTE.ordinal()] = minuteSlots;
+		slots[Resolution.FIFTEEN_MINUTES.ordinal()] = fifteenMinuteSlots;
+		slots[Resolution.HOUR.ordinal()] = hourSlots;
+	}
+
+	/**
+	 * Aggregates a series over <code>[from, to)</code> at the given
+	 * resolution. Aggregated resolutions include every bucket overlapping the
+	 * window, so the window is effectively widened to bucket boundaries.
+	 */
+	public Aggregate aggregate(final String name, final Resolution resolution, final long from, final long to) {
+		final Aggregate result = new Aggregate();
+		final RollupSeries target = series.get(name);
+		if (target != null) {
+			target.aggregate(resolution, from, to, result);
+		}
+		return result;
+	}
+
+	/**
+	 * Aggregates every series whose name matches the topic pattern, such as
+	 * <code>home/+/temperature</code>, over <code>[from, to)</code>.
+	 */
+	public Aggregate aggregateMatching(
+			final String pattern,
+			final Resolution resolution,
+			final long from,
+			final long to) {
+		final TopicTrie<Boolean> trie = new TopicTrie<>();
+		trie.add(pattern, Boolean.TRUE);
+		final Aggregate result = new Aggregate();
+		for (final Map.Entry<String, RollupSeries> entry : series.entrySet()) {
+			if (trie.matches(entry.getKey())) {
+				entry.getValue().aggregate(resolution, from, to, result);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Aggregates the bucket of the given resolution containing
+	 * <code>timestamp</code>.
+	 */
+	public Aggregate current(final String name, final Resolution resolution, final long timestamp) {
+		if (resolution == Resolution.RAW) {
+			return aggregate(name, resolution, timestamp, timestamp + 1);
+		}
+		final long width = resolution.getMillis();
+		final long from = timestamp - (timestamp % width);
+		return aggregate(name, resolution, from, from + width);
+	}
+
+	public double getLatest(final String name, final double missing) {
+		final RollupSeries target = series.get(name);
+		return (target != null) ? target.getLatest(missing) : missing;
+	}
+
+	public int getMaxSeries() {
+		return maxSeries;
+	}
+
+	public Collection<String> getSeriesNames() {
+		final List<String> names = new ArrayList<>(series.keySet());
+		return names;
+	}
+
+	/**
+	 * Records a sample, returning <code>false</code> if the series could not
+	 * be created because the engine is full.
+	 */
+	public boolean record(final String name, final long timestamp, final double value) {
+		RollupSeries target = series.get(name);
+		if (target == null) {
+			if (series.size() >= maxSeries) {
+				return false;
+			}
+			final RollupSeries created = new RollupSeries(rawSamples, slots);
+			target = series.putIfAbsent(name, created);
+			if (target == null) {
+				target = created;
+			}
+		}
+		target.record(timestamp, value);
+		return true;
+	}
+
+}
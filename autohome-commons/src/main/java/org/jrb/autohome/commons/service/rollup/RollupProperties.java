@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Telemetry rollup configuration properties for the Home Automation system.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@ConfigurationProperties(name = "service.rollup", ignoreUnknownFields = false)
+public class RollupProperties {
+
+	private final static boolean DEFAULT_ENABLED = false;
+	private final static int DEFAULT_MAX_SERIES = RollupEngine.DEFAULT_MAX_SERIES;
+	private final static int DEFAULT_RAW_SAMPLES = RollupEngine.DEFAULT_RAW_SAMPLES;
+	private final static int DEFAULT_MINUTE_SLOTS = RollupEngine.DEFAULT_MINUTE_SLOTS;
+	private final static int DEFAULT_FIFTEEN_MINUTE_SLOTS = RollupEngine.DEFAULT_FIFTEEN_MINUTE_SLOTS;
+	private final static int DEFAULT_HOUR_SLOTS = RollupEngine.DEFAULT_HOUR_SLOTS;
+
+	private boolean enabled = DEFAULT_ENABLED;
+	private int fifteenMinuteSlots = DEFAULT_FIFTEEN_MINUTE_SLOTS;
+	private int hourSlots = DEFAULT_HOUR_SLOTS;
+	private int maxSeries = DEFAULT_MAX_SERIES;
+	private int minuteSlots = DEFAULT_MINUTE_SLOTS;
+	private int rawSamples = DEFAULT_RAW_SAMPLES;
+	private List<String> topics = new ArrayList<>();
+
+	public int getFifteenMinuteSlots() {
+		return fifteenMinuteSlots;
+	}
+
+	public int getHourSlots() {
+		return hourSlots;
+	}
+
+	public int getMaxSeries() {
+		return maxSeries;
+	}
+
+	public int getMinuteSlots() {
+		return minuteSlots;
+	}
+
+	public int getRawSamples() {
+		return rawSamples;
+	}
+
+	/**
+	 * Topic patterns whose messages are rolled up; all topics when empty.
+	 */
+	public List<String> getTopics() {
+		return topics;
+	}
+
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	public void setEnabled(final boolean enabled) {
+		this.enabled = enabled;
+	}
+
+	public void setFifteenMinuteSlots(final int fifteenMinuteSlots) {
+		this.fifteenMinuteSlots = fifteenMinuteSlots;
+	}
+
+	public void setHourSlots(final int hourSlots) {
+		this.hourSlots = hourSlots;
+	}
+
+	public void setMaxSeries(final int maxSeries) {
+		this.maxSeries = maxSeries;
+	}
+
+	public void setMinuteSlots(final int minuteSlots) {
+		this.minuteSlots = minuteSlots;
+	}
+
+	public void setRawSamples(final int rawSamples) {
+		this.rawSamples = rawSamples;
+	}
+
+	public void setTopics(final List<String> topics) {
+		this.topics = topics;
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.topic.MessageHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Feeds received {@link Message}s into a {@link RollupEngine}. A numeric
+ * payload is recorded under its topic; a map payload has each numeric field
+ * recorded under <code>topic/field</code>. Other payloads are ignored.
+ * Samples are stamped with their time of arrival.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RollupRecorder implements MessageHandler<Object> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RollupRecorder.class);
+
+	private final RollupEngine engine;
+
+	private volatile boolean warnedFull = false;
+
+	public RollupRecorder(final RollupEngine engine) {
+		this.engine = engine;
+	}
+
+	@Override
+	public void handle(final String topic, final Object message) {
+		if (topic == null || !(message instanceof Message)) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final Object payload = ((Message<?>) message).getPayload();
+		if (payload instanceof Number) {
+			record(topic, now, (Number) payload);
+		} else if (payload instanceof Map) {
+			for (final Map.Entry<?, ?> entry : ((Map<?, ?>) payload).entrySet()) {
+				if (entry.getValue() instanceof Number) {
+					record(topic + "/" + entry.getKey(), now, (Number) entry.getValue());
+				}
+			}
+		}
+	}
+
+	private void record(final String series, final long timestamp, final Number value) {
+		if (!engine.record(series, timestamp, value.doubleValue()) && !warnedFull) {
+			warnedFull = true;
+			LOG.warn("Rollup engine full at {} series; ignoring new series such as {}", engine.getMaxSeries(), series);
+		}
+	}
+
+}
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+import java.util.Arrays;
+
+/**
+ * Preallocated rings of one series: the most recent raw samples, and one ring
+ * of buckets per aggregated {@link Resolution}. A bucket covering epoch
+ * <code>e</code> (time divided by the bucket width) lives in slot
+ * <code>e % slots</code>, and is reset when a sample for a newer epoch lands
+ * in the same slot, so rings never need to be shifted or swept.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+class RollupSeries {
+
+	private final long[] rawTimes;
+	private final double[] rawValues;
+	private final Ring[] rings;
+
+	private long rawCount = 0;
+
+	RollupSeries(final int rawSamples, final int[] slots) {
+		rawTimes = new long[rawSamples];
+		rawValues = new double[rawSamples];
+		rings = new Ring[Resolution.values().length];
+		for (final Resolution resolution : Resolution.values()) {
+			if (resolution != Resolution.RAW) {
+				rings[resolution.ordinal()] = new Ring(resolution.getMillis(), slots[resolution.ordinal()]);
+			}
+		}
+	}
+
+	synchronized void aggregate(final Resolution resolution, final long from, final long to, final Aggregate result) {
+		if (resolution == Resolution.RAW) {
+			final long first = Math.max(0, rawCount - rawTimes.length);
+			for (long i = first; i < rawCount; i++) {
+				final int slot = (int) (i % rawTimes.length);
+				if (rawTimes[slot] >= from && rawTimes[slot] < to) {
+					result.add(rawValues[slot]);
+				}
+			}
+		} else {
+			rings[resolution.ordinal()].aggregate(from, to, result);
+		}
+	}
+
+	/**
+	 * Most recent raw sample, or <code>missing</code> if there is none.
+	 */
+	synchronized double getLatest(final double missing) {
+		return (rawCount > 0) ? rawValues[(int) ((rawCount - 1) % rawValues.length)] : missing;
+	}
+
+	synchronized void record(final long timestamp, final double value) {
+		if (rawTimes.length > 0) {
+			final int slot = (int) (rawCount % rawTimes.length);
+			rawTimes[slot] = timestamp;
+			rawValues[slot] = value;
+			rawCount++;
+		}
+		for (final Ring ring : rings) {
+			if (ring != null) {
+				ring.record(timestamp, value);
+			}
+		}
+	}
+
+	/**
+	 * Buckets of a single resolution.
+	 */
+	private static class Ring {
+
+		private final long width;
+		private final long[] epochs;
+		private final long[] counts;
+		private final double[] mins;
+		private final double[] maxes;
+		private final double[] sums;
+
+		Ring(final long width, final int slots) {
+			this.width = width;
+			epochs = new long[slots];
+			counts = new long[slots];
+			mins = new double[slots];
+			maxes = new double[slots];
+			sums = new double[slots];
+			Arrays.fill(epochs, -1);
+		}
+
+		void aggregate(final long from, final long to, final Aggregate result) {
+			if (epochs.length == 0 || to <= from) {
+				return;
+			}
+			final long last = (to - 1) / width;
+			final long first = Math.max(from / width, last - epochs.length + 1);
+			for (long epoch = first; epoch <= last; epoch++) {
+				final int slot = (int) (epoch % epochs.length);
+				if (epochs[slot] == epoch) {
+					result.merge(counts[slot], mins[slot], maxes[slot], sums[slot]);
+				}
+			}
+		}
+
+		void record(final long timestamp, final double value) {
+			if (epochs.length == 0) {
+				return;
+			}
+			final long epoch = timestamp / width;
+			final int slot = (int) (epoch % epochs.length);
+			if (epochs[slot] != epoch) {
+				if (epochs[slot] > epoch) {
+					return;
+				}
+				epochs[slot] = epoch;
+				counts[slot] = 1;
+				mins[slot] = value;
+				maxes[slot] = value;
+				sums[slot] = value;
+			} else {
+				counts[slot]++;
+				mins[slot] = Math.min(mins[slot], value);
+				maxes[slot] = Math.max(maxes[slot], value);
+				sums[slot] += value;
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,288 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.scheduler;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.broker.message.Command;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Publishes {@link Command}s through the {@link BrokerService} after a delay.
+ * Commands are keyed by id, so scheduling an id that is already pending
+ * reschedules it; this is how a "turn off in 10 minutes" command is pushed
+ * back on every motion event. Pending commands are held in a
+ * {@link TimerWheel}, making schedule, reschedule and cancel constant time.
+ * <p>
+ * When a file is configured, pending commands are checkpointed to it as JSON
+ * whenever they have changed, at most once per checkpoint interval, and on
+ * stop; they are reloaded on start, and any that fell due while the node was
+ * down are published on the first tick. A checkpoint is written to a
+ * temporary file and renamed over the previous one, so a crash never leaves
+ * a partial file. A command that fails to publish is logged and dropped.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class CommandScheduler implements SmartLifecycle, Runnable {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CommandScheduler.class);
+
+	private final BrokerService brokerService;
+	private final ObjectMapper mapper;
+	private final TimerWheel<ScheduledCommand> wheel;
+	private final File file;
+	private final long checkpointInterval;
+
+	private ScheduledExecutorService scheduler;
+	private boolean dirty = false;
+	private long lastCheckpoint;
+
+	private volatile boolean running = false;
+
+	public CommandScheduler(
+			final BrokerService brokerService,
+			final ObjectMapper mapper,
+			final long tickMillis,
+			final int wheelBits,
+			final int levels,
+			final File file,
+			final long checkpointInterval) {
+		this.brokerService = brokerService;
+		this.mapper = mapper;
+		this.wheel = new TimerWheel<>(tickMillis, wheelBits, levels, System.currentTimeMillis());
+		this.file = file;
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	/**
+	 * Cancels a pending command.
+	 * 
+	 * @return whether the command was pending
+	 */
+	public synchronized boolean cancel(final String id) {
+		if (wheel.cancel(id) == null) {
+			return false;
+		}
+		dirty = true;
+		return true;
+	}
+
+	/**
+	 * Writes the pending commands to the configured file, if any.
+	 */
+	public void checkpoint() throws IOException {
+		if (file == null) {
+			return;
+		}
+		final List<ScheduledCommand> pending;
+		synchronized (this) {
+			pending = wheel.getPending();
+			dirty = false;
+		}
+		final File temp = new File(file.getPath() + ".tmp");
+		mapper.writeValue(temp, pending);
+		if (!temp.renameTo(file) && !(file.delete() && temp.renameTo(file))) {
+			synchronized (this) {
+				dirty = true;
+			}
+			throw new IOException("Unable to rename " + temp + " to " + file);
+		}
+	}
+
+	public File getFile() {
+		return file;
+	}
+
+	public synchronized ScheduledCommand getPending(final String id) {
+		return wheel.get(id);
+	}
+
+	public synchronized List<ScheduledCommand> getPending() {
+		return wheel.getPending();
+	}
+
+	@Override
+	public int getPhase() {
+		return 1;
+	}
+
+	@Override
+	public boolean isAutoStartup() {
+		return true;
+	}
+
+	@Override
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * Loads the pending commands from the configured file, if it exists. Loaded
+	 * commands replace pending ones with the same id.
+	 * 
+	 * @return the number of commands loaded
+	 */
+	public int load() throws IOException {
+		if (file == null || !file.exists()) {
+			return 0;
+		}
+		final List<ScheduledCommand> commands = mapper.readValue(file, new TypeReference<List<ScheduledCommand>>() {
+		});
+		synchronized (this) {
+			for (final ScheduledCommand command : commands) {
+				wheel.schedule(command.getId(), command, command.getDueTime());
+			}
+		}
+		return commands.size();
+	}
+
+	@Override
+	public void run() {
+		try {
+			final long now = System.currentTimeMillis();
+			tick(now);
+			if (now - lastCheckpoint >= checkpointInterval) {
+				lastCheckpoint = now;
+				if (isDirty()) {
+					checkpoint();
+				}
+			}
+		} catch (final Exception e) {
+			LOG.error("Unable to run command scheduler: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Schedules a command to be published on a topic after a delay, replacing
+	 * any pending command with the same id.
+	 * 
+	 * @return the replaced command, or <code>null</code>
+	 */
+	public ScheduledCommand schedule(
+			final String id,
+			final String topic,
+			final Command<?> command,
+			final long delay,
+			final TimeUnit unit) {
+		final long dueTime = System.currentTimeMillis() + unit.toMillis(delay);
+		return schedule(new ScheduledCommand(id, topic, command, dueTime));
+	}
+
+	/**
+	 * Schedules a command at its due time, replacing any pending command with
+	 * the same id.
+	 * 
+	 * @return the replaced command, or <code>null</code>
+	 */
+	public synchronized ScheduledCommand schedule(final ScheduledCommand command) {
+		dirty = true;
+		return wheel.schedule(command.getId(), command, command.getDueTime());
+	}
+
+	public synchronized int size() {
+		return wheel.size();
+	}
+
+	@Override
+	public void start() {
+		try {
+			final int loaded = load();
+			if (loaded > 0) {
+				LOG.info("Loaded {} scheduled commands from {}", loaded, file);
+			}
+		} catch (final IOException e) {
+			throw new IllegalStateException("Unable to load scheduled commands from " + file, e);
+		}
+		lastCheckpoint = System.currentTimeMillis();
+		scheduler = Executors.newSingleThreadScheduledExecutor(
+				new ThreadFactoryBuilder().setNameFormat("command-scheduler-%d").setDaemon(true).build());
+		scheduler.scheduleAtFixedRate(this, 0, wheel.getTickMillis(), TimeUnit.MILLISECONDS);
+		running = true;
+	}
+
+	@Override
+	public void stop() {
+		running = false;
+		if (scheduler != null) {
+			scheduler.shutdown();
+			try {
+				scheduler.awaitTermination(wheel.getTickMillis() * 10, TimeUnit.MILLISECONDS);
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		try {
+			checkpoint();
+		} catch (final IOException e) {
+			LOG.error("Unable to checkpoint scheduled commands: " + e.getMessage(), e);
+		}
+	}
+
+	@Override
+	public void stop(final Runnable callback) {
+		stop();
+		callback.run();
+	}
+
+	/**
+	 * Publishes the commands due by the given time.
+	 * 
+	 * @return the number of commands published
+	 */
+	public int tick(final long now) {
+		final List<ScheduledCommand> due = new ArrayList<>();
+		synchronized (this) {
+			if (wheel.advance(now, due) > 0) {
+				dirty = true;
+			}
+		}
+		int published = 0;
+		for (final ScheduledCommand command : due) {
+			try {
+				brokerService.publish(command.getTopic(), command.toCommand());
+				published++;
+			} catch (final RuntimeException e) {
+				LOG.error("Unable to publish scheduled command " + command.getId() + ": " + e.getMessage(), e);
+			}
+		}
+		return published;
+	}
+
+	private synchronized boolean isDirty() {
+		return dirty;
+	}
+
+}
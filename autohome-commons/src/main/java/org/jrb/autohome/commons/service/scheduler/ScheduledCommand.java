@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.scheduler;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.message.Command;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+
+/**
+ * A command held by the {@link CommandScheduler}, to be published on a topic
+ * at a due time given in epoch milliseconds.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class ScheduledCommand {
+
+	private String id;
+	private String topic;
+	private String name;
+	private Object payload;
+	private long dueTime;
+
+	public ScheduledCommand() {
+	}
+
+	public ScheduledCommand(final String id, final String topic, final Command<?> command, final long dueTime) {
+		this.id = id;
+		this.topic = topic;
+		this.name = command.getName();
+		this.payload = command.getPayload();
+		this.dueTime = dueTime;
+	}
+
+	public long getDueTime() {
+		return dueTime;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public Object getPayload() {
+		return payload;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public void setDueTime(final long dueTime) {
+		this.dueTime = dueTime;
+	}
+
+	public void setId(final String id) {
+		this.id = id;
+	}
+
+	public void setName(final String name) {
+		this.name = name;
+	}
+
+	public void setPayload(final Object payload) {
+		this.payload = payload;
+	}
+
+	public void setTopic(final String topic) {
+		this.topic = topic;
+	}
+
+	public SimpleCommand<Object> toCommand() {
+		return new SimpleCommand<Object>(name, payload);
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("id", id)
+				.append("topic", topic)
+				.append("name", name)
+				.append("payload", payload)
+				.append("dueTime", dueTime)
+				.build();
+	}
+
+}
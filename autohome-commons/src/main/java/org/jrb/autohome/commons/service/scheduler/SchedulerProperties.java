@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.scheduler;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Command scheduler configuration properties for the Home Automation system.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@ConfigurationProperties(name = "service.scheduler", ignoreUnknownFields = false)
+public class SchedulerProperties {
+
+	private final static long DEFAULT_CHECKPOINT_INTERVAL = 5000;
+	private final static int DEFAULT_LEVELS = 4;
+	private final static long DEFAULT_TICK = 100;
+	private final static int DEFAULT_WHEEL_BITS = 8;
+
+	private long checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+	private String file;
+	private int levels = DEFAULT_LEVELS;
+	private long tick = DEFAULT_TICK;
+	private int wheelBits = DEFAULT_WHEEL_BITS;
+
+	/**
+	 * Minimum time in milliseconds between checkpoints of pending commands.
+	 */
+	public long getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	/**
+	 * File that pending commands are checkpointed to; they are not persisted
+	 * when unset.
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	/**
+	 * Number of timer wheel levels.
+	 */
+	public int getLevels() {
+		return levels;
+	}
+
+	/**
+	 * Timer wheel resolution in milliseconds.
+	 */
+	public long getTick() {
+		return tick;
+	}
+
+	/**
+	 * Log2 of the number of slots in each timer wheel level.
+	 */
+	public int getWheelBits() {
+		return wheelBits;
+	}
+
+	public void setCheckpointInterval(final long checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public void setFile(final String file) {
+		this.file = file;
+	}
+
+	public void setLevels(final int levels) {
+		this.levels = levels;
+	}
+
+	public void setTick(final long tick) {
+		this.tick = tick;
+	}
+
+	public void setWheelBits(final int wheelBits) {
+		this.wheelBits = wheelBits;
+	}
+
+}
@@ -0,0 +1,256 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.scheduler;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hierarchical timing wheel holding timers keyed by id. Each level is a ring
+ * of <code>2^wheelBits</code> slots, every slot a doubly linked list of
+ * timers; a slot of level <i>k</i> spans <code>2^(wheelBits * k)</code>
+ * ticks, so a few levels cover very long delays with little memory. A timer
+ * is linked into the lowest level whose range covers its delay, and as the
+ * wheel turns the slots of higher levels are cascaded into lower ones, so
+ * each timer is moved at most once per level.
+ * <p>
+ * Scheduling, rescheduling and cancelling a timer only link and unlink it, and
+ * each tick visits a single slot of the lowest level, so none depend on the
+ * number of timers. Delays beyond the top level are parked in its farthest
+ * slot and re-placed when it cascades. Timers never fire early; they fire up
+ * to one tick late.
+ * <p>
+ * The wheel is driven by explicit times and is not thread-safe.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TimerWheel<T> {
+
+	private final long tickMillis;
+	private final int wheelBits;
+	private final int mask;
+	private final Entry<T>[][] levels;
+	private final Map<String, Entry<T>> entries = new HashMap<>();
+
+	private final long origin;
+	private long currentTick = 0;
+
+	@SuppressWarnings("unchecked")
+	public TimerWheel(final long tickMillis, final int wheelBits, final int levels, final long origin) {
+		if (tickMillis < 1) {
+			throw new IllegalArgumentException("Timer wheel tick must be at least 1ms");
+		}
+		if (wheelBits < 1 || wheelBits > 16 || levels < 1 || wheelBits * levels > 62) {
+			throw new IllegalArgumentException("Timer wheel of " + levels + " levels of 2^" + wheelBits
+					+ " slots is out of range");
+		}
+		this.tickMillis = tickMillis;
+		this.wheelBits = wheelBits;
+		this.mask = (1 << wheelBits) - 1;
+		this.levels = new Entry[levels][1 << wheelBits];
+		this.origin = origin;
+	}
+
+	/**
+	 * Advances the wheel to the given time, removing the timers due by then.
+	 * 
+	 * @param expired
+	 *            receives the values of the removed timers, in due order per
+	 *            tick
+	 * @return the number of timers removed
+	 */
+	public int advance(final long now, final List<T> expired) {
+		final long target = (now - origin) / tickMillis;
+		int count = 0;
+		while (currentTick <= target && !entries.isEmpty()) {
+			cascade();
+			final int slot = (int) (currentTick & mask);
+			Entry<T> entry = levels[0][slot];
+			while (entry != null) {
+				final Entry<T> next = entry.next;
+				unlink(entry);
+				entries.remove(entry.id);
+				expired.add(entry.value);
+				count++;
+				entry = next;
+			}
+			currentTick++;
+		}
+		if (currentTick <= target) {
+			currentTick = target + 1;
+		}
+		return count;
+	}
+
+	/**
+	 * Removes a timer.
+	 * 
+	 * @return its value, or <code>null</code> if there was no such timer
+	 */
+	public T cancel(final String id) {
+		final Entry<T> entry = entries.remove(id);
+		if (entry == null) {
+			return null;
+		}
+		unlink(entry);
+		return entry.value;
+	}
+
+	public T get(final String id) {
+		final Entry<T> entry = entries.get(id);
+		return (entry != null) ? entry.value : null;
+	}
+
+	/**
+	 * Values of all pending timers, in no particular order.
+	 */
+	public List<T> getPending() {
+		final List<T> pending = new ArrayList<>(entries.size());
+		for (final Entry<T> entry : entries.values()) {
+			pending.add(entry.value);
+		}
+		return pending;
+	}
+
+	public long getTickMillis() {
+		return tickMillis;
+	}
+
+	public boolean isEmpty() {
+		return entries.isEmpty();
+	}
+
+	/**
+	 * Schedules a timer to fire at the given time, replacing any pending timer
+	 * with the same id.
+	 * 
+	 * @return the value of the replaced timer, or <code>null</code>
+	 */
+	public T schedule(final String id, final T value, final long dueTime) {
+		final long deadline = Math.max(ceilTick(dueTime), currentTick);
+		Entry<T> entry = entries.get(id);
+		T replaced = null;
+		if (entry == null) {
+			entry = new Entry<>(id);
+			entries.put(id, entry);
+		} else {
+			unlink(entry);
+			replaced = entry.value;
+		}
+		entry.value = value;
+		entry.deadline = deadline;
+		link(entry);
+		return replaced;
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Re-places the timers of the higher level slots that come under the wheel
+	 * at the current tick, from the top down.
+	 */
+	private void cascade() {
+		int level = 1;
+		while (level < levels.length && (currentTick & ((1L << (wheelBits * level)) - 1)) == 0) {
+			level++;
+		}
+		for (int l = level - 1; l > 0; l--) {
+			final int slot = (int) ((currentTick >>> (wheelBits * l)) & mask);
+			Entry<T> entry = levels[l][slot];
+			while (entry != null) {
+				final Entry<T> next = entry.next;
+				unlink(entry);
+				link(entry);
+				entry = next;
+			}
+		}
+	}
+
+	private long ceilTick(final long time) {
+		final long elapsed = time - origin;
+		return (elapsed <= 0) ? 0 : (elapsed + tickMillis - 1) / tickMillis;
+	}
+
+	private void link(final Entry<T> entry) {
+		final long delay = Math.max(entry.deadline - currentTick, 0);
+		int level = 0;
+		while (level < levels.length - 1 && delay >= (1L << (wheelBits * (level + 1)))) {
+			level++;
+		}
+		long tick = currentTick + delay;
+		final long range = 1L << (wheelBits * (level + 1));
+		if (delay >= range) {
+			tick = currentTick + range - 1;
+		}
+		final int slot = (int) ((tick >>> (wheelBits * level)) & mask);
+		entry.level = level;
+		entry.slot = slot;
+		entry.prev = null;
+		entry.next = levels[level][slot];
+		if (entry.next != null) {
+			entry.next.prev = entry;
+		}
+		levels[level][slot] = entry;
+	}
+
+	private void unlink(final Entry<T> entry) {
+		if (entry.slot < 0) {
+			return;
+		}
+		if (entry.prev != null) {
+			entry.prev.next = entry.next;
+		} else {
+			levels[entry.level][entry.slot] = entry.next;
+		}
+		if (entry.next != null) {
+			entry.next.prev = entry.prev;
+		}
+		entry.prev = null;
+		entry.next = null;
+		entry.slot = -1;
+	}
+
+	/**
+	 * A timer, linked into the wheel slot of its deadline.
+	 */
+	private static class Entry<T> {
+
+		private final String id;
+		private T value;
+		private long deadline;
+		private int level;
+		private int slot = -1;
+		private Entry<T> prev;
+		private Entry<T> next;
+
+		Entry(final String id) {
+			this.id = id;
+		}
+
+	}
+
+}
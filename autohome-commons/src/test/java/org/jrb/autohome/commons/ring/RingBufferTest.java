@@ -0,0 +1,166 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.ring;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+/**
+ * Test case for the single-producer ring buffer and its consumers.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RingBufferTest {
+
+	private static final EventFactory<long[]> FACTORY = new EventFactory<long[]>() {
+		@Override
+		public long[] newInstance() {
+			return new long[1];
+		}
+	};
+
+	@Test
+	public void testCapacityFor() {
+		assertEquals(1, RingBuffer.capacityFor(0));
+		assertEquals(1, RingBuffer.capacityFor(1));
+		assertEquals(4, RingBuffer.capacityFor(3));
+		assertEquals(4, RingBuffer.capacityFor(4));
+		assertEquals(1024, RingBuffer.capacityFor(1000));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testCapacityMustBePowerOfTwo() {
+		new RingBuffer<>(FACTORY, 6, new BusySpinWaitStrategy());
+	}
+
+	@Test
+	public void testFullRingAndWrapAround() {
+		final RingBuffer<long[]> ringBuffer = new RingBuffer<>(FACTORY, 4, new BusySpinWaitStrategy());
+		final Sequence consumer = new Sequence();
+		ringBuffer.addGatingSequence(consumer);
+
+		for (long i = 0; i < 4; i++) {
+			assertEquals(i, ringBuffer.tryNext());
+			ringBuffer.publish(i);
+		}
+		assertEquals(-1L, ringBuffer.tryNext());
+		assertEquals(4, ringBuffer.remaining());
+
+		consumer.set(0);
+		assertEquals(3, ringBuffer.remaining());
+		assertEquals(4L, ringBuffer.tryNext());
+		assertSame(ringBuffer.get(0), ringBuffer.get(4));
+		assertEquals(-1L, ringBuffer.tryNext());
+
+		ringBuffer.publish(4);
+		consumer.set(4);
+		assertEquals(0, ringBuffer.remaining());
+		for (long i = 5; i < 9; i++) {
+			assertEquals(i, ringBuffer.tryNext());
+			ringBuffer.publish(i);
+		}
+		assertEquals(-1L, ringBuffer.tryNext());
+		assertEquals(8L, ringBuffer.getCursor());
+	}
+
+	@Test
+	public void testPublishConsumeOrdering() throws Exception {
+		for (final WaitStrategyType type : WaitStrategyType.values()) {
+			assertOrdered(type, 100000, 64);
+		}
+	}
+
+	@Test
+	public void testHaltDuringWait() throws Exception {
+		for (final WaitStrategyType type : WaitStrategyType.values()) {
+			final RingBuffer<long[]> ringBuffer = new RingBuffer<>(FACTORY, 8, type.newInstance());
+			final BatchEventProcessor<long[]> processor = new BatchEventProcessor<>(ringBuffer,
+					new EventHandler<long[]>() {
+						@Override
+						public void onEvent(final long[] event, final long sequence, final boolean endOfBatch) {
+						}
+					});
+			final Thread thread = new Thread(processor);
+			thread.start();
+			ringBuffer.publish(ringBuffer.next());
+			waitForSequence(processor.getSequence(), 0);
+
+			Thread.sleep(50);
+			assertTrue(thread.isAlive());
+			processor.halt();
+			thread.join(5000);
+			assertFalse(type + " processor did not halt", thread.isAlive());
+			assertEquals(0L, processor.getSequence().get());
+		}
+	}
+
+	private void assertOrdered(final WaitStrategyType type, final int count, final int capacity) throws Exception {
+		final RingBuffer<long[]> ringBuffer = new RingBuffer<>(FACTORY, capacity, type.newInstance());
+		final AtomicLong failures = new AtomicLong();
+		final CountDownLatch done = new CountDownLatch(1);
+		final BatchEventProcessor<long[]> processor = new BatchEventProcessor<>(ringBuffer,
+				new EventHandler<long[]>() {
+					private long expected = 0;
+
+					@Override
+					public void onEvent(final long[] event, final long sequence, final boolean endOfBatch) {
+						if (sequence != expected || event[0] != expected * 3) {
+							failures.incrementAndGet();
+						}
+						if (++expected == count) {
+							done.countDown();
+						}
+					}
+				});
+		final Thread thread = new Thread(processor);
+		thread.start();
+		for (long i = 0; i < count; i++) {
+			final long sequence = ringBuffer.next();
+			ringBuffer.get(sequence)[0] = i * 3;
+			ringBuffer.publish(sequence);
+		}
+		assertTrue(type + " consumer did not finish", done.await(10, TimeUnit.SECONDS));
+		processor.halt();
+		thread.join(5000);
+		assertEquals(type + " events out of order", 0, failures.get());
+		assertEquals(count - 1, processor.getSequence().get());
+		assertEquals(0, ringBuffer.remaining());
+	}
+
+	private void waitForSequence(final Sequence sequence, final long value) throws InterruptedException {
+		final long deadline = System.currentTimeMillis() + 5000;
+		while (sequence.get() < value && System.currentTimeMillis() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(value, sequence.get());
+	}
+
+}
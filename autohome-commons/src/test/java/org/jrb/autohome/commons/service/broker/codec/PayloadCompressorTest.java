@@ -0,0 +1,124 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+import org.junit.Test;
+
+/**
+ * Test case for compressing and decompressing envelope payloads.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class PayloadCompressorTest {
+
+	@Test
+	public void testRoundTrip() {
+		final PayloadCompressor compressor = new PayloadCompressor(64, 6);
+		final byte[] payload = repetitive(4096);
+		final byte[] compressed = compressor.compress(payload);
+		assertNotNull(compressed);
+		assertTrue(compressed.length < payload.length);
+		assertArrayEquals(payload, compressor.decompress(compressed, 0, compressed.length));
+	}
+
+	@Test
+	public void testRoundTripAtOffset() {
+		final PayloadCompressor compressor = new PayloadCompressor(64, 1);
+		final byte[] payload = repetitive(1000);
+		final byte[] compressed = compressor.compress(payload);
+		final byte[] framed = new byte[compressed.length + 10];
+		System.arraycopy(compressed, 0, framed, 7, compressed.length);
+		assertArrayEquals(payload, compressor.decompress(framed, 7, compressed.length));
+	}
+
+	@Test
+	public void testThreshold() {
+		final PayloadCompressor compressor = new PayloadCompressor(100, 6);
+		assertTrue(compressor.isEnabled());
+		assertNull(compressor.compress(repetitive(99)));
+		assertNotNull(compressor.compress(repetitive(100)));
+	}
+
+	@Test
+	public void testDisabled() {
+		final PayloadCompressor compressor = new PayloadCompressor(0, 6);
+		assertFalse(compressor.isEnabled());
+		assertNull(compressor.compress(repetitive(4096)));
+		final byte[] compressed = new PayloadCompressor(1, 6).compress(repetitive(4096));
+		assertArrayEquals(repetitive(4096), compressor.decompress(compressed, 0, compressed.length));
+	}
+
+	@Test
+	public void testIncompressible() {
+		final byte[] payload = new byte[1024];
+		new Random(42).nextBytes(payload);
+		assertNull(new PayloadCompressor(64, 9).compress(payload));
+	}
+
+	@Test(expected = BrokerServiceException.class)
+	public void testTruncated() {
+		final PayloadCompressor compressor = new PayloadCompressor(64, 6);
+		final byte[] compressed = compressor.compress(repetitive(4096));
+		compressor.decompress(Arrays.copyOf(compressed, compressed.length / 2), 0, compressed.length / 2);
+	}
+
+	@Test(expected = BrokerServiceException.class)
+	public void testInvalidLength() {
+		new PayloadCompressor(64, 6).decompress(new byte[] { (byte) 0xFF, 0, 0, 0, 1 }, 0, 5);
+	}
+
+	@Test
+	public void testClose() {
+		final PayloadCompressor compressor = new PayloadCompressor(64, 6);
+		final byte[] payload = repetitive(4096);
+		final byte[] compressed = compressor.compress(payload);
+		compressor.decompress(compressed, 0, compressed.length);
+		assertEquals(2, compressor.getPooled());
+
+		compressor.close();
+		assertEquals(0, compressor.getPooled());
+		assertArrayEquals(compressed, compressor.compress(payload));
+		assertArrayEquals(payload, compressor.decompress(compressed, 0, compressed.length));
+		assertEquals(0, compressor.getPooled());
+	}
+
+	private static byte[] repetitive(final int length) {
+		final byte[] payload = new byte[length];
+		for (int i = 0; i < length; i++) {
+			payload[i] = (byte) ('a' + i % 7);
+		}
+		return payload;
+	}
+
+}
@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.delta.DeltaEncoderTest.Reading;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test case for rebuilding message state from keyframes and deltas.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeltaDecoderTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+	private final DeltaDecoder decoder = new DeltaDecoder(10);
+
+	@Test
+	public void testRoundTrip() throws IOException {
+		for (int i = 0; i < 10; i++) {
+			final Reading reading = DeltaEncoderTest.reading(i);
+			reading.setUnit((i % 3 == 0) ? "F" : "C");
+			final JsonNode state = decode(encoder.encode("sensor/1", "Reading", mapper, reading));
+			assertEquals(mapper.valueToTree(reading), state);
+			assertEquals(i, mapper.treeToValue(state, Reading.class).getValue());
+		}
+	}
+
+	@Test
+	public void testGapDiscardsUntilKeyframe() throws IOException {
+		decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(0)));
+		decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(1)));
+		encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(2));
+		assertNull(decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(3))));
+
+		final DeltaFrame keyframe = encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(4));
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, keyframe.getFlag());
+		assertEquals(4, decode(keyframe).get("value").asInt());
+		assertEquals(5, decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(5)))
+				.get("value").asInt());
+	}
+
+	@Test
+	public void testJoinMidStream() throws IOException {
+		encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(0));
+		assertNull(decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(1))));
+		assertNull(decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(2))));
+	}
+
+	@Test
+	public void testResumeFromSnapshot() throws IOException {
+		encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(0), true);
+		final DeltaFrame frame = encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(1), true);
+		final byte flags = EnvelopeHeader.FLAG_KEYFRAME | EnvelopeHeader.FLAG_DELTA;
+		final JsonNode state = decoder.decode(
+				"sensor/1", "Reading", flags, mapper, frame.getSnapshot(), 0, frame.getSnapshot().length);
+		assertEquals(1, state.get("value").asInt());
+		assertEquals(2, decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(2)))
+				.get("value").asInt());
+	}
+
+	@Test
+	public void testRemovedField() throws IOException {
+		decode(encoder.encode("sensor/1", "Reading", mapper, DeltaEncoderTest.reading(1)));
+		final Reading reading = DeltaEncoderTest.reading(2);
+		reading.setUnit(null);
+		final JsonNode state = decode(encoder.encode("sensor/1", "Reading", mapper, reading));
+		assertFalse(state.has("unit"));
+		assertNull(mapper.treeToValue(state, Reading.class).getUnit());
+	}
+
+	@Test(expected = BrokerServiceException.class)
+	public void testMalformedDelta() throws IOException {
+		final byte[] payload = "{\"patch\":{}}".getBytes();
+		decoder.decode("sensor/1", "Reading", EnvelopeHeader.FLAG_DELTA, mapper, payload, 0, payload.length);
+	}
+
+	private JsonNode decode(final DeltaFrame frame) {
+		return decoder.decode(
+				"sensor/1", "Reading", frame.getFlag(), mapper, frame.getPayload(), 0, frame.getPayload().length);
+	}
+
+}
@@ -0,0 +1,167 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test case for encoding messages as keyframes and deltas.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeltaEncoderTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void testAccepts() {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		assertTrue(encoder.accepts("sensor/1/temperature"));
+		assertFalse(encoder.accepts("alarm/1"));
+	}
+
+	@Test
+	public void testKeyframeInterval() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		final byte[] flags = new byte[9];
+		for (int i = 0; i < flags.length; i++) {
+			flags[i] = encoder.encode("sensor/1", "Reading", mapper, reading(i)).getFlag();
+		}
+		final byte k = EnvelopeHeader.FLAG_KEYFRAME;
+		final byte d = EnvelopeHeader.FLAG_DELTA;
+		assertArrayEquals(new byte[] { k, d, d, d, k, d, d, d, k }, flags);
+	}
+
+	@Test
+	public void testDeltaPayload() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		encoder.encode("sensor/1", "Reading", mapper, reading(1));
+		final DeltaFrame frame = encoder.encode("sensor/1", "Reading", mapper, reading(2));
+		final JsonNode delta = mapper.readTree(frame.getPayload());
+		assertEquals(1, delta.get(DeltaEncoder.SEQ_FIELD).asInt());
+		assertEquals(mapper.readTree("{\"value\":2}"), delta.get(DeltaEncoder.PATCH_FIELD));
+		assertNull(frame.getSnapshot());
+	}
+
+	@Test
+	public void testKeysAreIndependent() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		encoder.encode("sensor/1", "Reading", mapper, reading(1));
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, encoder.encode("sensor/2", "Reading", mapper, reading(1)).getFlag());
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, encoder.encode("sensor/1", "Status", mapper, reading(1)).getFlag());
+		assertEquals(EnvelopeHeader.FLAG_DELTA, encoder.encode("sensor/1", "Reading", mapper, reading(2)).getFlag());
+	}
+
+	@Test
+	public void testMaxKeys() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 2);
+		encoder.encode("sensor/1", "Reading", mapper, reading(1));
+		encoder.encode("sensor/2", "Reading", mapper, reading(1));
+		encoder.encode("sensor/3", "Reading", mapper, reading(1));
+		assertEquals(EnvelopeHeader.FLAG_DELTA, encoder.encode("sensor/3", "Reading", mapper, reading(2)).getFlag());
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, encoder.encode("sensor/1", "Reading", mapper, reading(2)).getFlag());
+	}
+
+	@Test
+	public void testForget() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		encoder.encode("sensor/1", "Reading", mapper, reading(1));
+		encoder.encode("sensor/2", "Reading", mapper, reading(1));
+		encoder.forget("sensor/1", "Reading");
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, encoder.encode("sensor/1", "Reading", mapper, reading(2)).getFlag());
+		assertEquals(EnvelopeHeader.FLAG_DELTA, encoder.encode("sensor/2", "Reading", mapper, reading(2)).getFlag());
+	}
+
+	@Test
+	public void testNonObjectIsKeyframe() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		encoder.encode("sensor/1", "Reading", mapper, reading(1));
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, encoder.encode("sensor/1", "Reading", mapper, "text").getFlag());
+		assertEquals(EnvelopeHeader.FLAG_KEYFRAME, encoder.encode("sensor/1", "Reading", mapper, reading(2)).getFlag());
+	}
+
+	@Test
+	public void testSnapshot() throws IOException {
+		final DeltaEncoder encoder = new DeltaEncoder(Arrays.asList("sensor/#"), 4, 10);
+		assertNull(encoder.encode("sensor/1", "Reading", mapper, reading(1), true).getSnapshot());
+		encoder.encode("sensor/1", "Reading", mapper, reading(2), true);
+		final DeltaFrame frame = encoder.encode("sensor/1", "Reading", mapper, reading(3), true);
+		assertNotNull(frame.getSnapshot());
+		final JsonNode snapshot = mapper.readTree(frame.getSnapshot());
+		assertEquals(2, snapshot.get(DeltaEncoder.SEQ_FIELD).asInt());
+		assertEquals(mapper.valueToTree(reading(3)), snapshot.get(DeltaEncoder.STATE_FIELD));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidKeyframeInterval() {
+		new DeltaEncoder(Arrays.asList("sensor/#"), 0, 10);
+	}
+
+	static Reading reading(final int value) {
+		final Reading reading = new Reading();
+		reading.setUnit("C");
+		reading.setValue(value);
+		return reading;
+	}
+
+	/**
+	 * Simple message for encoding.
+	 */
+	public static class Reading {
+
+		private String unit;
+		private int value;
+
+		public String getUnit() {
+			return unit;
+		}
+
+		public int getValue() {
+			return value;
+		}
+
+		public void setUnit(final String unit) {
+			this.unit = unit;
+		}
+
+		public void setValue(final int value) {
+			this.value = value;
+		}
+
+	}
+
+}
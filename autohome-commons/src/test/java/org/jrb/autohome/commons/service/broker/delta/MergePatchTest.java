@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.delta;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Test case for diffing and applying JSON merge patches.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class MergePatchTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+
+	@Test
+	public void testChangedFields() throws IOException {
+		final ObjectNode patch = MergePatch.diff(tree("{'a':1,'b':'x'}"), tree("{'a':2,'b':'x','c':true}"));
+		assertEquals(tree("{'a':2,'c':true}"), patch);
+	}
+
+	@Test
+	public void testEqualTrees() throws IOException {
+		assertEquals(0, MergePatch.diff(tree("{'a':{'b':1}}"), tree("{'a':{'b':1}}")).size());
+	}
+
+	@Test
+	public void testNestedRemoval() throws IOException {
+		final ObjectNode base = tree("{'a':{'b':1,'c':{'d':2,'e':3}},'f':4}");
+		final ObjectNode target = tree("{'a':{'b':1,'c':{'d':2}}}");
+		final ObjectNode patch = MergePatch.diff(base, target);
+		assertEquals(tree("{'a':{'c':{'e':null}},'f':null}"), patch);
+
+		MergePatch.apply(base, patch);
+		assertEquals(target, base);
+	}
+
+	@Test
+	public void testNullBecomesRemoval() throws IOException {
+		final ObjectNode base = tree("{'a':1,'b':2}");
+		final ObjectNode patch = MergePatch.diff(base, tree("{'a':null,'b':2}"));
+		assertEquals(tree("{'a':null}"), patch);
+
+		MergePatch.apply(base, patch);
+		assertFalse(base.has("a"));
+		assertEquals(tree("{'b':2}"), base);
+	}
+
+	@Test
+	public void testArraysReplacedWhole() throws IOException {
+		final ObjectNode base = tree("{'a':[1,2,3]}");
+		final ObjectNode patch = MergePatch.diff(base, tree("{'a':[1,2]}"));
+		assertEquals(tree("{'a':[1,2]}"), patch);
+	}
+
+	@Test
+	public void testObjectReplacesScalar() throws IOException {
+		final ObjectNode base = tree("{'a':1}");
+		final ObjectNode target = tree("{'a':{'b':{'c':2}}}");
+		MergePatch.apply(base, MergePatch.diff(base, target));
+		assertEquals(target, base);
+		assertTrue(base.get("a").isObject());
+	}
+
+	private ObjectNode tree(final String json) throws IOException {
+		return (ObjectNode) mapper.readTree(json.replace('\'', '"'));
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.dispatch;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jrb.autohome.commons.ring.WaitStrategyType;
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.reactor.ReactorTask;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test case for dispatching inbound envelopes across lanes.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LaneDispatcherTest {
+
+	private static final int MESSAGES = 1000;
+
+	private LaneDispatcher dispatcher;
+
+	@After
+	public void tearDown() {
+		if (dispatcher != null) {
+			dispatcher.stop();
+		}
+	}
+
+	@Test
+	public void testBlockedDispatchPerformsFullTask() throws Exception {
+		// lane handlers publish into a small outbound queue that only the
+		// dispatching thread drains, as the reactor drains the publisher
+		final BlockingQueue<byte[]> outbound = new ArrayBlockingQueue<>(2);
+		final AtomicInteger published = new AtomicInteger();
+		final CountDownLatch handled = new CountDownLatch(MESSAGES);
+		dispatcher = new LaneDispatcher(new InboundHandler() {
+			@Override
+			public void handle(final InboundEnvelope envelope) {
+				try {
+					outbound.put(envelope.getPayload());
+					handled.countDown();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, 1, 2, WaitStrategyType.YIELDING, OverflowPolicy.BLOCK);
+		final ReactorTask publisher = new ReactorTask() {
+			@Override
+			public boolean perform() {
+				int count = 0;
+				while (outbound.poll() != null) {
+					published.incrementAndGet();
+					count++;
+				}
+				return count > 0;
+			}
+		};
+		dispatcher.setFullTask(publisher);
+		dispatcher.start();
+
+		final AtomicInteger dispatched = new AtomicInteger();
+		final Thread receiver = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				for (int i = 0; i < MESSAGES; i++) {
+					if (dispatcher.dispatch("topic".getBytes(), null, new byte[] { (byte) i })) {
+						dispatched.incrementAndGet();
+					}
+				}
+				while (published.get() < MESSAGES && !Thread.currentThread().isInterrupted()) {
+					publisher.perform();
+				}
+			}
+		});
+		receiver.setDaemon(true);
+		receiver.start();
+		receiver.join(10000L);
+		receiver.interrupt();
+
+		assertEquals(MESSAGES, dispatched.get());
+		assertEquals(MESSAGES, published.get());
+		assertTrue(handled.await(0, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testDropNewestWhenFull() throws Exception {
+		final CountDownLatch release = new CountDownLatch(1);
+		final CountDownLatch started = new CountDownLatch(1);
+		dispatcher = new LaneDispatcher(new InboundHandler() {
+			@Override
+			public void handle(final InboundEnvelope envelope) {
+				started.countDown();
+				try {
+					release.await();
+				} catch (final InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}, 1, 2, WaitStrategyType.YIELDING, OverflowPolicy.DROP_NEWEST);
+		dispatcher.start();
+
+		assertTrue(dispatcher.dispatch("topic".getBytes(), null, new byte[0]));
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		int accepted = 0;
+		while (accepted < 10 && dispatcher.dispatch("topic".getBytes(), null, new byte[0])) {
+			accepted++;
+		}
+		assertTrue(accepted < 10);
+		assertFalse(dispatcher.dispatch("topic".getBytes(), null, new byte[0]));
+		release.countDown();
+	}
+
+	@Test
+	public void testLaneCount() {
+		dispatcher = new LaneDispatcher(new InboundHandler() {
+			@Override
+			public void handle(final InboundEnvelope envelope) {
+			}
+		}, 4, 16, WaitStrategyType.YIELDING);
+		assertEquals(4, dispatcher.getLaneCount());
+	}
+
+}
@@ -0,0 +1,171 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for writing, indexing and recovering a journal segment.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class JournalSegmentTest {
+
+	private static final byte[] TOPIC = "telemetry".getBytes();
+	private static final byte[] HEADER = new byte[0];
+
+	/** Topic, empty header and a 20 byte payload make a 57 byte record. */
+	private static final int RECORD_SIZE = JournalSegment.RECORD_HEADER + 9 + 20;
+
+	private File directory;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("segment").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		for (final File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testAppendUntilFull() throws IOException {
+		final JournalSegment segment = JournalSegment.create(directory, 100, RECORD_SIZE * 3, 64);
+		for (int i = 0; i < 3; i++) {
+			assertTrue(segment.append(1000 + i, TOPIC, HEADER, payload(i)));
+		}
+		assertFalse(segment.append(1003, TOPIC, HEADER, payload(3)));
+		assertEquals(103, segment.getNextOffset());
+		assertEquals(1000, segment.getFirstTimestamp());
+		segment.close(true);
+	}
+
+	@Test
+	public void testOffsetAt() throws IOException {
+		final JournalSegment segment = JournalSegment.create(directory, 0, RECORD_SIZE * 20, RECORD_SIZE * 3);
+		for (int i = 0; i < 20; i++) {
+			segment.append(1000 + i * 10, TOPIC, HEADER, payload(i));
+		}
+		assertEquals(0, segment.offsetAt(0));
+		assertEquals(7, segment.offsetAt(1070));
+		assertEquals(8, segment.offsetAt(1075));
+		assertEquals(-1, segment.offsetAt(2000));
+		segment.close(true);
+	}
+
+	@Test
+	public void testReadFromIndexedOffset() throws IOException {
+		final JournalSegment segment = JournalSegment.create(directory, 0, RECORD_SIZE * 20, RECORD_SIZE * 3);
+		for (int i = 0; i < 20; i++) {
+			segment.append(1000 + i, TOPIC, HEADER, payload(i));
+		}
+		final JournalPage page = new JournalPage();
+		segment.read(10, page, 4);
+		assertEquals(4, page.getRecords().size());
+		for (int i = 0; i < 4; i++) {
+			final JournalRecord record = page.getRecords().get(i);
+			assertEquals(10 + i, record.getOffset());
+			assertEquals(1010 + i, record.getTimestamp());
+			assertArrayEquals(payload(10 + i), record.getPayload());
+		}
+		segment.close(true);
+	}
+
+	@Test
+	public void testRecoverCorruptTail() throws IOException {
+		final File logFile = write(5);
+		try (final RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+			final long position = RECORD_SIZE * 4 + JournalSegment.RECORD_HEADER + TOPIC.length + 3;
+			raf.seek(position);
+			raf.write(raf.read() ^ 0xff);
+		}
+		assertRecovered(logFile, 4);
+	}
+
+	@Test
+	public void testRecoverTornTail() throws IOException {
+		final File logFile = write(5);
+		try (final RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+			// the last record's length points past the end of the segment
+			raf.seek(RECORD_SIZE * 4);
+			raf.writeInt(RECORD_SIZE * 100);
+		}
+		assertRecovered(logFile, 4);
+	}
+
+	@Test
+	public void testRecoverFullSegment() throws IOException {
+		final File logFile = write(10);
+		assertRecovered(logFile, 10);
+	}
+
+	private void assertRecovered(final File logFile, final int count) throws IOException {
+		final JournalSegment segment = JournalSegment.open(logFile, RECORD_SIZE * 3);
+		assertEquals(count, segment.getNextOffset());
+		final JournalPage page = new JournalPage();
+		segment.read(0, page, 100);
+		assertEquals(count, page.getRecords().size());
+		if (count < 10) {
+			assertTrue(segment.append(2000, TOPIC, HEADER, payload(count)));
+			final JournalPage tail = new JournalPage();
+			segment.read(count, tail, 100);
+			assertEquals(1, tail.getRecords().size());
+			assertEquals(count, tail.getRecords().get(0).getOffset());
+			assertArrayEquals(payload(count), tail.getRecords().get(0).getPayload());
+		}
+		segment.close(false);
+	}
+
+	private File write(final int count) throws IOException {
+		final JournalSegment segment = JournalSegment.create(directory, 0, RECORD_SIZE * 10, RECORD_SIZE * 3);
+		for (int i = 0; i < count; i++) {
+			segment.append(1000 + i, TOPIC, HEADER, payload(i));
+		}
+		segment.close(false);
+		return new File(directory, String.format("%020d.log", 0));
+	}
+
+	private static byte[] payload(final int i) {
+		final byte[] payload = new byte[20];
+		payload[0] = (byte) i;
+		payload[19] = (byte) (i * 7);
+		return payload;
+	}
+
+}
@@ -0,0 +1,174 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.journal;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for appending to, rolling and reading back a message journal.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class MessageJournalTest {
+
+	private static final byte[] TOPIC = "telemetry".getBytes();
+
+	/** Topic, empty header and a 20 byte payload make a 57 byte record. */
+	private static final int RECORD_SIZE = JournalSegment.RECORD_HEADER + 9 + 20;
+
+	private File directory;
+	private MessageJournal journal;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("journal").toFile();
+	}
+
+	@After
+	public void tearDown() {
+		if (journal != null) {
+			journal.close();
+		}
+		for (final File file : directory.listFiles()) {
+			file.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testAppendAcrossRoll() throws IOException {
+		journal = new MessageJournal(directory, RECORD_SIZE * 4, 64, 10);
+		for (int i = 0; i < 10; i++) {
+			assertEquals(i, journal.append(TOPIC, null, payload(i)));
+		}
+		assertEquals(3, logFiles().length);
+		assertEquals(0, journal.getStartOffset());
+		assertEquals(10, journal.getEndOffset());
+
+		final JournalPage page = journal.read(0, 100);
+		assertEquals(10, page.getRecords().size());
+		for (int i = 0; i < 10; i++) {
+			final JournalRecord record = page.getRecords().get(i);
+			assertEquals(i, record.getOffset());
+			assertArrayEquals(TOPIC, record.getTopic());
+			assertArrayEquals(payload(i), record.getPayload());
+		}
+		assertEquals(10, page.getNextOffset());
+		assertTrue(page.isLast());
+	}
+
+	@Test
+	public void testAppendTooLarge() throws IOException {
+		journal = new MessageJournal(directory, RECORD_SIZE * 4, 64, 10);
+		assertEquals(-1, journal.append(TOPIC, null, new byte[RECORD_SIZE * 4]));
+		assertEquals(0, journal.append(TOPIC, null, payload(0)));
+	}
+
+	@Test
+	public void testReadFromMidSegment() throws IOException {
+		journal = new MessageJournal(directory, RECORD_SIZE * 100, RECORD_SIZE * 4, 10);
+		for (int i = 0; i < 50; i++) {
+			journal.append(TOPIC, null, payload(i));
+		}
+		final JournalPage page = journal.read(23, 5);
+		assertEquals(5, page.getRecords().size());
+		for (int i = 0; i < 5; i++) {
+			assertEquals(23 + i, page.getRecords().get(i).getOffset());
+			assertArrayEquals(payload(23 + i), page.getRecords().get(i).getPayload());
+		}
+		assertEquals(28, page.getNextOffset());
+		assertEquals(50, page.getEndOffset());
+		assertFalse(page.isLast());
+	}
+
+	@Test
+	public void testReadSpansSegments() throws IOException {
+		journal = new MessageJournal(directory, RECORD_SIZE * 4, 64, 10);
+		for (int i = 0; i < 10; i++) {
+			journal.append(TOPIC, null, payload(i));
+		}
+		final JournalPage page = journal.read(3, 3);
+		assertEquals(3, page.getRecords().size());
+		assertEquals(3, page.getRecords().get(0).getOffset());
+		assertEquals(5, page.getRecords().get(2).getOffset());
+		assertEquals(6, page.getNextOffset());
+	}
+
+	@Test
+	public void testReopen() throws IOException {
+		journal = new MessageJournal(directory, RECORD_SIZE * 4, 64, 10);
+		for (int i = 0; i < 6; i++) {
+			journal.append(TOPIC, null, payload(i));
+		}
+		journal.close();
+
+		journal = new MessageJournal(directory, RECORD_SIZE * 4, 64, 10);
+		assertEquals(0, journal.getStartOffset());
+		assertEquals(6, journal.getEndOffset());
+		assertEquals(6, journal.append(TOPIC, null, payload(6)));
+		assertEquals(7, journal.read(0, 100).getRecords().size());
+	}
+
+	@Test
+	public void testRetention() throws IOException {
+		journal = new MessageJournal(directory, RECORD_SIZE * 4, 64, 2);
+		for (int i = 0; i < 10; i++) {
+			journal.append(TOPIC, null, payload(i));
+		}
+		assertEquals(2, logFiles().length);
+		assertEquals(4, journal.getStartOffset());
+
+		final JournalPage page = journal.read(0, 100);
+		assertEquals(6, page.getRecords().size());
+		assertEquals(4, page.getRecords().get(0).getOffset());
+	}
+
+	private File[] logFiles() {
+		return directory.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File file) {
+				return JournalSegment.isLogFile(file);
+			}
+		});
+	}
+
+	private static byte[] payload(final int i) {
+		final byte[] payload = new byte[20];
+		payload[0] = (byte) i;
+		payload[19] = (byte) (i * 7);
+		return payload;
+	}
+
+}
@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.liveness;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test case for expiring coordinators that stop sending heartbeats.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LivenessRegistryTest {
+
+	private static final long T0 = 1000000L;
+
+	@Test
+	public void testExpiresAfterTimeout() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		registry.heartbeat("c1", T0);
+		assertEquals(0, registry.tick(T0 + 2900));
+		assertFalse(registry.isExpired("c1"));
+		assertEquals(1, registry.tick(T0 + 3000));
+		assertTrue(registry.isExpired("c1"));
+		assertFalse(registry.getCoordinator("c1").isAlive());
+	}
+
+	@Test
+	public void testHeartbeatExtendsDeadline() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		registry.heartbeat("c1", T0);
+		for (long t = T0 + 1000; t <= T0 + 10000; t += 1000) {
+			registry.tick(t);
+			registry.heartbeat("c1", t);
+		}
+		assertEquals(0, registry.tick(T0 + 12900));
+		assertEquals(1, registry.tick(T0 + 13000));
+	}
+
+	@Test
+	public void testRevivedByHeartbeat() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		registry.heartbeat("c1", T0);
+		registry.tick(T0 + 5000);
+		assertTrue(registry.isExpired("c1"));
+		registry.heartbeat("c1", T0 + 5100);
+		assertFalse(registry.isExpired("c1"));
+		assertEquals(2, registry.getCoordinator("c1").getHeartbeats());
+		assertEquals(T0 + 5100, registry.getCoordinator("c1").getLastSeen());
+	}
+
+	@Test
+	public void testHeartbeatDuringStall() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		registry.heartbeat("c1", T0);
+		registry.heartbeat("c2", T0);
+		// the wheel is not ticked for longer than the timeout, during which
+		// only c1 is heard from
+		registry.heartbeat("c1", T0 + 5000);
+		assertEquals(0, registry.tick(T0 + 5000));
+		assertFalse(registry.isExpired("c1"));
+		assertTrue(registry.isExpired("c2"));
+		assertEquals(0, registry.tick(T0 + 7900));
+		assertEquals(1, registry.tick(T0 + 8000));
+		assertTrue(registry.isExpired("c1"));
+	}
+
+	@Test
+	public void testHeartbeatDuringShortStall() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		registry.heartbeat("c1", T0);
+		registry.heartbeat("c1", T0 + 2000);
+		assertEquals(0, registry.tick(T0 + 4900));
+		assertEquals(1, registry.tick(T0 + 5000));
+	}
+
+	@Test
+	public void testUnknownCoordinator() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		assertEquals(0, registry.tick(T0));
+		assertNull(registry.getCoordinator("c1"));
+		assertFalse(registry.isExpired("c1"));
+		assertTrue(registry.getCoordinators().isEmpty());
+	}
+
+	@Test
+	public void testManyCoordinators() {
+		final LivenessRegistry registry = new LivenessRegistry(3000, 100);
+		for (int i = 0; i < 100; i++) {
+			registry.heartbeat("c" + i, T0 + i * 10);
+		}
+		assertEquals(0, registry.tick(T0 + 2999));
+		assertEquals(100, registry.tick(T0 + 4000));
+		assertEquals(100, registry.getCoordinators().size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testTimeoutShorterThanTick() {
+		new LivenessRegistry(50, 100);
+	}
+
+}
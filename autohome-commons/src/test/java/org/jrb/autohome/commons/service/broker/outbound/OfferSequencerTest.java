@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.outbound;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test case for ordering offers made outside the lock tickets are taken under.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class OfferSequencerTest {
+
+	private static final int THREADS = 8;
+	private static final int OFFERS = 1000;
+
+	@Test
+	public void testOffersFollowTicketOrder() throws Exception {
+		final OfferSequencer sequencer = new OfferSequencer();
+		final Object lock = new Object();
+		final List<Integer> encoded = new ArrayList<>();
+		final List<Integer> offered = Collections.synchronizedList(new ArrayList<Integer>());
+		final CountDownLatch done = new CountDownLatch(THREADS);
+		for (int t = 0; t < THREADS; t++) {
+			final int thread = t;
+			new Thread() {
+				@Override
+				public void run() {
+					for (int i = 0; i < OFFERS; i++) {
+						final int value = thread * OFFERS + i;
+						final long ticket;
+						synchronized (lock) {
+							encoded.add(value);
+							ticket = sequencer.take("sensor/1");
+						}
+						if (i % 100 == 0) {
+							Thread.yield();
+						}
+						sequencer.await("sensor/1", ticket);
+						try {
+							offered.add(value);
+						} finally {
+							sequencer.release("sensor/1", ticket);
+						}
+					}
+					done.countDown();
+				}
+			}.start();
+		}
+		assertTrue(done.await(30, TimeUnit.SECONDS));
+		synchronized (lock) {
+			assertEquals(encoded, offered);
+		}
+	}
+
+	@Test
+	public void testStripesDoNotWaitOnEachOther() throws Exception {
+		final OfferSequencer sequencer = new OfferSequencer(4);
+		final long held = sequencer.take("a");
+		assertEquals(0, held);
+		assertEquals(1, sequencer.take("a"));
+
+		// another stripe's first ticket is served at once
+		final long other = sequencer.take("b");
+		sequencer.await("b", other);
+		sequencer.release("b", other);
+
+		// the second ticket on "a" waits for the first
+		final CountDownLatch served = new CountDownLatch(1);
+		final Thread waiter = new Thread() {
+			@Override
+			public void run() {
+				sequencer.await("a", 1);
+				served.countDown();
+				sequencer.release("a", 1);
+			}
+		};
+		waiter.start();
+		assertFalse(served.await(100, TimeUnit.MILLISECONDS));
+		sequencer.release("a", held);
+		assertTrue(served.await(5, TimeUnit.SECONDS));
+		waiter.join(5000);
+	}
+
+}
@@ -0,0 +1,127 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.reactor;
+
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeromq.ZMQ;
+
+/**
+ * Test case for servicing sockets on the reactor thread.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class ReactorTest {
+
+	private static final String ENDPOINT = "inproc://reactor-test";
+
+	private ZMQ.Context context;
+	private Reactor reactor;
+	private Thread thread;
+
+	@Before
+	public void setUp() {
+		context = ZMQ.context(1);
+		reactor = new Reactor(context);
+	}
+
+	@After
+	public void tearDown() throws InterruptedException {
+		assertTrue(reactor.stop(5, TimeUnit.SECONDS));
+		context.term();
+	}
+
+	@Test
+	public void testReceivesWhileBusy() throws InterruptedException {
+		final ZMQ.Socket publisher = context.socket(ZMQ.PUB);
+		publisher.setLinger(0);
+		publisher.bind(ENDPOINT);
+		final ZMQ.Socket subscriber = context.socket(ZMQ.SUB);
+		subscriber.setLinger(0);
+		subscriber.subscribe(new byte[0]);
+		subscriber.connect(ENDPOINT);
+
+		// a task that always has work, like a publisher under steady load
+		final AtomicLong sent = new AtomicLong();
+		reactor.manage(publisher);
+		reactor.addTask(new ReactorTask() {
+			@Override
+			public boolean perform() {
+				publisher.send(new byte[] { (byte) sent.incrementAndGet() }, ZMQ.DONTWAIT);
+				return true;
+			}
+		});
+		final CountDownLatch received = new CountDownLatch(100);
+		reactor.register(subscriber, new SocketHandler() {
+			@Override
+			public void onReadable(final ZMQ.Socket socket) {
+				while (socket.recv(ZMQ.DONTWAIT) != null) {
+					received.countDown();
+				}
+			}
+		});
+		start();
+
+		assertTrue(received.await(10, TimeUnit.SECONDS));
+	}
+
+	@Test
+	public void testExecuteAndSchedule() throws InterruptedException {
+		start();
+		final CountDownLatch executed = new CountDownLatch(1);
+		reactor.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (reactor.isReactorThread()) {
+					executed.countDown();
+				}
+			}
+		});
+		assertTrue(executed.await(5, TimeUnit.SECONDS));
+
+		final CountDownLatch fired = new CountDownLatch(1);
+		final long start = System.nanoTime();
+		reactor.schedule(new Runnable() {
+			@Override
+			public void run() {
+				fired.countDown();
+			}
+		}, 50, TimeUnit.MILLISECONDS);
+		assertTrue(fired.await(5, TimeUnit.SECONDS));
+		assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+	}
+
+	private void start() {
+		thread = new Thread(reactor, "reactor-test");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+}
@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jrb.autohome.commons.service.broker.EnvelopeHeader;
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.jrb.autohome.commons.service.broker.codec.MessageCodecRegistry;
+import org.jrb.autohome.commons.service.broker.outbound.OutboundEnvelope;
+import org.jrb.autohome.commons.service.broker.topic.TopicFilter;
+import org.junit.Test;
+
+/**
+ * Test case for caching the latest envelope of each topic.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class LastValueCacheTest {
+
+	private static final TopicFilter ALL = new TopicFilter(Collections.<String> emptyList());
+
+	@Test
+	public void testCachesLatestPerTopic() {
+		final LastValueCache cache = new LastValueCache(Collections.<String> emptyList(), 10);
+		cache.update(envelope("sensor/1", (byte) 0, "a", null));
+		cache.update(envelope("sensor/2", (byte) 0, "b", null));
+		cache.update(envelope("sensor/1", (byte) 0, "c", null));
+
+		assertEquals(3, cache.getSequence());
+		final List<LastValueCache.CachedEnvelope> entries = cache.snapshot(ALL);
+		assertEquals(2, entries.size());
+		assertEquals("sensor/2", new String(entries.get(0).getTopic(), MessageUtils.CHARSET));
+		assertEquals("c", new String(entries.get(1).getPayload(), MessageUtils.CHARSET));
+		assertEquals(3, EnvelopeHeader.decode(entries.get(1).getHeader()).getSequence());
+	}
+
+	@Test
+	public void testCachedTopics() {
+		final LastValueCache cache = new LastValueCache(Arrays.asList("sensor/#"), 10);
+		assertTrue(cache.caches("sensor/1".getBytes()));
+		assertFalse(cache.caches("alarm/1".getBytes()));
+		cache.update(envelope("alarm/1", (byte) 0, "a", null));
+		assertEquals(1, cache.getSequence());
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testDeltaCachedAsSnapshot() {
+		final LastValueCache cache = new LastValueCache(Collections.<String> emptyList(), 10);
+		cache.update(envelope("sensor/1", EnvelopeHeader.FLAG_KEYFRAME, "{\"v\":0}", null));
+		cache.update(envelope("sensor/1", (byte) (EnvelopeHeader.FLAG_DELTA | EnvelopeHeader.FLAG_COMPRESSED),
+				"delta", "{\"seq\":1,\"state\":{\"v\":1}}"));
+
+		final LastValueCache.CachedEnvelope entry = cache.snapshot(ALL).get(0);
+		final EnvelopeHeader header = EnvelopeHeader.decode(entry.getHeader());
+		assertTrue(header.hasFlag(EnvelopeHeader.FLAG_KEYFRAME));
+		assertTrue(header.hasFlag(EnvelopeHeader.FLAG_DELTA));
+		assertFalse(header.hasFlag(EnvelopeHeader.FLAG_COMPRESSED));
+		assertEquals(2, header.getSequence());
+		assertArrayEquals("{\"seq\":1,\"state\":{\"v\":1}}".getBytes(), entry.getPayload());
+	}
+
+	@Test
+	public void testDeltaWithoutSnapshotKeepsEntry() {
+		final LastValueCache cache = new LastValueCache(Collections.<String> emptyList(), 10);
+		cache.update(envelope("sensor/1", EnvelopeHeader.FLAG_KEYFRAME, "{\"v\":0}", null));
+		cache.update(envelope("sensor/1", EnvelopeHeader.FLAG_DELTA, "delta", null));
+
+		final LastValueCache.CachedEnvelope entry = cache.snapshot(ALL).get(0);
+		assertEquals(1, EnvelopeHeader.decode(entry.getHeader()).getSequence());
+		assertArrayEquals("{\"v\":0}".getBytes(), entry.getPayload());
+	}
+
+	@Test
+	public void testEviction() {
+		final LastValueCache cache = new LastValueCache(Collections.<String> emptyList(), 2);
+		cache.update(envelope("sensor/1", (byte) 0, "a", null));
+		cache.update(envelope("sensor/2", (byte) 0, "b", null));
+		cache.update(envelope("sensor/3", (byte) 0, "c", null));
+		assertEquals(2, cache.size());
+		assertEquals("sensor/2", new String(cache.snapshot(ALL).get(0).getTopic(), MessageUtils.CHARSET));
+	}
+
+	private static OutboundEnvelope envelope(
+			final String topic,
+			final byte flags,
+			final String payload,
+			final String snapshot) {
+		final byte[] header = new EnvelopeHeader(
+				"Type", MessageCodecRegistry.JSON_ID, (byte) (flags | EnvelopeHeader.FLAG_SEQUENCE)).encode();
+		return new OutboundEnvelope(
+				topic,
+				"Type",
+				topic.getBytes(MessageUtils.CHARSET),
+				header,
+				payload.getBytes(MessageUtils.CHARSET),
+				(snapshot != null) ? snapshot.getBytes(MessageUtils.CHARSET) : null);
+	}
+
+}
@@ -0,0 +1,229 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.jrb.autohome.commons.service.broker.OverflowPolicy;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.message.SimpleMessage;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerOperation;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test case for the demand and overflow handling of stream subscriptions.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class StreamSubscriptionTest {
+
+	private TopicRouter router;
+	private BrokerMetrics metrics;
+
+	@Before
+	public void setUp() {
+		router = new TopicRouter();
+		metrics = new BrokerMetrics();
+	}
+
+	@Test
+	public void testRequestLimitsDelivery() {
+		final Recorder recorder = subscribe(stream(10, OverflowPolicy.BLOCK), 2);
+		for (int i = 1; i <= 5; i++) {
+			route("sensor/1", i);
+		}
+		assertEquals(Arrays.asList(1, 2), recorder.received);
+		recorder.subscription.request(2);
+		assertEquals(Arrays.asList(1, 2, 3, 4), recorder.received);
+		recorder.subscription.request(10);
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), recorder.received);
+		route("sensor/1", 6);
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), recorder.received);
+	}
+
+	@Test
+	public void testRequestFromOnNext() {
+		final Recorder recorder = subscribe(stream(10, OverflowPolicy.BLOCK), 0);
+		recorder.rerequest = true;
+		for (int i = 1; i <= 5; i++) {
+			route("sensor/1", i);
+		}
+		assertTrue(recorder.received.isEmpty());
+		recorder.subscription.request(1);
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5), recorder.received);
+		assertEquals(1, recorder.maxDepth);
+		route("sensor/1", 6);
+		assertEquals(Arrays.asList(1, 2, 3, 4, 5, 6), recorder.received);
+	}
+
+	@Test
+	public void testDropOldest() {
+		final Recorder recorder = subscribe(stream(2, OverflowPolicy.DROP_OLDEST), 0);
+		for (int i = 1; i <= 4; i++) {
+			route("sensor/1", i);
+		}
+		recorder.subscription.request(10);
+		assertEquals(Arrays.asList(3, 4), recorder.received);
+		assertEquals(2, metrics.getTotal(BrokerOperation.DISPATCH).getDrops());
+	}
+
+	@Test
+	public void testDropNewest() {
+		final Recorder recorder = subscribe(stream(2, OverflowPolicy.DROP_NEWEST), 0);
+		for (int i = 1; i <= 4; i++) {
+			route("sensor/1", i);
+		}
+		recorder.subscription.request(10);
+		assertEquals(Arrays.asList(1, 2), recorder.received);
+		assertEquals(2, metrics.getTotal(BrokerOperation.DISPATCH).getDrops());
+	}
+
+	@Test
+	public void testConflate() {
+		final Recorder recorder = subscribe(stream(2, OverflowPolicy.CONFLATE), 0);
+		route("sensor/a", 1);
+		route("sensor/b", 2);
+		route("sensor/a", 3);
+		route("sensor/c", 4);
+		recorder.subscription.request(10);
+		assertEquals(Arrays.asList(3, 2), recorder.received);
+		assertEquals(1, metrics.getTotal(BrokerOperation.DISPATCH).getDrops());
+	}
+
+	@Test
+	public void testBlockReleasedByRequest() throws Exception {
+		final Recorder recorder = subscribe(stream(1, OverflowPolicy.BLOCK), 0);
+		route("sensor/1", 1);
+		final Thread routing = new Thread() {
+			@Override
+			public void run() {
+				route("sensor/1", 2);
+			}
+		};
+		routing.start();
+		routing.join(200);
+		assertTrue(routing.isAlive());
+
+		recorder.subscription.request(1);
+		routing.join(5000);
+		assertFalse(routing.isAlive());
+		assertEquals(Arrays.asList(1), recorder.received);
+		recorder.subscription.request(1);
+		assertEquals(Arrays.asList(1, 2), recorder.received);
+		assertEquals(0, metrics.getTotal(BrokerOperation.DISPATCH).getDrops());
+	}
+
+	@Test
+	public void testCompleteDrainsBuffer() {
+		final MessageStream<Integer> stream = stream(10, OverflowPolicy.BLOCK);
+		final Recorder recorder = subscribe(stream, 0);
+		for (int i = 1; i <= 3; i++) {
+			route("sensor/1", i);
+		}
+		stream.complete();
+		route("sensor/1", 4);
+		assertFalse(recorder.completed);
+		recorder.subscription.request(2);
+		assertEquals(Arrays.asList(1, 2), recorder.received);
+		assertFalse(recorder.completed);
+		recorder.subscription.request(1);
+		assertEquals(Arrays.asList(1, 2, 3), recorder.received);
+		assertTrue(recorder.completed);
+
+		// a completed subscription is no longer routed to
+		assertFalse(router.route("sensor/1", new SimpleMessage<Integer>(5)));
+	}
+
+	private void route(final String topic, final int payload) {
+		router.route(topic, new SimpleMessage<Integer>(payload));
+	}
+
+	private MessageStream<Integer> stream(final int capacity, final OverflowPolicy policy) {
+		return new MessageStream<>(router, "sensor/#", Integer.class, capacity, policy, metrics);
+	}
+
+	private Recorder subscribe(final MessageStream<Integer> stream, final long initial) {
+		final Recorder recorder = new Recorder(initial);
+		stream.subscribe(recorder);
+		return recorder;
+	}
+
+	/**
+	 * Subscriber recording the payloads it receives, after an initial request,
+	 * and optionally requesting one more from within <code>onNext</code>.
+	 */
+	private static class Recorder implements Subscriber<Message<Integer>> {
+
+		private final long initial;
+		private final List<Integer> received = new ArrayList<>();
+
+		private Subscription subscription;
+		private boolean rerequest = false;
+		private boolean completed = false;
+		private int depth = 0;
+		private int maxDepth = 0;
+
+		Recorder(final long initial) {
+			this.initial = initial;
+		}
+
+		@Override
+		public void onSubscribe(final Subscription subscription) {
+			this.subscription = subscription;
+			if (initial > 0) {
+				subscription.request(initial);
+			}
+		}
+
+		@Override
+		public void onNext(final Message<Integer> element) {
+			maxDepth = Math.max(maxDepth, ++depth);
+			received.add(element.getPayload());
+			if (rerequest) {
+				subscription.request(1);
+			}
+			depth--;
+		}
+
+		@Override
+		public void onError(final Throwable error) {
+			throw new AssertionError(error);
+		}
+
+		@Override
+		public void onComplete() {
+			completed = true;
+		}
+
+	}
+
+}
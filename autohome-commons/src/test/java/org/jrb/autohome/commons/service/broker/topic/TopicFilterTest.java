@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+
+import org.jrb.autohome.commons.service.broker.MessageUtils;
+import org.junit.Test;
+
+/**
+ * Test case for the subscriber socket's topic filter.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicFilterTest {
+
+	@Test
+	public void testPrefixOf() {
+		assertEquals("home/", TopicFilter.prefixOf("home/+/temperature"));
+		assertEquals("home", TopicFilter.prefixOf("home/#"));
+		assertEquals("", TopicFilter.prefixOf("#"));
+		assertEquals("", TopicFilter.prefixOf("+/light"));
+	}
+
+	@Test
+	public void testLiteralPrefixes() {
+		final TopicFilter filter = new TopicFilter(Arrays.asList("Message", "Command"));
+		assertFalse(filter.isLocal());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("Message", "Command")), filter.getPrefixes());
+		assertTrue(filter.accepts(bytes("Message|{}"), 7));
+		assertTrue(filter.accepts(bytes("Command"), 7));
+		assertFalse(filter.accepts(bytes("Mess"), 4));
+		assertFalse(filter.accepts(bytes("Event|{}"), 5));
+	}
+
+	@Test
+	public void testEmptyFilterAcceptsAll() {
+		final TopicFilter filter = new TopicFilter(Collections.<String> emptyList());
+		assertEquals(Collections.singleton(""), filter.getPrefixes());
+		assertTrue(filter.accepts(bytes("anything"), 8));
+	}
+
+	@Test
+	public void testMultiplePatterns() {
+		final TopicFilter filter = new TopicFilter(Arrays.asList("home/+/temperature", "garage/door", "office/#"));
+		assertTrue(filter.isLocal());
+		assertEquals(new LinkedHashSet<>(Arrays.asList("home/", "garage/door", "office")), filter.getPrefixes());
+
+		assertTrue(filter.matches(bytes("home/kitchen/temperature"), 24));
+		assertTrue(filter.matches(bytes("garage/door/open"), 16));
+		assertTrue(filter.matches(bytes("office"), 6));
+		assertTrue(filter.matches(bytes("office/desk/lamp"), 16));
+		assertFalse(filter.matches(bytes("home/kitchen/humidity"), 21));
+		assertFalse(filter.matches(bytes("home/temperature"), 16));
+
+		final byte[] single = bytes("home/hall/temperature|{\"value\":21}");
+		assertTrue(filter.accepts(single, MessageUtils.indexOf(single, bytes("|"))));
+		final byte[] other = bytes("home/hall/humidity|{\"value\":40}");
+		assertFalse(filter.accepts(other, MessageUtils.indexOf(other, bytes("|"))));
+		assertFalse(filter.matches(bytes("untopical"), -1));
+	}
+
+	private static byte[] bytes(final String value) {
+		return value.getBytes(MessageUtils.CHARSET);
+	}
+
+}
@@ -0,0 +1,189 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Test case for routing messages to subscribed handlers by topic.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicRouterTest {
+
+	@Test
+	public void testRoutesByPatternAndType() {
+		final TopicRouter router = new TopicRouter();
+		final Recorder strings = new Recorder();
+		final Recorder numbers = new Recorder();
+		router.subscribe("home/+/temperature", String.class, strings);
+		router.subscribe("home/#", Number.class, numbers);
+
+		assertTrue(router.route("home/kitchen/temperature", "warm"));
+		assertTrue(router.route("home/kitchen/temperature", 21));
+		assertFalse(router.route("garage/door", "open"));
+		assertFalse(router.route("home/kitchen", "warm"));
+
+		assertEquals(1, strings.topics.size());
+		assertEquals("warm", strings.messages.get(0));
+		assertEquals(1, numbers.topics.size());
+		assertEquals(21, numbers.messages.get(0));
+	}
+
+	@Test
+	public void testRegisteredBean() {
+		final TopicRouter router = new TopicRouter();
+		final Listener listener = new Listener();
+		router.register(listener);
+		router.route("home/kitchen/light", "on");
+		router.route("garage/door", "open");
+		assertEquals(1, listener.lights.size());
+		assertEquals("home/kitchen/light", listener.lights.get(0));
+		assertEquals(2, listener.all);
+
+		router.unregister(listener);
+		router.route("home/kitchen/light", "off");
+		assertEquals(2, listener.all);
+	}
+
+	@Test
+	public void testUnsubscribe() {
+		final TopicRouter router = new TopicRouter();
+		final Recorder first = new Recorder();
+		final Recorder second = new Recorder();
+		router.subscribe("#", Object.class, first);
+		router.subscribe("home/#", Object.class, second);
+		router.route("home/hall", "a");
+
+		router.unsubscribe(first);
+		router.route("home/hall", "b");
+		assertEquals(1, first.messages.size());
+		assertEquals(2, second.messages.size());
+
+		try {
+			router.unsubscribe(first);
+			throw new AssertionError("Unsubscribed twice");
+		} catch (final IllegalArgumentException e) {
+			// expected
+		}
+	}
+
+	@Test
+	public void testRouteCacheIsBounded() {
+		final TopicRouter router = new TopicRouter();
+		final Recorder recorder = new Recorder();
+		router.subscribe("sensor/#", Object.class, recorder);
+		final int topics = TopicRouter.DEFAULT_MAX_CACHED_TOPICS + 1000;
+		for (int i = 0; i < topics; i++) {
+			router.route("sensor/" + i, i);
+		}
+		assertEquals(TopicRouter.DEFAULT_MAX_CACHED_TOPICS, router.getCachedTopics());
+		for (int i = 0; i < topics; i++) {
+			router.route("sensor/" + i, i);
+		}
+		assertEquals(2 * topics, recorder.messages.size());
+		assertEquals(TopicRouter.DEFAULT_MAX_CACHED_TOPICS, router.getCachedTopics());
+
+		// a new subscription discards the cached routes
+		final Recorder late = new Recorder();
+		router.subscribe("sensor/+", Object.class, late);
+		assertEquals(0, router.getCachedTopics());
+		router.route("sensor/0", 0);
+		assertEquals(1, late.messages.size());
+	}
+
+	@Test
+	public void testRouteCacheEvictsColdTopics() {
+		final TopicRouter router = new TopicRouter(16);
+		final Recorder recorder = new Recorder();
+		router.subscribe("sensor/#", Object.class, recorder);
+		router.route("sensor/hot", 0);
+		for (int i = 0; i < 100; i++) {
+			router.route("sensor/" + i, i);
+			router.route("sensor/hot", i);
+			assertTrue(router.isCached("sensor/" + i));
+		}
+		assertEquals(16, router.getCachedTopics());
+		assertTrue(router.isCached("sensor/hot"));
+		assertFalse(router.isCached("sensor/0"));
+		assertEquals(201, recorder.messages.size());
+	}
+
+	@Test
+	public void testRouteCacheDisabled() {
+		final TopicRouter router = new TopicRouter(0);
+		final Recorder recorder = new Recorder();
+		router.subscribe("sensor/#", Object.class, recorder);
+		assertTrue(router.route("sensor/1", 1));
+		assertTrue(router.route("sensor/1", 2));
+		assertEquals(0, router.getCachedTopics());
+		assertEquals(2, recorder.messages.size());
+	}
+
+	/**
+	 * Handler recording what it receives.
+	 */
+	private static class Recorder implements MessageHandler<Object> {
+
+		private final List<String> topics = new ArrayList<>();
+		private final List<Object> messages = new ArrayList<>();
+
+		@Override
+		public void handle(final String topic, final Object message) {
+			topics.add(topic);
+			messages.add(message);
+		}
+
+	}
+
+	/**
+	 * Bean with <code>@Subscribe</code> methods.
+	 */
+	public static class Listener {
+
+		private final List<String> lights = new ArrayList<>();
+		private int all = 0;
+
+		@Subscribe
+		@Topic("home/+/light")
+		public void light(final String topic, final String state) {
+			lights.add(topic);
+		}
+
+		@Subscribe
+		public void any(final Object message) {
+			all++;
+		}
+
+	}
+
+}
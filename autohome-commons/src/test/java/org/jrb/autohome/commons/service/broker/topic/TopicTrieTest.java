@@ -0,0 +1,122 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.broker.topic;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test case for topic pattern matching.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TopicTrieTest {
+
+	@Test
+	public void testSingleLevelWildcard() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("home/+/temperature", "a");
+		assertTrue(trie.matches("home/kitchen/temperature"));
+		assertTrue(trie.matches("home//temperature"));
+		assertFalse(trie.matches("home/temperature"));
+		assertFalse(trie.matches("home/kitchen/oven/temperature"));
+		assertFalse(trie.matches("home/kitchen/humidity"));
+		assertFalse(trie.matches(null));
+	}
+
+	@Test
+	public void testMultiLevelWildcard() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("home/#", "a");
+		assertTrue(trie.matches("home"));
+		assertTrue(trie.matches("home/kitchen"));
+		assertTrue(trie.matches("home/kitchen/light"));
+		assertFalse(trie.matches("homes"));
+		assertFalse(trie.matches("garage/door"));
+		assertFalse(trie.matches(null));
+
+		trie.add("#", "b");
+		assertTrue(trie.matches("garage/door"));
+		assertTrue(trie.matches(null));
+	}
+
+	@Test
+	public void testOverlappingPatterns() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("home/kitchen/light", "literal");
+		trie.add("home/+/light", "single");
+		trie.add("home/#", "multi");
+		trie.add("garage/#", "other");
+		assertEquals(Arrays.asList("literal", "multi", "single"), match(trie, "home/kitchen/light"));
+		assertEquals(Arrays.asList("multi", "single"), match(trie, "home/hall/light"));
+		assertEquals(Arrays.asList("multi"), match(trie, "home/hall"));
+		assertEquals(Collections.<String> emptyList(), match(trie, "office/light"));
+	}
+
+	@Test
+	public void testRemove() {
+		final TopicTrie<String> trie = new TopicTrie<>();
+		trie.add("home/+/light", "a");
+		trie.add("home/+/light", "b");
+		trie.add("home/#", "c");
+		assertFalse(trie.remove("home/+/light", "c"));
+		assertFalse(trie.remove("home/kitchen/light", "a"));
+		assertTrue(trie.remove("home/+/light", "a"));
+		assertEquals(Arrays.asList("b", "c"), match(trie, "home/kitchen/light"));
+		assertTrue(trie.remove("home/+/light", "b"));
+		assertTrue(trie.remove("home/#", "c"));
+		assertTrue(trie.isEmpty());
+		assertFalse(trie.matches("home/kitchen/light"));
+	}
+
+	@Test
+	public void testValidate() {
+		for (final String pattern : Arrays.asList("home/#/light", "home/kit+chen", "home/#kitchen")) {
+			try {
+				TopicTrie.validate(pattern);
+				throw new AssertionError("Accepted invalid pattern " + pattern);
+			} catch (final IllegalArgumentException e) {
+				// expected
+			}
+		}
+		TopicTrie.validate("+/+/#");
+		assertTrue(TopicTrie.isWildcard("home/+"));
+		assertFalse(TopicTrie.isWildcard("home/kitchen+"));
+	}
+
+	private static List<String> match(final TopicTrie<String> trie, final String topic) {
+		final List<String> matches = new ArrayList<>();
+		trie.match(topic, matches);
+		Collections.sort(matches);
+		return matches;
+	}
+
+}
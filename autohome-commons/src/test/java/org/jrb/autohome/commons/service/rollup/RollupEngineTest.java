@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.rollup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test case for recording and aggregating rollup series.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RollupEngineTest {
+
+	private static final long MINUTE = Resolution.MINUTE.getMillis();
+	private static final double DELTA = 1e-9;
+
+	@Test
+	public void testStaleBucketIsRejected() {
+		final RollupEngine engine = new RollupEngine(10, 4, 2, 0, 0);
+		engine.record("sensor", 3 * MINUTE + 1, 5);
+
+		// minute 1 shares a slot with the newer minute 3
+		engine.record("sensor", MINUTE, 100);
+		final Aggregate aggregate = engine.aggregate("sensor", Resolution.MINUTE, 0, 4 * MINUTE);
+		assertEquals(1, aggregate.getCount());
+		assertEquals(5, aggregate.getMax(), DELTA);
+
+		// minute 2 has a slot of its own, and minute 5 replaces minute 3
+		engine.record("sensor", 2 * MINUTE, 7);
+		engine.record("sensor", 5 * MINUTE, 9);
+		assertEquals(7, engine.current("sensor", Resolution.MINUTE, 2 * MINUTE).getSum(), DELTA);
+		assertTrue(engine.current("sensor", Resolution.MINUTE, 3 * MINUTE).isEmpty());
+		assertEquals(9, engine.current("sensor", Resolution.MINUTE, 5 * MINUTE).getSum(), DELTA);
+	}
+
+	@Test
+	public void testWindowIsClamped() {
+		final RollupEngine engine = new RollupEngine(10, 4, 3, 0, 0);
+		for (int minute = 0; minute < 6; minute++) {
+			engine.record("sensor", minute * MINUTE, minute);
+		}
+
+		// only the last three minutes are still held
+		Aggregate aggregate = engine.aggregate("sensor", Resolution.MINUTE, 0, 6 * MINUTE);
+		assertEquals(3, aggregate.getCount());
+		assertEquals(3, aggregate.getMin(), DELTA);
+		assertEquals(5, aggregate.getMax(), DELTA);
+
+		// a window past the data reaches none of it
+		assertTrue(engine.aggregate("sensor", Resolution.MINUTE, 0, 100 * MINUTE).isEmpty());
+
+		// a window within a bucket is widened to the whole bucket
+		aggregate = engine.aggregate("sensor", Resolution.MINUTE, 4 * MINUTE + 10, 4 * MINUTE + 20);
+		assertEquals(1, aggregate.getCount());
+		assertEquals(4, aggregate.getSum(), DELTA);
+
+		assertTrue(engine.aggregate("sensor", Resolution.MINUTE, 5 * MINUTE, 5 * MINUTE).isEmpty());
+	}
+
+	@Test
+	public void testRawWraparound() {
+		final RollupEngine engine = new RollupEngine(10, 4, 0, 0, 0);
+		for (int i = 1; i <= 10; i++) {
+			engine.record("sensor", i, i);
+		}
+		Aggregate aggregate = engine.aggregate("sensor", Resolution.RAW, 0, 100);
+		assertEquals(4, aggregate.getCount());
+		assertEquals(7, aggregate.getMin(), DELTA);
+		assertEquals(10, aggregate.getMax(), DELTA);
+		assertEquals(8.5, aggregate.getMean(), DELTA);
+		assertEquals(10, engine.getLatest("sensor", -1), DELTA);
+
+		aggregate = engine.aggregate("sensor", Resolution.RAW, 0, 8);
+		assertEquals(1, aggregate.getCount());
+		assertEquals(7, aggregate.getSum(), DELTA);
+	}
+
+	@Test
+	public void testMaxSeries() {
+		final RollupEngine engine = new RollupEngine(2, 4, 1, 1, 1);
+		assertTrue(engine.record("home/kitchen/temperature", 0, 20));
+		assertTrue(engine.record("home/hall/temperature", 0, 18));
+		assertFalse(engine.record("home/garage/temperature", 0, 10));
+		assertTrue(engine.record("home/kitchen/temperature", 1, 22));
+
+		assertEquals(2, engine.getSeriesNames().size());
+		assertFalse(engine.getSeriesNames().contains("home/garage/temperature"));
+		assertTrue(engine.aggregate("home/garage/temperature", Resolution.RAW, 0, 10).isEmpty());
+		assertEquals(-1, engine.getLatest("home/garage/temperature", -1), DELTA);
+
+		final Aggregate aggregate = engine.aggregateMatching("home/+/temperature", Resolution.HOUR, 0, 10);
+		assertEquals(3, aggregate.getCount());
+		assertEquals(18, aggregate.getMin(), DELTA);
+		assertEquals(22, aggregate.getMax(), DELTA);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidSizes() {
+		new RollupEngine(0, 4, 1, 1, 1);
+	}
+
+}
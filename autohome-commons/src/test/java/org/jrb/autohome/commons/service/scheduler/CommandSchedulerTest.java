@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Test case for publishing delayed commands and checkpointing them to a file.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class CommandSchedulerTest {
+
+	private final ObjectMapper mapper = new ObjectMapper();
+	private final List<Object[]> published = new ArrayList<>();
+
+	private File directory;
+	private File file;
+	private BrokerService brokerService;
+
+	@Before
+	public void setUp() throws IOException {
+		directory = Files.createTempDirectory("scheduler").toFile();
+		file = new File(directory, "scheduled.json");
+		// records what is published; nothing else is called by the scheduler
+		brokerService = (BrokerService) Proxy.newProxyInstance(
+				BrokerService.class.getClassLoader(),
+				new Class<?>[] { BrokerService.class },
+				new InvocationHandler() {
+					@Override
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("publish")) {
+							published.add(args);
+							return null;
+						}
+						throw new UnsupportedOperationException(method.getName());
+					}
+				});
+	}
+
+	@After
+	public void tearDown() {
+		for (final File child : directory.listFiles()) {
+			child.delete();
+		}
+		directory.delete();
+	}
+
+	@Test
+	public void testTickPublishesDueCommands() {
+		final CommandScheduler scheduler = newScheduler();
+		final long now = System.currentTimeMillis();
+		scheduler.schedule(new ScheduledCommand("a", "lights/1", command("off"), now + 1000));
+		scheduler.schedule(new ScheduledCommand("b", "lights/2", command("on"), now + 5000));
+
+		assertEquals(0, scheduler.tick(now + 900));
+		assertEquals(1, scheduler.tick(now + 1100));
+		assertEquals(1, published.size());
+		assertEquals("lights/1", published.get(0)[0]);
+		assertEquals("off", ((SimpleCommand<?>) published.get(0)[1]).getName());
+		assertEquals(1, scheduler.size());
+		assertEquals(1, scheduler.tick(now + 6000));
+		assertEquals(0, scheduler.size());
+	}
+
+	@Test
+	public void testRescheduleAndCancel() {
+		final CommandScheduler scheduler = newScheduler();
+		scheduler.schedule("a", "lights/1", command("off"), 1, TimeUnit.SECONDS);
+		final ScheduledCommand replaced = scheduler.schedule("a", "lights/1", command("off"), 10, TimeUnit.MINUTES);
+		assertEquals("a", replaced.getId());
+		assertEquals(1, scheduler.size());
+		assertEquals(0, scheduler.tick(System.currentTimeMillis() + 5000));
+
+		assertTrue(scheduler.cancel("a"));
+		assertFalse(scheduler.cancel("a"));
+		assertNull(scheduler.getPending("a"));
+	}
+
+	@Test
+	public void testCheckpointAndLoad() throws IOException {
+		final CommandScheduler scheduler = newScheduler();
+		final long now = System.currentTimeMillis();
+		scheduler.schedule(new ScheduledCommand("a", "lights/1", command("off"), now + 1000));
+		scheduler.schedule(new ScheduledCommand("b", "lights/2", command("on"), now + 60000));
+		scheduler.checkpoint();
+		assertTrue(file.exists());
+		assertFalse(new File(file.getPath() + ".tmp").exists());
+
+		final CommandScheduler reloaded = newScheduler();
+		assertEquals(2, reloaded.load());
+		assertEquals(2, reloaded.size());
+		final ScheduledCommand loaded = reloaded.getPending("b");
+		assertEquals("lights/2", loaded.getTopic());
+		assertEquals("on", loaded.getName());
+		assertEquals("payload", loaded.getPayload());
+		assertEquals(now + 60000, loaded.getDueTime());
+
+		assertEquals(1, reloaded.tick(now + 2000));
+		assertEquals("lights/1", published.get(0)[0]);
+	}
+
+	@Test
+	public void testLoadPublishesOverdueOnFirstTick() throws IOException {
+		final CommandScheduler scheduler = newScheduler();
+		scheduler.schedule(new ScheduledCommand("a", "lights/1", command("off"), System.currentTimeMillis() - 1000));
+		scheduler.checkpoint();
+
+		final CommandScheduler reloaded = newScheduler();
+		reloaded.load();
+		assertEquals(1, reloaded.tick(System.currentTimeMillis()));
+	}
+
+	@Test
+	public void testLoadWithoutFile() throws IOException {
+		assertEquals(0, newScheduler().load());
+	}
+
+	private CommandScheduler newScheduler() {
+		return new CommandScheduler(brokerService, mapper, 10, 6, 4, file, 1000);
+	}
+
+	private static SimpleCommand<Object> command(final String name) {
+		return new SimpleCommand<Object>(name, "payload");
+	}
+
+}
@@ -0,0 +1,176 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.commons.service.scheduler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test case for scheduling timers on a hierarchical timing wheel.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class TimerWheelTest {
+
+	/** Two levels of 4 slots cover delays of up to 15 ticks; three, 63. */
+	private static final int WHEEL_BITS = 2;
+	private static final int LEVELS = 3;
+
+	@Test
+	public void testDelaysAtLevelBoundaries() {
+		// last and first tick of each level, and past the top level
+		assertFiresOnTime(Arrays.asList(1L, 3L, 4L, 5L, 15L, 16L, 17L, 63L, 64L, 65L, 200L, 1000L));
+	}
+
+	@Test
+	public void testEveryDelay() {
+		final List<Long> delays = new ArrayList<>();
+		for (long delay = 0; delay < 300; delay++) {
+			delays.add(delay);
+		}
+		assertFiresOnTime(delays);
+	}
+
+	@Test
+	public void testDelaysAfterWheelHasTurned() {
+		final TimerWheel<Long> wheel = new TimerWheel<>(1, WHEEL_BITS, LEVELS, 0);
+		final List<Long> expired = new ArrayList<>();
+		wheel.advance(37, expired);
+		for (final long delay : Arrays.asList(1L, 3L, 4L, 15L, 16L, 63L, 64L, 200L)) {
+			wheel.schedule("t" + delay, 38 + delay, 38 + delay);
+		}
+		int fired = 0;
+		for (long now = 38; !wheel.isEmpty() && now < 10000; now++) {
+			expired.clear();
+			fired += wheel.advance(now, expired);
+			for (final Long due : expired) {
+				assertEquals(due.longValue(), now);
+			}
+		}
+		assertEquals(8, fired);
+	}
+
+	@Test
+	public void testAdvanceInJumps() {
+		final TimerWheel<String> wheel = new TimerWheel<>(10, WHEEL_BITS, LEVELS, 1000);
+		wheel.schedule("a", "a", 1050);
+		wheel.schedule("b", "b", 1500);
+		wheel.schedule("c", "c", 9000);
+		final List<String> expired = new ArrayList<>();
+		assertEquals(0, wheel.advance(1049, expired));
+		assertEquals(2, wheel.advance(2000, expired));
+		assertEquals(Arrays.asList("a", "b"), expired);
+		assertEquals(1, wheel.size());
+		assertEquals(0, wheel.advance(8990, expired));
+		assertEquals(1, wheel.advance(9000, expired));
+		assertTrue(wheel.isEmpty());
+	}
+
+	@Test
+	public void testRoundsUpToTick() {
+		final TimerWheel<String> wheel = new TimerWheel<>(10, WHEEL_BITS, LEVELS, 0);
+		wheel.schedule("a", "a", 25);
+		final List<String> expired = new ArrayList<>();
+		assertEquals(0, wheel.advance(29, expired));
+		assertEquals(1, wheel.advance(30, expired));
+	}
+
+	@Test
+	public void testPastDueFiresOnNextAdvance() {
+		final TimerWheel<String> wheel = new TimerWheel<>(1, WHEEL_BITS, LEVELS, 0);
+		final List<String> expired = new ArrayList<>();
+		wheel.advance(100, expired);
+		wheel.schedule("a", "a", 50);
+		assertEquals(1, wheel.advance(101, expired));
+	}
+
+	@Test
+	public void testReschedule() {
+		final TimerWheel<String> wheel = new TimerWheel<>(1, WHEEL_BITS, LEVELS, 0);
+		assertNull(wheel.schedule("a", "first", 10));
+		assertEquals("first", wheel.schedule("a", "second", 100));
+		assertEquals(1, wheel.size());
+		final List<String> expired = new ArrayList<>();
+		assertEquals(0, wheel.advance(99, expired));
+		assertEquals(1, wheel.advance(100, expired));
+		assertEquals(Arrays.asList("second"), expired);
+	}
+
+	@Test
+	public void testCancel() {
+		final TimerWheel<String> wheel = new TimerWheel<>(1, WHEEL_BITS, LEVELS, 0);
+		wheel.schedule("a", "a", 10);
+		wheel.schedule("b", "b", 70);
+		assertEquals("b", wheel.cancel("b"));
+		assertNull(wheel.cancel("b"));
+		assertNull(wheel.get("b"));
+		assertEquals("a", wheel.get("a"));
+		final List<String> expired = new ArrayList<>();
+		assertEquals(1, wheel.advance(1000, expired));
+		assertEquals(Arrays.asList("a"), expired);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidTick() {
+		new TimerWheel<String>(0, WHEEL_BITS, LEVELS, 0);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testInvalidLevels() {
+		new TimerWheel<String>(1, 16, 4, 0);
+	}
+
+	/**
+	 * Schedules a timer for each delay and advances the wheel one tick at a
+	 * time, checking that each fires on exactly its due tick.
+	 */
+	private static void assertFiresOnTime(final List<Long> delays) {
+		final TimerWheel<Long> wheel = new TimerWheel<>(1, WHEEL_BITS, LEVELS, 0);
+		for (final Long delay : delays) {
+			wheel.schedule("t" + delay, delay, delay);
+		}
+		final Map<Long, Long> fired = new HashMap<>();
+		final List<Long> expired = new ArrayList<>();
+		for (long now = 0; !wheel.isEmpty() && now < 10000; now++) {
+			expired.clear();
+			wheel.advance(now, expired);
+			for (final Long delay : expired) {
+				fired.put(delay, now);
+			}
+		}
+		assertEquals(delays.size(), fired.size());
+		for (final Long delay : delays) {
+			assertEquals("timer due at " + delay, delay, fired.get(delay));
+		}
+	}
+
+}
@@ -28,6 +28,12 @@ import java.util.concurrent.Executors;
 import org.jrb.autohome.commons.service.broker.BrokerProperties;
 import org.jrb.autohome.commons.service.broker.BrokerService;
 import org.jrb.autohome.commons.service.broker.BrokerServiceImpl;
+import org.jrb.autohome.commons.service.broker.codec.MessageTypeRegistry;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetricsExporter;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouterEventBus;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -48,19 +54,62 @@ public class BrokerConfig {
 	public BrokerService brokerService(
 			final BrokerProperties brokerProperties, 
 			final EventBus messageBus,
-			final ObjectMapper messageMapper) {
+			final ObjectMapper messageMapper,
+			final MessageTypeRegistry messageTypes,
+			final BrokerMetrics brokerMetrics) {
 		final ExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-		final BrokerService service = new BrokerServiceImpl(
-				brokerProperties, executorService, messageBus, messageMapper);
+		final BrokerServiceImpl service = new BrokerServiceImpl(
+				brokerProperties, executorService, messageBus, messageMapper, messageTypes);
+		service.setMetrics(brokerMetrics);
 		return service;
 	}
 
 	@Bean
-	public EventBus messageBus() {
-		final EventBus messageBus = new EventBus();
+	public BrokerMetrics brokerMetrics(final BrokerProperties brokerProperties) {
+		final BrokerMetrics brokerMetrics = new BrokerMetrics(brokerProperties.getMetricsMaxTags());
+		return brokerMetrics;
+	}
+
+	/**
+	 * Publishes the broker metrics to the actuator's <code>/metrics</code>
+	 * endpoint.
+	 */
+	@Bean
+	public BrokerMetricsExporter brokerMetricsExporter(
+			final BrokerProperties brokerProperties,
+			final BrokerMetrics brokerMetrics,
+			final GaugeService gaugeService) {
+		final BrokerMetricsExporter exporter = new BrokerMetricsExporter(
+				brokerMetrics, gaugeService, brokerProperties.getMetricsExportInterval());
+		return exporter;
+	}
+
+	/**
+	 * Message bus backed by the topic router, so inbound messages are routed
+	 * by topic while <code>@Subscribe</code> beans register as usual.
+	 */
+	@Bean
+	public EventBus messageBus(final TopicRouter topicRouter) {
+		final EventBus messageBus = new TopicRouterEventBus(topicRouter);
 		return messageBus;
 	}
 
+	@Bean
+	public TopicRouter topicRouter() {
+		final TopicRouter topicRouter = new TopicRouter();
+		return topicRouter;
+	}
+
+	/**
+	 * Message types understood by the broker. Register additional types here,
+	 * with their full generic type, to receive typed payloads.
+	 */
+	@Bean
+	public MessageTypeRegistry messageTypes() {
+		final MessageTypeRegistry messageTypes = MessageTypeRegistry.defaultRegistry();
+		return messageTypes;
+	}
+
 	@Bean
 	public ObjectMapper messageMapper() {
 		final ObjectMapper mapper = new ObjectMapper();
@@ -0,0 +1,79 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+import org.jrb.autohome.commons.service.rollup.RollupEngine;
+import org.jrb.autohome.commons.service.rollup.RollupProperties;
+import org.jrb.autohome.commons.service.rollup.RollupRecorder;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Telemetry rollup configuration for the Home Automation Coordinator node.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@Configuration
+@EnableConfigurationProperties(RollupProperties.class)
+public class RollupConfig {
+
+	@Bean
+	public RollupEngine rollupEngine(final RollupProperties rollupProperties) {
+		final RollupEngine engine = new RollupEngine(
+				rollupProperties.getMaxSeries(),
+				rollupProperties.getRawSamples(),
+				rollupProperties.getMinuteSlots(),
+				rollupProperties.getFifteenMinuteSlots(),
+				rollupProperties.getHourSlots());
+		return engine;
+	}
+
+	/**
+	 * Records received messages on the configured topics into the rollup
+	 * engine, when rollups are enabled.
+	 */
+	@Bean
+	public RollupRecorder rollupRecorder(
+			final RollupProperties rollupProperties,
+			final RollupEngine rollupEngine,
+			final TopicRouter topicRouter) {
+		final RollupRecorder recorder = new RollupRecorder(rollupEngine);
+		if (rollupProperties.isEnabled()) {
+			final List<String> topics = rollupProperties.getTopics().isEmpty()
+					? Collections.singletonList(TopicTrie.MULTI_LEVEL)
+					: rollupProperties.getTopics();
+			for (final String topic : topics) {
+				topicRouter.subscribe(topic, Message.class, recorder);
+			}
+		}
+		return recorder;
+	}
+
+}
@@ -0,0 +1,90 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+import org.jrb.autohome.commons.service.scheduler.CommandScheduler;
+import org.jrb.autohome.coordinator.rules.Rule;
+import org.jrb.autohome.coordinator.rules.RuleEngine;
+import org.jrb.autohome.coordinator.rules.RuleExecutor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Rule engine configuration for the Home Automation Coordinator node.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@Configuration
+@EnableConfigurationProperties(RulesProperties.class)
+public class RulesConfig {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RulesConfig.class);
+
+	@Bean
+	public RuleEngine ruleEngine(final RulesProperties rulesProperties, final ObjectMapper messageMapper)
+			throws IOException {
+		List<Rule> rules = Collections.emptyList();
+		if (StringUtils.hasText(rulesProperties.getFile())) {
+			rules = messageMapper.readValue(new File(rulesProperties.getFile()), new TypeReference<List<Rule>>() {
+			});
+		}
+		final RuleEngine engine = new RuleEngine(rules);
+		LOG.info("Loaded {} rules", engine.size());
+		return engine;
+	}
+
+	/**
+	 * Fires rules on every received message.
+	 */
+	@Bean
+	public RuleExecutor ruleExecutor(
+			final RulesProperties rulesProperties,
+			final RuleEngine ruleEngine,
+			final BrokerService brokerService,
+			final CommandScheduler commandScheduler,
+			final TopicRouter topicRouter) {
+		final RuleExecutor executor = new RuleExecutor(
+				ruleEngine, brokerService, commandScheduler, rulesProperties.getCommandTopic());
+		if (ruleEngine.size() > 0) {
+			topicRouter.subscribe(TopicTrie.MULTI_LEVEL, Message.class, executor);
+		}
+		return executor;
+	}
+
+}
@@ -0,0 +1,64 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Rule engine configuration properties for the Home Automation Coordinator
+ * node.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@ConfigurationProperties(name = "service.rules", ignoreUnknownFields = false)
+public class RulesProperties {
+
+	private final static String DEFAULT_COMMAND_TOPIC = "command";
+
+	private String commandTopic = DEFAULT_COMMAND_TOPIC;
+	private String file;
+
+	/**
+	 * Topic on which commands are published by rules that name none.
+	 */
+	public String getCommandTopic() {
+		return commandTopic;
+	}
+
+	/**
+	 * JSON file holding the array of rules to load; no rules are loaded when
+	 * unset.
+	 */
+	public String getFile() {
+		return file;
+	}
+
+	public void setCommandTopic(final String commandTopic) {
+		this.commandTopic = commandTopic;
+	}
+
+	public void setFile(final String file) {
+		this.file = file;
+	}
+
+}
@@ -0,0 +1,65 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator;
+
+import java.io.File;
+
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.scheduler.CommandScheduler;
+import org.jrb.autohome.commons.service.scheduler.SchedulerProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Command scheduler configuration for the Home Automation Coordinator node.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@Configuration
+@EnableConfigurationProperties(SchedulerProperties.class)
+public class SchedulerConfig {
+
+	@Bean
+	public CommandScheduler commandScheduler(
+			final SchedulerProperties schedulerProperties,
+			final BrokerService brokerService,
+			final ObjectMapper messageMapper) {
+		final File file = StringUtils.hasText(schedulerProperties.getFile())
+				? new File(schedulerProperties.getFile())
+				: null;
+		final CommandScheduler scheduler = new CommandScheduler(
+				brokerService,
+				messageMapper,
+				schedulerProperties.getTick(),
+				schedulerProperties.getWheelBits(),
+				schedulerProperties.getLevels(),
+				file,
+				schedulerProperties.getCheckpointInterval());
+		return scheduler;
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator;
+
+import org.jrb.autohome.coordinator.state.DeviceStateSchema;
+import org.jrb.autohome.coordinator.state.DeviceStateTable;
+import org.jrb.autohome.coordinator.state.DeviceStateUpdater;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import com.google.common.eventbus.EventBus;
+
+/**
+ * Device state configuration for the Home Automation Coordinator node.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@Configuration
+@EnableConfigurationProperties(StateProperties.class)
+public class StateConfig {
+
+	@Bean
+	public DeviceStateSchema deviceStateSchema(final StateProperties stateProperties) {
+		final DeviceStateSchema schema = new DeviceStateSchema(stateProperties.getColumns());
+		return schema;
+	}
+
+	@Bean
+	public DeviceStateTable deviceStateTable(
+			final StateProperties stateProperties,
+			final DeviceStateSchema deviceStateSchema) {
+		final DeviceStateTable table = new DeviceStateTable(deviceStateSchema, stateProperties.getInitialCapacity());
+		return table;
+	}
+
+	/**
+	 * Applies received device messages to the state table.
+	 */
+	@Bean
+	public DeviceStateUpdater deviceStateUpdater(
+			final StateProperties stateProperties,
+			final DeviceStateTable deviceStateTable,
+			final EventBus messageBus) {
+		final DeviceStateUpdater updater = new DeviceStateUpdater(deviceStateTable, stateProperties.getDeviceIdField());
+		messageBus.register(updater);
+		return updater;
+	}
+
+}
@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+/**
+ * Device state configuration properties for the Home Automation Coordinator
+ * node.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@ConfigurationProperties(name = "service.state", ignoreUnknownFields = false)
+public class StateProperties {
+
+	private final static String DEFAULT_DEVICE_ID_FIELD = "deviceId";
+	private final static int DEFAULT_INITIAL_CAPACITY = 1024;
+
+	private List<String> columns = new ArrayList<>();
+	private String deviceIdField = DEFAULT_DEVICE_ID_FIELD;
+	private int initialCapacity = DEFAULT_INITIAL_CAPACITY;
+
+	public List<String> getColumns() {
+		return columns;
+	}
+
+	public String getDeviceIdField() {
+		return deviceIdField;
+	}
+
+	public int getInitialCapacity() {
+		return initialCapacity;
+	}
+
+	public void setColumns(final List<String> columns) {
+		this.columns = columns;
+	}
+
+	public void setDeviceIdField(final String deviceIdField) {
+		this.deviceIdField = deviceIdField;
+	}
+
+	public void setInitialCapacity(final int initialCapacity) {
+		this.initialCapacity = initialCapacity;
+	}
+
+}
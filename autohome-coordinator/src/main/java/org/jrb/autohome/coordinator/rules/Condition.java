@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.rules;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * A test of one message field in a {@link Rule}. The field is a dotted path
+ * into the message payload, such as <code>reading.temperature</code>; a
+ * payload that is not a map is exposed as the single field
+ * {@value RuleEngine#VALUE_FIELD}.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class Condition {
+
+	private String field;
+	private Operator operator = Operator.EQ;
+	private Object value;
+
+	public Condition() {
+	}
+
+	public Condition(final String field, final Operator operator, final Object value) {
+		this.field = field;
+		this.operator = operator;
+		this.value = value;
+	}
+
+	public String getField() {
+		return field;
+	}
+
+	public Operator getOperator() {
+		return operator;
+	}
+
+	public Object getValue() {
+		return value;
+	}
+
+	public void setField(final String field) {
+		this.field = field;
+	}
+
+	public void setOperator(final Operator operator) {
+		this.operator = operator;
+	}
+
+	public void setValue(final Object value) {
+		this.value = value;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("field", field)
+				.append("operator", operator)
+				.append("value", value)
+				.build();
+	}
+
+}
@@ -0,0 +1,75 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.rules;
+
+/**
+ * Comparison applied by a rule {@link Condition} to a message field. Numbers
+ * compare by value whatever their type, so <code>21</code> equals
+ * <code>21.0</code>; the ordering operators also compare strings
+ * lexicographically, and are false for any other combination.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public enum Operator {
+
+	EQ, NE, GT, GE, LT, LE, EXISTS;
+
+	/**
+	 * Canonical form of a value for equality and indexing: numbers become
+	 * doubles, anything else is left as is.
+	 */
+	static Object normalize(final Object value) {
+		return (value instanceof Number) ? Double.valueOf(((Number) value).doubleValue()) : value;
+	}
+
+	public boolean test(final Object actual, final Object expected) {
+		switch (this) {
+		case EXISTS:
+			return actual != null;
+		case EQ:
+			return actual != null && normalize(actual).equals(normalize(expected));
+		case NE:
+			return actual != null && !normalize(actual).equals(normalize(expected));
+		default:
+			final int comparison;
+			if (actual instanceof Number && expected instanceof Number) {
+				comparison = Double.compare(((Number) actual).doubleValue(), ((Number) expected).doubleValue());
+			} else if (actual instanceof String && expected instanceof String) {
+				comparison = ((String) actual).compareTo((String) expected);
+			} else {
+				return false;
+			}
+			switch (this) {
+			case GT:
+				return comparison > 0;
+			case GE:
+				return comparison >= 0;
+			case LT:
+				return comparison < 0;
+			default:
+				return comparison <= 0;
+			}
+		}
+	}
+
+}
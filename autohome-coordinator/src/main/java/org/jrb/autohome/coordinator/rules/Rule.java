@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.rules;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+
+/**
+ * An automation rule: when a message arrives on a topic matching
+ * <code>topic</code> and satisfying every {@link Condition}, a
+ * {@link SimpleCommand} named <code>commandName</code> and carrying
+ * <code>commandPayload</code> is published on <code>commandTopic</code>.
+ * <p>
+ * A rule with a <code>delay</code> defers its command by that many
+ * milliseconds, holding it under the rule's id; each further match pushes the
+ * pending command back, so a "turn off" rule fires only once matches stop.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class Rule {
+
+	private String id;
+	private String topic;
+	private List<Condition> conditions = new ArrayList<>();
+	private String commandTopic;
+	private String commandName;
+	private Object commandPayload;
+	private long delay = 0;
+
+	public String getCommandName() {
+		return commandName;
+	}
+
+	public Object getCommandPayload() {
+		return commandPayload;
+	}
+
+	public String getCommandTopic() {
+		return commandTopic;
+	}
+
+	public List<Condition> getConditions() {
+		return conditions;
+	}
+
+	public long getDelay() {
+		return delay;
+	}
+
+	public String getId() {
+		return id;
+	}
+
+	public String getTopic() {
+		return topic;
+	}
+
+	public void setCommandName(final String commandName) {
+		this.commandName = commandName;
+	}
+
+	public void setCommandPayload(final Object commandPayload) {
+		this.commandPayload = commandPayload;
+	}
+
+	public void setCommandTopic(final String commandTopic) {
+		this.commandTopic = commandTopic;
+	}
+
+	public void setConditions(final List<Condition> conditions) {
+		this.conditions = conditions;
+	}
+
+	public void setDelay(final long delay) {
+		this.delay = delay;
+	}
+
+	public void setId(final String id) {
+		this.id = id;
+	}
+
+	public void setTopic(final String topic) {
+		this.topic = topic;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("id", id)
+				.append("topic", topic)
+				.append("conditions", conditions)
+				.append("commandTopic", commandTopic)
+				.append("commandName", commandName)
+				.append("delay", delay)
+				.build();
+	}
+
+}
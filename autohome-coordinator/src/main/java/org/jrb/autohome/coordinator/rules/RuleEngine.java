@@ -0,0 +1,269 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.rules;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+
+import org.jrb.autohome.commons.service.broker.topic.TopicTrie;
+
+/**
+ * Matches messages against a fixed set of {@link Rule}s compiled into a small
+ * discrimination network. Rules are grouped by topic pattern in a
+ * {@link TopicTrie}, and within a pattern every rule with an {@link Operator#EQ}
+ * condition is indexed under the field and value of its first one. A message
+ * therefore only visits the patterns matching its topic, looks up each
+ * indexed field of those patterns once, and evaluates the remaining
+ * conditions of the rules found there, plus those of the few rules with no
+ * equality condition; the cost of a message follows the rules that could
+ * match it rather than the size of the rule set.
+ * <p>
+ * Matching rules are returned in the order they were declared. The engine is
+ * immutable once built and safe to use from any thread; the patterns matching
+ * each topic are cached, up to a bound.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RuleEngine {
+
+	public static final String VALUE_FIELD = "value";
+
+	private static final int MAX_CACHED_TOPICS = 4096;
+	private static final Pattern PATH_SEPARATOR = Pattern.compile("\\.");
+
+	private static final Comparator<CompiledRule> DECLARATION_ORDER = new Comparator<CompiledRule>() {
+		@Override
+		public int compare(final CompiledRule a, final CompiledRule b) {
+			return Integer.compare(a.order, b.order);
+		}
+	};
+
+	private final TopicTrie<PatternNode> patterns = new TopicTrie<>();
+	private final ConcurrentMap<String, List<PatternNode>> cache = new ConcurrentHashMap<>();
+	private final int size;
+
+	public RuleEngine(final Collection<Rule> rules) {
+		final Map<String, PatternNode> nodes = new LinkedHashMap<>();
+		int order = 0;
+		for (final Rule rule : rules) {
+			if (rule.getTopic() == null) {
+				throw new IllegalArgumentException("Rule " + rule.getId() + " has no topic");
+			}
+			TopicTrie.validate(rule.getTopic());
+			PatternNode node = nodes.get(rule.getTopic());
+			if (node == null) {
+				node = new PatternNode();
+				nodes.put(rule.getTopic(), node);
+				patterns.add(rule.getTopic(), node);
+			}
+			node.add(new CompiledRule(order++, rule));
+		}
+		this.size = order;
+	}
+
+	private static Object resolve(final Map<?, ?> fields, final String[] path) {
+		Object value = fields;
+		for (final String name : path) {
+			if (!(value instanceof Map)) {
+				return null;
+			}
+			value = ((Map<?, ?>) value).get(name);
+		}
+		return value;
+	}
+
+	private static String[] split(final String field) {
+		if (field == null) {
+			throw new IllegalArgumentException("Rule condition has no field");
+		}
+		return PATH_SEPARATOR.split(field);
+	}
+
+	/**
+	 * Rules matched by a message, in declaration order.
+	 */
+	public List<Rule> match(final String topic, final Object payload) {
+		final List<PatternNode> nodes = nodesFor(topic);
+		if (nodes.isEmpty()) {
+			return Collections.emptyList();
+		}
+		final Map<?, ?> fields = (payload instanceof Map)
+				? (Map<?, ?>) payload
+				: Collections.singletonMap(VALUE_FIELD, payload);
+		final List<CompiledRule> matches = new ArrayList<>();
+		for (final PatternNode node : nodes) {
+			node.match(fields, matches);
+		}
+		if (matches.isEmpty()) {
+			return Collections.emptyList();
+		}
+		Collections.sort(matches, DECLARATION_ORDER);
+		final List<Rule> rules = new ArrayList<>(matches.size());
+		for (final CompiledRule match : matches) {
+			rules.add(match.rule);
+		}
+		return rules;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private List<PatternNode> nodesFor(final String topic) {
+		if (topic == null) {
+			final List<PatternNode> nodes = new ArrayList<>();
+			patterns.match(null, nodes);
+			return nodes;
+		}
+		List<PatternNode> nodes = cache.get(topic);
+		if (nodes == null) {
+			nodes = new ArrayList<>();
+			patterns.match(topic, nodes);
+			if (cache.size() < MAX_CACHED_TOPICS) {
+				cache.putIfAbsent(topic, nodes);
+			}
+		}
+		return nodes;
+	}
+
+	/**
+	 * Rules sharing a topic pattern, indexed by their first equality
+	 * condition.
+	 */
+	private static class PatternNode {
+
+		private final Map<String, FieldIndex> indexes = new LinkedHashMap<>();
+		private final List<CompiledRule> unindexed = new ArrayList<>();
+
+		void add(final CompiledRule rule) {
+			if (rule.key == null) {
+				unindexed.add(rule);
+				return;
+			}
+			FieldIndex index = indexes.get(rule.key.getField());
+			if (index == null) {
+				index = new FieldIndex(split(rule.key.getField()));
+				indexes.put(rule.key.getField(), index);
+			}
+			final Object value = Operator.normalize(rule.key.getValue());
+			List<CompiledRule> rules = index.rules.get(value);
+			if (rules == null) {
+				rules = new ArrayList<>();
+				index.rules.put(value, rules);
+			}
+			rules.add(rule);
+		}
+
+		void match(final Map<?, ?> fields, final List<CompiledRule> matches) {
+			for (final FieldIndex index : indexes.values()) {
+				final Object value = resolve(fields, index.path);
+				if (value != null) {
+					final List<CompiledRule> rules = index.rules.get(Operator.normalize(value));
+					if (rules != null) {
+						for (final CompiledRule rule : rules) {
+							if (rule.test(fields)) {
+								matches.add(rule);
+							}
+						}
+					}
+				}
+			}
+			for (final CompiledRule rule : unindexed) {
+				if (rule.test(fields)) {
+					matches.add(rule);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * Rules keyed by the value of one field.
+	 */
+	private static class FieldIndex {
+
+		private final String[] path;
+		private final Map<Object, List<CompiledRule>> rules = new HashMap<>();
+
+		FieldIndex(final String[] path) {
+			this.path = path;
+		}
+
+	}
+
+	/**
+	 * A rule with its index condition split from the conditions left to
+	 * evaluate.
+	 */
+	private static class CompiledRule {
+
+		private final int order;
+		private final Rule rule;
+		private final Condition key;
+		private final Condition[] residual;
+		private final String[][] paths;
+
+		CompiledRule(final int order, final Rule rule) {
+			this.order = order;
+			this.rule = rule;
+			Condition first = null;
+			final List<Condition> rest = new ArrayList<>();
+			for (final Condition condition : rule.getConditions()) {
+				if (condition.getOperator() == null) {
+					throw new IllegalArgumentException("Rule " + rule.getId() + " has a condition without operator");
+				}
+				if (first == null && condition.getOperator() == Operator.EQ && condition.getValue() != null) {
+					first = condition;
+				} else {
+					rest.add(condition);
+				}
+			}
+			this.key = first;
+			this.residual = rest.toArray(new Condition[rest.size()]);
+			this.paths = new String[residual.length][];
+			for (int i = 0; i < residual.length; i++) {
+				paths[i] = split(residual[i].getField());
+			}
+		}
+
+		boolean test(final Map<?, ?> fields) {
+			for (int i = 0; i < residual.length; i++) {
+				if (!residual[i].getOperator().test(resolve(fields, paths[i]), residual[i].getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.rules;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.jrb.autohome.commons.service.broker.topic.MessageHandler;
+import org.jrb.autohome.commons.service.scheduler.CommandScheduler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs the {@link RuleEngine} over the messages received by the coordinator,
+ * publishing the command of every rule a message matches. Rules without a
+ * command topic publish on the default one. A command that fails to publish
+ * is logged and does not prevent the remaining rules from firing. Commands of
+ * rules with a delay are handed to the {@link CommandScheduler} under the
+ * rule's id, rescheduling any still pending.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RuleExecutor implements MessageHandler<Object> {
+
+	private static final Logger LOG = LoggerFactory.getLogger(RuleExecutor.class);
+
+	private final RuleEngine engine;
+	private final BrokerService brokerService;
+	private final CommandScheduler scheduler;
+	private final String defaultCommandTopic;
+
+	public RuleExecutor(
+			final RuleEngine engine,
+			final BrokerService brokerService,
+			final CommandScheduler scheduler,
+			final String defaultCommandTopic) {
+		this.engine = engine;
+		this.brokerService = brokerService;
+		this.scheduler = scheduler;
+		this.defaultCommandTopic = defaultCommandTopic;
+	}
+
+	@Override
+	public void handle(final String topic, final Object message) {
+		if (!(message instanceof Message)) {
+			return;
+		}
+		final List<Rule> rules = engine.match(topic, ((Message<?>) message).getPayload());
+		for (final Rule rule : rules) {
+			final String commandTopic = (rule.getCommandTopic() != null) ? rule.getCommandTopic() : defaultCommandTopic;
+			final SimpleCommand<Object> command = new SimpleCommand<Object>(
+					rule.getCommandName(), rule.getCommandPayload());
+			try {
+				if (rule.getDelay() > 0) {
+					scheduler.schedule(rule.getId(), commandTopic, command, rule.getDelay(), TimeUnit.MILLISECONDS);
+					LOG.debug("Rule {} scheduled {} on {} in {}ms", rule.getId(), rule.getCommandName(), commandTopic,
+							rule.getDelay());
+				} else {
+					brokerService.publish(commandTopic, command);
+					LOG.debug("Rule {} fired {} on {}", rule.getId(), rule.getCommandName(), commandTopic);
+				}
+			} catch (final RuntimeException e) {
+				LOG.error("Rule " + rule.getId() + " failed to publish its command: " + e.getMessage(), e);
+			}
+		}
+	}
+
+}
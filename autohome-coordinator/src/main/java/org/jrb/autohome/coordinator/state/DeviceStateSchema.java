@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.state;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+
+/**
+ * Named, typed columns of a {@link DeviceStateTable}, parsed from
+ * <code>name:TYPE</code> definitions such as <code>temperature:DOUBLE</code>.
+ * Each column has an index among all columns and a slot among the columns of
+ * its type.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeviceStateSchema {
+
+	private final Map<String, Column> columns = new LinkedHashMap<>();
+	private final int[] counts = new int[ColumnType.values().length];
+
+	public DeviceStateSchema(final List<String> definitions) {
+		for (final String definition : definitions) {
+			final int pos = definition.lastIndexOf(':');
+			if (pos <= 0) {
+				throw new IllegalArgumentException("Column definition must be name:TYPE - " + definition);
+			}
+			final String name = definition.substring(0, pos).trim();
+			final ColumnType type = ColumnType.valueOf(definition.substring(pos + 1).trim().toUpperCase(Locale.ENGLISH));
+			if (columns.containsKey(name)) {
+				throw new IllegalArgumentException("Duplicate column - " + name);
+			}
+			columns.put(name, new Column(name, type, columns.size(), counts[type.ordinal()]++));
+		}
+	}
+
+	public Column getColumn(final String name) {
+		return columns.get(name);
+	}
+
+	public List<Column> getColumns() {
+		return Collections.unmodifiableList(new ArrayList<>(columns.values()));
+	}
+
+	public int getCount() {
+		return columns.size();
+	}
+
+	public int getCount(final ColumnType type) {
+		return counts[type.ordinal()];
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("columns", columns.values())
+				.build();
+	}
+
+	/**
+	 * A single column: its name, type, index among all columns and slot among
+	 * the columns of that type.
+	 */
+	public static class Column {
+
+		private final String name;
+		private final ColumnType type;
+		private final int index;
+		private final int slot;
+
+		Column(final String name, final ColumnType type, final int index, final int slot) {
+			this.name = name;
+			this.type = type;
+			this.index = index;
+			this.slot = slot;
+		}
+
+		public int getIndex() {
+			return index;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public int getSlot() {
+			return slot;
+		}
+
+		public ColumnType getType() {
+			return type;
+		}
+
+		@Override
+		public String toString() {
+			return name + ":" + type;
+		}
+
+	}
+
+}
@@ -0,0 +1,408 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.state;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.jrb.autohome.coordinator.state.DeviceStateSchema.Column;
+
+/**
+ * Current state of every device known to the coordinator, keyed by integer
+ * device id, with one typed column per field of the {@link DeviceStateSchema}.
+ * <p>
+ * State is held in primitive arrays rather than maps of boxed values: one row
+ * per device, laid out row by row in a <code>double[]</code>, a
+ * <code>long[]</code> and a bit set of booleans, plus a bit set recording which
+ * fields have been set. Device ids are mapped to rows by an open-addressing
+ * table of <code>int</code>s. Updates overwrite a device's row in place, so
+ * once a device has been seen, keeping its state current allocates nothing;
+ * the arrays only grow, by doubling, as devices are added.
+ * <p>
+ * The table is thread-safe; updates take a write lock and reads a read lock.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeviceStateTable {
+
+	private static final int MIN_CAPACITY = 16;
+
+	private final DeviceStateSchema schema;
+	private final int doubleCount;
+	private final int longCount;
+	private final int booleanCount;
+	private final int columnCount;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private int size = 0;
+	private int capacity;
+	private int[] ids;
+	private long[] updatedAt;
+	private double[] doubles;
+	private long[] longs;
+	private long[] booleans;
+	private long[] present;
+
+	private int[] hashKeys;
+	private int[] hashRows;
+
+	public DeviceStateTable(final DeviceStateSchema schema, final int initialCapacity) {
+		this.schema = schema;
+		this.doubleCount = schema.getCount(ColumnType.DOUBLE);
+		this.longCount = schema.getCount(ColumnType.LONG);
+		this.booleanCount = schema.getCount(ColumnType.BOOLEAN);
+		this.columnCount = schema.getCount();
+		allocate(Integer.highestOneBit(Math.max(MIN_CAPACITY, initialCapacity) - 1) << 1);
+	}
+
+	private static long[] bits(final int count) {
+		return new long[(count + 63) >>> 6];
+	}
+
+	private static boolean getBit(final long[] bits, final int index) {
+		return (bits[index >>> 6] & (1L << index)) != 0;
+	}
+
+	private static int hash(final int deviceId) {
+		final int h = deviceId * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private static void setBit(final long[] bits, final int index, final boolean value) {
+		if (value) {
+			bits[index >>> 6] |= 1L << index;
+		} else {
+			bits[index >>> 6] &= ~(1L << index);
+		}
+	}
+
+	public boolean contains(final int deviceId) {
+		lock.readLock().lock();
+		try {
+			return rowOf(deviceId) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public boolean getBoolean(final int deviceId, final Column column, final boolean missing) {
+		check(column, ColumnType.BOOLEAN);
+		lock.readLock().lock();
+		try {
+			final int row = rowOf(deviceId);
+			if (row < 0 || !isSet(row, column)) {
+				return missing;
+			}
+			return getBit(booleans, row * booleanCount + column.getSlot());
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Ids of all devices in the table, in the order they were first seen.
+	 */
+	public int[] getDeviceIds() {
+		lock.readLock().lock();
+		try {
+			return Arrays.copyOf(ids, size);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public double getDouble(final int deviceId, final Column column, final double missing) {
+		check(column, ColumnType.DOUBLE);
+		lock.readLock().lock();
+		try {
+			final int row = rowOf(deviceId);
+			if (row < 0 || !isSet(row, column)) {
+				return missing;
+			}
+			return doubles[row * doubleCount + column.getSlot()];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public long getLong(final int deviceId, final Column column, final long missing) {
+		check(column, ColumnType.LONG);
+		lock.readLock().lock();
+		try {
+			final int row = rowOf(deviceId);
+			if (row < 0 || !isSet(row, column)) {
+				return missing;
+			}
+			return longs[row * longCount + column.getSlot()];
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public DeviceStateSchema getSchema() {
+		return schema;
+	}
+
+	/**
+	 * Time of the device's last update, or <code>-1</code> if it is unknown.
+	 */
+	public long getUpdatedAt(final int deviceId) {
+		lock.readLock().lock();
+		try {
+			final int row = rowOf(deviceId);
+			return (row >= 0) ? updatedAt[row] : -1;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Whether the field has been set for the device.
+	 */
+	public boolean has(final int deviceId, final Column column) {
+		lock.readLock().lock();
+		try {
+			final int row = rowOf(deviceId);
+			return row >= 0 && isSet(row, column);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public void setBoolean(final int deviceId, final Column column, final boolean value) {
+		check(column, ColumnType.BOOLEAN);
+		lock.writeLock().lock();
+		try {
+			final int row = touch(deviceId);
+			setBit(booleans, row * booleanCount + column.getSlot(), value);
+			setBit(present, row * columnCount + column.getIndex(), true);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void setDouble(final int deviceId, final Column column, final double value) {
+		check(column, ColumnType.DOUBLE);
+		lock.writeLock().lock();
+		try {
+			final int row = touch(deviceId);
+			doubles[row * doubleCount + column.getSlot()] = value;
+			setBit(present, row * columnCount + column.getIndex(), true);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void setLong(final int deviceId, final Column column, final long value) {
+		check(column, ColumnType.LONG);
+		lock.writeLock().lock();
+		try {
+			final int row = touch(deviceId);
+			longs[row * longCount + column.getSlot()] = value;
+			setBit(present, row * columnCount + column.getIndex(), true);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copies a device's fields into a map, for display; returns
+	 * <code>null</code> if the device is unknown.
+	 */
+	public Map<String, Object> toMap(final int deviceId) {
+		lock.readLock().lock();
+		try {
+			final int row = rowOf(deviceId);
+			if (row < 0) {
+				return null;
+			}
+			final Map<String, Object> fields = new LinkedHashMap<>();
+			for (final Column column : schema.getColumns()) {
+				if (isSet(row, column)) {
+					fields.put(column.getName(), read(row, column));
+				}
+			}
+			return fields;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Applies the fields of a message to a device, under a single lock, and
+	 * returns how many of them matched a column. Numbers, booleans and their
+	 * string forms are accepted; other values, and fields without a column,
+	 * are ignored.
+	 */
+	public int update(final int deviceId, final Map<String, ?> fields) {
+		lock.writeLock().lock();
+		try {
+			int applied = 0;
+			int row = -1;
+			for (final Map.Entry<String, ?> field : fields.entrySet()) {
+				final Column column = schema.getColumn(field.getKey());
+				if (column == null || field.getValue() == null) {
+					continue;
+				}
+				if (row < 0) {
+					row = touch(deviceId);
+				}
+				if (write(row, column, field.getValue())) {
+					applied++;
+				}
+			}
+			return applied;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	private void allocate(final int newCapacity) {
+		capacity = newCapacity;
+		ids = (ids == null) ? new int[newCapacity] : Arrays.copyOf(ids, newCapacity);
+		updatedAt = (updatedAt == null) ? new long[newCapacity] : Arrays.copyOf(updatedAt, newCapacity);
+		doubles = (doubles == null)
+				? new double[newCapacity * doubleCount]
+				: Arrays.copyOf(doubles, newCapacity * doubleCount);
+		longs = (longs == null) ? new long[newCapacity * longCount] : Arrays.copyOf(longs, newCapacity * longCount);
+		booleans = (booleans == null)
+				? bits(newCapacity * booleanCount)
+				: Arrays.copyOf(booleans, bits(newCapacity * booleanCount).length);
+		present = (present == null)
+				? bits(newCapacity * columnCount)
+				: Arrays.copyOf(present, bits(newCapacity * columnCount).length);
+		hashKeys = new int[newCapacity * 2];
+		hashRows = new int[newCapacity * 2];
+		for (int row = 0; row < size; row++) {
+			insert(ids[row], row);
+		}
+	}
+
+	private void check(final Column column, final ColumnType type) {
+		if (column.getType() != type) {
+			throw new IllegalArgumentException("Column " + column.getName() + " is not of type " + type);
+		}
+	}
+
+	private void insert(final int deviceId, final int row) {
+		final int mask = hashKeys.length - 1;
+		int slot = hash(deviceId) & mask;
+		while (hashRows[slot] != 0) {
+			slot = (slot + 1) & mask;
+		}
+		hashKeys[slot] = deviceId;
+		hashRows[slot] = row + 1;
+	}
+
+	private boolean isSet(final int row, final Column column) {
+		return getBit(present, row * columnCount + column.getIndex());
+	}
+
+	private Object read(final int row, final Column column) {
+		switch (column.getType()) {
+		case DOUBLE:
+			return doubles[row * doubleCount + column.getSlot()];
+		case LONG:
+			return longs[row * longCount + column.getSlot()];
+		default:
+			return getBit(booleans, row * booleanCount + column.getSlot());
+		}
+	}
+
+	private int rowOf(final int deviceId) {
+		final int mask = hashKeys.length - 1;
+		int slot = hash(deviceId) & mask;
+		while (hashRows[slot] != 0) {
+			if (hashKeys[slot] == deviceId) {
+				return hashRows[slot] - 1;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	/**
+	 * Row of the device, added if it is new, stamped as updated now.
+	 */
+	private int touch(final int deviceId) {
+		int row = rowOf(deviceId);
+		if (row < 0) {
+			if (size == capacity) {
+				allocate(capacity * 2);
+			}
+			row = size++;
+			ids[row] = deviceId;
+			insert(deviceId, row);
+		}
+		updatedAt[row] = System.currentTimeMillis();
+		return row;
+	}
+
+	private boolean write(final int row, final Column column, final Object value) {
+		try {
+			switch (column.getType()) {
+			case DOUBLE:
+				doubles[row * doubleCount + column.getSlot()] = (value instanceof Number)
+						? ((Number) value).doubleValue()
+						: Double.parseDouble(value.toString());
+				break;
+			case LONG:
+				longs[row * longCount + column.getSlot()] = (value instanceof Number)
+						? ((Number) value).longValue()
+						: Long.parseLong(value.toString());
+				break;
+			default:
+				setBit(booleans, row * booleanCount + column.getSlot(), (value instanceof Number)
+						? ((Number) value).doubleValue() != 0
+						: Boolean.parseBoolean(value.toString()));
+			}
+		} catch (final NumberFormatException e) {
+			return false;
+		}
+		setBit(present, row * columnCount + column.getIndex(), true);
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return new ToStringBuilder(this)
+				.append("schema", schema)
+				.append("size", size())
+				.append("capacity", capacity)
+				.build();
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.state;
+
+import java.util.Map;
+
+import org.jrb.autohome.commons.service.broker.message.Message;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+/**
+ * Keeps a {@link DeviceStateTable} current from the messages received by the
+ * coordinator. Any message whose payload is a map carrying an integer device
+ * id under <code>deviceIdField</code> is applied to that device's row; its
+ * other fields update the columns of the same name. Other messages are
+ * ignored.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeviceStateUpdater {
+
+	private static final Logger LOG = LoggerFactory.getLogger(DeviceStateUpdater.class);
+
+	private final DeviceStateTable table;
+	private final String deviceIdField;
+
+	public DeviceStateUpdater(final DeviceStateTable table, final String deviceIdField) {
+		this.table = table;
+		this.deviceIdField = deviceIdField;
+	}
+
+	@Subscribe
+	@AllowConcurrentEvents
+	public void handleMessage(final Message<?> message) {
+		if (!(message.getPayload() instanceof Map)) {
+			return;
+		}
+		@SuppressWarnings("unchecked")
+		final Map<String, ?> fields = (Map<String, ?>) message.getPayload();
+		final Object deviceId = fields.get(deviceIdField);
+		if (!(deviceId instanceof Number)) {
+			return;
+		}
+		final int applied = table.update(((Number) deviceId).intValue(), fields);
+		LOG.trace("Applied {} fields to device {}", applied, deviceId);
+	}
+
+}
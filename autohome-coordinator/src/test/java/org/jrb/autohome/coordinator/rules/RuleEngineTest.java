@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.rules;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Test case for the Coordinator's rule engine.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class RuleEngineTest {
+
+	private static Rule rule(final String id, final String topic, final Condition... conditions) {
+		final Rule rule = new Rule();
+		rule.setId(id);
+		rule.setTopic(topic);
+		rule.setConditions(Arrays.asList(conditions));
+		rule.setCommandName(id);
+		return rule;
+	}
+
+	private static List<String> ids(final List<Rule> rules) {
+		final List<String> ids = new ArrayList<>();
+		for (final Rule rule : rules) {
+			ids.add(rule.getId());
+		}
+		return ids;
+	}
+
+	@Test
+	public void testIndexedAndUnindexedConditions() {
+		final RuleEngine engine = new RuleEngine(Arrays.asList(
+				rule("hot", "sensor/+/temperature",
+						new Condition("value", Operator.GT, 25)),
+				rule("motion-kitchen", "sensor/#",
+						new Condition("room", Operator.EQ, "kitchen"),
+						new Condition("motion", Operator.EQ, true)),
+				rule("motion-hall", "sensor/#",
+						new Condition("room", Operator.EQ, "hall"),
+						new Condition("motion", Operator.EQ, true)),
+				rule("low-battery", "sensor/#",
+						new Condition("status.battery", Operator.LE, 10),
+						new Condition("deviceId", Operator.EXISTS, null))));
+		assertEquals(4, engine.size());
+
+		assertEquals(Arrays.asList("hot"), ids(engine.match("sensor/porch/temperature", 30.5)));
+		assertTrue(engine.match("sensor/porch/temperature", 20).isEmpty());
+		assertTrue(engine.match("light/porch", 30.5).isEmpty());
+
+		final Map<String, Object> status = new HashMap<>();
+		status.put("battery", 5);
+		final Map<String, Object> fields = new HashMap<>();
+		fields.put("deviceId", 7);
+		fields.put("room", "kitchen");
+		fields.put("motion", true);
+		fields.put("status", status);
+		assertEquals(Arrays.asList("motion-kitchen", "low-battery"), ids(engine.match("sensor/7", fields)));
+
+		fields.put("room", "hall");
+		status.put("battery", 50);
+		assertEquals(Arrays.asList("motion-hall"), ids(engine.match("sensor/7", fields)));
+
+		fields.put("motion", false);
+		assertTrue(engine.match("sensor/7", fields).isEmpty());
+	}
+
+	@Test
+	public void testNumericEqualityIgnoresType() {
+		final RuleEngine engine = new RuleEngine(Arrays.asList(
+				rule("scene", "scene", new Condition("value", Operator.EQ, 3))));
+		assertEquals(1, engine.match("scene", 3L).size());
+		assertEquals(1, engine.match("scene", 3.0).size());
+		assertTrue(engine.match("scene", "3").isEmpty());
+	}
+
+	@Test
+	public void testManyRules() {
+		final List<Rule> rules = new ArrayList<>();
+		for (int i = 0; i < 5000; i++) {
+			rules.add(rule("rule-" + i, "device/+/state", new Condition("deviceId", Operator.EQ, i)));
+		}
+		final RuleEngine engine = new RuleEngine(rules);
+		final Map<String, Object> fields = new HashMap<>();
+		fields.put("deviceId", 4321);
+		assertEquals(Arrays.asList("rule-4321"), ids(engine.match("device/4321/state", fields)));
+	}
+
+}
@@ -0,0 +1,94 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.coordinator.state;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.jrb.autohome.coordinator.state.DeviceStateSchema.Column;
+import org.junit.Test;
+
+/**
+ * Test case for the Coordinator's device state table.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+public class DeviceStateTableTest {
+
+	private final DeviceStateSchema schema = new DeviceStateSchema(
+			Arrays.asList("temperature:DOUBLE", "battery:LONG", "motion:BOOLEAN", "humidity:DOUBLE"));
+
+	@Test
+	public void testUpdateInPlaceAcrossGrowth() {
+		final DeviceStateTable table = new DeviceStateTable(schema, 16);
+		final Column temperature = schema.getColumn("temperature");
+		final Column battery = schema.getColumn("battery");
+		final Column motion = schema.getColumn("motion");
+		for (int i = 0; i < 10000; i++) {
+			final Map<String, Object> fields = new HashMap<>();
+			fields.put("deviceId", i * 7);
+			fields.put("temperature", 20.5 + i);
+			fields.put("battery", String.valueOf(i));
+			fields.put("motion", i % 2 == 0);
+			fields.put("name", "ignored");
+			assertEquals(3, table.update(i * 7, fields));
+		}
+		assertEquals(10000, table.size());
+		assertEquals(120.5, table.getDouble(700, temperature, -1), 0.0);
+		assertEquals(100, table.getLong(700, battery, -1));
+		assertTrue(table.getBoolean(700, motion, false));
+		assertFalse(table.getBoolean(707, motion, true));
+
+		table.setDouble(700, temperature, 18.0);
+		assertEquals(18.0, table.getDouble(700, temperature, -1), 0.0);
+		assertEquals(10000, table.size());
+	}
+
+	@Test
+	public void testMissingValues() {
+		final DeviceStateTable table = new DeviceStateTable(schema, 16);
+		final Column humidity = schema.getColumn("humidity");
+		assertFalse(table.contains(1));
+		assertNull(table.toMap(1));
+		assertEquals(-1, table.getUpdatedAt(1));
+
+		table.setLong(1, schema.getColumn("battery"), 90);
+		assertTrue(table.contains(1));
+		assertFalse(table.has(1, humidity));
+		assertTrue(Double.isNaN(table.getDouble(1, humidity, Double.NaN)));
+		assertEquals(1, table.toMap(1).size());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testColumnTypeMismatch() {
+		final DeviceStateTable table = new DeviceStateTable(schema, 16);
+		table.setLong(1, schema.getColumn("temperature"), 1);
+	}
+
+}
@@ -34,7 +34,7 @@ import org.springframework.context.annotation.Import;
  */
 @Configuration
 @EnableConfigurationProperties(ApplicationProperties.class)
-@Import({ BrokerConfig.class, WebConfig.class })
+@Import({ BrokerConfig.class, RollupConfig.class, SchedulerConfig.class, WebConfig.class })
 public class ApplicationConfig {
 
 	@Bean
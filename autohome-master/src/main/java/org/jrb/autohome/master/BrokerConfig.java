@@ -28,6 +28,13 @@ import java.util.concurrent.Executors;
 import org.jrb.autohome.commons.service.broker.BrokerProperties;
 import org.jrb.autohome.commons.service.broker.BrokerService;
 import org.jrb.autohome.commons.service.broker.BrokerServiceImpl;
+import org.jrb.autohome.commons.service.broker.codec.MessageTypeRegistry;
+import org.jrb.autohome.commons.service.broker.liveness.LivenessRegistry;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetrics;
+import org.jrb.autohome.commons.service.broker.metrics.BrokerMetricsExporter;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouter;
+import org.jrb.autohome.commons.service.broker.topic.TopicRouterEventBus;
+import org.springframework.boot.actuate.metrics.GaugeService;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -44,16 +51,74 @@ import com.google.common.eventbus.EventBus;
 public class BrokerConfig {
 
 	@Bean
-	public BrokerService brokerService(final BrokerProperties brokerProperties, final EventBus messageBus) {
+	public BrokerService brokerService(
+			final BrokerProperties brokerProperties,
+			final EventBus messageBus,
+			final MessageTypeRegistry messageTypes,
+			final BrokerMetrics brokerMetrics,
+			final LivenessRegistry livenessRegistry) {
 		final ExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-		final BrokerService service = new BrokerServiceImpl(brokerProperties, executorService, messageBus);
+		final BrokerServiceImpl service = new BrokerServiceImpl(brokerProperties, executorService, messageBus, messageTypes);
+		service.setMetrics(brokerMetrics);
+		service.setLivenessRegistry(livenessRegistry);
 		return service;
 	}
 	
 	@Bean
-	public EventBus messageBus() {
-		final EventBus messageBus = new EventBus();
+	public BrokerMetrics brokerMetrics(final BrokerProperties brokerProperties) {
+		final BrokerMetrics brokerMetrics = new BrokerMetrics(brokerProperties.getMetricsMaxTags());
+		return brokerMetrics;
+	}
+
+	/**
+	 * Publishes the broker metrics to the actuator's <code>/metrics</code>
+	 * endpoint.
+	 */
+	@Bean
+	public BrokerMetricsExporter brokerMetricsExporter(
+			final BrokerProperties brokerProperties,
+			final BrokerMetrics brokerMetrics,
+			final GaugeService gaugeService) {
+		final BrokerMetricsExporter exporter = new BrokerMetricsExporter(
+				brokerMetrics, gaugeService, brokerProperties.getMetricsExportInterval());
+		return exporter;
+	}
+
+	/**
+	 * Coordinators heard from on the command channel, and whether they are
+	 * still alive.
+	 */
+	@Bean
+	public LivenessRegistry livenessRegistry(final BrokerProperties brokerProperties) {
+		final LivenessRegistry registry = new LivenessRegistry(
+				brokerProperties.getHeartbeatTimeout(), brokerProperties.getHeartbeatTick());
+		return registry;
+	}
+
+	/**
+	 * Message bus backed by the topic router, so inbound messages are routed
+	 * by topic while <code>@Subscribe</code> beans register as usual.
+	 */
+	@Bean
+	public EventBus messageBus(final TopicRouter topicRouter) {
+		final EventBus messageBus = new TopicRouterEventBus(topicRouter);
 		return messageBus;
 	}
+
+	@Bean
+	public TopicRouter topicRouter() {
+		final TopicRouter topicRouter = new TopicRouter();
+		return topicRouter;
+	}
+
+	/**
+	 * Message types understood by the broker. Register additional types here,
+	 * with their full generic type, to receive typed payloads.
+	 */
+	@Bean
+	public MessageTypeRegistry messageTypes() {
+		final MessageTypeRegistry messageTypes = MessageTypeRegistry.defaultRegistry();
+		return messageTypes;
+	}
 	
 }
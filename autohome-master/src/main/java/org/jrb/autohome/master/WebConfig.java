@@ -22,6 +22,8 @@
  */
 package org.jrb.autohome.master;
 
+import org.jrb.autohome.commons.service.broker.liveness.LivenessRegistry;
+import org.jrb.autohome.master.web.CoordinatorController;
 import org.springframework.boot.context.embedded.EmbeddedServletContainerFactory;
 import org.springframework.boot.context.embedded.tomcat.TomcatEmbeddedServletContainerFactory;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
@@ -38,6 +40,11 @@ import org.springframework.web.servlet.config.annotation.WebMvcConfigurerAdapter
 @EnableConfigurationProperties(WebProperties.class)
 public class WebConfig {
 
+	@Bean
+	public CoordinatorController coordinatorController(final LivenessRegistry livenessRegistry) {
+		return new CoordinatorController(livenessRegistry);
+	}
+
 	@Bean
 	public EmbeddedServletContainerFactory servletContainer(final WebProperties properties) {
 
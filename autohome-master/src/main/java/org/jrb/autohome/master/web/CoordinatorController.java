@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.master.web;
+
+import java.util.List;
+
+import org.jrb.autohome.commons.service.broker.liveness.CoordinatorStatus;
+import org.jrb.autohome.commons.service.broker.liveness.LivenessRegistry;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+/**
+ * REST endpoint reporting the coordinators known to the Home Automation Master
+ * node and whether they are alive.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@Controller
+@RequestMapping("/coordinators")
+public class CoordinatorController {
+
+	private final LivenessRegistry livenessRegistry;
+
+	public CoordinatorController(final LivenessRegistry livenessRegistry) {
+		this.livenessRegistry = livenessRegistry;
+	}
+
+	@RequestMapping(value = "/{id}", method = RequestMethod.GET)
+	@ResponseBody
+	public CoordinatorStatus getCoordinator(@PathVariable("id") final String id) {
+		final CoordinatorStatus status = livenessRegistry.getCoordinator(id);
+		if (status == null) {
+			throw new UnknownCoordinatorException(id);
+		}
+		return status;
+	}
+
+	@RequestMapping(method = RequestMethod.GET)
+	@ResponseBody
+	public List<CoordinatorStatus> getCoordinators() {
+		return livenessRegistry.getCoordinators();
+	}
+
+	/**
+	 * Raised for a coordinator that was never heard from.
+	 */
+	@ResponseStatus(HttpStatus.NOT_FOUND)
+	public static class UnknownCoordinatorException extends RuntimeException {
+
+		private static final long serialVersionUID = 1L;
+
+		public UnknownCoordinatorException(final String id) {
+			super("Unknown coordinator - " + id);
+		}
+
+	}
+
+}
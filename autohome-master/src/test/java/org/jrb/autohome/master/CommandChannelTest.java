@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2013 Jon Brule
+ * 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ * 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ * 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package org.jrb.autohome.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jrb.autohome.commons.service.broker.BrokerProperties;
+import org.jrb.autohome.commons.service.broker.BrokerService;
+import org.jrb.autohome.commons.service.broker.BrokerServiceException;
+import org.jrb.autohome.commons.service.broker.BrokerServiceImpl;
+import org.jrb.autohome.commons.service.broker.BrokerType;
+import org.jrb.autohome.commons.service.broker.command.CommandHandler;
+import org.jrb.autohome.commons.service.broker.liveness.LivenessRegistry;
+import org.jrb.autohome.commons.service.broker.message.Command;
+import org.jrb.autohome.commons.service.broker.message.SimpleCommand;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.SpringApplicationContextLoader;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.util.concurrent.ListenableFuture;
+
+/**
+ * Integration test case that exercises the command channel between the master
+ * and a coordinator.
+ * 
+ * @author <a href="mailto:brulejr@gmail.com">Jon Brule</a>
+ */
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration(classes = SpringApplication.class, loader = SpringApplicationContextLoader.class)
+public class CommandChannelTest {
+
+	private static final Logger LOG = LoggerFactory.getLogger(CommandChannelTest.class);
+
+	private static final String COORDINATOR_ID = "test-coordinator";
+
+	@Autowired
+	private BrokerService brokerService;
+
+	@Autowired
+	private BrokerProperties brokerProperties;
+
+	@Autowired
+	private LivenessRegistry livenessRegistry;
+
+	@Test
+	public void test() {
+		LOG.info("BEGIN: test()");
+		assertNotNull(brokerService);
+		try {
+
+			// setup coordinator
+			final BrokerProperties coordinatorProperties = new BrokerProperties();
+			coordinatorProperties.setBrokerType(BrokerType.COORDINATOR);
+			coordinatorProperties.setPublisherAddress(brokerProperties.getSubscriberAddress());
+			coordinatorProperties.setSubscriberAddress(brokerProperties.getPublisherAddress());
+			coordinatorProperties.setSubscriberTopicFilter(brokerProperties.getSubscriberTopicFilter());
+			coordinatorProperties.setCommandAddress(brokerProperties.getCommandAddress());
+			coordinatorProperties.setCoordinatorId(COORDINATOR_ID);
+			final BrokerServiceImpl coordinator = new BrokerServiceImpl(
+					coordinatorProperties, Executors.newSingleThreadExecutor(), new EventBus());
+			coordinator.registerCommandHandler("echo", new CommandHandler<String, String>() {
+				@Override
+				public String handle(final Command<String> command) {
+					return command.getPayload();
+				}
+			});
+			coordinator.registerCommandHandler("fail", new CommandHandler<String, String>() {
+				@Override
+				public String handle(final Command<String> command) {
+					throw new IllegalStateException("Failed on " + command.getPayload());
+				}
+			});
+			coordinator.start();
+			Thread.sleep(1000);
+
+			// coordinator announces itself with a heartbeat
+			assertNotNull(livenessRegistry.getCoordinator(COORDINATOR_ID));
+			assertTrue(livenessRegistry.getCoordinator(COORDINATOR_ID).isAlive());
+
+			// send many commands at once
+			final int numCommands = 100;
+			final ListenableFuture<?>[] replies = new ListenableFuture<?>[numCommands];
+			for (int i = 0; i < numCommands; i++) {
+				replies[i] = brokerService.send(COORDINATOR_ID, new SimpleCommand<String>("echo", "Test #" + i));
+			}
+			for (int i = 0; i < numCommands; i++) {
+				assertEquals("Test #" + i, replies[i].get(5, TimeUnit.SECONDS));
+			}
+
+			// send failing command
+			try {
+				brokerService.send(COORDINATOR_ID, new SimpleCommand<String>("fail", "purpose")).get(5, TimeUnit.SECONDS);
+				fail("Expected command to fail");
+			} catch (final ExecutionException e) {
+				assertTrue(e.getCause() instanceof BrokerServiceException);
+				assertTrue(e.getCause().getMessage().contains("Failed on purpose"));
+			}
+
+			// send command to unknown coordinator, which fails without waiting
+			try {
+				brokerService.send("unknown", new SimpleCommand<String>("echo", "lost"), 30, TimeUnit.SECONDS)
+						.get(1, TimeUnit.SECONDS);
+				fail("Expected command to fail");
+			} catch (final ExecutionException e) {
+				assertTrue(e.getCause() instanceof BrokerServiceException);
+				assertTrue(e.getCause().getMessage().contains("unknown"));
+			}
+
+			// a command sent just before stopping still completes
+			final ListenableFuture<?> late = coordinator.send(
+					"master", new SimpleCommand<String>("echo", "late"), 30, TimeUnit.SECONDS);
+			coordinator.stop();
+			try {
+				late.get(5, TimeUnit.SECONDS);
+			} catch (final ExecutionException e) {
+				assertTrue(e.getCause() instanceof BrokerServiceException);
+			}
+
+		} catch (final Throwable t) {
+			LOG.error(t.getMessage(), t);
+			fail(t.getMessage());
+		}
+		LOG.info("END: test()");
+	}
+
+}